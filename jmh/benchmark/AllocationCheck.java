@@ -0,0 +1,94 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+
+/**
+ * The AllocationCheck class verifies that a warmed-up frame does not allocate. It runs the
+ * {@link RenderPipelineBenchmark}, which projects and rasterizes a frame, with the GC profiler for every transform
+ * implementation and precision and fails if any of them allocates on the heap.
+ * @author Giorgio
+ */
+public class AllocationCheck {
+    /** The GC profiler result holding the heap bytes allocated per operation. */
+    private static final String ALLOCATION_RATE = "gc.alloc.rate.norm";
+
+    /**
+     * Allowed bytes per operation, half the smallest heap object. The harness allocates a few hundred bytes per
+     * iteration, which are spread over the hundreds of frames of an iteration.
+     */
+    private static final double TOLERANCE_BYTES = 8;
+
+    /**
+     * Runs the check and exits with status 1 if a frame allocates.
+     *
+     * @param args Not used.
+     * @throws RunnerException If the benchmarks cannot be run.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RenderPipelineBenchmark.class.getSimpleName())
+                .param("segments", "64")
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                // Until C2 compiles the Vector API loops, they allocate their vectors on the heap
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.seconds(1))
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        int failures = 0;
+        if (results.isEmpty()) {
+            System.err.println("No benchmark was run");
+            failures++;
+        }
+        for (RunResult result : results) {
+            String name = result.getParams().getBenchmark() + " " + result.getParams().getParam("mode")
+                    + " " + result.getParams().getParam("precision");
+            double allocated = leastAllocation(result);
+            if (Double.isNaN(allocated)) {
+                System.err.println(name + ": no " + ALLOCATION_RATE + " result");
+                failures++;
+            } else if (allocated > TOLERANCE_BYTES) {
+                System.err.printf("%s allocates %.1f bytes per frame%n", name, allocated);
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+        System.out.println("No allocation in " + results.size() + " frame benchmarks");
+    }
+
+    /**
+     * Returns the least allocation per operation of all measured iterations. A frame that allocates does so in
+     * every iteration, while the tear-down of the trial or a late lazy initialization only shows in one.
+     *
+     * @param result The result of one benchmark configuration.
+     * @return The bytes per operation, or NaN if the GC profiler reported none.
+     */
+    private static double leastAllocation(RunResult result) {
+        double least = Double.NaN;
+        for (BenchmarkResult benchmark : result.getBenchmarkResults()) {
+            for (IterationResult iteration : benchmark.getIterationResults()) {
+                Result<?> allocation = iteration.getSecondaryResults().get(ALLOCATION_RATE);
+                if (allocation != null && (Double.isNaN(least) || allocation.getScore() < least)) {
+                    least = allocation.getScore();
+                }
+            }
+        }
+        return least;
+    }
+}
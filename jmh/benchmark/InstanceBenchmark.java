@@ -0,0 +1,85 @@
+package benchmark;
+
+import engine.OffscreenRenderer;
+import geometry.Matrix4;
+import geometry.Mesh;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scene.InstanceBatch;
+import scene.Scene;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The InstanceBenchmark class renders the layout of the {@link SceneBenchmark} as one {@link InstanceBatch}:
+ * a fixed number of visible instances in front of the camera and a variable number behind it. Every instance
+ * gets its own color. Memory per instance is a few primitive array entries instead of a scene object.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class InstanceBenchmark {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+
+    /** The total number of instances, at least {@link SceneBenchmark#VISIBLE_OBJECTS}. */
+    @Param({"256", "10000", "100000"})
+    public int instanceCount;
+
+    private final Matrix4 worldMatrix = new Matrix4();
+    private Scene scene;
+    private InstanceBatch batch;
+    private OffscreenRenderer renderer;
+    private double theta;
+
+    /**
+     * Fills a batch with instances of a sphere.
+     */
+    @Setup
+    public void setUp() {
+        scene = new Scene();
+        batch = scene.addBatch(new Mesh(ProceduralMeshes.sphere(16)));
+        for (int i = 0; i < instanceCount; i++) {
+            batch.add(SceneBenchmark.place(i, worldMatrix), (i * 0x3F1D5B) & 0xFFFFFF);
+        }
+        renderer = new OffscreenRenderer(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Spins the visible instances in place and renders a frame.
+     *
+     * @return The pixels of the frame.
+     */
+    @Benchmark
+    public int[] frame() {
+        theta += 0.05;
+        for (int i = 0; i < SceneBenchmark.VISIBLE_OBJECTS; i++) {
+            batch.getMatrix(i, worldMatrix);
+            batch.setMatrix(i, worldMatrix.setRotationZTranslation(theta + i, worldMatrix.m30, worldMatrix.m31, worldMatrix.m32));
+        }
+        renderer.render(scene);
+        return renderer.getPixels();
+    }
+
+    /**
+     * Stops the rasterizer threads.
+     */
+    @TearDown
+    public void tearDown() {
+        renderer.shutdown();
+    }
+}
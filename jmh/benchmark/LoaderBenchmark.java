@@ -0,0 +1,103 @@
+package benchmark;
+
+import geometry.MeshData;
+import loader.AssetCache;
+import loader.MeshCacheFile;
+import loader.ObjLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LoaderBenchmark class measures getting the geometry of a generated OBJ file in three ways: parsing the file,
+ * reading its binary cache and getting it from an {@link AssetCache} that already holds it. The file is written to
+ * a temporary directory and deleted with its cache afterwards.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class LoaderBenchmark {
+    /** The sphere resolution. */
+    @Param({"16", "64", "256"})
+    public int segments;
+
+    private final ObjLoader objLoader = new ObjLoader(true, false);
+    private final AssetCache assetCache = new AssetCache(AssetCache.DEFAULT_BUDGET_BYTES, objLoader);
+    private Path path;
+
+    /**
+     * Writes the OBJ file and its binary cache and loads it into the asset cache.
+     *
+     * @throws IOException If a file cannot be written.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        path = Files.createTempFile("benchmark-sphere", ".obj");
+        ProceduralMeshes.writeObj(ProceduralMeshes.sphere(segments), path);
+        MeshCacheFile.write(path, objLoader.parse(path));
+        assetCache.get(path.toString());
+    }
+
+    /**
+     * Parses the OBJ file without the binary cache.
+     *
+     * @return The geometry.
+     * @throws IOException If the file cannot be read.
+     */
+    @Benchmark
+    public MeshData parse() throws IOException {
+        return objLoader.parse(path);
+    }
+
+    /**
+     * Reads the binary cache of the OBJ file.
+     *
+     * @return The geometry.
+     */
+    @Benchmark
+    public MeshData cache() {
+        return MeshCacheFile.read(path);
+    }
+
+    /**
+     * Gets the geometry from the asset cache, which already holds it.
+     *
+     * @return The geometry.
+     * @throws IOException If the file cannot be read.
+     */
+    @Benchmark
+    public MeshData asset() throws IOException {
+        return assetCache.get(path.toString()).getData();
+    }
+
+    /**
+     * Deletes the OBJ file and its binary cache.
+     */
+    @TearDown
+    public void tearDown() {
+        try {
+            Files.deleteIfExists(MeshCacheFile.cachePathOf(path));
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + path + ": " + e.getMessage());
+        }
+    }
+}
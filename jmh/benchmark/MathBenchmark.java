@@ -0,0 +1,90 @@
+package benchmark;
+
+import geometry.Matrix4;
+import geometry.Triangle;
+import geometry.Vector3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MathBenchmark class measures the geometry math of a frame: multiplying and composing matrices,
+ * transforming vectors into new or reused destinations and computing triangle normals.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class MathBenchmark {
+    private final Matrix4 a = new Matrix4().setRotationZ(0.3);
+    private final Matrix4 b = new Matrix4().setRotationX(0.35);
+    private final Matrix4 product = new Matrix4();
+    private final Matrix4 composed = new Matrix4();
+    private final Matrix4 rotation = new Matrix4().setRotationY(0.5);
+    private final Vector3D vector = new Vector3D(1, 2, 3);
+    private final Vector3D destination = new Vector3D(0, 0, 0);
+    private final Triangle triangle = new Triangle(0, 0, 1, 1, 0.2, 1, 0.3, 1, 1.5);
+    private double angle;
+
+    /**
+     * Multiplies two matrices into a reused destination.
+     *
+     * @return The product.
+     */
+    @Benchmark
+    public Matrix4 matrixMultiplyInto() {
+        return a.mulInto(b, product);
+    }
+
+    /**
+     * Composes a world matrix from two rotations and a translation with the fused operations.
+     *
+     * @return The world matrix.
+     */
+    @Benchmark
+    public Matrix4 matrixCompose() {
+        angle += 0.01;
+        return composed.setRotationZ(angle).rotateX(angle * 0.5).translate(0, 0, 6);
+    }
+
+    /**
+     * Transforms a vector into a new vector.
+     *
+     * @return The transformed vector.
+     */
+    @Benchmark
+    public Vector3D vectorMultiplyMatrix() {
+        return vector.multiply(rotation);
+    }
+
+    /**
+     * Transforms a vector into a reused destination.
+     *
+     * @return The transformed vector.
+     */
+    @Benchmark
+    public Vector3D vectorMultiplyMatrixInto() {
+        return vector.multiply(rotation, destination);
+    }
+
+    /**
+     * Computes the normal of a triangle.
+     *
+     * @return The normal.
+     */
+    @Benchmark
+    public Vector3D triangleNormal() {
+        return triangle.getNormal();
+    }
+}
@@ -0,0 +1,105 @@
+package benchmark;
+
+import geometry.MathUtils;
+import geometry.Matrix4;
+import geometry.Mesh;
+import geometry.MeshData;
+import geometry.OffHeapMeshStorage;
+import geometry.Precision;
+import geometry.Shading;
+import geometry.Vector3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import render.FrameBuffer;
+import render.TileRenderer;
+import render.TriangleBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OffHeapBenchmark class measures the frame of the {@link RenderPipelineBenchmark} for a flat-shaded float
+ * mesh whose geometry is stored on the heap or in direct memory, through the same {@link Mesh}. Its footprint,
+ * printed after the trial, splits the memory of the geometry and the per-frame results into heap and off-heap.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class OffHeapBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    /** The sphere resolution, up to two million triangles. */
+    @Param({"64", "256", "1024"})
+    public int segments;
+
+    /** True to copy the sphere into direct memory, false to keep it on the heap. */
+    @Param({"true", "false"})
+    public boolean offHeap;
+
+    private final Matrix4 worldMatrix = new Matrix4();
+    private final Matrix4 projectionMatrix = new Matrix4();
+    private final Vector3D camera = new Vector3D(0, 0, 0);
+    private Mesh mesh;
+    private FrameBuffer frameBuffer;
+    private TriangleBuffer triangles;
+    private TileRenderer tileRenderer;
+    private double theta;
+
+    /**
+     * Generates the sphere, copies it into direct memory if requested and creates the buffers of the frame.
+     */
+    @Setup
+    public void setUp() {
+        MathUtils.setProjectionMatrix(projectionMatrix, (double) HEIGHT / WIDTH, MathUtils.getFieldOfView());
+        MeshData sphere = ProceduralMeshes.sphere(segments);
+        // Off-heap geometry gets no computed normals, so both variants are flat shaded
+        mesh = new Mesh(offHeap ? new MeshData(OffHeapMeshStorage.allocate(sphere)) : sphere);
+        mesh.setPrecision(Precision.FLOAT);
+        mesh.setShading(Shading.FLAT);
+        frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+        triangles = new TriangleBuffer();
+        tileRenderer = new TileRenderer();
+    }
+
+    /**
+     * Renders a frame of the sphere, rotated a little further than in the previous operation.
+     *
+     * @return The pixels of the frame.
+     */
+    @Benchmark
+    public int[] frame() {
+        theta += 0.05;
+        worldMatrix.setRotationZ(theta).rotateX(theta * 0.5).translate(0, 0, 3);
+
+        triangles.clear();
+        mesh.project(triangles, worldMatrix, projectionMatrix, camera, WIDTH, HEIGHT);
+        tileRenderer.render(triangles, frameBuffer, 0x000000);
+        return frameBuffer.getPixels();
+    }
+
+    /**
+     * Prints the heap and off-heap memory of the mesh and stops the rasterizer threads.
+     */
+    @TearDown
+    public void tearDown() {
+        MeshData data = mesh.getData();
+        long offHeapBytes = data.getStorage().isOffHeap() ? data.getStorage().getByteSize() : 0;
+        System.out.println("footprint " + (data.getByteSize() + mesh.getTransformStage().getBufferBytes())
+                + " bytes on the heap, " + offHeapBytes + " bytes off the heap");
+        tileRenderer.shutdown();
+    }
+}
@@ -0,0 +1,77 @@
+package benchmark;
+
+import geometry.MeshData;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The ProceduralMeshes class generates test geometry of a chosen size, so benchmarks do not depend on
+ * model files and can scale the workload.
+ * @author Giorgio
+ */
+public class ProceduralMeshes {
+    /** The sphere resolutions used by the benchmarks, giving roughly 2 * n * n triangles each. */
+    public static final int[] SEGMENTS = {16, 64, 256};
+
+    /**
+     * Generates a closed UV sphere of radius 1 around the origin with outward facing, counter-clockwise triangles.
+     *
+     * @param segments The number of rings and of slices per ring, at least 3.
+     * @return The sphere with 2 * segments * (segments - 1) triangles.
+     */
+    public static MeshData sphere(int segments) {
+        if (segments < 3) {
+            throw new IllegalArgumentException("A sphere needs at least 3 segments");
+        }
+        MeshData.Builder builder = new MeshData.Builder();
+        int top = builder.addVertex(0, 1, 0);
+        // Inner rings from top to bottom, the poles are single vertices
+        for (int ring = 1; ring < segments; ring++) {
+            double polar = Math.PI * ring / segments;
+            for (int slice = 0; slice < segments; slice++) {
+                double azimuth = 2 * Math.PI * slice / segments;
+                builder.addVertex(Math.sin(polar) * Math.cos(azimuth), Math.cos(polar), Math.sin(polar) * Math.sin(azimuth));
+            }
+        }
+        int bottom = builder.addVertex(0, -1, 0);
+
+        for (int slice = 0; slice < segments; slice++) {
+            int next = (slice + 1) % segments;
+            builder.addTriangle(top, 1 + next, 1 + slice);
+            for (int ring = 1; ring < segments - 1; ring++) {
+                int a = 1 + (ring - 1) * segments + slice;
+                int b = 1 + (ring - 1) * segments + next;
+                int c = 1 + ring * segments + slice;
+                int d = 1 + ring * segments + next;
+                builder.addTriangle(a, b, d);
+                builder.addTriangle(a, d, c);
+            }
+            int lastRing = 1 + (segments - 2) * segments;
+            builder.addTriangle(bottom, lastRing + slice, lastRing + next);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes mesh data as a Wavefront OBJ file with "v" and triangular "f" lines.
+     *
+     * @param data The geometry to write.
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeObj(MeshData data, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for (int i = 0; i < data.vertexCount; i++) {
+                writer.write("v " + data.getX(i) + " " + data.getY(i) + " " + data.getZ(i) + "\n");
+            }
+            for (int t = 0; t < data.triangleCount; t++) {
+                // OBJ indices are 1-based
+                writer.write("f " + (data.getIndex(t * 3) + 1) + " " + (data.getIndex(t * 3 + 1) + 1)
+                        + " " + (data.getIndex(t * 3 + 2) + 1) + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package benchmark;
+
+import engine.EngineFrame;
+import geometry.Matrix4;
+import geometry.Mesh;
+import geometry.Shading;
+import geometry.Vector3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import render.FrameBuffer;
+import render.TileRenderer;
+import render.TriangleBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RasterBenchmark class measures only the tiled rasterization of a mesh, which is projected and lit once
+ * during set-up. Comparing flat and smooth shading shows what interpolating the vertex colors costs per pixel.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class RasterBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    /** The sphere resolution. */
+    @Param({"16", "64", "256"})
+    public int segments;
+
+    /** The shading of the mesh. */
+    @Param
+    public Shading shading;
+
+    private FrameBuffer frameBuffer;
+    private TriangleBuffer triangles;
+    private TileRenderer tileRenderer;
+
+    /**
+     * Projects and lights the sphere once and creates the frame buffer.
+     */
+    @Setup
+    public void setUp() {
+        EngineFrame.ASPECT_RATIO = (double) HEIGHT / WIDTH;
+        Mesh mesh = new Mesh(ProceduralMeshes.sphere(segments));
+        mesh.setShading(shading);
+        frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+        triangles = new TriangleBuffer();
+        tileRenderer = new TileRenderer();
+
+        Matrix4 worldMatrix = new Matrix4().setRotationZ(0.5).rotateX(0.25).translate(0, 0, 3);
+        mesh.project(triangles, worldMatrix, new Vector3D(0, 0, 0), WIDTH, HEIGHT);
+    }
+
+    /**
+     * Clears the frame buffer and rasterizes the triangles into it.
+     *
+     * @return The pixels of the frame.
+     */
+    @Benchmark
+    public int[] raster() {
+        tileRenderer.render(triangles, frameBuffer, 0x000000);
+        return frameBuffer.getPixels();
+    }
+
+    /**
+     * Stops the rasterizer threads.
+     */
+    @TearDown
+    public void tearDown() {
+        tileRenderer.shutdown();
+    }
+}
@@ -0,0 +1,101 @@
+package benchmark;
+
+import engine.EngineFrame;
+import geometry.Matrix4;
+import geometry.Mesh;
+import geometry.Precision;
+import geometry.TransformStage;
+import geometry.Vector3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import render.FrameBuffer;
+import render.TileRenderer;
+import render.TriangleBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RenderPipelineBenchmark class measures one complete frame of a rotating mesh: transform, projection,
+ * culling, lighting and tiled rasterization into an offscreen frame buffer. It needs no display.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class RenderPipelineBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    /** The sphere resolution, from about 500 to two million triangles. */
+    @Param({"16", "64", "256", "1024"})
+    public int segments;
+
+    /** The transform implementation. */
+    @Param
+    public TransformStage.Mode mode;
+
+    /** The precision of the transform stage. */
+    @Param
+    public Precision precision;
+
+    private final Matrix4 worldMatrix = new Matrix4();
+    private final Vector3D camera = new Vector3D(0, 0, 0);
+    private Mesh mesh;
+    private FrameBuffer frameBuffer;
+    private TriangleBuffer triangles;
+    private TileRenderer tileRenderer;
+    private double theta;
+
+    /**
+     * Generates the sphere and creates the buffers of the frame.
+     */
+    @Setup
+    public void setUp() {
+        EngineFrame.ASPECT_RATIO = (double) HEIGHT / WIDTH;
+        mesh = new Mesh(ProceduralMeshes.sphere(segments));
+        mesh.getTransformStage().setMode(mode);
+        mesh.setPrecision(precision);
+        frameBuffer = new FrameBuffer(WIDTH, HEIGHT);
+        triangles = new TriangleBuffer();
+        tileRenderer = new TileRenderer();
+    }
+
+    /**
+     * Renders a frame of the sphere, rotated a little further than in the previous operation.
+     *
+     * @return The pixels of the frame.
+     */
+    @Benchmark
+    public int[] frame() {
+        // Rotate a little every frame so the visible set changes like in the engine
+        theta += 0.05;
+        worldMatrix.setRotationZ(theta).rotateX(theta * 0.5).translate(0, 0, 3);
+
+        triangles.clear();
+        mesh.project(triangles, worldMatrix, camera, WIDTH, HEIGHT);
+        tileRenderer.render(triangles, frameBuffer, 0x000000);
+        return frameBuffer.getPixels();
+    }
+
+    /**
+     * Prints the memory of the per-frame transform buffers and stops the rasterizer threads.
+     */
+    @TearDown
+    public void tearDown() {
+        System.out.println("footprint " + mesh.getTransformStage().getBufferBytes() + " bytes");
+        tileRenderer.shutdown();
+    }
+}
@@ -0,0 +1,118 @@
+package benchmark;
+
+import engine.OffscreenRenderer;
+import geometry.Matrix4;
+import geometry.Mesh;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scene.Scene;
+import scene.SceneObject;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SceneBenchmark class renders a scene with a fixed number of visible objects in front of the camera
+ * and a variable number of objects behind it. With hierarchical culling the frame time should grow only
+ * slightly with the number of hidden objects, by the cost of updating their bounds.
+ * With levels of detail, the distant spheres are drawn with a fraction of their triangles.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class SceneBenchmark {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 360;
+
+    /** The objects in front of the camera, arranged in a square grid. */
+    static final int VISIBLE_OBJECTS = 256;
+
+    /** The total number of objects, at least {@link #VISIBLE_OBJECTS}. */
+    @Param({"256", "10000", "100000"})
+    public int objectCount;
+
+    /** The number of segments of the sphere. */
+    @Param({"16"})
+    public int segments;
+
+    /** True to generate levels of detail for the sphere; compare with {@code -p segments=64 -p objectCount=256}. */
+    @Param({"false", "true"})
+    public boolean levelsOfDetail;
+
+    private Scene scene;
+    private OffscreenRenderer renderer;
+    private double theta;
+
+    /**
+     * Fills the scene with copies of a sphere.
+     */
+    @Setup
+    public void setUp() {
+        Mesh mesh = new Mesh(ProceduralMeshes.sphere(segments));
+        if (levelsOfDetail) {
+            mesh.generateLevelsOfDetail();
+        }
+        scene = new Scene();
+        Matrix4 worldMatrix = new Matrix4();
+        for (int i = 0; i < objectCount; i++) {
+            scene.add(mesh, place(i, worldMatrix));
+        }
+        renderer = new OffscreenRenderer(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Spins the visible objects in place and renders a frame; the scene still updates the bounds of all objects.
+     *
+     * @return The pixels of the frame.
+     */
+    @Benchmark
+    public int[] frame() {
+        theta += 0.05;
+        List<SceneObject> objects = scene.getObjects();
+        for (int i = 0; i < VISIBLE_OBJECTS; i++) {
+            Matrix4 worldMatrix = objects.get(i).getWorldMatrix();
+            worldMatrix.setRotationZTranslation(theta + i, worldMatrix.m30, worldMatrix.m31, worldMatrix.m32);
+        }
+        renderer.render(scene);
+        return renderer.getPixels();
+    }
+
+    /**
+     * Stops the rasterizer threads.
+     */
+    @TearDown
+    public void tearDown() {
+        renderer.shutdown();
+    }
+
+    /**
+     * Places an object of the benchmark scene: the first {@link #VISIBLE_OBJECTS} in a grid filling the view,
+     * all others scattered in a large volume behind the camera.
+     *
+     * @param i           The index of the object.
+     * @param worldMatrix The matrix receiving the translation of the object.
+     * @return The world matrix.
+     */
+    static Matrix4 place(int i, Matrix4 worldMatrix) {
+        int side = (int) Math.sqrt(VISIBLE_OBJECTS);
+        if (i < VISIBLE_OBJECTS) {
+            return worldMatrix.setTranslation((i % side - side / 2) * 2.5, (i / side - side / 2) * 1.4, 20);
+        }
+        double x = Math.floorMod(i * 7919, 1000) - 500, y = Math.floorMod(i * 104729, 1000) - 500;
+        return worldMatrix.setTranslation(x, y, -10 - Math.floorMod(i * 1299709, 1000));
+    }
+}
@@ -0,0 +1,143 @@
+package benchmark;
+
+import geometry.Light;
+import geometry.Lighting;
+import geometry.ShadingTables;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ShadingBenchmark class measures lighting a fixed set of random surface points, either with the direct math
+ * of {@link Lighting#shadeDirect} or with the lookup tables of {@link ShadingTables}, which are built in set-up.
+ * The size of the tables is printed after the trial.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class ShadingBenchmark {
+    /** The number of surface points lit per operation, about the visible vertices of a detailed model. */
+    public static final int POINTS = 4096;
+
+    /**
+     * The lighting: the default light, the lights of the engine, enough directional lights for the normal table,
+     * or several lights with highlights and gamma correction.
+     */
+    @Param({"default", "engine", "many", "rich"})
+    public String lighting;
+
+    private final double[] normalX = new double[POINTS];
+    private final double[] normalY = new double[POINTS];
+    private final double[] normalZ = new double[POINTS];
+    private final double[] positionX = new double[POINTS];
+    private final double[] positionY = new double[POINTS];
+    private final double[] positionZ = new double[POINTS];
+    private final int[] colors = new int[POINTS];
+    private Lighting lights;
+    private ShadingTables shadingTables;
+
+    /**
+     * Generates the surface points and builds the shading tables.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < POINTS; i++) {
+            double x = random.nextGaussian(), y = random.nextGaussian(), z = random.nextGaussian();
+            double length = Math.sqrt(x * x + y * y + z * z);
+            normalX[i] = x / length;
+            normalY[i] = y / length;
+            normalZ[i] = z / length;
+            positionX[i] = random.nextDouble() * 4 - 2;
+            positionY[i] = random.nextDouble() * 4 - 2;
+            positionZ[i] = random.nextDouble() * 4 + 4;
+            colors[i] = random.nextInt(0x1000000);
+        }
+        lights = createLighting(lighting);
+        shadingTables = lights.getTables();
+    }
+
+    /**
+     * Lights the points with the exact math.
+     *
+     * @return The sum of the lit colors.
+     */
+    @Benchmark
+    public int direct() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+            sum += lights.shadeDirect(colors[i], normalX[i], normalY[i], normalZ[i],
+                    positionX[i], positionY[i], positionZ[i], 0, 0, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * Lights the points through the lookup tables.
+     *
+     * @return The sum of the lit colors.
+     */
+    @Benchmark
+    public int tables() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+            sum += shadingTables.shade(colors[i], normalX[i], normalY[i], normalZ[i],
+                    positionX[i], positionY[i], positionZ[i], 0, 0, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * Prints the memory of the shading tables.
+     */
+    @TearDown
+    public void tearDown() {
+        System.out.println("footprint " + shadingTables.getBytes() + " bytes");
+    }
+
+    /**
+     * Creates a lighting of the benchmark by name.
+     *
+     * @param name The name of the lighting.
+     * @return The lighting.
+     */
+    private static Lighting createLighting(String name) {
+        switch (name) {
+            case "default":
+                return Lighting.DEFAULT;
+            case "engine":
+                return Lighting.DEFAULT.withLight(Light.point(4, -3, 3, 0xFFC080, 5));
+            case "many":
+                Light[] many = new Light[ShadingTables.NORMAL_TABLE_MIN_LIGHTS];
+                for (int i = 0; i < many.length; i++) {
+                    double angle = i * 2 * Math.PI / many.length;
+                    many[i] = Light.directional(Math.cos(angle), Math.sin(angle), -1, 0x404040);
+                }
+                return new Lighting(0.1, many);
+            case "rich":
+                return new Lighting(0.05,
+                        Light.directional(0, -1, -1, 0xFFFFFF), Light.directional(1, 0.5, -0.2, 0x4060FF),
+                        Light.directional(-1, 0.2, 0.3, 0xFF8040), Light.directional(0, 1, 0, 0x202020),
+                        Light.point(4, -3, 3, 0xFFC080, 5), Light.point(-3, 2, 1, 0x80FF80, 4))
+                        .withSpecular(0.5, 32).withGamma(2.2);
+            default:
+                throw new IllegalArgumentException("Unknown lighting " + name);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package benchmark;
+
+import geometry.MathUtils;
+import geometry.Matrix4;
+import geometry.MeshData;
+import geometry.Precision;
+import geometry.TransformStage;
+import geometry.Vector3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TransformBenchmark class measures the vertex and face passes of a {@link TransformStage} alone, without
+ * clipping and rasterization, so the effect of the {@link Precision} on throughput is not hidden by the rest
+ * of the frame. Its footprint, printed after the trial, is the memory streamed through per frame: the source
+ * positions and the result buffers of the stage.
+ * @author Giorgio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class TransformBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    /** The sphere resolution, up to two million triangles. */
+    @Param({"64", "256", "1024"})
+    public int segments;
+
+    /** The transform implementation. */
+    @Param
+    public TransformStage.Mode mode;
+
+    /** The precision to transform with. */
+    @Param
+    public Precision precision;
+
+    private final Matrix4 worldMatrix = new Matrix4();
+    private final Matrix4 projectionMatrix = new Matrix4();
+    private final Vector3D camera = new Vector3D(0, 0, 0);
+    private MeshData data;
+    private TransformStage stage;
+    private double theta;
+
+    /**
+     * Generates the sphere and creates the transform stage.
+     */
+    @Setup
+    public void setUp() {
+        data = ProceduralMeshes.sphere(segments);
+        MathUtils.setProjectionMatrix(projectionMatrix, (double) HEIGHT / WIDTH, MathUtils.getFieldOfView());
+        stage = new TransformStage();
+        stage.setMode(mode);
+        stage.setPrecision(precision);
+    }
+
+    /**
+     * Transforms the sphere, rotated a little further than in the previous operation.
+     *
+     * @return The visibility flags of the faces.
+     */
+    @Benchmark
+    public boolean[] transform() {
+        theta += 0.05;
+        worldMatrix.setRotationZ(theta).rotateX(theta * 0.5).translate(0, 0, 3);
+        stage.run(data, worldMatrix, projectionMatrix, camera, WIDTH, HEIGHT);
+        return stage.getVisible();
+    }
+
+    /**
+     * Prints the memory streamed through per operation.
+     */
+    @TearDown
+    public void tearDown() {
+        long positionBytes = precision == Precision.FLOAT ? Float.BYTES : Double.BYTES;
+        System.out.println("footprint " + (3 * positionBytes * data.vertexCount + stage.getBufferBytes()) + " bytes");
+    }
+}
@@ -0,0 +1,38 @@
+package engine;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * The AllocationCounter class reads the number of bytes the current thread has allocated on the heap.
+ * It is used to verify that the steady-state render path does not allocate per frame.
+ * @author Giorgio
+ */
+public class AllocationCounter {
+    /** The HotSpot thread bean, or null if the running JVM does not support allocation counting. */
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = createThreadBean();
+
+    /**
+     * Returns the total number of bytes allocated by the current thread so far.
+     *
+     * @return The allocated bytes, or -1 if allocation counting is not supported.
+     */
+    public static long getAllocatedBytes() {
+        return THREAD_BEAN != null ? THREAD_BEAN.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Looks up the HotSpot thread bean and enables allocation counting on it.
+     *
+     * @return The thread bean, or null if it is not available.
+     */
+    private static com.sun.management.ThreadMXBean createThreadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            // Warm up the call so its own first-use allocations are not attributed to a frame
+            bean.getCurrentThreadAllocatedBytes();
+            return bean;
+        }
+        return null;
+    }
+}
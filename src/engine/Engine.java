@@ -1,12 +1,28 @@
 package engine;
 
-import java.awt.*;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferStrategy;
 import geometry.*;
+import input.InputSnapshot;
+import input.KeyboardInput;
+import loader.AsyncMeshLoader;
+import metrics.FrameMetrics;
+import metrics.Metric;
+import metrics.MetricsOverlay;
+import scene.Scene;
 
+import javax.management.JMException;
 import javax.swing.*;
+import java.util.function.Consumer;
 
 /**
  * The Engine class represents a simple 3D engine for rendering a mesh.
+ * <p>
+ * The simulation runs on the thread calling {@link #update()} and {@link #publish(double)}, usually the game loop.
+ * It never touches the scene: every frame it publishes a {@link SceneSnapshot}, which a {@link RenderPipeline}
+ * renders on threads of its own. The Swing event dispatch thread is not involved in rendering at all.
  * @author Giorgio
  */
 public class Engine {
@@ -23,60 +39,243 @@ public class Engine {
     }
 
     /**
-     * Repaints the JPanel in the frame.
+     * Publishes the state of the simulation for the next frame. The rotation is interpolated between the last
+     * two simulation steps. Rendering happens on the render pipeline's threads, so this returns right away.
+     *
+     * @param alpha The interpolation factor between the previous and the current simulation step, from 0 to 1.
+     */
+    public void publish(double alpha){
+        double angle = previousTheta + (theta - previousTheta) * alpha;
+        // Spin around z, tumble around x at half the speed and move the teapot in front of the camera
+        teapotMatrix.setRotationZ(angle).rotateX(angle * 0.5).translate(0, 0, 6);
+
+        SceneSnapshot snapshot = snapshots.getBack();
+        snapshot.setMatrix(teapotIndex, teapotMatrix);
+        snapshot.setCamera(camera.x, camera.y, camera.z);
+        snapshot.setLighting(lighting);
+        snapshot.setUpdateNanos(pendingUpdateNanos);
+        pendingUpdateNanos = 0;
+        snapshots.publish();
+    }
+
+    /**
+     * Shows a finished frame on the canvas of the window through its buffer strategy and records its metrics.
+     * This is active rendering: it runs on the present thread and does not wait for the AWT repaint manager.
+     * <p>
+     * A frame identical to the one on screen is skipped unless the overlay is shown. It is still presented every
+     * {@value #IDLE_PRESENT_NANOS} nanoseconds, since the canvas ignores repaint requests and would otherwise not
+     * recover from being covered by other windows.
+     *
+     * @param renderedFrame The frame to show.
      */
-    public void repaint(){
-        frame.getJPanel().repaint();
+    private void present(RenderedFrame renderedFrame){
+        long presentStart = System.nanoTime();
+        if (!renderedFrame.isRedrawn() && !overlayVisible && presentStart - lastPresentStart < IDLE_PRESENT_NANOS) {
+            return;
+        }
+        lastPresentStart = presentStart;
+        BufferStrategy bufferStrategy = frame.getCanvasBufferStrategy();
+        do {
+            do {
+                Graphics graphics = bufferStrategy.getDrawGraphics();
+                graphics.drawImage(renderedFrame.getImage(), 0, 0, null);
+                if (overlayVisible) {
+                    overlay.draw(graphics);
+                }
+                graphics.dispose();
+            } while (bufferStrategy.contentsRestored());
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+        // Flush the window system's queue so the frame appears now and not at the next batch
+        Toolkit.getDefaultToolkit().sync();
+
+        long frameEnd = System.nanoTime();
+        lastFrameAllocatedBytes = renderedFrame.getAllocatedBytes();
+        metrics.add(Metric.UPDATE, renderedFrame.getUpdateNanos());
+        metrics.add(Metric.TRANSFORM, renderedFrame.getTransformNanos());
+        metrics.add(Metric.CULL, renderedFrame.getCullNanos());
+        metrics.add(Metric.BIN, renderedFrame.getBinNanos());
+        metrics.add(Metric.RASTER, renderedFrame.getRasterNanos());
+        metrics.add(Metric.TRIANGLES_SUBMITTED, renderedFrame.getTrianglesSubmitted());
+        metrics.add(Metric.TRIANGLES_CULLED, renderedFrame.getTrianglesSubmitted() - renderedFrame.getTrianglesDrawn());
+        metrics.add(Metric.TRIANGLES_DRAWN, renderedFrame.getTrianglesDrawn());
+        metrics.add(Metric.TILES_DRAWN, renderedFrame.getTilesRendered());
+        metrics.add(Metric.ALLOCATED_BYTES, Math.max(0, lastFrameAllocatedBytes));
+        metrics.add(Metric.PRESENT, frameEnd - presentStart);
+        metrics.add(Metric.LATENCY, frameEnd - renderedFrame.getPublishNanos());
+        if (lastFrameEnd != 0) {
+            metrics.add(Metric.FRAME, frameEnd - lastFrameEnd);
+        }
+        lastFrameEnd = frameEnd;
+        metrics.endFrame();
     }
 
     /**
-     * Checks if a specific key is currently pressed.
+     * Returns the per-frame metrics of the engine.
+     *
+     * @return The metrics.
+     */
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Checks if a specific key is pressed in the current simulation step.
      *
      * @param keyCode The code of the key to check.
      * @return True if the key is pressed, false otherwise.
      */
     public boolean isKeyPressed(int keyCode){
-        return frame.getKeyboardInput().isKeyPressed(keyCode);
+        return input.isKeyDown(keyCode);
+    }
+
+    /**
+     * Returns the keyboard state of the current simulation step, including every key event since the previous one.
+     * Must only be used by the simulation thread.
+     *
+     * @return The input snapshot.
+     */
+    public InputSnapshot getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the keyboard input of the window, e.g. for its latency statistics.
+     *
+     * @return The keyboard input.
+     */
+    public KeyboardInput getKeyboardInput() {
+        return frame.getKeyboardInput();
     }
 
     // --- Engine relevant section starts here ---
 
-    private final Mesh mesh;
-    private Matrix worldMatrix;
+    // the scene belongs to the render thread once the pipeline runs
+    private final Scene scene = new Scene();
+    private final int teapotIndex;
 
-    // angle theta for the rotation of the mesh
+    // loads meshes in the background, so the window opens before the models are read
+    private final AsyncMeshLoader meshLoader = new AsyncMeshLoader();
+
+    // bytes allocated on the render and present threads by the last frame, or -1 if unknown
+    private volatile long lastFrameAllocatedBytes = -1;
+
+    // simulation state: angle theta for the rotation of the mesh, at the current and the previous simulation step
     private double theta = 0;
+    private double previousTheta = 0;
+    // the rotation stops while paused (toggled with P), which leaves the scene static
+    private boolean paused;
+    private long pendingUpdateNanos;
+    private final Matrix4 teapotMatrix = new Matrix4();
     private final Vector3D camera;
+    // the default light from the front and a warm point light above and to the right of the teapot
+    private Lighting lighting = Lighting.DEFAULT.withLight(Light.point(4, -3, 3, 0xFFC080, 5));
+    // keyboard state of the current simulation step
+    private final InputSnapshot input = new InputSnapshot();
+
+    // hands the simulation state to the render pipeline, which projects, rasterizes and presents it
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
+    private final OffscreenRenderer renderer = new OffscreenRenderer(EngineFrame.WIDTH, EngineFrame.HEIGHT);
+    private final RenderPipeline pipeline;
+
+    // per-frame metrics, shown by the overlay (toggled with F3) and published through JMX
+    private final FrameMetrics metrics = new FrameMetrics();
+    private final MetricsOverlay overlay = new MetricsOverlay(metrics);
+    private volatile boolean overlayVisible;
+    private long lastFrameEnd;
+
+    // unchanged frames are only presented this often, in nanoseconds, so an idle window costs next to nothing
+    private static final long IDLE_PRESENT_NANOS = 250_000_000L;
+    private long lastPresentStart;
 
     /**
-     * Constructs an Engine instance, initializes mesh and camera, and creates a window frame.
+     * Constructs an Engine instance, starts loading the mesh, initializes the camera, creates a window frame and
+     * starts the render pipeline. The mesh is drawn as soon as (and as far as) it is loaded; until then the
+     * frames show an empty scene.
      */
     public Engine(){
-        mesh = new Mesh("data/UtahTeapot.obj");
+        scene.add(new Mesh(meshLoader.load("data/UtahTeapot.obj")), new Matrix4());
+        teapotIndex = scene.getObjects().size() - 1;
         camera = new Vector3D(0, 0, 0);
 
+        try {
+            metrics.register("engine:type=FrameMetrics");
+        } catch (JMException e) {
+            System.err.println("Could not register the frame metrics MBean: " + e.getMessage());
+        }
+
         // creating a window frame
         frame = new EngineFrame(this);
+
+        // The window size is final now; frames are rendered at that size from here on
+        renderer.resize(EngineFrame.WIDTH, EngineFrame.HEIGHT);
+        pipeline = new RenderPipeline(scene, renderer, snapshots, this::present);
+        pipeline.start();
     }
 
     /**
-     * Updates the engine state, rotating the world matrix.
+     * Advances the simulation by one fixed step: applies the key events since the previous step and rotates the
+     * mesh, unless the rotation is paused.
      */
     public void update(){
-        theta += 0.05;
-        Matrix translationMatrix = MathUtils.getTranslationMatrix(new Vector3D(0, 0, 6));
-        worldMatrix = MathUtils.getRotationZMatrix(theta)
-                .multiply(MathUtils.getRotationYMatrix(0))
-                .multiply(MathUtils.getRotationXMatrix(theta));
-        worldMatrix = worldMatrix.multiply(translationMatrix);
+        long start = System.nanoTime();
+        frame.getKeyboardInput().poll(input);
+        // Pause or resume the rotation on every press of P
+        if (input.getPressCount(KeyEvent.VK_P) % 2 == 1) {
+            paused = !paused;
+        }
+        previousTheta = theta;
+        if (!paused) {
+            theta += 0.05;
+        }
+
+        // Toggle the metrics overlay on every press of F3, however short
+        if (input.getPressCount(KeyEvent.VK_F3) % 2 == 1) {
+            overlayVisible = !overlayVisible;
+        }
+        pendingUpdateNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Changes the lights from the next published frame on. Must be called on the simulation thread, e.g. from
+     * {@link #update()}. The shading tables of the new lighting are built here, so the render thread does not
+     * stall on them; publishing the same lighting again costs nothing.
+     *
+     * @param lighting The new lighting.
+     */
+    public void setLighting(Lighting lighting) {
+        if (ShadingTables.ENABLED) {
+            lighting.getTables();
+        }
+        this.lighting = lighting;
+    }
+
+    /**
+     * Returns the lights of the published frames.
+     *
+     * @return The lighting.
+     */
+    public Lighting getLighting() {
+        return lighting;
+    }
+
+    /**
+     * Runs a task on the render thread before the next frame, e.g. to add objects to the scene, which must not
+     * be changed from any other thread.
+     *
+     * @param task The task, receiving the scene.
+     */
+    public void runOnRenderThread(Consumer<Scene> task) {
+        pipeline.runOnRenderThread(() -> task.accept(scene));
     }
 
     /**
-     * Paints the mesh on the specified Graphics context.
+     * Returns the number of heap bytes the last frame allocated while projecting and rasterizing the scene.
+     * In the steady state this is expected to be zero.
      *
-     * @param g The Graphics context to paint on.
+     * @return The allocated bytes, or -1 if the JVM cannot count allocations.
      */
-    public void paint(Graphics g){
-        mesh.paint(g, worldMatrix, camera);
+    public long getLastFrameAllocatedBytes() {
+        return lastFrameAllocatedBytes;
     }
 }
@@ -4,6 +4,7 @@ import input.KeyboardInput;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferStrategy;
 
 /**
  * The EngineFrame class represents the main window frame for the 3D engine.
@@ -18,8 +19,8 @@ public class EngineFrame extends JFrame {
     /** The aspect ratio of the frame. */
     public static double ASPECT_RATIO;
 
-    /** The rendering panel where the 3D engine renders its graphics. */
-    private final JPanel panel;
+    /** The canvas the 3D engine actively renders to. */
+    private final Canvas canvas;
     /** The keyboard input handler for user interaction. */
     private final KeyboardInput keyboardInput;
 
@@ -40,20 +41,15 @@ public class EngineFrame extends JFrame {
         keyboardInput = new KeyboardInput();
         addKeyListener(keyboardInput);
 
-        // Create rendering panel
-        panel = new JPanel() {
-            @Override
-            public void paint(Graphics g) {
-                super.paint(g);
-                // Clear the panel with a black background
-                g.setColor(Color.BLACK);
-                g.fillRect(0, 0, EngineFrame.WIDTH, EngineFrame.HEIGHT);
-                // Invoke the engine's paint method to render graphics
-                engine.paint(g);
-            }
-        };
-
-        add(panel);
+        // Create the canvas; frames are drawn by the game loop through a buffer strategy, not by repaint events
+        canvas = new Canvas();
+        canvas.setIgnoreRepaint(true);
+        // Keep the keyboard focus on the frame, where the key listener is registered
+        canvas.setFocusable(false);
+        setIgnoreRepaint(true);
+        add(canvas);
+        validate();
+        canvas.createBufferStrategy(2);
 
         // Adjust frame dimensions based on insets and calculate aspect ratio
         WIDTH -= getInsets().left;
@@ -62,12 +58,21 @@ public class EngineFrame extends JFrame {
     }
 
     /**
-     * Gets the rendering panel associated with this frame.
+     * Gets the canvas the engine renders to.
+     *
+     * @return The rendering canvas.
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * Gets the double buffering strategy of the rendering canvas.
      *
-     * @return The rendering panel.
+     * @return The buffer strategy.
      */
-    public JPanel getJPanel() {
-        return panel;
+    public BufferStrategy getCanvasBufferStrategy() {
+        return canvas.getBufferStrategy();
     }
 
     /**
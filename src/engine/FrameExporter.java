@@ -0,0 +1,246 @@
+package engine;
+
+import geometry.Matrix4;
+import geometry.Mesh;
+import geometry.MeshData;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The FrameExporter class renders a turntable of a model without a display and writes the frames either as a
+ * numbered PNG sequence or as one raw video stream.
+ * <p>
+ * PNG encoding is far slower than rendering, so frames are copied into a small pool of images and encoded on
+ * all processors while the next frames are rendered. The raw stream stores every frame as width * height
+ * little-endian 0xRRGGBB integers, i.e. the "bgr0" pixel format, which is a bulk copy of the frame buffer and
+ * can be piped into e.g. {@code ffmpeg -f rawvideo -pix_fmt bgr0 -s 1280x720 -i - out.mp4}.
+ * <p>
+ * Usage, after {@code gradle classes}: {@code java --add-modules jdk.incubator.vector -Djava.awt.headless=true
+ * -cp build/classes/java/main engine.FrameExporter [options]} with the options
+ * {@code --model path}, {@code --width n}, {@code --height n}, {@code --frames n}, {@code --distance d},
+ * {@code --format png|raw} and {@code --output path}, where a raw output of "-" writes to standard output.
+ * @author Giorgio
+ */
+public class FrameExporter {
+
+    /**
+     * The Format enum lists the supported output formats.
+     */
+    public enum Format {
+        /** A numbered PNG file per frame. */
+        PNG,
+        /** All frames as one stream of raw bgr0 pixels. */
+        RAW
+    }
+
+    private final OffscreenRenderer renderer;
+    private final Mesh mesh;
+    private final double distance;
+    private final Matrix4 worldMatrix = new Matrix4();
+    private final double centerX, centerY, centerZ;
+
+    /**
+     * Constructs an exporter.
+     *
+     * @param mesh     The mesh to render.
+     * @param width    The width of the frames in pixels.
+     * @param height   The height of the frames in pixels.
+     * @param distance The distance of the mesh from the camera.
+     */
+    public FrameExporter(Mesh mesh, int width, int height, double distance) {
+        this.mesh = mesh;
+        this.distance = distance;
+        this.renderer = new OffscreenRenderer(width, height);
+
+        // Rotate around the center of the bounding box, so the model stays in the middle of the image
+        MeshData data = mesh.getData();
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        for (int i = 0; i < data.vertexCount; i++) {
+            minX = Math.min(minX, data.getX(i));
+            minY = Math.min(minY, data.getY(i));
+            minZ = Math.min(minZ, data.getZ(i));
+            maxX = Math.max(maxX, data.getX(i));
+            maxY = Math.max(maxY, data.getY(i));
+            maxZ = Math.max(maxZ, data.getZ(i));
+        }
+        centerX = data.vertexCount > 0 ? (minX + maxX) / 2 : 0;
+        centerY = data.vertexCount > 0 ? (minY + maxY) / 2 : 0;
+        centerZ = data.vertexCount > 0 ? (minZ + maxZ) / 2 : 0;
+    }
+
+    /**
+     * Renders one frame of the turntable, a full rotation around the vertical axis over all frames.
+     *
+     * @param frame  The index of the frame.
+     * @param frames The number of frames of the rotation.
+     * @return The pixels of the frame, valid until the next call.
+     */
+    public int[] renderFrame(int frame, int frames) {
+        // The models are y-up while the screen is y-down, so turn them upright first
+        worldMatrix.setTranslation(-centerX, -centerY, -centerZ)
+                .rotateZ(Math.PI)
+                .rotateY(2 * Math.PI * frame / frames)
+                .translate(0, 0, distance);
+        renderer.render(mesh, worldMatrix);
+        return renderer.getPixels();
+    }
+
+    /**
+     * Renders the frames as a numbered PNG sequence, encoding them in parallel.
+     *
+     * @param directory The directory to write "frame-00000.png" and so on into.
+     * @param frames    The number of frames.
+     * @throws IOException If a file cannot be written.
+     */
+    public void exportPng(Path directory, int frames) throws IOException {
+        Files.createDirectories(directory);
+        int encoders = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(encoders, runnable -> {
+            Thread thread = new Thread(runnable, "png-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // A fixed pool of images bounds the memory and makes rendering wait for slow encoders
+        BlockingQueue<BufferedImage> freeImages = new ArrayBlockingQueue<>(encoders * 2);
+        for (int i = 0; i < encoders * 2; i++) {
+            freeImages.add(new BufferedImage(renderer.getWidth(), renderer.getHeight(), BufferedImage.TYPE_INT_RGB));
+        }
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            for (int frame = 0; frame < frames; frame++) {
+                int[] pixels = renderFrame(frame, frames);
+                BufferedImage image = freeImages.take();
+                System.arraycopy(pixels, 0, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+
+                File file = directory.resolve(String.format("frame-%05d.png", frame)).toFile();
+                pending.add(executor.submit(() -> {
+                    try {
+                        ImageIO.write(image, "png", file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        freeImages.add(image);
+                    }
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not write frame: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Renders the frames into one raw stream of bgr0 pixels.
+     *
+     * @param channel The channel to write to.
+     * @param frames  The number of frames.
+     * @throws IOException If writing fails.
+     */
+    public void exportRaw(WritableByteChannel channel, int frames) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(renderer.getWidth() * renderer.getHeight() * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int frame = 0; frame < frames; frame++) {
+            int[] pixels = renderFrame(frame, frames);
+            buffer.clear();
+            buffer.asIntBuffer().put(pixels);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Stops the rendering threads.
+     */
+    public void shutdown() {
+        renderer.shutdown();
+    }
+
+    /**
+     * Parses the command line and exports the turntable.
+     *
+     * @param args The options described in the class documentation.
+     * @throws IOException If the model cannot be loaded or the output cannot be written.
+     */
+    public static void main(String... args) throws IOException {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        String model = "data/UtahTeapot.obj";
+        int width = 1280, height = 720, frames = 360;
+        double distance = 8;
+        Format format = Format.PNG;
+        String output = null;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--model" -> model = value;
+                case "--width" -> width = Integer.parseInt(value);
+                case "--height" -> height = Integer.parseInt(value);
+                case "--frames" -> frames = Integer.parseInt(value);
+                case "--distance" -> distance = Double.parseDouble(value);
+                case "--format" -> format = Format.valueOf(value.toUpperCase());
+                case "--output" -> output = value;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (output == null) {
+            output = format == Format.PNG ? "frames" : "frames.raw";
+        }
+
+        FrameExporter exporter = new FrameExporter(new Mesh(model), width, height, distance);
+        long start = System.nanoTime();
+        try {
+            if (format == Format.PNG) {
+                exporter.exportPng(Path.of(output), frames);
+            } else if (output.equals("-")) {
+                WritableByteChannel standardOutput = Channels.newChannel(System.out);
+                exporter.exportRaw(standardOutput, frames);
+            } else {
+                try (FileChannel channel = FileChannel.open(Path.of(output), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    exporter.exportRaw(channel, frames);
+                }
+            }
+        } finally {
+            exporter.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // Report on stderr so a raw stream on stdout stays clean
+        System.err.printf("Exported %d frames of %dx%d in %.2f s (%.1f frames/s)%n",
+                frames, width, height, seconds, frames / seconds);
+    }
+}
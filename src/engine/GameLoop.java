@@ -0,0 +1,188 @@
+package engine;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+/**
+ * The GameLoop class drives the engine with a fixed simulation timestep and paced, interpolated rendering.
+ * <p>
+ * The simulation always advances in steps of the same length, independent of the frame rate, and the renderer
+ * receives how far the current time lies between the last two steps, so motion stays smooth at any frame rate.
+ * Frames are paced by parking the thread until shortly before the next frame is due and spinning only for the
+ * last fraction of a millisecond, so a capped loop uses little more CPU than the actual work. A target frame
+ * rate of 0 renders uncapped.
+ * <p>
+ * Frame times are collected every second into frames per second, jitter (standard deviation of the frame
+ * time), the longest frame and the fraction of time spent working instead of waiting.
+ * @author Giorgio
+ */
+public class GameLoop {
+    /** Parking is accurate to about this many nanoseconds, the rest of a wait is spun. */
+    private static final long SPIN_NANOS = 250_000;
+    /** At most this many simulation steps run per frame, so a slow frame cannot snowball. */
+    private static final int MAX_UPDATES_PER_FRAME = 5;
+
+    private final long updateNanos;
+    private final long frameNanos;
+    private final Runnable update;
+    private final DoubleConsumer render;
+    private volatile boolean running;
+    private Consumer<GameLoop> statisticsListener = loop -> { };
+
+    // statistics of the last full second
+    private volatile double framesPerSecond;
+    private volatile double jitterMillis;
+    private volatile double maxFrameMillis;
+    private volatile double busyFraction;
+
+    /**
+     * Constructs a game loop.
+     *
+     * @param updatesPerSecond      The number of simulation steps per second.
+     * @param targetFramesPerSecond The frame rate cap, or 0 to render as fast as possible.
+     * @param update                Advances the simulation by one step.
+     * @param render                Renders a frame, receiving the interpolation factor between the previous
+     *                              and the current simulation step, from 0 to 1.
+     */
+    public GameLoop(double updatesPerSecond, double targetFramesPerSecond, Runnable update, DoubleConsumer render) {
+        if (updatesPerSecond <= 0 || targetFramesPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid rates: " + updatesPerSecond + " updates, " + targetFramesPerSecond + " frames");
+        }
+        this.updateNanos = (long) (1e9 / updatesPerSecond);
+        this.frameNanos = targetFramesPerSecond == 0 ? 0 : (long) (1e9 / targetFramesPerSecond);
+        this.update = update;
+        this.render = render;
+    }
+
+    /**
+     * Runs the loop on the calling thread until {@link #stop()} is called.
+     */
+    public void run() {
+        running = true;
+        long previousTime = System.nanoTime();
+        long accumulator = 0;
+        long nextFrameTime = previousTime;
+
+        long statisticsStart = previousTime;
+        int frames = 0;
+        double frameTimeSum = 0, frameTimeSquareSum = 0, frameTimeMax = 0;
+        long busyNanos = 0;
+
+        while (running) {
+            long frameStart = System.nanoTime();
+            long elapsed = frameStart - previousTime;
+            previousTime = frameStart;
+
+            // Fixed-timestep simulation, catching up by at most a few steps
+            accumulator += elapsed;
+            int updates = 0;
+            while (accumulator >= updateNanos && updates < MAX_UPDATES_PER_FRAME) {
+                update.run();
+                accumulator -= updateNanos;
+                updates++;
+            }
+            if (updates == MAX_UPDATES_PER_FRAME) {
+                accumulator = Math.min(accumulator, updateNanos);
+            }
+            render.accept((double) accumulator / updateNanos);
+            long workEnd = System.nanoTime();
+
+            // Statistics of the interval since the previous frame
+            double frameMillis = elapsed / 1e6;
+            frames++;
+            frameTimeSum += frameMillis;
+            frameTimeSquareSum += frameMillis * frameMillis;
+            frameTimeMax = Math.max(frameTimeMax, frameMillis);
+            busyNanos += workEnd - frameStart;
+            if (workEnd - statisticsStart >= 1_000_000_000L) {
+                double mean = frameTimeSum / frames;
+                framesPerSecond = frames / ((workEnd - statisticsStart) / 1e9);
+                jitterMillis = Math.sqrt(Math.max(0, frameTimeSquareSum / frames - mean * mean));
+                maxFrameMillis = frameTimeMax;
+                busyFraction = (double) busyNanos / (workEnd - statisticsStart);
+                statisticsStart = workEnd;
+                frames = 0;
+                frameTimeSum = frameTimeSquareSum = frameTimeMax = 0;
+                busyNanos = 0;
+                statisticsListener.accept(this);
+            }
+
+            if (frameNanos > 0) {
+                nextFrameTime += frameNanos;
+                // After a long stall start a new schedule instead of rushing to catch up
+                if (workEnd - nextFrameTime > frameNanos) {
+                    nextFrameTime = workEnd;
+                }
+                waitUntil(nextFrameTime);
+            }
+        }
+    }
+
+    /**
+     * Sets a listener that is called on the loop thread whenever the statistics were updated, once per second.
+     *
+     * @param statisticsListener The listener receiving this loop.
+     */
+    public void setStatisticsListener(Consumer<GameLoop> statisticsListener) {
+        this.statisticsListener = statisticsListener;
+    }
+
+    /**
+     * Makes {@link #run()} return after the current frame.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Parks the thread until shortly before a point in time and spins for the remainder.
+     *
+     * @param deadline The value of System.nanoTime() to wait for.
+     */
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Returns the frame rate of the last second.
+     *
+     * @return The frames per second.
+     */
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /**
+     * Returns the standard deviation of the frame time over the last second.
+     *
+     * @return The jitter in milliseconds.
+     */
+    public double getJitterMillis() {
+        return jitterMillis;
+    }
+
+    /**
+     * Returns the longest frame time of the last second.
+     *
+     * @return The longest frame time in milliseconds.
+     */
+    public double getMaxFrameMillis() {
+        return maxFrameMillis;
+    }
+
+    /**
+     * Returns the fraction of the last second spent updating and rendering rather than waiting.
+     *
+     * @return The busy fraction, from 0 to 1.
+     */
+    public double getBusyFraction() {
+        return busyFraction;
+    }
+}
@@ -1,14 +1,22 @@
 package engine;
 
+import metrics.Metric;
+
+import javax.swing.*;
+
 /**
  * The Main class serves as the entry point for the 3D engine application.
- * It initializes the engine, sets the target frames per second, and manages the game loop.
+ * It initializes the engine and runs its simulation in a fixed-timestep game loop; frames are rendered by the
+ * engine's render pipeline on threads of their own.
  * @author Giorgio
  */
 public class Main {
+    /** The number of simulation steps per second. */
+    private static final double UPDATES_PER_SECOND = 60;
 
     /**
      * The main method is the entry point of the application.
+     * The frame rate cap is read from the system property "engine.fps" (default 60, 0 for uncapped).
      *
      * @param args Command-line arguments (not used in this application).
      */
@@ -17,34 +25,21 @@ public class Main {
         Engine engine = new Engine();
 
         // Set target frames per second
-        int targetFPS = 60;
-        long targetFrameTime = 1000000000 / targetFPS; // 1 second in nanoseconds divided by FPS
-
-        long lastFrameTime = System.nanoTime();
-        long fpsUpdateTime = System.nanoTime();
-        int frameCount = 0;
+        double targetFPS = Double.parseDouble(System.getProperty("engine.fps", "60"));
+        GameLoop loop = new GameLoop(UPDATES_PER_SECOND, targetFPS, engine::update, engine::publish);
+
+        // Show the frame statistics once per second; the loop's statistics describe the simulation thread
+        loop.setStatisticsListener(statistics -> {
+            double presentedFrameNanos = engine.getMetrics().getStatistics(Metric.FRAME).getMean();
+            String title = String.format("ThreeDGraphicsEngineV1 - %.1f FPS - jitter %.2f ms - max %.2f ms - busy %.0f%%"
+                            + " - presented %.1f FPS - input latency %.1f ms - allocated per frame: %d B",
+                    statistics.getFramesPerSecond(), statistics.getJitterMillis(), statistics.getMaxFrameMillis(),
+                    statistics.getBusyFraction() * 100, presentedFrameNanos > 0 ? 1e9 / presentedFrameNanos : 0,
+                    engine.getKeyboardInput().getMeanLatencyNanos() / 1e6, engine.getLastFrameAllocatedBytes());
+            SwingUtilities.invokeLater(() -> engine.getFrame().setTitle(title));
+        });
 
         // Game loop
-        while (true) {
-            long currentTime = System.nanoTime();
-            long elapsedNanos = currentTime - lastFrameTime;
-
-            // Check if it's time to update and repaint the engine
-            if (elapsedNanos >= targetFrameTime) {
-                engine.update();
-                engine.repaint();
-
-                lastFrameTime = currentTime;
-
-                // Calculate FPS
-                frameCount++;
-                if (currentTime - fpsUpdateTime >= 1000000000) { // Update every second
-                    double fps = frameCount / ((currentTime - fpsUpdateTime) / 1e9);
-                    engine.getFrame().setTitle("ThreeDGraphicsEngineV1 - " + fps);
-                    frameCount = 0;
-                    fpsUpdateTime = currentTime;
-                }
-            }
-        }
+        loop.run();
     }
 }
@@ -0,0 +1,502 @@
+package engine;
+
+import geometry.Frustum;
+import geometry.Lighting;
+import geometry.MathUtils;
+import geometry.Matrix4;
+import geometry.Mesh;
+import geometry.Vector3D;
+import render.DirtyRegion;
+import render.FrameBuffer;
+import render.ScreenBounds;
+import render.TileRenderer;
+import render.TriangleBuffer;
+import scene.InstanceBatch;
+import scene.Scene;
+import scene.SceneObject;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * The OffscreenRenderer class renders meshes or whole scenes into an offscreen frame buffer of an explicit size, with its own
+ * camera and projection. It does not use any window or static window state, so it works under
+ * {@code java.awt.headless=true}. After warming up, rendering a frame does not allocate.
+ * @author Giorgio
+ */
+public class OffscreenRenderer {
+    private FrameBuffer frameBuffer;
+    private final TriangleBuffer triangles = new TriangleBuffer();
+    private final TileRenderer tileRenderer;
+    private final Matrix4 projectionMatrix = new Matrix4();
+    private final Matrix4 instanceMatrix = new Matrix4();
+    private final Frustum frustum = new Frustum();
+    private final Vector3D camera = new Vector3D(0, 0, 0);
+    private Lighting lighting = Lighting.DEFAULT;
+    private double fieldOfView = MathUtils.getFieldOfView();
+    private int clearColor = 0x000000;
+    /** Counts changes of the size, the projection and the clear color, which change the whole image. */
+    private int viewVersion;
+
+    // the state of the last frame projected with change tracking
+    private boolean tracking;
+    private int trackedViewVersion;
+    private int trackedStructureVersion;
+    private double trackedCameraX;
+    private double trackedCameraY;
+    private double trackedCameraZ;
+    private Lighting trackedLighting;
+
+    // statistics of the last frame
+    private long lastTransformNanos;
+    private long lastCullNanos;
+    private int lastTrianglesSubmitted;
+    private int lastTrianglesProcessed;
+    private int lastObjectsDrawn;
+
+    /**
+     * Constructs a renderer using all processors for rasterization.
+     *
+     * @param width  The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     */
+    public OffscreenRenderer(int width, int height) {
+        this(width, height, new TileRenderer());
+    }
+
+    /**
+     * Constructs a renderer with a specific tile renderer.
+     *
+     * @param width        The width of the image in pixels.
+     * @param height       The height of the image in pixels.
+     * @param tileRenderer The tile renderer used for rasterization.
+     */
+    public OffscreenRenderer(int width, int height, TileRenderer tileRenderer) {
+        this.tileRenderer = tileRenderer;
+        resize(width, height);
+    }
+
+    /**
+     * Changes the size of the image. The frame buffer is only recreated if the size actually changes.
+     *
+     * @param width  The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     */
+    public void resize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+        }
+        if (frameBuffer == null || frameBuffer.getWidth() != width || frameBuffer.getHeight() != height) {
+            frameBuffer = new FrameBuffer(width, height);
+            updateProjection();
+        }
+    }
+
+    /**
+     * Moves the camera.
+     *
+     * @param x The x-coordinate of the camera.
+     * @param y The y-coordinate of the camera.
+     * @param z The z-coordinate of the camera.
+     */
+    public void setCamera(double x, double y, double z) {
+        camera.set(x, y, z);
+    }
+
+    /**
+     * Sets the lights the meshes are lit by.
+     *
+     * @param lighting The lighting, {@link Lighting#DEFAULT} unless changed.
+     */
+    public void setLighting(Lighting lighting) {
+        this.lighting = lighting;
+    }
+
+    /**
+     * Returns the lights the meshes are lit by.
+     *
+     * @return The lighting.
+     */
+    public Lighting getLighting() {
+        return lighting;
+    }
+
+    /**
+     * Sets the vertical field of view.
+     *
+     * @param degrees The field of view in degrees.
+     */
+    public void setFieldOfView(double degrees) {
+        fieldOfView = degrees;
+        updateProjection();
+    }
+
+    /**
+     * Sets the color the image is cleared with before every frame.
+     *
+     * @param clearColor The background color as 0xRRGGBB.
+     */
+    public void setClearColor(int clearColor) {
+        this.clearColor = clearColor;
+        viewVersion++;
+    }
+
+    /**
+     * Renders a mesh into the frame buffer.
+     *
+     * @param mesh        The mesh to render.
+     * @param worldMatrix The world transformation of the mesh.
+     * @return The frame buffer holding the finished frame, valid until the next call.
+     */
+    public FrameBuffer render(Mesh mesh, Matrix4 worldMatrix) {
+        long start = System.nanoTime();
+        triangles.clear();
+        mesh.refresh();
+        mesh.project(triangles, worldMatrix, projectionMatrix, camera, frameBuffer.getWidth(), frameBuffer.getHeight(),
+                Mesh.DEFAULT_COLOR, lighting);
+        long projectNanos = System.nanoTime() - start;
+        // Everything in project() after the vertex pass is culling and collecting the visible triangles
+        lastTransformNanos = mesh.getTransformStage().getLastVertexPassNanos();
+        lastCullNanos = projectNanos - lastTransformNanos;
+        lastTrianglesSubmitted = mesh.getData().triangleCount;
+        lastTrianglesProcessed = mesh.getLastTrianglesProcessed();
+        lastObjectsDrawn = lastTrianglesProcessed > 0 ? 1 : 0;
+
+        tileRenderer.render(triangles, frameBuffer, clearColor);
+        return frameBuffer;
+    }
+
+    /**
+     * Renders all objects and instances of a scene into the frame buffer.
+     * The scene is updated first, then culled against the view frustum, and only the remaining objects are projected.
+     *
+     * @param scene The scene to render.
+     * @return The frame buffer holding the finished frame, valid until the next call.
+     */
+    public FrameBuffer render(Scene scene) {
+        project(scene, triangles);
+        tileRenderer.render(triangles, frameBuffer, clearColor);
+        return frameBuffer;
+    }
+
+    /**
+     * Runs the geometry stages of a frame without rasterizing it: the scene is updated, culled and projected,
+     * and the visible triangles replace the content of a triangle buffer. The statistics of the geometry stages
+     * are updated, {@link #getLastTrianglesDrawn()} is not.
+     * <p>
+     * Together with {@link #rasterize(TriangleBuffer, FrameBuffer)} this lets a pipeline project the next frame
+     * while the previous one is rasterized: the two may run on different threads at the same time, as long as
+     * each frame has its own triangle and frame buffer.
+     *
+     * @param scene     The scene to render, owned by the calling thread.
+     * @param triangles The buffer receiving the screen-space triangles.
+     */
+    public void project(Scene scene, TriangleBuffer triangles) {
+        long start = System.nanoTime();
+        scene.update();
+        projectScene(scene, triangles, null, start);
+    }
+
+    /**
+     * Runs the geometry stages of a frame only if the scene may look different than at the previous call, and
+     * finds the part of the screen that changed: everything if the camera, the lighting, the projection or the
+     * set of objects changed, and otherwise where the changed objects and batches were drawn before and are
+     * drawn now, from the screen bounds they keep.
+     * <p>
+     * Together with {@link #rasterize(TriangleBuffer, FrameBuffer, DirtyRegion)} a static scene costs next to
+     * nothing and a partly static one only redraws the tiles that changed. The scene must only be rendered through
+     * this method from then on, since its objects remember their state for the next call.
+     *
+     * @param scene     The scene to render, owned by the calling thread.
+     * @param triangles The buffer receiving the screen-space triangles.
+     * @param outdated  True to project even if nothing changed, e.g. because the triangles are for a frame buffer
+     *                  that has not caught up with earlier changes yet.
+     * @param changes   Receives the part of the screen that changed since the previous call; it is cleared first.
+     * @return True if the scene was projected, false if nothing changed and the triangles were left as they are.
+     */
+    public boolean projectChanges(Scene scene, TriangleBuffer triangles, boolean outdated, DirtyRegion changes) {
+        long start = System.nanoTime();
+        changes.clear();
+        scene.update();
+        boolean everything = !tracking || trackedViewVersion != viewVersion
+                || trackedStructureVersion != scene.getStructureVersion() || trackedLighting != lighting
+                || trackedCameraX != camera.x || trackedCameraY != camera.y || trackedCameraZ != camera.z;
+        if (everything) {
+            changes.addAll();
+            tracking = true;
+            trackedViewVersion = viewVersion;
+            trackedStructureVersion = scene.getStructureVersion();
+            trackedLighting = lighting;
+            trackedCameraX = camera.x;
+            trackedCameraY = camera.y;
+            trackedCameraZ = camera.z;
+        }
+
+        // Changed objects are redrawn where they were; their new bounds are added while projecting
+        boolean changed = everything;
+        List<SceneObject> objects = scene.getObjects();
+        for (int i = 0; i < objects.size(); i++) {
+            SceneObject object = objects.get(i);
+            if (object.commitChanges() || everything) {
+                changed = true;
+                changes.add(object.getScreenBounds());
+                object.getScreenBounds().setEmpty();
+            }
+        }
+        List<InstanceBatch> batches = scene.getBatches();
+        for (int b = 0; b < batches.size(); b++) {
+            InstanceBatch batch = batches.get(b);
+            if (batch.commitChanges() || everything) {
+                changed = true;
+                changes.add(batch.getScreenBounds());
+                batch.getScreenBounds().setEmpty();
+            }
+        }
+
+        if (!changed && !outdated) {
+            lastTransformNanos = 0;
+            lastCullNanos = System.nanoTime() - start;
+            lastTrianglesSubmitted = scene.getTriangleCount();
+            lastTrianglesProcessed = 0;
+            lastObjectsDrawn = 0;
+            return false;
+        }
+        projectScene(scene, triangles, changes, start);
+        return true;
+    }
+
+    /**
+     * Culls and projects an updated scene into a triangle buffer and updates the statistics of the geometry stages.
+     *
+     * @param scene     The scene, already updated.
+     * @param triangles The buffer receiving the screen-space triangles.
+     * @param changes   The region receiving the new bounds of changed objects, or null without change tracking.
+     * @param start     When the frame started, as a value of System.nanoTime().
+     */
+    private void projectScene(Scene scene, TriangleBuffer triangles, DirtyRegion changes, long start) {
+        triangles.clear();
+        // The projection does not move the camera, so the world-space frustum comes from the projection alone
+        int visible = scene.cull(frustum.set(projectionMatrix));
+        long transformNanos = 0;
+        int processed = 0;
+        for (int i = 0; i < visible; i++) {
+            SceneObject object = scene.getVisibleObject(i);
+            Mesh mesh = object.getMesh();
+            int from = triangles.size();
+            mesh.project(triangles, object.getWorldMatrix(), projectionMatrix, camera, frameBuffer.getWidth(), frameBuffer.getHeight(),
+                    Mesh.DEFAULT_COLOR, lighting);
+            if (changes != null) {
+                track(object.getScreenBounds(), triangles, from, changes);
+            }
+            if (mesh.getLastTrianglesProcessed() > 0) {
+                transformNanos += mesh.getTransformStage().getLastVertexPassNanos();
+                processed += mesh.getLastTrianglesProcessed();
+            }
+        }
+        // Instances share their mesh, only the world matrix and the color change between them
+        int instancesDrawn = 0;
+        List<InstanceBatch> batches = scene.getBatches();
+        for (int b = 0; b < batches.size(); b++) {
+            InstanceBatch batch = batches.get(b);
+            Mesh mesh = batch.getMesh();
+            int from = triangles.size();
+            int visibleInstances = batch.cull(frustum);
+            for (int i = 0; i < visibleInstances; i++) {
+                int instance = batch.getVisibleInstance(i);
+                mesh.project(triangles, batch.getMatrix(instance, instanceMatrix), projectionMatrix, camera,
+                        frameBuffer.getWidth(), frameBuffer.getHeight(), batch.getColor(instance), lighting);
+                if (mesh.getLastTrianglesProcessed() > 0) {
+                    transformNanos += mesh.getTransformStage().getLastVertexPassNanos();
+                    processed += mesh.getLastTrianglesProcessed();
+                }
+            }
+            if (changes != null) {
+                track(batch.getScreenBounds(), triangles, from, changes);
+            }
+            instancesDrawn += visibleInstances;
+        }
+        lastTransformNanos = transformNanos;
+        lastCullNanos = System.nanoTime() - start - transformNanos;
+        lastTrianglesSubmitted = scene.getTriangleCount();
+        lastTrianglesProcessed = processed;
+        lastObjectsDrawn = visible + instancesDrawn;
+    }
+
+    /**
+     * Updates the screen bounds of an object or batch from the triangles it just added to the buffer.
+     * The bounds of changed objects were emptied before projecting, so empty bounds mark the ones whose new
+     * rectangle has to be redrawn as well.
+     *
+     * @param bounds    The screen bounds of the object or batch.
+     * @param triangles The triangle buffer.
+     * @param from      The size of the buffer before the object was projected.
+     * @param changes   The region receiving the new bounds of changed objects.
+     */
+    private static void track(ScreenBounds bounds, TriangleBuffer triangles, int from, DirtyRegion changes) {
+        boolean changed = bounds.isEmpty();
+        bounds.setToTriangles(triangles, from, triangles.size());
+        if (changed) {
+            changes.add(bounds);
+        }
+    }
+
+    /**
+     * Clears a frame buffer and rasterizes the triangles of a frame into it. The buffer must have the size of
+     * this renderer, which the triangles were projected for.
+     *
+     * @param triangles   The screen-space triangles, e.g. from {@link #project(Scene, TriangleBuffer)}.
+     * @param frameBuffer The frame buffer receiving the frame.
+     */
+    public void rasterize(TriangleBuffer triangles, FrameBuffer frameBuffer) {
+        rasterize(triangles, frameBuffer, null);
+    }
+
+    /**
+     * Redraws a region of a frame buffer, which keeps its other pixels. The buffer must have the size of this
+     * renderer, which the triangles were projected for.
+     *
+     * @param triangles   The screen-space triangles of the whole frame, e.g. from
+     *                    {@link #projectChanges(Scene, TriangleBuffer, boolean, DirtyRegion)}.
+     * @param frameBuffer The frame buffer, holding an earlier frame outside of the region.
+     * @param region      The part of the frame to redraw, or null to draw all of it.
+     */
+    public void rasterize(TriangleBuffer triangles, FrameBuffer frameBuffer, DirtyRegion region) {
+        if (frameBuffer.getWidth() != getWidth() || frameBuffer.getHeight() != getHeight()) {
+            throw new IllegalArgumentException("The frame buffer does not have the size of the renderer");
+        }
+        tileRenderer.render(triangles, frameBuffer, clearColor, region);
+    }
+
+    /**
+     * Returns how long transforming and projecting the vertices took in the last frame.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getLastTransformNanos() {
+        return lastTransformNanos;
+    }
+
+    /**
+     * Returns how long computing normals, culling and collecting the visible triangles took in the last frame.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getLastCullNanos() {
+        return lastCullNanos;
+    }
+
+    /**
+     * Returns how long binning the triangles into tiles took in the last frame.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getLastBinNanos() {
+        return tileRenderer.getLastBinNanos();
+    }
+
+    /**
+     * Returns how long rasterizing took in the last frame.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getLastRasterNanos() {
+        return tileRenderer.getLastRasterNanos();
+    }
+
+    /**
+     * Returns how many screen tiles the last rasterization cleared and rasterized.
+     *
+     * @return The number of tiles.
+     */
+    public int getLastTilesRendered() {
+        return tileRenderer.getLastTilesRendered();
+    }
+
+    /**
+     * Returns the number of triangles of the mesh or scene rendered last, including culled ones.
+     *
+     * @return The submitted triangle count.
+     */
+    public int getLastTrianglesSubmitted() {
+        return lastTrianglesSubmitted;
+    }
+
+    /**
+     * Returns the number of triangles in the objects and clusters that survived culling in the last frame,
+     * i.e. the triangles that got per-triangle work.
+     *
+     * @return The processed triangle count.
+     */
+    public int getLastTrianglesProcessed() {
+        return lastTrianglesProcessed;
+    }
+
+    /**
+     * Returns the number of objects and instances that survived frustum culling in the last frame.
+     *
+     * @return The object count.
+     */
+    public int getLastObjectsDrawn() {
+        return lastObjectsDrawn;
+    }
+
+    /**
+     * Returns the number of triangles that survived culling in the last frame and were rasterized.
+     *
+     * @return The drawn triangle count.
+     */
+    public int getLastTrianglesDrawn() {
+        return triangles.size();
+    }
+
+    /**
+     * Returns the image backed by the frame buffer.
+     *
+     * @return The image of the last rendered frame.
+     */
+    public BufferedImage getImage() {
+        return frameBuffer.getImage();
+    }
+
+    /**
+     * Returns the pixels of the last rendered frame as 0xRRGGBB values, row by row.
+     *
+     * @return The pixel array backing the image.
+     */
+    public int[] getPixels() {
+        return frameBuffer.getPixels();
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return frameBuffer.getWidth();
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return frameBuffer.getHeight();
+    }
+
+    /**
+     * Stops the rasterization threads.
+     */
+    public void shutdown() {
+        tileRenderer.shutdown();
+    }
+
+    /**
+     * Rebuilds the projection matrix for the current size and field of view.
+     */
+    private void updateProjection() {
+        viewVersion++;
+        MathUtils.setProjectionMatrix(projectionMatrix, (double) frameBuffer.getHeight() / frameBuffer.getWidth(), fieldOfView);
+    }
+}
@@ -0,0 +1,203 @@
+package engine;
+
+import render.DirtyRegion;
+import scene.Scene;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * The RenderPipeline class renders frames on threads of its own, decoupled from the simulation.
+ * <p>
+ * The simulation publishes {@link SceneSnapshot}s through a {@link SnapshotBuffer}. The render thread takes the
+ * latest snapshot, copies it into the scene, which only the render thread touches, and projects the scene into
+ * the triangle buffer of a {@link RenderedFrame}. The present thread rasterizes the frame and hands it to the
+ * presenter, e.g. to show it in a window. With {@value #FRAMES_IN_FLIGHT} frames in flight, frame N+1 is
+ * transformed while frame N is rasterized and presented, so the stages overlap on machines with several cores.
+ * <p>
+ * Every frame shows exactly one snapshot, so frames are never torn, and a pipeline slower than the simulation
+ * skips to the latest snapshot instead of falling behind.
+ * <p>
+ * Rendering is incremental: every frame buffer keeps its pixels and only redraws the screen regions that changed
+ * since it was drawn last, which include the changes drawn into the other frames in the meantime. A snapshot
+ * identical to the previous one is neither projected nor rasterized, so a static scene costs next to nothing.
+ * The frame still reaches the presenter, which may skip it, see {@link RenderedFrame#isRedrawn()}.
+ * @author Giorgio
+ */
+public class RenderPipeline implements AutoCloseable {
+    /** The number of frames in flight: one being projected while the other is rasterized and presented. */
+    public static final int FRAMES_IN_FLIGHT = 2;
+
+    private final Scene scene;
+    private final OffscreenRenderer renderer;
+    private final SnapshotBuffer snapshots;
+    private final Consumer<RenderedFrame> presenter;
+    private final BlockingQueue<RenderedFrame> freeFrames = new ArrayBlockingQueue<>(FRAMES_IN_FLIGHT);
+    private final BlockingQueue<RenderedFrame> projectedFrames = new ArrayBlockingQueue<>(FRAMES_IN_FLIGHT);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /** For every frame, the changes its frame buffer has not caught up with, owned by the render thread. */
+    private final DirtyRegion[] outdatedRegions = new DirtyRegion[FRAMES_IN_FLIGHT];
+    private final DirtyRegion changes = new DirtyRegion();
+    private final Thread renderThread;
+    private final Thread presentThread;
+    private volatile boolean running;
+
+    /**
+     * Constructs a pipeline. It does not render before {@link #start()}.
+     *
+     * @param scene     The scene to render. From the start on it must only be changed on the render thread,
+     *                  see {@link #runOnRenderThread(Runnable)}.
+     * @param renderer  The renderer, whose size and camera the frames get.
+     * @param snapshots The buffer the simulation publishes its snapshots to.
+     * @param presenter Receives every finished frame on the present thread; the frame is reused afterwards.
+     */
+    public RenderPipeline(Scene scene, OffscreenRenderer renderer, SnapshotBuffer snapshots, Consumer<RenderedFrame> presenter) {
+        this.scene = scene;
+        this.renderer = renderer;
+        this.snapshots = snapshots;
+        this.presenter = presenter;
+        for (int i = 0; i < FRAMES_IN_FLIGHT; i++) {
+            freeFrames.add(new RenderedFrame(i, renderer.getWidth(), renderer.getHeight()));
+            outdatedRegions[i] = new DirtyRegion();
+            outdatedRegions[i].addAll();
+        }
+        renderThread = new Thread(this::renderLoop, "render");
+        presentThread = new Thread(this::presentLoop, "present");
+        renderThread.setDaemon(true);
+        presentThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the render and present threads.
+     */
+    public void start() {
+        running = true;
+        renderThread.start();
+        presentThread.start();
+    }
+
+    /**
+     * Runs a task on the render thread before the next frame is projected, e.g. to add objects to the scene.
+     *
+     * @param task The task.
+     */
+    public void runOnRenderThread(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * Stops both threads and waits for them to finish their current frame.
+     */
+    @Override
+    public void close() {
+        running = false;
+        renderThread.interrupt();
+        presentThread.interrupt();
+        try {
+            renderThread.join(1000);
+            presentThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Projects the latest snapshot into a free frame, over and over.
+     * A free frame is taken before the snapshot, so the snapshot is as recent as possible.
+     */
+    private void renderLoop() {
+        try {
+            while (running) {
+                RenderedFrame frame = freeFrames.take();
+                SceneSnapshot snapshot = snapshots.take();
+                if (frame.damaged) {
+                    // The frame buffer may be half drawn, so it is redrawn completely
+                    frame.damaged = false;
+                    outdatedRegions[frame.index].addAll();
+                }
+                try {
+                    for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                        task.run();
+                    }
+                    snapshot.applyTo(scene);
+                    renderer.setCamera(snapshot.getCameraX(), snapshot.getCameraY(), snapshot.getCameraZ());
+                    renderer.setLighting(snapshot.getLighting());
+
+                    long allocatedBefore = AllocationCounter.getAllocatedBytes();
+                    DirtyRegion outdated = outdatedRegions[frame.index];
+                    boolean projected = renderer.projectChanges(scene, frame.getTriangles(), !outdated.isEmpty(), changes);
+                    long allocatedAfter = AllocationCounter.getAllocatedBytes();
+
+                    // Every frame buffer has to catch up with the changes, this one now and the others on their turn
+                    for (DirtyRegion region : outdatedRegions) {
+                        region.add(changes);
+                    }
+                    frame.redrawRegion.clear();
+                    frame.redrawRegion.add(outdated);
+                    outdated.clear();
+                    if (!projected) {
+                        frame.getTriangles().clear();
+                    }
+
+                    frame.sequence = snapshot.getSequence();
+                    frame.publishNanos = snapshot.getPublishNanos();
+                    frame.updateNanos = snapshot.getUpdateNanos();
+                    frame.transformNanos = renderer.getLastTransformNanos();
+                    frame.cullNanos = renderer.getLastCullNanos();
+                    frame.trianglesSubmitted = renderer.getLastTrianglesSubmitted();
+                    frame.allocatedBytes = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+                } catch (RuntimeException e) {
+                    // Drop the frame, the next snapshot may render fine. Changes may have been committed
+                    // without being drawn, so every frame is redrawn completely.
+                    e.printStackTrace();
+                    for (DirtyRegion region : outdatedRegions) {
+                        region.addAll();
+                    }
+                    freeFrames.put(frame);
+                    continue;
+                }
+                projectedFrames.put(frame);
+            }
+        } catch (InterruptedException e) {
+            // close() was called
+        }
+    }
+
+    /**
+     * Rasterizes the projected frames and hands them to the presenter, in the order they were projected.
+     */
+    private void presentLoop() {
+        try {
+            while (running) {
+                RenderedFrame frame = projectedFrames.take();
+                try {
+                    if (frame.isRedrawn()) {
+                        long allocatedBefore = AllocationCounter.getAllocatedBytes();
+                        renderer.rasterize(frame.getTriangles(), frame.getFrameBuffer(), frame.redrawRegion);
+                        long allocatedAfter = AllocationCounter.getAllocatedBytes();
+                        if (frame.allocatedBytes >= 0) {
+                            frame.allocatedBytes += allocatedAfter - allocatedBefore;
+                        }
+                        frame.binNanos = renderer.getLastBinNanos();
+                        frame.rasterNanos = renderer.getLastRasterNanos();
+                        frame.tilesRendered = renderer.getLastTilesRendered();
+                    } else {
+                        frame.binNanos = 0;
+                        frame.rasterNanos = 0;
+                        frame.tilesRendered = 0;
+                    }
+                    presenter.accept(frame);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    frame.damaged = true;
+                }
+                freeFrames.put(frame);
+            }
+        } catch (InterruptedException e) {
+            // close() was called
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package engine;
+
+import render.DirtyRegion;
+import render.FrameBuffer;
+import render.TriangleBuffer;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The RenderedFrame class carries one frame through the stages of a {@link RenderPipeline}: the triangles the
+ * render thread projected, the frame buffer they are rasterized into and the statistics of every stage, so the
+ * statistics of a frame stay together while the next frame is already being projected.
+ * @author Giorgio
+ */
+public final class RenderedFrame {
+    private final TriangleBuffer triangles = new TriangleBuffer();
+    private final FrameBuffer frameBuffer;
+    /** The position of the frame in its pipeline, which keeps the changes each frame buffer has yet to catch up with. */
+    final int index;
+    /** The part of the frame buffer to redraw; the rest still shows the same scene from an earlier frame. */
+    final DirtyRegion redrawRegion = new DirtyRegion();
+    /** Set by the present thread if rasterizing or presenting failed, so the frame buffer may be half drawn. */
+    volatile boolean damaged;
+
+    // statistics, written by the stage that produced them
+    long sequence;
+    long publishNanos;
+    long updateNanos;
+    long transformNanos;
+    long cullNanos;
+    long binNanos;
+    long rasterNanos;
+    int trianglesSubmitted;
+    int tilesRendered;
+    long allocatedBytes;
+
+    /**
+     * Constructs a frame with its own buffers.
+     *
+     * @param index  The position of the frame in its pipeline.
+     * @param width  The width of the frame in pixels.
+     * @param height The height of the frame in pixels.
+     */
+    RenderedFrame(int index, int width, int height) {
+        this.index = index;
+        frameBuffer = new FrameBuffer(width, height);
+    }
+
+    /**
+     * Returns the screen-space triangles of the frame.
+     *
+     * @return The triangle buffer.
+     */
+    TriangleBuffer getTriangles() {
+        return triangles;
+    }
+
+    /**
+     * Returns the frame buffer the frame is rasterized into.
+     *
+     * @return The frame buffer.
+     */
+    FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    /**
+     * Returns the finished image. It is only valid while the frame is being presented.
+     *
+     * @return The image backed by the frame buffer.
+     */
+    public BufferedImage getImage() {
+        return frameBuffer.getImage();
+    }
+
+    /**
+     * Returns the number of the snapshot the frame shows.
+     *
+     * @return The snapshot sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns when the snapshot the frame shows was published.
+     *
+     * @return The value of System.nanoTime() at publication.
+     */
+    public long getPublishNanos() {
+        return publishNanos;
+    }
+
+    /**
+     * Returns how long the simulation steps leading to the snapshot took.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    /**
+     * Returns how long transforming and projecting the vertices took.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getTransformNanos() {
+        return transformNanos;
+    }
+
+    /**
+     * Returns how long culling and collecting the visible triangles took.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getCullNanos() {
+        return cullNanos;
+    }
+
+    /**
+     * Returns how long binning the triangles into tiles took.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getBinNanos() {
+        return binNanos;
+    }
+
+    /**
+     * Returns how long rasterizing took.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getRasterNanos() {
+        return rasterNanos;
+    }
+
+    /**
+     * Returns the number of triangles of the scene, including culled ones.
+     *
+     * @return The submitted triangle count.
+     */
+    public int getTrianglesSubmitted() {
+        return trianglesSubmitted;
+    }
+
+    /**
+     * Returns the number of triangles that survived culling and were rasterized.
+     *
+     * @return The drawn triangle count.
+     */
+    public int getTrianglesDrawn() {
+        return triangles.size();
+    }
+
+    /**
+     * Checks whether any pixels were redrawn. If not, the image is the same as the one presented before.
+     *
+     * @return True if the frame differs from the previous one.
+     */
+    public boolean isRedrawn() {
+        return !redrawRegion.isEmpty();
+    }
+
+    /**
+     * Returns how many screen tiles were cleared and rasterized.
+     *
+     * @return The tile count, 0 if nothing changed.
+     */
+    public int getTilesRendered() {
+        return tilesRendered;
+    }
+
+    /**
+     * Returns the heap bytes allocated while rendering the frame: by the render thread while projecting it and by the
+     * present thread while rasterizing it.
+     *
+     * @return The allocated bytes, or -1 if the JVM cannot count allocations.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+}
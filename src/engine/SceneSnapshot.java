@@ -0,0 +1,164 @@
+package engine;
+
+import geometry.Lighting;
+import geometry.Matrix4;
+import scene.Scene;
+import scene.SceneObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The SceneSnapshot class holds the state of the simulation that one frame is rendered from: the world matrix
+ * of every scene object, the camera position and the lighting. The simulation fills a snapshot and publishes it through a
+ * {@link SnapshotBuffer}; the render thread copies it into the scene it owns. Simulation and rendering thus never
+ * share a matrix, and a frame always shows one consistent simulation state.
+ * <p>
+ * Objects are identified by their index in {@link Scene#getObjects()}.
+ * @author Giorgio
+ */
+public final class SceneSnapshot {
+    private double[] matrices = new double[16 * Matrix4.SIZE];
+    private int objectCount;
+    private double cameraX;
+    private double cameraY;
+    private double cameraZ;
+    private Lighting lighting = Lighting.DEFAULT;
+    private long sequence;
+    private long publishNanos;
+    private long updateNanos;
+
+    /**
+     * Stores the world matrix of an object.
+     *
+     * @param object The index of the object in the scene.
+     * @param matrix The world matrix.
+     */
+    public void setMatrix(int object, Matrix4 matrix) {
+        if (object < 0) {
+            throw new IndexOutOfBoundsException("Negative object index: " + object);
+        }
+        if ((object + 1) * Matrix4.SIZE > matrices.length) {
+            matrices = Arrays.copyOf(matrices, Math.max(matrices.length * 2, (object + 1) * Matrix4.SIZE));
+        }
+        matrix.get(matrices, object * Matrix4.SIZE);
+        objectCount = Math.max(objectCount, object + 1);
+    }
+
+    /**
+     * Stores the camera position.
+     *
+     * @param x The x-coordinate of the camera.
+     * @param y The y-coordinate of the camera.
+     * @param z The z-coordinate of the camera.
+     */
+    public void setCamera(double x, double y, double z) {
+        cameraX = x;
+        cameraY = y;
+        cameraZ = z;
+    }
+
+    /**
+     * Stores the lighting. Lightings are immutable, so the snapshot keeps the reference.
+     *
+     * @param lighting The lighting.
+     */
+    public void setLighting(Lighting lighting) {
+        this.lighting = lighting;
+    }
+
+    /**
+     * Stores how long the simulation steps leading to this snapshot took, for the frame metrics.
+     *
+     * @param updateNanos The duration in nanoseconds.
+     */
+    public void setUpdateNanos(long updateNanos) {
+        this.updateNanos = updateNanos;
+    }
+
+    /**
+     * Copies the stored world matrices into the objects of a scene. Objects without a stored matrix keep theirs.
+     *
+     * @param scene The scene, owned by the calling thread.
+     */
+    public void applyTo(Scene scene) {
+        List<SceneObject> objects = scene.getObjects();
+        int count = Math.min(objectCount, objects.size());
+        for (int object = 0; object < count; object++) {
+            objects.get(object).getWorldMatrix().set(matrices, object * Matrix4.SIZE);
+        }
+    }
+
+    /**
+     * Marks the snapshot as published. Called by the {@link SnapshotBuffer}.
+     *
+     * @param sequence The number of the snapshot, increasing with every publication.
+     */
+    void published(long sequence) {
+        this.sequence = sequence;
+        publishNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the x-coordinate of the camera.
+     *
+     * @return The x-coordinate.
+     */
+    public double getCameraX() {
+        return cameraX;
+    }
+
+    /**
+     * Returns the y-coordinate of the camera.
+     *
+     * @return The y-coordinate.
+     */
+    public double getCameraY() {
+        return cameraY;
+    }
+
+    /**
+     * Returns the z-coordinate of the camera.
+     *
+     * @return The z-coordinate.
+     */
+    public double getCameraZ() {
+        return cameraZ;
+    }
+
+    /**
+     * Returns the lighting.
+     *
+     * @return The lighting, {@link Lighting#DEFAULT} unless set.
+     */
+    public Lighting getLighting() {
+        return lighting;
+    }
+
+    /**
+     * Returns the number of the snapshot.
+     *
+     * @return The sequence number, starting at 1 for the first published snapshot.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns when the snapshot was published.
+     *
+     * @return The value of System.nanoTime() at publication.
+     */
+    public long getPublishNanos() {
+        return publishNanos;
+    }
+
+    /**
+     * Returns how long the simulation steps leading to this snapshot took.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+}
@@ -0,0 +1,85 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The SnapshotBuffer class hands {@link SceneSnapshot}s from the simulation thread to the render thread without
+ * locks. It holds three snapshots: the writer fills its back snapshot, the reader renders from its front snapshot,
+ * and publishing or taking atomically swaps one of them with the snapshot in between. Neither side ever waits
+ * for the other or sees a snapshot that is being written, and a reader that falls behind skips to the latest
+ * snapshot instead of queueing old ones.
+ * <p>
+ * There must be one writing and one reading thread.
+ * @author Giorgio
+ */
+public class SnapshotBuffer {
+    private final AtomicReference<SceneSnapshot> middle = new AtomicReference<>(new SceneSnapshot());
+    private SceneSnapshot back = new SceneSnapshot();
+    private SceneSnapshot front = new SceneSnapshot();
+    private long published;
+    private long taken;
+    private volatile Thread waitingReader;
+
+    /**
+     * Returns the snapshot the writer fills next. It stays the writer's until {@link #publish()}.
+     * Unlike a new snapshot, it holds the state of an older frame, which the writer overwrites.
+     *
+     * @return The back snapshot.
+     */
+    public SceneSnapshot getBack() {
+        return back;
+    }
+
+    /**
+     * Publishes the back snapshot and gives the writer another one. Called by the writer.
+     */
+    public void publish() {
+        back.published(++published);
+        back = middle.getAndSet(back);
+        Thread reader = waitingReader;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+    }
+
+    /**
+     * Returns the latest published snapshot, if it is newer than the last one taken. Called by the reader.
+     * The snapshot stays valid until the next call of {@link #poll()} or {@link #take()}.
+     *
+     * @return The snapshot, or null if nothing new was published.
+     */
+    public SceneSnapshot poll() {
+        if (middle.get().getSequence() <= taken) {
+            return null;
+        }
+        front = middle.getAndSet(front);
+        taken = front.getSequence();
+        return front;
+    }
+
+    /**
+     * Waits until a snapshot newer than the last one taken is published and returns it. Called by the reader.
+     *
+     * @return The snapshot, valid until the next call of {@link #poll()} or {@link #take()}.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public SceneSnapshot take() throws InterruptedException {
+        SceneSnapshot snapshot = poll();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        waitingReader = Thread.currentThread();
+        try {
+            while ((snapshot = poll()) == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingReader = null;
+        }
+        return snapshot;
+    }
+}
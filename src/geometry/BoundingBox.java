@@ -0,0 +1,130 @@
+package geometry;
+
+/**
+ * The BoundingBox class represents an axis-aligned bounding box.
+ * A new box is empty (its minimum is larger than its maximum) until the first point is included.
+ * @author Giorgio
+ */
+public class BoundingBox {
+    /** Minimum x-coordinate. */
+    public double minX;
+    /** Minimum y-coordinate. */
+    public double minY;
+    /** Minimum z-coordinate. */
+    public double minZ;
+    /** Maximum x-coordinate. */
+    public double maxX;
+    /** Maximum y-coordinate. */
+    public double maxY;
+    /** Maximum z-coordinate. */
+    public double maxZ;
+
+    /**
+     * Constructs an empty bounding box.
+     */
+    public BoundingBox() {
+        clear();
+    }
+
+    /**
+     * Computes the bounding box of all vertices of a mesh.
+     *
+     * @param data The geometry.
+     * @return The bounding box, empty if the mesh has no vertices.
+     */
+    public static BoundingBox of(MeshData data) {
+        BoundingBox box = new BoundingBox();
+        for (int i = 0; i < data.vertexCount; i++) {
+            box.include(data.getX(i), data.getY(i), data.getZ(i));
+        }
+        return box;
+    }
+
+    /**
+     * Makes the box empty.
+     *
+     * @return This box, for chaining.
+     */
+    public BoundingBox clear() {
+        minX = minY = minZ = Double.POSITIVE_INFINITY;
+        maxX = maxY = maxZ = Double.NEGATIVE_INFINITY;
+        return this;
+    }
+
+    /**
+     * Checks if the box contains no point at all.
+     *
+     * @return True if nothing was included since the box was cleared.
+     */
+    public boolean isEmpty() {
+        return minX > maxX;
+    }
+
+    /**
+     * Grows the box to contain a point.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param z The z-coordinate of the point.
+     */
+    public void include(double x, double y, double z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+    }
+
+    /**
+     * Sets this box to the bounds of another box after a transformation, without transforming all eight corners.
+     * Each row of the matrix adds its smallest and largest contribution per axis (Arvo's method).
+     *
+     * @param box    The box to transform. It may be this box.
+     * @param matrix The affine transformation, applied to row vectors.
+     * @return This box, for chaining.
+     */
+    public BoundingBox setTransformed(BoundingBox box, Matrix4 matrix) {
+        if (box.isEmpty()) {
+            return clear();
+        }
+        Matrix4 m = matrix;
+        double x0 = box.minX, y0 = box.minY, z0 = box.minZ;
+        double x1 = box.maxX, y1 = box.maxY, z1 = box.maxZ;
+        double newMinX = m.m30 + Math.min(m.m00 * x0, m.m00 * x1) + Math.min(m.m10 * y0, m.m10 * y1) + Math.min(m.m20 * z0, m.m20 * z1);
+        double newMaxX = m.m30 + Math.max(m.m00 * x0, m.m00 * x1) + Math.max(m.m10 * y0, m.m10 * y1) + Math.max(m.m20 * z0, m.m20 * z1);
+        double newMinY = m.m31 + Math.min(m.m01 * x0, m.m01 * x1) + Math.min(m.m11 * y0, m.m11 * y1) + Math.min(m.m21 * z0, m.m21 * z1);
+        double newMaxY = m.m31 + Math.max(m.m01 * x0, m.m01 * x1) + Math.max(m.m11 * y0, m.m11 * y1) + Math.max(m.m21 * z0, m.m21 * z1);
+        double newMinZ = m.m32 + Math.min(m.m02 * x0, m.m02 * x1) + Math.min(m.m12 * y0, m.m12 * y1) + Math.min(m.m22 * z0, m.m22 * z1);
+        double newMaxZ = m.m32 + Math.max(m.m02 * x0, m.m02 * x1) + Math.max(m.m12 * y0, m.m12 * y1) + Math.max(m.m22 * z0, m.m22 * z1);
+        minX = newMinX;
+        minY = newMinY;
+        minZ = newMinZ;
+        maxX = newMaxX;
+        maxY = newMaxY;
+        maxZ = newMaxZ;
+        return this;
+    }
+
+    /**
+     * Returns the surface area of the box, the usual measure of how likely it is to be hit or seen.
+     *
+     * @return The surface area, 0 for an empty box.
+     */
+    public double getSurfaceArea() {
+        if (isEmpty()) {
+            return 0;
+        }
+        double dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    /**
+     * Returns a string representation of the box.
+     *
+     * @return The string representation of the box.
+     */
+    public String toString() {
+        return "{" + minX + ", " + minY + ", " + minZ + "} - {" + maxX + ", " + maxY + ", " + maxZ + "}";
+    }
+}
@@ -0,0 +1,148 @@
+package geometry;
+
+/**
+ * The BoundingSphere class represents a sphere enclosing a set of points.
+ * A sphere is cheaper to test against the view frustum than a box, but usually less tight.
+ * @author Giorgio
+ */
+public class BoundingSphere {
+    /** X-coordinate of the center. */
+    public double centerX;
+    /** Y-coordinate of the center. */
+    public double centerY;
+    /** Z-coordinate of the center. */
+    public double centerZ;
+    /** The radius, negative for an empty sphere. */
+    public double radius = -1;
+
+    /**
+     * Computes a bounding sphere of all vertices of a mesh.
+     * The sphere is centered on the bounding box, which is close to the optimum for typical models
+     * and needs only one more pass over the vertices.
+     *
+     * @param data The geometry.
+     * @return The bounding sphere, empty if the mesh has no vertices.
+     */
+    public static BoundingSphere of(MeshData data) {
+        BoundingSphere sphere = new BoundingSphere();
+        BoundingBox box = BoundingBox.of(data);
+        if (box.isEmpty()) {
+            return sphere;
+        }
+        sphere.centerX = (box.minX + box.maxX) * 0.5;
+        sphere.centerY = (box.minY + box.maxY) * 0.5;
+        sphere.centerZ = (box.minZ + box.maxZ) * 0.5;
+        double radiusSquared = 0;
+        for (int i = 0; i < data.vertexCount; i++) {
+            double dx = data.getX(i) - sphere.centerX, dy = data.getY(i) - sphere.centerY, dz = data.getZ(i) - sphere.centerZ;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+        sphere.radius = Math.sqrt(radiusSquared);
+        return sphere;
+    }
+
+    /**
+     * Checks if the sphere contains no point at all.
+     *
+     * @return True if the radius is negative.
+     */
+    public boolean isEmpty() {
+        return radius < 0;
+    }
+
+    /**
+     * Sets this sphere to enclose another sphere after a transformation.
+     * The radius grows with the largest scale of the matrix, so the result stays conservative for any
+     * rotation and non-uniform scale.
+     *
+     * @param sphere The sphere to transform. It may be this sphere.
+     * @param matrix The affine transformation, applied to row vectors.
+     * @return This sphere, for chaining.
+     */
+    public BoundingSphere setTransformed(BoundingSphere sphere, Matrix4 matrix) {
+        Matrix4 m = matrix;
+        double x = sphere.centerX, y = sphere.centerY, z = sphere.centerZ, r = sphere.radius;
+        centerX = x * m.m00 + y * m.m10 + z * m.m20 + m.m30;
+        centerY = x * m.m01 + y * m.m11 + z * m.m21 + m.m31;
+        centerZ = x * m.m02 + y * m.m12 + z * m.m22 + m.m32;
+        radius = r < 0 ? r : r * Math.sqrt(getMaximumScaleSquared(matrix));
+        return this;
+    }
+
+    /**
+     * Returns the square of the largest factor by which a matrix stretches any vector.
+     * If the rows or the columns of the linear part are orthogonal, as for rotations combined with a scale per axis,
+     * the result is exact: the longest row or column. Otherwise the sum of all squares is returned, which is
+     * an upper bound.
+     *
+     * @param matrix The affine transformation.
+     * @return The squared scale factor.
+     */
+    public static double getMaximumScaleSquared(Matrix4 matrix) {
+        Matrix4 m = matrix;
+        return getMaximumScaleSquared(m.m00, m.m01, m.m02, m.m10, m.m11, m.m12, m.m20, m.m21, m.m22);
+    }
+
+    /**
+     * Returns the square of the largest factor by which the linear part of an affine transformation stretches any
+     * vector, see {@link #getMaximumScaleSquared(Matrix4)}.
+     *
+     * @param m00 The element in row 0, column 0.
+     * @param m01 The element in row 0, column 1.
+     * @param m02 The element in row 0, column 2.
+     * @param m10 The element in row 1, column 0.
+     * @param m11 The element in row 1, column 1.
+     * @param m12 The element in row 1, column 2.
+     * @param m20 The element in row 2, column 0.
+     * @param m21 The element in row 2, column 1.
+     * @param m22 The element in row 2, column 2.
+     * @return The squared scale factor.
+     */
+    public static double getMaximumScaleSquared(double m00, double m01, double m02,
+                                                double m10, double m11, double m12,
+                                                double m20, double m21, double m22) {
+        double row0 = dot(m00, m01, m02, m00, m01, m02);
+        double row1 = dot(m10, m11, m12, m10, m11, m12);
+        double row2 = dot(m20, m21, m22, m20, m21, m22);
+        double total = row0 + row1 + row2;
+        double tolerance = 1e-9 * total;
+        if (Math.abs(dot(m00, m01, m02, m10, m11, m12)) <= tolerance
+                && Math.abs(dot(m00, m01, m02, m20, m21, m22)) <= tolerance
+                && Math.abs(dot(m10, m11, m12, m20, m21, m22)) <= tolerance) {
+            return Math.max(row0, Math.max(row1, row2));
+        }
+        if (Math.abs(dot(m00, m10, m20, m01, m11, m21)) <= tolerance
+                && Math.abs(dot(m00, m10, m20, m02, m12, m22)) <= tolerance
+                && Math.abs(dot(m01, m11, m21, m02, m12, m22)) <= tolerance) {
+            double column0 = dot(m00, m10, m20, m00, m10, m20);
+            double column1 = dot(m01, m11, m21, m01, m11, m21);
+            double column2 = dot(m02, m12, m22, m02, m12, m22);
+            return Math.max(column0, Math.max(column1, column2));
+        }
+        return total;
+    }
+
+    /**
+     * Computes the dot product of two vectors.
+     *
+     * @param ax The x-component of the first vector.
+     * @param ay The y-component of the first vector.
+     * @param az The z-component of the first vector.
+     * @param bx The x-component of the second vector.
+     * @param by The y-component of the second vector.
+     * @param bz The z-component of the second vector.
+     * @return The dot product.
+     */
+    private static double dot(double ax, double ay, double az, double bx, double by, double bz) {
+        return ax * bx + ay * by + az * bz;
+    }
+
+    /**
+     * Returns a string representation of the sphere.
+     *
+     * @return The string representation of the sphere.
+     */
+    public String toString() {
+        return "{" + centerX + ", " + centerY + ", " + centerZ + "} r=" + radius;
+    }
+}
@@ -0,0 +1,417 @@
+package geometry;
+
+import java.util.Arrays;
+
+/**
+ * The BoundingVolumeHierarchy class is a binary tree of axis-aligned boxes over a set of items, e.g. the
+ * objects of a scene or the triangles of a mesh. Culling walks the tree from the root and skips every subtree
+ * whose box is outside of the view frustum, so its cost grows with what is visible rather than with the
+ * number of items.
+ * <p>
+ * The tree is built by splitting the items at the median of their centers along the longest axis until at
+ * most a leaf size of items remain. Items are not moved; the tree keeps a permutation in which the items of
+ * every leaf are consecutive. Nodes are stored in flat arrays, the two children of a node next to each other
+ * and after their parent, so {@link #refit} can update all boxes in one backward pass after the items moved.
+ * @author Giorgio
+ */
+public final class BoundingVolumeHierarchy {
+    /** Deepest possible tree: median splits halve the item count on every level. */
+    private static final int MAX_DEPTH = 64;
+
+    /** The number of entries the traversal stacks given to {@link #cull} must hold. */
+    public static final int STACK_SIZE = MAX_DEPTH * 2;
+
+    // node boxes
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] minZ = new double[0];
+    private double[] maxX = new double[0];
+    private double[] maxY = new double[0];
+    private double[] maxZ = new double[0];
+    // leaf: position of the first item in the permutation; inner node: index of the left child
+    private int[] first = new int[0];
+    // leaf: number of items (at least 1); inner node: 0
+    private int[] count = new int[0];
+    private int nodeCount;
+    private int leafCount;
+
+    // item permutation, the items of each leaf are consecutive
+    private int[] items = new int[0];
+    private int itemCount;
+
+    // item bounds of the current build, only referenced while building
+    private double[] itemMinX, itemMinY, itemMinZ, itemMaxX, itemMaxY, itemMaxZ;
+
+    /**
+     * Builds the tree over a set of item boxes, replacing any previous tree.
+     *
+     * @param itemMinX The minimum x-coordinates of the items.
+     * @param itemMinY The minimum y-coordinates of the items.
+     * @param itemMinZ The minimum z-coordinates of the items.
+     * @param itemMaxX The maximum x-coordinates of the items.
+     * @param itemMaxY The maximum y-coordinates of the items.
+     * @param itemMaxZ The maximum z-coordinates of the items.
+     * @param itemCount The number of items.
+     * @param leafSize  The maximum number of items per leaf.
+     */
+    public void build(double[] itemMinX, double[] itemMinY, double[] itemMinZ,
+                      double[] itemMaxX, double[] itemMaxY, double[] itemMaxZ, int itemCount, int leafSize) {
+        if (leafSize < 1) {
+            throw new IllegalArgumentException("Leaf size must be positive: " + leafSize);
+        }
+        this.itemMinX = itemMinX;
+        this.itemMinY = itemMinY;
+        this.itemMinZ = itemMinZ;
+        this.itemMaxX = itemMaxX;
+        this.itemMaxY = itemMaxY;
+        this.itemMaxZ = itemMaxZ;
+        this.itemCount = itemCount;
+        if (items.length < itemCount) {
+            items = new int[itemCount];
+        }
+        for (int i = 0; i < itemCount; i++) {
+            items[i] = i;
+        }
+        nodeCount = 0;
+        leafCount = 0;
+        try {
+            if (itemCount > 0) {
+                int root = allocateNodes(1);
+                buildNode(root, 0, itemCount, leafSize, 0);
+            }
+        } finally {
+            this.itemMinX = this.itemMinY = this.itemMinZ = null;
+            this.itemMaxX = this.itemMaxY = this.itemMaxZ = null;
+        }
+    }
+
+    /**
+     * Builds a node over a range of the permutation, then its children.
+     *
+     * @param node     The index of the node.
+     * @param from     The first position in the permutation.
+     * @param to       The position after the last one.
+     * @param leafSize The maximum number of items per leaf.
+     * @param depth    The depth of the node.
+     */
+    private void buildNode(int node, int from, int to, int leafSize, int depth) {
+        // Bounds of the items and of their centers
+        double boxMinX = Double.POSITIVE_INFINITY, boxMinY = boxMinX, boxMinZ = boxMinX;
+        double boxMaxX = Double.NEGATIVE_INFINITY, boxMaxY = boxMaxX, boxMaxZ = boxMaxX;
+        double centerMinX = Double.POSITIVE_INFINITY, centerMinY = centerMinX, centerMinZ = centerMinX;
+        double centerMaxX = Double.NEGATIVE_INFINITY, centerMaxY = centerMaxX, centerMaxZ = centerMaxX;
+        for (int i = from; i < to; i++) {
+            int item = items[i];
+            boxMinX = Math.min(boxMinX, itemMinX[item]);
+            boxMinY = Math.min(boxMinY, itemMinY[item]);
+            boxMinZ = Math.min(boxMinZ, itemMinZ[item]);
+            boxMaxX = Math.max(boxMaxX, itemMaxX[item]);
+            boxMaxY = Math.max(boxMaxY, itemMaxY[item]);
+            boxMaxZ = Math.max(boxMaxZ, itemMaxZ[item]);
+            double cx = itemMinX[item] + itemMaxX[item];
+            double cy = itemMinY[item] + itemMaxY[item];
+            double cz = itemMinZ[item] + itemMaxZ[item];
+            centerMinX = Math.min(centerMinX, cx);
+            centerMinY = Math.min(centerMinY, cy);
+            centerMinZ = Math.min(centerMinZ, cz);
+            centerMaxX = Math.max(centerMaxX, cx);
+            centerMaxY = Math.max(centerMaxY, cy);
+            centerMaxZ = Math.max(centerMaxZ, cz);
+        }
+        minX[node] = boxMinX;
+        minY[node] = boxMinY;
+        minZ[node] = boxMinZ;
+        maxX[node] = boxMaxX;
+        maxY[node] = boxMaxY;
+        maxZ[node] = boxMaxZ;
+
+        if (to - from <= leafSize || depth >= MAX_DEPTH - 1) {
+            first[node] = from;
+            count[node] = to - from;
+            leafCount++;
+            return;
+        }
+
+        // Split at the median center along the axis in which the centers spread the most
+        double extentX = centerMaxX - centerMinX, extentY = centerMaxY - centerMinY, extentZ = centerMaxZ - centerMinZ;
+        int axis = extentX >= extentY && extentX >= extentZ ? 0 : extentY >= extentZ ? 1 : 2;
+        int middle = (from + to) >>> 1;
+        select(from, to, middle, axis);
+
+        int left = allocateNodes(2);
+        first[node] = left;
+        count[node] = 0;
+        buildNode(left, from, middle, leafSize, depth + 1);
+        buildNode(left + 1, middle, to, leafSize, depth + 1);
+    }
+
+    /**
+     * Partially sorts a range of the permutation so the item at a position has the center it would have
+     * when fully sorted, smaller centers before it and larger ones after it (quickselect).
+     *
+     * @param from The first position of the range.
+     * @param to   The position after the last one.
+     * @param nth  The position to settle.
+     * @param axis The axis of the centers, 0 for x, 1 for y and 2 for z.
+     */
+    private void select(int from, int to, int nth, int axis) {
+        int low = from, high = to - 1;
+        while (low < high) {
+            double pivot = center(items[(low + high) >>> 1], axis);
+            int i = low, j = high;
+            while (i <= j) {
+                while (center(items[i], axis) < pivot) {
+                    i++;
+                }
+                while (center(items[j], axis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = items[i];
+                    items[i] = items[j];
+                    items[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (nth <= j) {
+                high = j;
+            } else if (nth >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns twice the center of an item along one axis.
+     *
+     * @param item The item.
+     * @param axis The axis, 0 for x, 1 for y and 2 for z.
+     * @return The sum of the minimum and the maximum coordinate.
+     */
+    private double center(int item, int axis) {
+        return switch (axis) {
+            case 0 -> itemMinX[item] + itemMaxX[item];
+            case 1 -> itemMinY[item] + itemMaxY[item];
+            default -> itemMinZ[item] + itemMaxZ[item];
+        };
+    }
+
+    /**
+     * Appends nodes, growing the node arrays if needed.
+     *
+     * @param nodes The number of nodes to append.
+     * @return The index of the first new node.
+     */
+    private int allocateNodes(int nodes) {
+        if (nodeCount + nodes > count.length) {
+            int capacity = Math.max(16, (nodeCount + nodes) * 2);
+            minX = Arrays.copyOf(minX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            minZ = Arrays.copyOf(minZ, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            maxZ = Arrays.copyOf(maxZ, capacity);
+            first = Arrays.copyOf(first, capacity);
+            count = Arrays.copyOf(count, capacity);
+        }
+        int node = nodeCount;
+        nodeCount += nodes;
+        return node;
+    }
+
+    /**
+     * Updates the boxes of all nodes after the items moved, keeping the structure of the tree.
+     * The tree gets less tight the farther the items move from where they were at the last build;
+     * the returned surface area tells when rebuilding pays off.
+     *
+     * @param itemMinX The minimum x-coordinates of the items.
+     * @param itemMinY The minimum y-coordinates of the items.
+     * @param itemMinZ The minimum z-coordinates of the items.
+     * @param itemMaxX The maximum x-coordinates of the items.
+     * @param itemMaxY The maximum y-coordinates of the items.
+     * @param itemMaxZ The maximum z-coordinates of the items.
+     * @return The summed surface area of all node boxes, see {@link #getSurfaceAreaSum()}.
+     */
+    public double refit(double[] itemMinX, double[] itemMinY, double[] itemMinZ,
+                        double[] itemMaxX, double[] itemMaxY, double[] itemMaxZ) {
+        // Children come after their parents, so one backward pass sees every child before its parent
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            double boxMinX = Double.POSITIVE_INFINITY, boxMinY = boxMinX, boxMinZ = boxMinX;
+            double boxMaxX = Double.NEGATIVE_INFINITY, boxMaxY = boxMaxX, boxMaxZ = boxMaxX;
+            if (count[node] > 0) {
+                for (int i = first[node], end = i + count[node]; i < end; i++) {
+                    int item = items[i];
+                    boxMinX = Math.min(boxMinX, itemMinX[item]);
+                    boxMinY = Math.min(boxMinY, itemMinY[item]);
+                    boxMinZ = Math.min(boxMinZ, itemMinZ[item]);
+                    boxMaxX = Math.max(boxMaxX, itemMaxX[item]);
+                    boxMaxY = Math.max(boxMaxY, itemMaxY[item]);
+                    boxMaxZ = Math.max(boxMaxZ, itemMaxZ[item]);
+                }
+            } else {
+                int left = first[node], right = left + 1;
+                boxMinX = Math.min(minX[left], minX[right]);
+                boxMinY = Math.min(minY[left], minY[right]);
+                boxMinZ = Math.min(minZ[left], minZ[right]);
+                boxMaxX = Math.max(maxX[left], maxX[right]);
+                boxMaxY = Math.max(maxY[left], maxY[right]);
+                boxMaxZ = Math.max(maxZ[left], maxZ[right]);
+            }
+            minX[node] = boxMinX;
+            minY[node] = boxMinY;
+            minZ[node] = boxMinZ;
+            maxX[node] = boxMaxX;
+            maxY[node] = boxMaxY;
+            maxZ[node] = boxMaxZ;
+        }
+        return getSurfaceAreaSum();
+    }
+
+    /**
+     * Returns the summed surface area of all node boxes, a measure of how much a traversal costs.
+     *
+     * @return The surface area sum.
+     */
+    public double getSurfaceAreaSum() {
+        double sum = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            double dx = maxX[node] - minX[node], dy = maxY[node] - minY[node], dz = maxZ[node] - minZ[node];
+            sum += 2 * (dx * dy + dy * dz + dz * dx);
+        }
+        return sum;
+    }
+
+    /**
+     * Collects the leaves whose boxes are not completely outside of a frustum.
+     * The tree is only read, and all scratch state is passed in by the caller, so any number of threads may cull
+     * the same tree at once as long as each uses its own arrays.
+     *
+     * @param frustum   The frustum, in the space of the item boxes.
+     * @param leaves    Receives the node indices of the visible leaves; must hold {@link #getLeafCount()} entries.
+     * @param masks     Receives for every visible leaf the frustum planes its box crosses, 0 if it is completely inside.
+     * @param nodeStack The traversal stack of nodes; must hold {@link #STACK_SIZE} entries.
+     * @param maskStack The traversal stack of plane masks; must hold {@link #STACK_SIZE} entries.
+     * @return The number of visible leaves.
+     */
+    public int cull(Frustum frustum, int[] leaves, int[] masks, int[] nodeStack, int[] maskStack) {
+        if (nodeCount == 0) {
+            return 0;
+        }
+        int visible = 0;
+        int top = 0;
+        nodeStack[0] = 0;
+        maskStack[0] = Frustum.ALL_PLANES;
+        top++;
+        while (top > 0) {
+            top--;
+            int node = nodeStack[top];
+            int mask = maskStack[top];
+            // Once a box is completely inside, all boxes below it are as well and need no test
+            if (mask != 0) {
+                mask = frustum.testBox(minX[node], minY[node], minZ[node], maxX[node], maxY[node], maxZ[node], mask);
+                if (mask == Frustum.OUTSIDE) {
+                    continue;
+                }
+            }
+            if (count[node] > 0) {
+                leaves[visible] = node;
+                masks[visible] = mask;
+                visible++;
+            } else {
+                nodeStack[top] = first[node] + 1;
+                maskStack[top] = mask;
+                nodeStack[top + 1] = first[node];
+                maskStack[top + 1] = mask;
+                top += 2;
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * Returns the number of nodes of the tree.
+     *
+     * @return The node count.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of leaves of the tree.
+     *
+     * @return The leaf count.
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Returns the number of items the tree was built over.
+     *
+     * @return The item count.
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Checks if a node is a leaf.
+     *
+     * @param node The node index.
+     * @return True if the node holds items instead of children.
+     */
+    public boolean isLeaf(int node) {
+        return count[node] > 0;
+    }
+
+    /**
+     * Returns the position of the first item of a leaf in the permutation.
+     *
+     * @param leaf The node index of a leaf.
+     * @return The position of the first item.
+     */
+    public int getLeafFirstItem(int leaf) {
+        return first[leaf];
+    }
+
+    /**
+     * Returns the number of items of a leaf.
+     *
+     * @param leaf The node index of a leaf.
+     * @return The item count of the leaf.
+     */
+    public int getLeafItemCount(int leaf) {
+        return count[leaf];
+    }
+
+    /**
+     * Returns the item permutation. The items of a leaf are at the positions
+     * {@link #getLeafFirstItem(int)} to {@link #getLeafFirstItem(int)} + {@link #getLeafItemCount(int)} - 1.
+     *
+     * @return The permutation, valid for the first {@link #getItemCount()} entries.
+     */
+    public int[] getItems() {
+        return items;
+    }
+
+    /**
+     * Copies the box of a node.
+     *
+     * @param node        The node index.
+     * @param destination The box receiving the bounds.
+     * @return The destination box.
+     */
+    public BoundingBox getBounds(int node, BoundingBox destination) {
+        destination.minX = minX[node];
+        destination.minY = minY[node];
+        destination.minZ = minZ[node];
+        destination.maxX = maxX[node];
+        destination.maxY = maxY[node];
+        destination.maxZ = maxZ[node];
+        return destination;
+    }
+}
@@ -0,0 +1,367 @@
+package geometry;
+
+import render.TriangleBuffer;
+
+/**
+ * The Clipper class classifies vertices against the view frustum and clips triangles in homogeneous clip space.
+ * <p>
+ * Every vertex gets an outcode with one bit per frustum plane it lies outside of. A triangle whose three
+ * outcodes share a bit lies completely outside that plane and is rejected without further work. Triangles
+ * are only clipped geometrically if they cross the near plane, where the perspective division breaks down,
+ * or leave the guard band, a region {@link #GUARD_BAND} times the size of the screen. Everything else is
+ * handed to the rasterizer unclipped: it already restricts its work to the screen or tile rectangle, which is
+ * cheaper than clipping against the screen edges.
+ * <p>
+ * Clip-space coordinates follow the projection of {@link MathUtils}: a point is inside the frustum if
+ * -w &lt;= x &lt;= w, -w &lt;= y &lt;= w and 0 &lt;= z &lt;= w.
+ * @author Giorgio
+ */
+public final class Clipper {
+    /** Outside the left frustum plane, x &lt; -w. */
+    public static final int LEFT = 1;
+    /** Outside the right frustum plane, x &gt; w. */
+    public static final int RIGHT = 1 << 1;
+    /** Outside the bottom frustum plane, y &lt; -w. */
+    public static final int BOTTOM = 1 << 2;
+    /** Outside the top frustum plane, y &gt; w. */
+    public static final int TOP = 1 << 3;
+    /** In front of the near plane, z &lt; 0. */
+    public static final int NEAR = 1 << 4;
+    /** Behind the far plane, z &gt; w. */
+    public static final int FAR = 1 << 5;
+    /** Outside the left guard band plane, x &lt; -g * w. */
+    public static final int GUARD_LEFT = 1 << 6;
+    /** Outside the right guard band plane, x &gt; g * w. */
+    public static final int GUARD_RIGHT = 1 << 7;
+    /** Outside the bottom guard band plane, y &lt; -g * w. */
+    public static final int GUARD_BOTTOM = 1 << 8;
+    /** Outside the top guard band plane, y &gt; g * w. */
+    public static final int GUARD_TOP = 1 << 9;
+
+    /** The bits of the frustum planes, used to reject triangles. */
+    public static final int FRUSTUM_MASK = LEFT | RIGHT | BOTTOM | TOP | NEAR | FAR;
+    /** The bits of the planes triangles are clipped against. */
+    public static final int CLIP_MASK = NEAR | GUARD_LEFT | GUARD_RIGHT | GUARD_BOTTOM | GUARD_TOP;
+
+    /** The size of the guard band relative to the screen. Screen coordinates stay far inside float precision. */
+    public static final double GUARD_BAND = 4;
+
+    /** The planes clipped against, in the order they are applied. */
+    private static final int[] CLIP_PLANES = {NEAR, GUARD_LEFT, GUARD_RIGHT, GUARD_BOTTOM, GUARD_TOP};
+    /** A triangle clipped against five planes has at most eight corners. */
+    private static final int MAX_VERTICES = 3 + CLIP_PLANES.length;
+
+    // two polygons in clip space, the input and the output of each clipping step
+    private double[] polygonX = new double[MAX_VERTICES], polygonY = new double[MAX_VERTICES];
+    private double[] polygonZ = new double[MAX_VERTICES], polygonW = new double[MAX_VERTICES];
+    private double[] resultX = new double[MAX_VERTICES], resultY = new double[MAX_VERTICES];
+    private double[] resultZ = new double[MAX_VERTICES], resultW = new double[MAX_VERTICES];
+    // the color channels of the corners, interpolated along with the position
+    private double[] polygonRed = new double[MAX_VERTICES], polygonGreen = new double[MAX_VERTICES];
+    private double[] polygonBlue = new double[MAX_VERTICES];
+    private double[] resultRed = new double[MAX_VERTICES], resultGreen = new double[MAX_VERTICES];
+    private double[] resultBlue = new double[MAX_VERTICES];
+
+    /**
+     * Computes the outcodes of a range of clip-space vertices.
+     *
+     * @param clipX    The clip-space x-coordinates.
+     * @param clipY    The clip-space y-coordinates.
+     * @param clipZ    The clip-space z-coordinates.
+     * @param clipW    The clip-space w-coordinates.
+     * @param from     The first vertex.
+     * @param to       The vertex after the last one.
+     * @param outcodes Receives the outcode of every vertex.
+     */
+    public static void computeOutcodes(double[] clipX, double[] clipY, double[] clipZ, double[] clipW,
+                                       int from, int to, int[] outcodes) {
+        for (int i = from; i < to; i++) {
+            double x = clipX[i], y = clipY[i], z = clipZ[i], w = clipW[i];
+            double guard = GUARD_BAND * w;
+            int code = 0;
+            if (x < -w) code |= LEFT;
+            if (x > w) code |= RIGHT;
+            if (y < -w) code |= BOTTOM;
+            if (y > w) code |= TOP;
+            if (z < 0) code |= NEAR;
+            if (z > w) code |= FAR;
+            if (x < -guard) code |= GUARD_LEFT;
+            if (x > guard) code |= GUARD_RIGHT;
+            if (y < -guard) code |= GUARD_BOTTOM;
+            if (y > guard) code |= GUARD_TOP;
+            outcodes[i] = code;
+        }
+    }
+
+    /**
+     * Computes the outcodes of a range of clip-space vertices given as floats.
+     *
+     * @param clipX    The clip-space x-coordinates.
+     * @param clipY    The clip-space y-coordinates.
+     * @param clipZ    The clip-space z-coordinates.
+     * @param clipW    The clip-space w-coordinates.
+     * @param from     The first vertex.
+     * @param to       The vertex after the last one.
+     * @param outcodes Receives the outcode of every vertex.
+     */
+    public static void computeOutcodes(float[] clipX, float[] clipY, float[] clipZ, float[] clipW,
+                                       int from, int to, int[] outcodes) {
+        float guardBand = (float) GUARD_BAND;
+        for (int i = from; i < to; i++) {
+            float x = clipX[i], y = clipY[i], z = clipZ[i], w = clipW[i];
+            float guard = guardBand * w;
+            int code = 0;
+            if (x < -w) code |= LEFT;
+            if (x > w) code |= RIGHT;
+            if (y < -w) code |= BOTTOM;
+            if (y > w) code |= TOP;
+            if (z < 0) code |= NEAR;
+            if (z > w) code |= FAR;
+            if (x < -guard) code |= GUARD_LEFT;
+            if (x > guard) code |= GUARD_RIGHT;
+            if (y < -guard) code |= GUARD_BOTTOM;
+            if (y > guard) code |= GUARD_TOP;
+            outcodes[i] = code;
+        }
+    }
+
+    /**
+     * Clips a triangle against the near plane and the guard band, then divides the remaining polygon by w,
+     * maps it to the screen and appends it to a triangle buffer as a fan.
+     *
+     * @param a          The index of the first vertex in the clip-space arrays.
+     * @param b          The index of the second vertex.
+     * @param c          The index of the third vertex.
+     * @param clipX      The clip-space x-coordinates.
+     * @param clipY      The clip-space y-coordinates.
+     * @param clipZ      The clip-space z-coordinates.
+     * @param clipW      The clip-space w-coordinates.
+     * @param planes     The union of the outcodes of the three vertices; only these planes are clipped against.
+     * @param halfWidth  Half the screen width in pixels.
+     * @param halfHeight Half the screen height in pixels.
+     * @param colorA     The packed RGB color of the first vertex.
+     * @param colorB     The packed RGB color of the second vertex.
+     * @param colorC     The packed RGB color of the third vertex.
+     * @param triangles  Receives the screen-space triangles.
+     * @return The number of triangles appended, 0 if nothing remains.
+     */
+    public int clipTriangle(int a, int b, int c, double[] clipX, double[] clipY, double[] clipZ, double[] clipW,
+                            int planes, double halfWidth, double halfHeight, int colorA, int colorB, int colorC,
+                            TriangleBuffer triangles) {
+        load(0, a, clipX, clipY, clipZ, clipW);
+        load(1, b, clipX, clipY, clipZ, clipW);
+        load(2, c, clipX, clipY, clipZ, clipW);
+        loadColor(0, colorA);
+        loadColor(1, colorB);
+        loadColor(2, colorC);
+        return clipLoaded(planes, halfWidth, halfHeight, triangles);
+    }
+
+    /**
+     * Float version of {@link #clipTriangle(int, int, int, double[], double[], double[], double[], int, double,
+     * double, int, int, int, TriangleBuffer)}. The polygon is clipped in double precision either way.
+     *
+     * @param a          The index of the first vertex in the clip-space arrays.
+     * @param b          The index of the second vertex.
+     * @param c          The index of the third vertex.
+     * @param clipX      The clip-space x-coordinates.
+     * @param clipY      The clip-space y-coordinates.
+     * @param clipZ      The clip-space z-coordinates.
+     * @param clipW      The clip-space w-coordinates.
+     * @param planes     The union of the outcodes of the three vertices; only these planes are clipped against.
+     * @param halfWidth  Half the screen width in pixels.
+     * @param halfHeight Half the screen height in pixels.
+     * @param colorA     The packed RGB color of the first vertex.
+     * @param colorB     The packed RGB color of the second vertex.
+     * @param colorC     The packed RGB color of the third vertex.
+     * @param triangles  Receives the screen-space triangles.
+     * @return The number of triangles appended, 0 if nothing remains.
+     */
+    public int clipTriangle(int a, int b, int c, float[] clipX, float[] clipY, float[] clipZ, float[] clipW,
+                            int planes, double halfWidth, double halfHeight, int colorA, int colorB, int colorC,
+                            TriangleBuffer triangles) {
+        load(0, a, clipX, clipY, clipZ, clipW);
+        load(1, b, clipX, clipY, clipZ, clipW);
+        load(2, c, clipX, clipY, clipZ, clipW);
+        loadColor(0, colorA);
+        loadColor(1, colorB);
+        loadColor(2, colorC);
+        return clipLoaded(planes, halfWidth, halfHeight, triangles);
+    }
+
+    /**
+     * Clips the loaded triangle, then divides the remaining polygon by w and appends it as a fan.
+     *
+     * @param planes     The planes to clip against.
+     * @param halfWidth  Half the screen width in pixels.
+     * @param halfHeight Half the screen height in pixels.
+     * @param triangles  Receives the screen-space triangles.
+     * @return The number of triangles appended, 0 if nothing remains.
+     */
+    private int clipLoaded(int planes, double halfWidth, double halfHeight, TriangleBuffer triangles) {
+        int count = 3;
+        for (int plane : CLIP_PLANES) {
+            if ((planes & plane) != 0) {
+                count = clipPolygon(plane, count);
+                if (count < 3) {
+                    return 0;
+                }
+            }
+        }
+
+        // Perspective division of the corners that are all in front of the near plane now
+        for (int i = 0; i < count; i++) {
+            double w = polygonW[i];
+            polygonX[i] = (polygonX[i] / w + 1) * halfWidth;
+            polygonY[i] = (polygonY[i] / w + 1) * halfHeight;
+            polygonZ[i] = polygonZ[i] / w;
+        }
+        for (int i = 1; i < count - 1; i++) {
+            triangles.add(
+                    polygonX[0], polygonY[0], polygonZ[0],
+                    polygonX[i], polygonY[i], polygonZ[i],
+                    polygonX[i + 1], polygonY[i + 1], polygonZ[i + 1],
+                    packColor(0), packColor(i), packColor(i + 1));
+        }
+        return count - 2;
+    }
+
+    /**
+     * Stores the color of a corner of the current polygon as separate channels.
+     *
+     * @param corner The corner of the polygon.
+     * @param color  The packed RGB color.
+     */
+    private void loadColor(int corner, int color) {
+        polygonRed[corner] = (color >>> 16) & 0xFF;
+        polygonGreen[corner] = (color >>> 8) & 0xFF;
+        polygonBlue[corner] = color & 0xFF;
+    }
+
+    /**
+     * Packs the channels of a corner of the current polygon, rounded to the nearest value.
+     * Corners that were not interpolated keep their color exactly.
+     *
+     * @param corner The corner of the polygon.
+     * @return The packed RGB color.
+     */
+    private int packColor(int corner) {
+        return ((int) (polygonRed[corner] + 0.5) << 16) | ((int) (polygonGreen[corner] + 0.5) << 8)
+                | (int) (polygonBlue[corner] + 0.5);
+    }
+
+    /**
+     * Copies a vertex into a corner of the current polygon.
+     *
+     * @param corner The corner of the polygon.
+     * @param vertex The index of the vertex in the clip-space arrays.
+     * @param clipX  The clip-space x-coordinates.
+     * @param clipY  The clip-space y-coordinates.
+     * @param clipZ  The clip-space z-coordinates.
+     * @param clipW  The clip-space w-coordinates.
+     */
+    private void load(int corner, int vertex, double[] clipX, double[] clipY, double[] clipZ, double[] clipW) {
+        polygonX[corner] = clipX[vertex];
+        polygonY[corner] = clipY[vertex];
+        polygonZ[corner] = clipZ[vertex];
+        polygonW[corner] = clipW[vertex];
+    }
+
+    /**
+     * Copies a float vertex into a corner of the current polygon.
+     *
+     * @param corner The corner of the polygon.
+     * @param vertex The index of the vertex in the clip-space arrays.
+     * @param clipX  The clip-space x-coordinates.
+     * @param clipY  The clip-space y-coordinates.
+     * @param clipZ  The clip-space z-coordinates.
+     * @param clipW  The clip-space w-coordinates.
+     */
+    private void load(int corner, int vertex, float[] clipX, float[] clipY, float[] clipZ, float[] clipW) {
+        polygonX[corner] = clipX[vertex];
+        polygonY[corner] = clipY[vertex];
+        polygonZ[corner] = clipZ[vertex];
+        polygonW[corner] = clipW[vertex];
+    }
+
+    /**
+     * Clips the current polygon against one plane (Sutherland-Hodgman) and makes the result the current polygon.
+     *
+     * @param plane The outcode bit of the plane.
+     * @param count The number of corners of the current polygon.
+     * @return The number of corners of the clipped polygon.
+     */
+    private int clipPolygon(int plane, int count) {
+        int result = 0;
+        double previousDistance = distance(plane, count - 1);
+        for (int previous = count - 1, current = 0; current < count; previous = current, current++) {
+            double currentDistance = distance(plane, current);
+            if (currentDistance >= 0 != previousDistance >= 0) {
+                // The edge crosses the plane, add the intersection
+                double t = previousDistance / (previousDistance - currentDistance);
+                resultX[result] = polygonX[previous] + (polygonX[current] - polygonX[previous]) * t;
+                resultY[result] = polygonY[previous] + (polygonY[current] - polygonY[previous]) * t;
+                resultZ[result] = polygonZ[previous] + (polygonZ[current] - polygonZ[previous]) * t;
+                resultW[result] = polygonW[previous] + (polygonW[current] - polygonW[previous]) * t;
+                resultRed[result] = polygonRed[previous] + (polygonRed[current] - polygonRed[previous]) * t;
+                resultGreen[result] = polygonGreen[previous] + (polygonGreen[current] - polygonGreen[previous]) * t;
+                resultBlue[result] = polygonBlue[previous] + (polygonBlue[current] - polygonBlue[previous]) * t;
+                result++;
+            }
+            if (currentDistance >= 0) {
+                resultX[result] = polygonX[current];
+                resultY[result] = polygonY[current];
+                resultZ[result] = polygonZ[current];
+                resultW[result] = polygonW[current];
+                resultRed[result] = polygonRed[current];
+                resultGreen[result] = polygonGreen[current];
+                resultBlue[result] = polygonBlue[current];
+                result++;
+            }
+            previousDistance = currentDistance;
+        }
+
+        // Swap the buffers so the result is the input of the next plane
+        double[] swap = polygonX;
+        polygonX = resultX;
+        resultX = swap;
+        swap = polygonY;
+        polygonY = resultY;
+        resultY = swap;
+        swap = polygonZ;
+        polygonZ = resultZ;
+        resultZ = swap;
+        swap = polygonW;
+        polygonW = resultW;
+        resultW = swap;
+        swap = polygonRed;
+        polygonRed = resultRed;
+        resultRed = swap;
+        swap = polygonGreen;
+        polygonGreen = resultGreen;
+        resultGreen = swap;
+        swap = polygonBlue;
+        polygonBlue = resultBlue;
+        resultBlue = swap;
+        return result;
+    }
+
+    /**
+     * Returns the signed distance of a polygon corner to a plane, positive on the inside.
+     *
+     * @param plane  The outcode bit of the plane.
+     * @param corner The corner of the current polygon.
+     * @return The distance in clip-space units.
+     */
+    private double distance(int plane, int corner) {
+        double x = polygonX[corner], y = polygonY[corner], z = polygonZ[corner], w = polygonW[corner];
+        return switch (plane) {
+            case NEAR -> z;
+            case GUARD_LEFT -> x + GUARD_BAND * w;
+            case GUARD_RIGHT -> GUARD_BAND * w - x;
+            case GUARD_BOTTOM -> y + GUARD_BAND * w;
+            case GUARD_TOP -> GUARD_BAND * w - y;
+            default -> throw new IllegalArgumentException("Not a clip plane: " + plane);
+        };
+    }
+}
@@ -0,0 +1,140 @@
+package geometry;
+
+/**
+ * The Frustum class holds the six planes of a view frustum and tests bounding volumes against them.
+ * The planes are extracted from a combined transformation and projection matrix, so the frustum lives in the
+ * space the matrix transforms from: world space for the projection matrix alone, object space for
+ * the world matrix multiplied by the projection matrix.
+ * <p>
+ * Tests take and return plane masks with the bits of {@link Clipper}: a set bit means the volume may
+ * still cross that plane. A parent volume that is completely inside a plane clears its bit, so the
+ * children of a hierarchy skip that plane.
+ * @author Giorgio
+ */
+public final class Frustum {
+    /** The result of a test if the volume is completely outside of the frustum. */
+    public static final int OUTSIDE = -1;
+    /** The mask testing all six planes. */
+    public static final int ALL_PLANES = Clipper.FRUSTUM_MASK;
+
+    // plane equations a*x + b*y + c*z + d >= 0 for the inside, normalized, in the order of the Clipper bits
+    private final double[] a = new double[6];
+    private final double[] b = new double[6];
+    private final double[] c = new double[6];
+    private final double[] d = new double[6];
+
+    /**
+     * Extracts the planes from a matrix that maps points to clip space (Gribb and Hartmann).
+     *
+     * @param clipMatrix The matrix mapping row vectors to homogeneous clip space.
+     * @return This frustum, for chaining.
+     */
+    public Frustum set(Matrix4 clipMatrix) {
+        Matrix4 m = clipMatrix;
+        // One plane per clip condition: -w <= x, x <= w, -w <= y, y <= w, 0 <= z, z <= w
+        setPlane(0, m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+        setPlane(1, m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+        setPlane(2, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+        setPlane(3, m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+        setPlane(4, m.m02, m.m12, m.m22, m.m32);
+        setPlane(5, m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
+        return this;
+    }
+
+    /**
+     * Normalizes and stores a plane.
+     *
+     * @param plane The index of the plane, in the order of the outcode bits.
+     * @param pa    The x-component of the plane normal.
+     * @param pb    The y-component of the plane normal.
+     * @param pc    The z-component of the plane normal.
+     * @param pd    The distance term of the plane.
+     */
+    private void setPlane(int plane, double pa, double pb, double pc, double pd) {
+        double length = Math.sqrt(pa * pa + pb * pb + pc * pc);
+        a[plane] = pa / length;
+        b[plane] = pb / length;
+        c[plane] = pc / length;
+        d[plane] = pd / length;
+    }
+
+    /**
+     * Tests an axis-aligned box against the planes of a mask.
+     *
+     * @param minX The minimum x-coordinate of the box.
+     * @param minY The minimum y-coordinate of the box.
+     * @param minZ The minimum z-coordinate of the box.
+     * @param maxX The maximum x-coordinate of the box.
+     * @param maxY The maximum y-coordinate of the box.
+     * @param maxZ The maximum z-coordinate of the box.
+     * @param mask The planes to test.
+     * @return {@link #OUTSIDE}, or the planes of the mask the box crosses; 0 if it is completely inside.
+     */
+    public int testBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int mask) {
+        int result = mask;
+        for (int plane = 0; plane < 6; plane++) {
+            if ((mask & (1 << plane)) == 0) {
+                continue;
+            }
+            double pa = a[plane], pb = b[plane], pc = c[plane], pd = d[plane];
+            // The corner farthest along the plane normal decides if anything is inside,
+            // the opposite corner if everything is inside
+            double farthest = pa * (pa >= 0 ? maxX : minX) + pb * (pb >= 0 ? maxY : minY) + pc * (pc >= 0 ? maxZ : minZ) + pd;
+            if (farthest < 0) {
+                return OUTSIDE;
+            }
+            double nearest = pa * (pa >= 0 ? minX : maxX) + pb * (pb >= 0 ? minY : maxY) + pc * (pc >= 0 ? minZ : maxZ) + pd;
+            if (nearest >= 0) {
+                result &= ~(1 << plane);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tests a bounding box against all planes.
+     *
+     * @param box The box.
+     * @return {@link #OUTSIDE}, or the planes the box crosses; 0 if it is completely inside.
+     */
+    public int testBox(BoundingBox box) {
+        return testBox(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ, ALL_PLANES);
+    }
+
+    /**
+     * Tests a sphere against the planes of a mask.
+     *
+     * @param x      The x-coordinate of the center.
+     * @param y      The y-coordinate of the center.
+     * @param z      The z-coordinate of the center.
+     * @param radius The radius.
+     * @param mask   The planes to test.
+     * @return {@link #OUTSIDE}, or the planes of the mask the sphere crosses; 0 if it is completely inside.
+     */
+    public int testSphere(double x, double y, double z, double radius, int mask) {
+        int result = mask;
+        for (int plane = 0; plane < 6; plane++) {
+            if ((mask & (1 << plane)) == 0) {
+                continue;
+            }
+            double distance = a[plane] * x + b[plane] * y + c[plane] * z + d[plane];
+            if (distance < -radius) {
+                return OUTSIDE;
+            }
+            if (distance >= radius) {
+                result &= ~(1 << plane);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tests a bounding sphere against all planes.
+     *
+     * @param sphere The sphere.
+     * @return {@link #OUTSIDE}, or the planes the sphere crosses; 0 if it is completely inside.
+     */
+    public int testSphere(BoundingSphere sphere) {
+        return testSphere(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, ALL_PLANES);
+    }
+}
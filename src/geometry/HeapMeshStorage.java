@@ -0,0 +1,134 @@
+package geometry;
+
+/**
+ * The HeapMeshStorage class keeps the positions and the index buffer of a mesh in primitive heap arrays, the
+ * storage of every {@link MeshData} built from arrays. The bulk methods return the arrays themselves; the split
+ * index buffer and the float positions are derived on first use and shared by all later callers.
+ * @author Giorgio
+ */
+final class HeapMeshStorage implements MeshStorage {
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final int[] indices;
+    private final int vertexCount;
+    private final int triangleCount;
+    /** The index buffer split into one array per triangle corner, created on first use. */
+    private volatile int[][] corners;
+    /** The positions rounded to floats for the float pipeline, created on first use. */
+    private volatile float[][] floatPositions;
+
+    /**
+     * Constructs storage from existing arrays, which are used as they are and may be longer than the given counts.
+     *
+     * @param x             The x-coordinates of the vertices.
+     * @param y             The y-coordinates of the vertices.
+     * @param z             The z-coordinates of the vertices.
+     * @param vertexCount   The number of valid vertices.
+     * @param indices       The index buffer, three entries per triangle.
+     * @param triangleCount The number of valid triangles.
+     */
+    HeapMeshStorage(double[] x, double[] y, double[] z, int vertexCount, int[] indices, int triangleCount) {
+        if (x.length < vertexCount || y.length < vertexCount || z.length < vertexCount) {
+            throw new IllegalArgumentException("Coordinate arrays are shorter than the vertex count");
+        }
+        if (indices.length < triangleCount * 3) {
+            throw new IllegalArgumentException("Index buffer is shorter than the triangle count");
+        }
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.vertexCount = vertexCount;
+        this.indices = indices;
+        this.triangleCount = triangleCount;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    @Override
+    public double getX(int vertex) {
+        return x[vertex];
+    }
+
+    @Override
+    public double getY(int vertex) {
+        return y[vertex];
+    }
+
+    @Override
+    public double getZ(int vertex) {
+        return z[vertex];
+    }
+
+    @Override
+    public int getIndex(int index) {
+        return indices[index];
+    }
+
+    @Override
+    public double[] getPositions(int axis, int from, int to, double[] destination) {
+        return axis == 0 ? x : axis == 1 ? y : z;
+    }
+
+    @Override
+    public float[] getFloatPositions(int axis, int from, int to, float[] destination) {
+        float[][] result = floatPositions;
+        if (result == null) {
+            // Concurrent first calls may both compute the arrays, which is harmless since they are equal
+            result = new float[3][vertexCount];
+            for (int i = 0; i < vertexCount; i++) {
+                result[0][i] = (float) x[i];
+                result[1][i] = (float) y[i];
+                result[2][i] = (float) z[i];
+            }
+            floatPositions = result;
+        }
+        return result[axis];
+    }
+
+    @Override
+    public int[] getCorners(int corner, int from, int to, int[] destination) {
+        int[][] result = corners;
+        if (result == null) {
+            // Concurrent first calls may both compute the arrays, which is harmless since they are equal
+            result = new int[3][triangleCount];
+            for (int t = 0; t < triangleCount; t++) {
+                result[0][t] = indices[t * 3];
+                result[1][t] = indices[t * 3 + 1];
+                result[2][t] = indices[t * 3 + 2];
+            }
+            corners = result;
+        }
+        return result[corner];
+    }
+
+    @Override
+    public MeshStorage withIndices(int[] indices, int triangleCount) {
+        return new HeapMeshStorage(x, y, z, vertexCount, indices, triangleCount);
+    }
+
+    @Override
+    public boolean isOffHeap() {
+        return false;
+    }
+
+    @Override
+    public long getByteSize() {
+        long bytes = 3L * vertexCount * Double.BYTES + 3L * triangleCount * Integer.BYTES;
+        if (corners != null) {
+            bytes += 3L * triangleCount * Integer.BYTES;
+        }
+        if (floatPositions != null) {
+            bytes += 3L * vertexCount * Float.BYTES;
+        }
+        return bytes;
+    }
+}
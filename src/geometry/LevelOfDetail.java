@@ -0,0 +1,196 @@
+package geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The LevelOfDetail class holds a chain of simplified versions of a mesh, each with about half the triangles
+ * of the previous one, built with the {@link MeshSimplifier}.
+ * <p>
+ * Since simplification never creates vertices, every level uses a subset of the vertices of the finer one.
+ * The vertices are reordered so the vertices of the coarsest level come first, followed by those added by each
+ * finer level. All levels share these vertex arrays, and every level's vertex count only covers the prefix it
+ * uses, so the vertex pass of a coarse level skips the vertices it does not need. The reordered arrays are heap
+ * arrays, also for geometry stored off the heap.
+ * <p>
+ * Every level stores its geometric error in object units. {@link #select(double, double)} picks the coarsest
+ * level whose error, projected to the screen, stays below a tolerance in pixels.
+ * @author Giorgio
+ */
+public final class LevelOfDetail {
+    /** The maximum number of levels, including the original mesh. */
+    public static final int MAX_LEVELS = 8;
+
+    /** Levels are not simplified below this number of triangles. */
+    public static final int MIN_TRIANGLES = 128;
+
+    /** Simplification stops once a level keeps more than this fraction of the triangles of the previous one. */
+    private static final double MIN_REDUCTION = 0.9;
+
+    private final MeshData[] levels;
+    private final double[] errors;
+
+    /**
+     * Constructs a chain of levels.
+     *
+     * @param levels The geometry of the levels, finest first.
+     * @param errors The error of every level in object units.
+     */
+    private LevelOfDetail(MeshData[] levels, double[] errors) {
+        this.levels = levels;
+        this.errors = errors;
+    }
+
+    /**
+     * Builds the levels of detail of a mesh. Meshes with fewer than twice {@link #MIN_TRIANGLES} triangles
+     * only get the original level.
+     *
+     * @param data The original geometry.
+     * @return The levels, where level 0 holds the original triangles over the reordered vertices.
+     */
+    public static LevelOfDetail build(MeshData data) {
+        List<MeshData> levels = new ArrayList<>();
+        List<Double> errors = new ArrayList<>();
+        levels.add(data);
+        errors.add(0d);
+
+        MeshSimplifier simplifier = new MeshSimplifier();
+        MeshData current = data;
+        while (levels.size() < MAX_LEVELS && current.triangleCount / 2 >= MIN_TRIANGLES) {
+            MeshData next = simplifier.simplify(current, current.triangleCount / 2);
+            if (next.triangleCount > current.triangleCount * MIN_REDUCTION) {
+                break;
+            }
+            // Every level is simplified from the previous one, so the errors add up
+            errors.add(errors.get(errors.size() - 1) + simplifier.getLastError());
+            levels.add(next);
+            current = next;
+        }
+
+        double[] errorArray = new double[errors.size()];
+        for (int i = 0; i < errorArray.length; i++) {
+            errorArray[i] = errors.get(i);
+        }
+        return new LevelOfDetail(reorderVertices(levels.toArray(new MeshData[0])), errorArray);
+    }
+
+    /**
+     * Reorders the shared vertices so every level uses a prefix of them, coarsest level first.
+     *
+     * @param levels The levels over the original vertex order, finest first.
+     * @return The levels over the reordered vertices.
+     */
+    private static MeshData[] reorderVertices(MeshData[] levels) {
+        MeshData original = levels[0];
+        int vertexCount = original.vertexCount;
+        int[] newIndex = new int[vertexCount];
+        Arrays.fill(newIndex, -1);
+        int[] prefix = new int[levels.length];
+
+        // Number the vertices in the order in which the levels start to use them
+        int next = 0;
+        for (int level = levels.length - 1; level >= 0; level--) {
+            MeshData data = levels[level];
+            for (int i = 0; i < data.triangleCount * 3; i++) {
+                int vertex = data.getIndex(i);
+                if (newIndex[vertex] < 0) {
+                    newIndex[vertex] = next++;
+                }
+            }
+            prefix[level] = next;
+        }
+        // Vertices no triangle uses go last and are only kept for the original level
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            if (newIndex[vertex] < 0) {
+                newIndex[vertex] = next++;
+            }
+        }
+        prefix[0] = vertexCount;
+
+        double[] x = permute(original.getPositions(0), newIndex, vertexCount);
+        double[] y = permute(original.getPositions(1), newIndex, vertexCount);
+        double[] z = permute(original.getPositions(2), newIndex, vertexCount);
+        double[] normalX = permute(original.normalX, newIndex, vertexCount);
+        double[] normalY = permute(original.normalY, newIndex, vertexCount);
+        double[] normalZ = permute(original.normalZ, newIndex, vertexCount);
+        double[] textureU = permute(original.textureU, newIndex, vertexCount);
+        double[] textureV = permute(original.textureV, newIndex, vertexCount);
+
+        MeshData[] reordered = new MeshData[levels.length];
+        for (int level = 0; level < levels.length; level++) {
+            MeshData data = levels[level];
+            int[] indices = new int[data.triangleCount * 3];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = newIndex[data.getIndex(i)];
+            }
+            reordered[level] = new MeshData(x, y, z, prefix[level], indices, data.triangleCount,
+                    normalX, normalY, normalZ, textureU, textureV, data.getSubMeshes());
+        }
+        return reordered;
+    }
+
+    /**
+     * Moves the entries of a vertex attribute to their new positions.
+     *
+     * @param values      The attribute in the original vertex order, or null.
+     * @param newIndex    The new position of every vertex.
+     * @param vertexCount The number of vertices.
+     * @return The reordered attribute, or null if there is none.
+     */
+    private static double[] permute(double[] values, int[] newIndex, int vertexCount) {
+        if (values == null) {
+            return null;
+        }
+        double[] result = new double[vertexCount];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            result[newIndex[vertex]] = values[vertex];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of levels.
+     *
+     * @return The level count, at least 1.
+     */
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Returns the geometry of a level.
+     *
+     * @param level The level, 0 being the original mesh.
+     * @return The mesh data of the level.
+     */
+    public MeshData getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Returns the geometric error of a level, i.e. about how far its surface may deviate from the original.
+     *
+     * @param level The level.
+     * @return The error in object units, 0 for the original mesh.
+     */
+    public double getError(int level) {
+        return errors[level];
+    }
+
+    /**
+     * Selects the coarsest level whose error stays within a tolerance on the screen.
+     *
+     * @param pixelsPerUnit The number of pixels one object unit covers at the nearest point of the mesh.
+     * @param tolerance     The largest acceptable error in pixels.
+     * @return The level.
+     */
+    public int select(double pixelsPerUnit, double tolerance) {
+        for (int level = levels.length - 1; level > 0; level--) {
+            if (errors[level] * pixelsPerUnit <= tolerance) {
+                return level;
+            }
+        }
+        return 0;
+    }
+}
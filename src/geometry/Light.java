@@ -0,0 +1,135 @@
+package geometry;
+
+/**
+ * The Light class describes one immutable light source of a {@link Lighting}: either a directional light, which
+ * shines from the same direction everywhere, or a point light, which shines from a position in world space and
+ * fades with the distance.
+ * @author Giorgio
+ */
+public final class Light {
+
+    /**
+     * The kinds of light sources.
+     */
+    public enum Type {
+        /** Parallel light from one direction, e.g. the sun. */
+        DIRECTIONAL,
+        /** Light from one position, fading with the distance. */
+        POINT
+    }
+
+    private final Type type;
+    private final double x;
+    private final double y;
+    private final double z;
+    private final int color;
+    private final double range;
+
+    /**
+     * Constructs a light.
+     *
+     * @param type  The kind of light.
+     * @param x     The x-component of the direction towards the light, or of the position.
+     * @param y     The y-component of the direction towards the light, or of the position.
+     * @param z     The z-component of the direction towards the light, or of the position.
+     * @param color The color of the light as 0xRRGGBB.
+     * @param range The distance at which a point light has half its intensity, or 0 for directional lights.
+     */
+    private Light(Type type, double x, double y, double z, int color, double range) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.color = color & 0xFFFFFF;
+        this.range = range;
+    }
+
+    /**
+     * Creates a directional light.
+     *
+     * @param towardsX The x-component of the direction from the surface towards the light.
+     * @param towardsY The y-component of the direction.
+     * @param towardsZ The z-component of the direction.
+     * @param color    The color of the light as 0xRRGGBB; white lights the surface in its own color.
+     * @return The light, with a normalized direction.
+     */
+    public static Light directional(double towardsX, double towardsY, double towardsZ, int color) {
+        double length = Math.sqrt(towardsX * towardsX + towardsY * towardsY + towardsZ * towardsZ);
+        if (!(length > 0)) {
+            throw new IllegalArgumentException("The direction of a light must not be zero");
+        }
+        return new Light(Type.DIRECTIONAL, towardsX / length, towardsY / length, towardsZ / length, color, 0);
+    }
+
+    /**
+     * Creates a point light. Its intensity falls off as 1 / (1 + (distance / range)^2).
+     *
+     * @param x     The x-coordinate of the light in world space.
+     * @param y     The y-coordinate of the light.
+     * @param z     The z-coordinate of the light.
+     * @param color The color of the light as 0xRRGGBB.
+     * @param range The distance at which the light has half its intensity.
+     * @return The light.
+     */
+    public static Light point(double x, double y, double z, int color, double range) {
+        if (!(range > 0)) {
+            throw new IllegalArgumentException("The range of a point light must be positive: " + range);
+        }
+        return new Light(Type.POINT, x, y, z, color, range);
+    }
+
+    /**
+     * Returns the kind of the light.
+     *
+     * @return The type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the x-component of the normalized direction towards a directional light, or the x-coordinate of a
+     * point light.
+     *
+     * @return The x-component.
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Returns the y-component of the direction or position.
+     *
+     * @return The y-component.
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Returns the z-component of the direction or position.
+     *
+     * @return The z-component.
+     */
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * Returns the color of the light.
+     *
+     * @return The color as 0xRRGGBB.
+     */
+    public int getColor() {
+        return color;
+    }
+
+    /**
+     * Returns the distance at which a point light has half its intensity.
+     *
+     * @return The range, 0 for directional lights.
+     */
+    public double getRange() {
+        return range;
+    }
+}
@@ -0,0 +1,434 @@
+package geometry;
+
+import java.util.Arrays;
+
+/**
+ * The Lighting class is an immutable set of {@link Light}s with an ambient minimum, evaluated with the Lambert
+ * model: every light adds its color scaled by the cosine between the surface normal and the direction towards
+ * it, and every channel of the sum is raised to at least the ambient intensity before it scales the surface color.
+ * Optionally, every light adds a Blinn-Phong highlight in its own color, and the lighting happens on linear colors
+ * that are gamma encoded again afterwards.
+ * <p>
+ * The lights are flattened into primitive arrays on construction, so shading a vertex or face reads no objects.
+ * Being immutable, a lighting can be handed from the simulation to the render thread as it is. For the same reason,
+ * its {@link ShadingTables} are built once, on first use, and are only rebuilt by creating a new lighting.
+ * @author Giorgio
+ */
+public final class Lighting {
+    /** The lighting used unless another one is set: one white light from above and in front, ambient 0.1. */
+    public static final Lighting DEFAULT = new Lighting(0.1, Light.directional(0, -1, -1, 0xFFFFFF));
+
+    private final double ambient;
+    private final double specular;
+    private final double shininess;
+    private final double gamma;
+    private final Light[] lights;
+
+    // directional lights: direction towards the light and color as factors from 0 to 1, per light, also read by
+    // the shading tables
+    final double[] directionX;
+    final double[] directionY;
+    final double[] directionZ;
+    final double[] directionalRed;
+    final double[] directionalGreen;
+    final double[] directionalBlue;
+
+    // point lights: position, 1 / range^2 and color factors, per light
+    final double[] pointX;
+    final double[] pointY;
+    final double[] pointZ;
+    final double[] pointFalloff;
+    final double[] pointRed;
+    final double[] pointGreen;
+    final double[] pointBlue;
+
+    /** The lookup tables of this lighting, built on first use. */
+    private volatile ShadingTables tables;
+
+    /**
+     * Constructs a lighting without highlights and without gamma correction.
+     *
+     * @param ambient The intensity every channel gets at least, also where no light reaches, from 0 to 1.
+     * @param lights  The lights.
+     */
+    public Lighting(double ambient, Light... lights) {
+        this(ambient, 0, 1, 1, lights);
+    }
+
+    /**
+     * Constructs a lighting.
+     *
+     * @param ambient   The intensity every channel gets at least, from 0 to 1.
+     * @param specular  The intensity of the highlights, 0 for none.
+     * @param shininess The Blinn-Phong exponent; larger values give smaller highlights.
+     * @param gamma     The gamma of the colors, 1 to light them as they are.
+     * @param lights    The lights.
+     */
+    private Lighting(double ambient, double specular, double shininess, double gamma, Light[] lights) {
+        if (!(specular >= 0) || !(shininess > 0) || !(gamma > 0)) {
+            throw new IllegalArgumentException("Invalid lighting: specular " + specular + ", shininess " + shininess
+                    + ", gamma " + gamma);
+        }
+        this.ambient = ambient;
+        this.specular = specular;
+        this.shininess = shininess;
+        this.gamma = gamma;
+        this.lights = lights.clone();
+        int directional = 0;
+        for (Light light : lights) {
+            if (light.getType() == Light.Type.DIRECTIONAL) {
+                directional++;
+            }
+        }
+        int point = lights.length - directional;
+        directionX = new double[directional];
+        directionY = new double[directional];
+        directionZ = new double[directional];
+        directionalRed = new double[directional];
+        directionalGreen = new double[directional];
+        directionalBlue = new double[directional];
+        pointX = new double[point];
+        pointY = new double[point];
+        pointZ = new double[point];
+        pointFalloff = new double[point];
+        pointRed = new double[point];
+        pointGreen = new double[point];
+        pointBlue = new double[point];
+
+        int d = 0, p = 0;
+        for (Light light : lights) {
+            int color = light.getColor();
+            double red = ((color >>> 16) & 0xFF) / 255d, green = ((color >>> 8) & 0xFF) / 255d, blue = (color & 0xFF) / 255d;
+            if (light.getType() == Light.Type.DIRECTIONAL) {
+                directionX[d] = light.getX();
+                directionY[d] = light.getY();
+                directionZ[d] = light.getZ();
+                directionalRed[d] = red;
+                directionalGreen[d] = green;
+                directionalBlue[d] = blue;
+                d++;
+            } else {
+                pointX[p] = light.getX();
+                pointY[p] = light.getY();
+                pointZ[p] = light.getZ();
+                pointFalloff[p] = 1 / (light.getRange() * light.getRange());
+                pointRed[p] = red;
+                pointGreen[p] = green;
+                pointBlue[p] = blue;
+                p++;
+            }
+        }
+    }
+
+    /**
+     * Returns a lighting with an additional light.
+     *
+     * @param light The light to add.
+     * @return The new lighting.
+     */
+    public Lighting withLight(Light light) {
+        Light[] extended = Arrays.copyOf(lights, lights.length + 1);
+        extended[lights.length] = light;
+        return new Lighting(ambient, specular, shininess, gamma, extended);
+    }
+
+    /**
+     * Returns a lighting with the same lights and another ambient intensity.
+     *
+     * @param ambient The new ambient intensity.
+     * @return The new lighting.
+     */
+    public Lighting withAmbient(double ambient) {
+        return new Lighting(ambient, specular, shininess, gamma, lights);
+    }
+
+    /**
+     * Returns a lighting with the same lights and Blinn-Phong highlights.
+     *
+     * @param specular  The intensity of the highlights, 0 for none.
+     * @param shininess The exponent of the highlights, e.g. 8 for a broad and 64 for a sharp highlight.
+     * @return The new lighting.
+     */
+    public Lighting withSpecular(double specular, double shininess) {
+        return new Lighting(ambient, specular, shininess, gamma, lights);
+    }
+
+    /**
+     * Returns a lighting with the same lights that decodes the surface colors with a gamma before lighting them
+     * and encodes the result again, so intensities add up linearly.
+     *
+     * @param gamma The gamma of the colors, e.g. 2.2, or 1 to light the colors as they are.
+     * @return The new lighting.
+     */
+    public Lighting withGamma(double gamma) {
+        return new Lighting(ambient, specular, shininess, gamma, lights);
+    }
+
+    /**
+     * Returns the ambient intensity.
+     *
+     * @return The minimum intensity of every channel.
+     */
+    public double getAmbient() {
+        return ambient;
+    }
+
+    /**
+     * Returns the lights.
+     *
+     * @return A copy of the light array.
+     */
+    public Light[] getLights() {
+        return lights.clone();
+    }
+
+    /**
+     * Returns the intensity of the highlights.
+     *
+     * @return The specular intensity, 0 without highlights.
+     */
+    public double getSpecular() {
+        return specular;
+    }
+
+    /**
+     * Returns the Blinn-Phong exponent of the highlights.
+     *
+     * @return The shininess.
+     */
+    public double getShininess() {
+        return shininess;
+    }
+
+    /**
+     * Returns the gamma the colors are decoded with before lighting.
+     *
+     * @return The gamma, 1 without gamma correction.
+     */
+    public double getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Checks if the lighting has point lights, whose contribution depends on the position of the surface.
+     *
+     * @return True if there is at least one point light.
+     */
+    public boolean hasPointLights() {
+        return pointX.length > 0;
+    }
+
+    /**
+     * Checks if the result depends on the position of the surface and the camera, because of point lights or
+     * highlights.
+     *
+     * @return True if shading needs the surface position and the eye position.
+     */
+    public boolean dependsOnPosition() {
+        return pointX.length > 0 || specular > 0;
+    }
+
+    /**
+     * Returns the lookup tables of this lighting, building them on the first call. Building takes a few
+     * milliseconds, so a caller changing the lighting may call this right away instead of leaving it to the first
+     * frame. Concurrent first calls may build the tables twice, which is harmless.
+     *
+     * @return The tables.
+     */
+    public ShadingTables getTables() {
+        ShadingTables current = tables;
+        if (current == null) {
+            current = new ShadingTables(this);
+            tables = current;
+        }
+        return current;
+    }
+
+    /**
+     * Lights a surface point, with the lookup tables unless {@link ShadingTables#ENABLED} is false.
+     *
+     * @param color     The color of the surface as 0xRRGGBB.
+     * @param normalX   The x-component of the normalized surface normal in world space.
+     * @param normalY   The y-component of the normal.
+     * @param normalZ   The z-component of the normal.
+     * @param positionX The x-coordinate of the surface point in world space, only used by point lights and highlights.
+     * @param positionY The y-coordinate of the surface point.
+     * @param positionZ The z-coordinate of the surface point.
+     * @param eyeX      The x-coordinate of the camera in world space, only used by highlights.
+     * @param eyeY      The y-coordinate of the camera.
+     * @param eyeZ      The z-coordinate of the camera.
+     * @return The lit color as 0xRRGGBB.
+     */
+    public int shade(int color, double normalX, double normalY, double normalZ,
+                     double positionX, double positionY, double positionZ, double eyeX, double eyeY, double eyeZ) {
+        if (ShadingTables.ENABLED) {
+            return getTables().shade(color, normalX, normalY, normalZ, positionX, positionY, positionZ, eyeX, eyeY, eyeZ);
+        }
+        return shadeDirect(color, normalX, normalY, normalZ, positionX, positionY, positionZ, eyeX, eyeY, eyeZ);
+    }
+
+    /**
+     * Lights a surface point with the exact math, without lookup tables.
+     *
+     * @param color     The color of the surface as 0xRRGGBB.
+     * @param normalX   The x-component of the normalized surface normal in world space.
+     * @param normalY   The y-component of the normal.
+     * @param normalZ   The z-component of the normal.
+     * @param positionX The x-coordinate of the surface point in world space.
+     * @param positionY The y-coordinate of the surface point.
+     * @param positionZ The z-coordinate of the surface point.
+     * @param eyeX      The x-coordinate of the camera in world space.
+     * @param eyeY      The y-coordinate of the camera.
+     * @param eyeZ      The z-coordinate of the camera.
+     * @return The lit color as 0xRRGGBB.
+     */
+    public int shadeDirect(int color, double normalX, double normalY, double normalZ,
+                           double positionX, double positionY, double positionZ, double eyeX, double eyeY, double eyeZ) {
+        double red = 0, green = 0, blue = 0;
+        double specularRed = 0, specularGreen = 0, specularBlue = 0;
+        // Direction towards the eye, for the half vectors of the highlights
+        double viewX = 0, viewY = 0, viewZ = 0;
+        if (specular > 0) {
+            viewX = eyeX - positionX;
+            viewY = eyeY - positionY;
+            viewZ = eyeZ - positionZ;
+            double length = Math.sqrt(viewX * viewX + viewY * viewY + viewZ * viewZ);
+            if (length > 0) {
+                viewX /= length;
+                viewY /= length;
+                viewZ /= length;
+            }
+        }
+        for (int i = 0; i < directionX.length; i++) {
+            double cosine = normalX * directionX[i] + normalY * directionY[i] + normalZ * directionZ[i];
+            if (cosine > 0) {
+                red += cosine * directionalRed[i];
+                green += cosine * directionalGreen[i];
+                blue += cosine * directionalBlue[i];
+                if (specular > 0) {
+                    double highlight = highlight(normalX, normalY, normalZ,
+                            directionX[i] + viewX, directionY[i] + viewY, directionZ[i] + viewZ);
+                    specularRed += highlight * directionalRed[i];
+                    specularGreen += highlight * directionalGreen[i];
+                    specularBlue += highlight * directionalBlue[i];
+                }
+            }
+        }
+        for (int i = 0; i < pointX.length; i++) {
+            double dx = pointX[i] - positionX, dy = pointY[i] - positionY, dz = pointZ[i] - positionZ;
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            double distance = Math.sqrt(distanceSquared);
+            double cosine = (normalX * dx + normalY * dy + normalZ * dz) / distance;
+            if (cosine > 0) {
+                double attenuation = 1 / (1 + distanceSquared * pointFalloff[i]);
+                double intensity = cosine * attenuation;
+                red += intensity * pointRed[i];
+                green += intensity * pointGreen[i];
+                blue += intensity * pointBlue[i];
+                if (specular > 0) {
+                    double highlight = attenuation * highlight(normalX, normalY, normalZ,
+                            dx / distance + viewX, dy / distance + viewY, dz / distance + viewZ);
+                    specularRed += highlight * pointRed[i];
+                    specularGreen += highlight * pointGreen[i];
+                    specularBlue += highlight * pointBlue[i];
+                }
+            }
+        }
+        red = Math.max(ambient, red);
+        green = Math.max(ambient, green);
+        blue = Math.max(ambient, blue);
+        if (gamma != 1) {
+            return (encode(decode((color >>> 16) & 0xFF) * red + specularRed) << 16)
+                    | (encode(decode((color >>> 8) & 0xFF) * green + specularGreen) << 8)
+                    | encode(decode(color & 0xFF) * blue + specularBlue);
+        }
+        if (specular > 0) {
+            return scale(color, red, green, blue, specularRed, specularGreen, specularBlue);
+        }
+        return scale(color, red, green, blue);
+    }
+
+    /**
+     * Computes the Blinn-Phong highlight of one light.
+     *
+     * @param normalX The x-component of the normalized surface normal.
+     * @param normalY The y-component of the normal.
+     * @param normalZ The z-component of the normal.
+     * @param halfX   The x-component of the unnormalized half vector between the light and the eye direction.
+     * @param halfY   The y-component of the half vector.
+     * @param halfZ   The z-component of the half vector.
+     * @return The intensity of the highlight, including the specular intensity.
+     */
+    private double highlight(double normalX, double normalY, double normalZ, double halfX, double halfY, double halfZ) {
+        double cosine = (normalX * halfX + normalY * halfY + normalZ * halfZ)
+                / Math.sqrt(halfX * halfX + halfY * halfY + halfZ * halfZ);
+        return cosine > 0 ? specular * Math.pow(cosine, shininess) : 0;
+    }
+
+    /**
+     * Decodes a gamma encoded color channel.
+     *
+     * @param channel The channel from 0 to 255.
+     * @return The linear intensity from 0 to 1.
+     */
+    double decode(int channel) {
+        return Math.pow(channel / 255d, gamma);
+    }
+
+    /**
+     * Gamma encodes a linear intensity, saturating at full brightness.
+     *
+     * @param linear The linear intensity.
+     * @return The channel from 0 to 255.
+     */
+    int encode(double linear) {
+        return (int) (Math.pow(Math.min(1, linear), 1 / gamma) * 255 + 0.5);
+    }
+
+    /**
+     * Scales every channel of a color by its intensity, saturating at full brightness.
+     *
+     * @param color The color as 0xRRGGBB.
+     * @param red   The intensity of the red channel.
+     * @param green The intensity of the green channel.
+     * @param blue  The intensity of the blue channel.
+     * @return The scaled color as 0xRRGGBB.
+     */
+    static int scale(int color, double red, double green, double blue) {
+        int r = Math.min(255, (int) (((color >>> 16) & 0xFF) * red));
+        int g = Math.min(255, (int) (((color >>> 8) & 0xFF) * green));
+        int b = Math.min(255, (int) ((color & 0xFF) * blue));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Scales every channel of a color by its intensity and adds highlights, saturating at full brightness.
+     *
+     * @param color         The color as 0xRRGGBB.
+     * @param red           The intensity of the red channel.
+     * @param green         The intensity of the green channel.
+     * @param blue          The intensity of the blue channel.
+     * @param specularRed   The highlight on the red channel, where 1 is full brightness.
+     * @param specularGreen The highlight on the green channel.
+     * @param specularBlue  The highlight on the blue channel.
+     * @return The lit color as 0xRRGGBB.
+     */
+    static int scale(int color, double red, double green, double blue,
+                     double specularRed, double specularGreen, double specularBlue) {
+        int r = Math.min(255, (int) (((color >>> 16) & 0xFF) * red + 255 * specularRed));
+        int g = Math.min(255, (int) (((color >>> 8) & 0xFF) * green + 255 * specularGreen));
+        int b = Math.min(255, (int) ((color & 0xFF) * blue + 255 * specularBlue));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Describes the lighting.
+     *
+     * @return The parameters and the number of lights of each kind.
+     */
+    @Override
+    public String toString() {
+        return "Lighting[ambient=" + ambient + ", specular=" + specular + ", shininess=" + shininess + ", gamma=" + gamma
+                + ", directional=" + directionX.length + ", point=" + pointX.length + "]";
+    }
+}
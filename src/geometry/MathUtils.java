@@ -3,98 +3,67 @@ package geometry;
 import static engine.EngineFrame.ASPECT_RATIO;
 
 /**
- * The MathUtils class provides utility methods for mathematical operations and matrix transformations.
- * It includes methods for creating rotation matrices, translation matrices, and projection matrices.
+ * The MathUtils class holds the projection settings of the window: the field of view and the near and far
+ * planes, and the projection matrix built from them. Transformations are set directly on a {@link Matrix4}.
  * @author Giorgio
  */
 public class MathUtils {
 
-    /**
-     * Gets a rotation matrix around the Z-axis.
-     *
-     * @param theta The angle of rotation in radians.
-     * @return The rotation matrix.
-     */
-    public static Matrix getRotationZMatrix(double theta) {
-        Matrix rotationZMatrix = new Matrix();
-        rotationZMatrix.matrix[0][0] = Math.cos(theta);
-        rotationZMatrix.matrix[0][1] = Math.sin(theta);
-        rotationZMatrix.matrix[1][0] = -Math.sin(theta);
-        rotationZMatrix.matrix[1][1] = Math.cos(theta);
-        rotationZMatrix.matrix[2][2] = 1;
-        rotationZMatrix.matrix[3][3] = 1;
-        return rotationZMatrix;
-    }
+    /** Distance of the near clipping plane. */
+    private static final double NEAR = 0.1d;
+    /** Distance of the far clipping plane. */
+    private static final double FAR = 1000d;
+
+    /** The vertical field of view in degrees. */
+    private static double fieldOfView = 90d;
+
+    // cached projection matrix and the parameters it was built for
+    private static final Matrix4 projectionMatrix = new Matrix4();
+    private static double projectionAspectRatio = Double.NaN;
+    private static double projectionFieldOfView = Double.NaN;
 
     /**
-     * Gets a rotation matrix around the Y-axis.
+     * Gets the perspective projection matrix for the current aspect ratio and field of view.
+     * The matrix is cached and only rebuilt when one of them changes, so callers must not modify it.
      *
-     * @param theta The angle of rotation in radians.
-     * @return The rotation matrix.
+     * @return The projection matrix.
      */
-    public static Matrix getRotationYMatrix(double theta) {
-        Matrix rotationYMatrix = new Matrix();
-        rotationYMatrix.matrix[0][0] = Math.cos(theta);
-        rotationYMatrix.matrix[0][2] = Math.sin(theta);
-        rotationYMatrix.matrix[1][1] = 1;
-        rotationYMatrix.matrix[2][0] = -Math.sin(theta);
-        rotationYMatrix.matrix[2][2] = Math.cos(theta);
-        rotationYMatrix.matrix[3][3] = 1;
-        return rotationYMatrix;
+    public static Matrix4 getProjectionMatrix() {
+        if (ASPECT_RATIO != projectionAspectRatio || fieldOfView != projectionFieldOfView) {
+            setProjectionMatrix(projectionMatrix, ASPECT_RATIO, fieldOfView);
+            projectionAspectRatio = ASPECT_RATIO;
+            projectionFieldOfView = fieldOfView;
+        }
+        return projectionMatrix;
     }
 
     /**
-     * Gets a rotation matrix around the X-axis.
+     * Writes a perspective projection into an existing matrix, independent of the window.
      *
-     * @param theta The angle of rotation in radians.
-     * @return The rotation matrix.
+     * @param destination The matrix to overwrite.
+     * @param aspectRatio The height of the screen divided by its width.
+     * @param fieldOfView The vertical field of view in degrees.
+     * @return The destination matrix.
      */
-    public static Matrix getRotationXMatrix(double theta) {
-        Matrix rotationXMatrix = new Matrix();
-        rotationXMatrix.matrix[0][0] = 1;
-        rotationXMatrix.matrix[1][1] = Math.cos(theta * 0.5d);
-        rotationXMatrix.matrix[1][2] = Math.sin(theta * 0.5d);
-        rotationXMatrix.matrix[2][1] = -Math.sin(theta * 0.5d);
-        rotationXMatrix.matrix[2][2] = Math.cos(theta * 0.5d);
-        rotationXMatrix.matrix[3][3] = 1;
-        return rotationXMatrix;
+    public static Matrix4 setProjectionMatrix(Matrix4 destination, double aspectRatio, double fieldOfView) {
+        return destination.setPerspective(aspectRatio, fieldOfView, NEAR, FAR);
     }
 
     /**
-     * Gets a translation matrix.
+     * Returns the field of view used by the projection matrix.
      *
-     * @param vector3D The translation vector.
-     * @return The translation matrix.
+     * @return The vertical field of view in degrees.
      */
-    public static Matrix getTranslationMatrix(Vector3D vector3D) {
-        Matrix translationMatrix = new Matrix();
-        translationMatrix.matrix[0][0] = 1;
-        translationMatrix.matrix[1][1] = 1;
-        translationMatrix.matrix[2][2] = 1;
-        translationMatrix.matrix[3][3] = 1;
-        translationMatrix.matrix[3][0] = vector3D.x;
-        translationMatrix.matrix[3][1] = vector3D.y;
-        translationMatrix.matrix[3][2] = vector3D.z;
-        return translationMatrix;
+    public static double getFieldOfView() {
+        return fieldOfView;
     }
 
     /**
-     * Gets a perspective projection matrix.
+     * Sets the field of view used by the projection matrix.
      *
-     * @return The projection matrix.
+     * @param degrees The vertical field of view in degrees.
      */
-    public static Matrix getProjectionMatrix() {
-        double near = 0.1d;
-        double far = 1000d;
-        double fov = 90d;
-        double fovRad = 1d / Math.tan(fov * 0.5d / 180d * Math.PI);
-
-        Matrix projectionMatrix = new Matrix();
-        projectionMatrix.matrix[0][0] = ASPECT_RATIO * fovRad;
-        projectionMatrix.matrix[1][1] = fovRad;
-        projectionMatrix.matrix[2][2] = far / (far - near);
-        projectionMatrix.matrix[2][3] = 1d;
-        projectionMatrix.matrix[3][2] = (-far * near) / (far - near);
-        return projectionMatrix;
+    public static void setFieldOfView(double degrees) {
+        fieldOfView = degrees;
     }
 }
@@ -0,0 +1,396 @@
+package geometry;
+
+/**
+ * The Matrix4 class is a 4x4 matrix stored in sixteen scalar fields, named after their row and column.
+ * Points are row vectors multiplied from the left, so the translation lives in row 3 and
+ * {@code a.mulInto(b, d)} describes applying a first and b second.
+ * <p>
+ * The fields avoid the row arrays and bounds checks of a two-dimensional array; all operations write into an
+ * existing matrix and never allocate. The fused operations such as {@link #rotateX(double)} and
+ * {@link #translate(double, double, double)} append a transformation in place and only compute the entries it changes.
+ * @author Giorgio
+ */
+public final class Matrix4 {
+    /** Number of elements of a matrix stored in an array by {@link #get(double[], int)}. */
+    public static final int SIZE = 16;
+
+    public double m00, m01, m02, m03;
+    public double m10, m11, m12, m13;
+    public double m20, m21, m22, m23;
+    public double m30, m31, m32, m33;
+
+    /**
+     * Constructs an identity matrix.
+     */
+    public Matrix4() {
+        setIdentity();
+    }
+
+    /**
+     * Constructs a copy of another matrix.
+     *
+     * @param other The matrix to copy.
+     */
+    public Matrix4(Matrix4 other) {
+        set(other);
+    }
+
+    /**
+     * Sets this matrix to the identity.
+     *
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 setIdentity() {
+        m00 = 1; m01 = 0; m02 = 0; m03 = 0;
+        m10 = 0; m11 = 1; m12 = 0; m13 = 0;
+        m20 = 0; m21 = 0; m22 = 1; m23 = 0;
+        m30 = 0; m31 = 0; m32 = 0; m33 = 1;
+        return this;
+    }
+
+    /**
+     * Copies another matrix into this matrix.
+     *
+     * @param other The matrix to copy.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 set(Matrix4 other) {
+        m00 = other.m00; m01 = other.m01; m02 = other.m02; m03 = other.m03;
+        m10 = other.m10; m11 = other.m11; m12 = other.m12; m13 = other.m13;
+        m20 = other.m20; m21 = other.m21; m22 = other.m22; m23 = other.m23;
+        m30 = other.m30; m31 = other.m31; m32 = other.m32; m33 = other.m33;
+        return this;
+    }
+
+    /**
+     * Reads this matrix from an array, row by row.
+     *
+     * @param array  The array holding the elements.
+     * @param offset The index of the element in row 0, column 0.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 set(double[] array, int offset) {
+        m00 = array[offset]; m01 = array[offset + 1]; m02 = array[offset + 2]; m03 = array[offset + 3];
+        m10 = array[offset + 4]; m11 = array[offset + 5]; m12 = array[offset + 6]; m13 = array[offset + 7];
+        m20 = array[offset + 8]; m21 = array[offset + 9]; m22 = array[offset + 10]; m23 = array[offset + 11];
+        m30 = array[offset + 12]; m31 = array[offset + 13]; m32 = array[offset + 14]; m33 = array[offset + 15];
+        return this;
+    }
+
+    /**
+     * Writes this matrix into an array, row by row.
+     *
+     * @param array  The array receiving the {@link #SIZE} elements.
+     * @param offset The index for the element in row 0, column 0.
+     * @return The array.
+     */
+    public double[] get(double[] array, int offset) {
+        array[offset] = m00; array[offset + 1] = m01; array[offset + 2] = m02; array[offset + 3] = m03;
+        array[offset + 4] = m10; array[offset + 5] = m11; array[offset + 6] = m12; array[offset + 7] = m13;
+        array[offset + 8] = m20; array[offset + 9] = m21; array[offset + 10] = m22; array[offset + 11] = m23;
+        array[offset + 12] = m30; array[offset + 13] = m31; array[offset + 14] = m32; array[offset + 15] = m33;
+        return array;
+    }
+
+    /**
+     * Returns an element by its position. Meant for generic code; the fields are faster.
+     *
+     * @param row    The row, 0 to 3.
+     * @param column The column, 0 to 3.
+     * @return The element.
+     */
+    public double get(int row, int column) {
+        return switch (row * 4 + column) {
+            case 0 -> m00;
+            case 1 -> m01;
+            case 2 -> m02;
+            case 3 -> m03;
+            case 4 -> m10;
+            case 5 -> m11;
+            case 6 -> m12;
+            case 7 -> m13;
+            case 8 -> m20;
+            case 9 -> m21;
+            case 10 -> m22;
+            case 11 -> m23;
+            case 12 -> m30;
+            case 13 -> m31;
+            case 14 -> m32;
+            case 15 -> m33;
+            default -> throw new IndexOutOfBoundsException("No element at " + row + ", " + column);
+        };
+    }
+
+    /**
+     * Multiplies this matrix by another one, i.e. applies this transformation first and the other one second.
+     * The destination may be this matrix or the other matrix.
+     *
+     * @param other       The right-hand matrix.
+     * @param destination The matrix receiving the product.
+     * @return The destination matrix.
+     */
+    public Matrix4 mulInto(Matrix4 other, Matrix4 destination) {
+        double b00 = other.m00, b01 = other.m01, b02 = other.m02, b03 = other.m03;
+        double b10 = other.m10, b11 = other.m11, b12 = other.m12, b13 = other.m13;
+        double b20 = other.m20, b21 = other.m21, b22 = other.m22, b23 = other.m23;
+        double b30 = other.m30, b31 = other.m31, b32 = other.m32, b33 = other.m33;
+        double a0 = m00, a1 = m01, a2 = m02, a3 = m03;
+        double r00 = a0 * b00 + a1 * b10 + a2 * b20 + a3 * b30;
+        double r01 = a0 * b01 + a1 * b11 + a2 * b21 + a3 * b31;
+        double r02 = a0 * b02 + a1 * b12 + a2 * b22 + a3 * b32;
+        double r03 = a0 * b03 + a1 * b13 + a2 * b23 + a3 * b33;
+        a0 = m10; a1 = m11; a2 = m12; a3 = m13;
+        double r10 = a0 * b00 + a1 * b10 + a2 * b20 + a3 * b30;
+        double r11 = a0 * b01 + a1 * b11 + a2 * b21 + a3 * b31;
+        double r12 = a0 * b02 + a1 * b12 + a2 * b22 + a3 * b32;
+        double r13 = a0 * b03 + a1 * b13 + a2 * b23 + a3 * b33;
+        a0 = m20; a1 = m21; a2 = m22; a3 = m23;
+        double r20 = a0 * b00 + a1 * b10 + a2 * b20 + a3 * b30;
+        double r21 = a0 * b01 + a1 * b11 + a2 * b21 + a3 * b31;
+        double r22 = a0 * b02 + a1 * b12 + a2 * b22 + a3 * b32;
+        double r23 = a0 * b03 + a1 * b13 + a2 * b23 + a3 * b33;
+        a0 = m30; a1 = m31; a2 = m32; a3 = m33;
+        double r30 = a0 * b00 + a1 * b10 + a2 * b20 + a3 * b30;
+        double r31 = a0 * b01 + a1 * b11 + a2 * b21 + a3 * b31;
+        double r32 = a0 * b02 + a1 * b12 + a2 * b22 + a3 * b32;
+        double r33 = a0 * b03 + a1 * b13 + a2 * b23 + a3 * b33;
+        destination.m00 = r00; destination.m01 = r01; destination.m02 = r02; destination.m03 = r03;
+        destination.m10 = r10; destination.m11 = r11; destination.m12 = r12; destination.m13 = r13;
+        destination.m20 = r20; destination.m21 = r21; destination.m22 = r22; destination.m23 = r23;
+        destination.m30 = r30; destination.m31 = r31; destination.m32 = r32; destination.m33 = r33;
+        return destination;
+    }
+
+    /**
+     * Sets this matrix to a rotation around the x-axis.
+     *
+     * @param theta The angle in radians.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 setRotationX(double theta) {
+        double cos = Math.cos(theta), sin = Math.sin(theta);
+        setIdentity();
+        m11 = cos;
+        m12 = sin;
+        m21 = -sin;
+        m22 = cos;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a rotation around the y-axis.
+     *
+     * @param theta The angle in radians.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 setRotationY(double theta) {
+        double cos = Math.cos(theta), sin = Math.sin(theta);
+        setIdentity();
+        m00 = cos;
+        m02 = sin;
+        m20 = -sin;
+        m22 = cos;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a rotation around the z-axis.
+     *
+     * @param theta The angle in radians.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 setRotationZ(double theta) {
+        double cos = Math.cos(theta), sin = Math.sin(theta);
+        setIdentity();
+        m00 = cos;
+        m01 = sin;
+        m10 = -sin;
+        m11 = cos;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a translation.
+     *
+     * @param x The translation along the x-axis.
+     * @param y The translation along the y-axis.
+     * @param z The translation along the z-axis.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 setTranslation(double x, double y, double z) {
+        setIdentity();
+        m30 = x;
+        m31 = y;
+        m32 = z;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a rotation around the z-axis followed by a translation, in one step.
+     *
+     * @param theta The angle in radians.
+     * @param x     The translation along the x-axis.
+     * @param y     The translation along the y-axis.
+     * @param z     The translation along the z-axis.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 setRotationZTranslation(double theta, double x, double y, double z) {
+        setRotationZ(theta);
+        m30 = x;
+        m31 = y;
+        m32 = z;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a perspective projection. The depth is mapped to 0 at the near and 1 at the far plane
+     * and the depth ends up in w.
+     *
+     * @param aspectRatio The height of the screen divided by its width.
+     * @param fieldOfView The vertical field of view in degrees.
+     * @param near        The distance of the near plane.
+     * @param far         The distance of the far plane.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 setPerspective(double aspectRatio, double fieldOfView, double near, double far) {
+        double fovRad = 1d / Math.tan(fieldOfView * 0.5d / 180d * Math.PI);
+        setIdentity();
+        m00 = aspectRatio * fovRad;
+        m11 = fovRad;
+        m22 = far / (far - near);
+        m23 = 1d;
+        m32 = (-far * near) / (far - near);
+        m33 = 0;
+        return this;
+    }
+
+    /**
+     * Appends a rotation around the x-axis: this = this * rotationX(theta). Only columns 1 and 2 change.
+     *
+     * @param theta The angle in radians.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 rotateX(double theta) {
+        double cos = Math.cos(theta), sin = Math.sin(theta);
+        double a = m01, b = m02;
+        m01 = a * cos - b * sin;
+        m02 = a * sin + b * cos;
+        a = m11;
+        b = m12;
+        m11 = a * cos - b * sin;
+        m12 = a * sin + b * cos;
+        a = m21;
+        b = m22;
+        m21 = a * cos - b * sin;
+        m22 = a * sin + b * cos;
+        a = m31;
+        b = m32;
+        m31 = a * cos - b * sin;
+        m32 = a * sin + b * cos;
+        return this;
+    }
+
+    /**
+     * Appends a rotation around the y-axis: this = this * rotationY(theta). Only columns 0 and 2 change.
+     *
+     * @param theta The angle in radians.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 rotateY(double theta) {
+        double cos = Math.cos(theta), sin = Math.sin(theta);
+        double a = m00, b = m02;
+        m00 = a * cos - b * sin;
+        m02 = a * sin + b * cos;
+        a = m10;
+        b = m12;
+        m10 = a * cos - b * sin;
+        m12 = a * sin + b * cos;
+        a = m20;
+        b = m22;
+        m20 = a * cos - b * sin;
+        m22 = a * sin + b * cos;
+        a = m30;
+        b = m32;
+        m30 = a * cos - b * sin;
+        m32 = a * sin + b * cos;
+        return this;
+    }
+
+    /**
+     * Appends a rotation around the z-axis: this = this * rotationZ(theta). Only columns 0 and 1 change.
+     *
+     * @param theta The angle in radians.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 rotateZ(double theta) {
+        double cos = Math.cos(theta), sin = Math.sin(theta);
+        double a = m00, b = m01;
+        m00 = a * cos - b * sin;
+        m01 = a * sin + b * cos;
+        a = m10;
+        b = m11;
+        m10 = a * cos - b * sin;
+        m11 = a * sin + b * cos;
+        a = m20;
+        b = m21;
+        m20 = a * cos - b * sin;
+        m21 = a * sin + b * cos;
+        a = m30;
+        b = m31;
+        m30 = a * cos - b * sin;
+        m31 = a * sin + b * cos;
+        return this;
+    }
+
+    /**
+     * Appends a translation: this = this * translation(x, y, z). For affine matrices only row 3 changes.
+     *
+     * @param x The translation along the x-axis.
+     * @param y The translation along the y-axis.
+     * @param z The translation along the z-axis.
+     * @return This matrix, for chaining.
+     */
+    public Matrix4 translate(double x, double y, double z) {
+        m00 += m03 * x;
+        m01 += m03 * y;
+        m02 += m03 * z;
+        m10 += m13 * x;
+        m11 += m13 * y;
+        m12 += m13 * z;
+        m20 += m23 * x;
+        m21 += m23 * y;
+        m22 += m23 * z;
+        m30 += m33 * x;
+        m31 += m33 * y;
+        m32 += m33 * z;
+        return this;
+    }
+
+    /**
+     * Transforms a point, including its homogeneous coordinate, and writes the result into a destination.
+     *
+     * @param vector      The point to transform.
+     * @param destination The vector receiving the result. It may be the transformed vector.
+     * @return The destination vector.
+     */
+    public Vector3D transform(Vector3D vector, Vector3D destination) {
+        double x = vector.x, y = vector.y, z = vector.z, w = vector.w;
+        destination.x = x * m00 + y * m10 + z * m20 + w * m30;
+        destination.y = x * m01 + y * m11 + z * m21 + w * m31;
+        destination.z = x * m02 + y * m12 + z * m22 + w * m32;
+        destination.w = x * m03 + y * m13 + z * m23 + w * m33;
+        return destination;
+    }
+
+    /**
+     * Returns a string representation of the matrix, one row per line.
+     *
+     * @return The string representation of the matrix.
+     */
+    public String toString() {
+        return "[" + m00 + ", " + m01 + ", " + m02 + ", " + m03 + "]\n"
+                + "[" + m10 + ", " + m11 + ", " + m12 + ", " + m13 + "]\n"
+                + "[" + m20 + ", " + m21 + ", " + m22 + ", " + m23 + "]\n"
+                + "[" + m30 + ", " + m31 + ", " + m32 + ", " + m33 + "]";
+    }
+}
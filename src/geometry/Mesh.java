@@ -1,22 +1,95 @@
 package geometry;
 
-import engine.Engine;
-import engine.EngineFrame;
+import loader.AssetCache;
+import loader.MeshHandle;
+import render.TriangleBuffer;
 
-import java.awt.Color;
-import java.awt.Graphics;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.*;
+import java.util.Arrays;
+import java.util.StringJoiner;
 
 /**
  * The Mesh class represents a 3D mesh composed of triangles.
+ * The geometry is stored as indexed {@link MeshData}, so every shared vertex is transformed once per frame.
+ * Large meshes are split into {@link MeshClusters}, which are frustum- and backface-culled as a whole before
+ * their triangles are processed. Optional {@link LevelOfDetail}s replace the geometry by a simplified level
+ * once the mesh is small enough on the screen.
+ * <p>
+ * The mesh is lit by a {@link Lighting} as selected by its {@link Shading}: per face with the face normals of the
+ * transform stage, or per vertex with the vertex normals computed once when the geometry is prepared, which the
+ * rasterizer interpolates. Vertices are lit at most once per call of project(), however many triangles share them.
+ * <p>
+ * A mesh created from a {@link MeshHandle} starts empty and takes over the geometry loaded in the background
+ * whenever {@link #refresh()} is called, which the scene does once per frame.
  * @author Giorgio
  */
 public class Mesh {
-    /** List of triangles forming the mesh. */
-    public List<Triangle> triangles;
+    /** Indexed geometry of the mesh, in cluster order if the mesh is clustered. */
+    private MeshData data;
+
+    /** Triangle clusters of the mesh, or null if it is too small to be clustered. */
+    private MeshClusters clusters;
+
+    /** Simplified levels of the geometry, or null if none were generated. */
+    private LevelOfDetail levelOfDetail;
+
+    /** The geometry and clusters of every level of detail, or only of the original mesh. */
+    private MeshData[] levelData;
+    private MeshClusters[] levelClusters;
+
+    /** The largest error in pixels a simplified level may have on the screen. */
+    private double levelOfDetailTolerance = 1;
+    private int lastLevel;
+    private final BoundingSphere worldSphere = new BoundingSphere();
+
+    /** Bounds of the geometry in object space. */
+    private BoundingBox boundingBox;
+    private BoundingSphere boundingSphere;
+
+    /** Geometry loaded in the background and prepared for {@link #refresh()}, or null if there is none. */
+    private volatile MeshGeometry pending;
+    private int geometryVersion;
+    /** Counts every change of how the mesh is drawn: its geometry and the settings below. */
+    private int version;
+
+    /** Batch transform stage holding the per-vertex and per-face results of the last frame. */
+    private final TransformStage transformStage = new TransformStage();
+
+    /** Clipper for the few triangles that cross the near plane or leave the guard band. */
+    private final Clipper clipper = new Clipper();
+
+    // culling state reused by project(): the frustum in object space, the visible triangle ranges and the
+    // scratch of the cluster hierarchies, kept here since the clusters may be shared by meshes on other threads
+    private final Matrix4 clipMatrix = new Matrix4();
+    private final Frustum frustum = new Frustum();
+    private int[] ranges = new int[2];
+    private int[] leaves = new int[0];
+    private int[] masks = new int[0];
+    private final int[] nodeStack = new int[BoundingVolumeHierarchy.STACK_SIZE];
+    private final int[] maskStack = new int[BoundingVolumeHierarchy.STACK_SIZE];
+    private double objectCameraX;
+    private double objectCameraY;
+    private double objectCameraZ;
+    private int lastTrianglesProcessed;
+
+    /** How the mesh is lit. */
+    private Shading shading = Shading.DEFAULT;
+
+    // cofactors of the linear part of the world matrix: the inverse transpose times the determinant
+    private final double[] cofactors = new double[9];
+    private double normalSign;
+
+    // colors of the vertices lit by the current call of project(): valid where the stamp equals the current one
+    private int[] vertexColors = new int[0];
+    private int[] vertexStamps = new int[0];
+    private int stamp;
+    // camera position in world space of the current call of project(), for the highlights
+    private double eyeX;
+    private double eyeY;
+    private double eyeZ;
+
+    /** The color of meshes drawn without an explicit color, as 0xRRGGBB. */
+    public static final int DEFAULT_COLOR = 0x00FF00;
 
     /**
      * Constructs a mesh from an array of triangles.
@@ -24,7 +97,25 @@ public class Mesh {
      * @param triangles The triangles forming the mesh.
      */
     public Mesh(Triangle... triangles) {
-        this.triangles = List.of(triangles);
+        setData(MeshData.fromTriangles(triangles));
+    }
+
+    /**
+     * Constructs a mesh from already indexed geometry.
+     *
+     * @param data The geometry of the mesh.
+     */
+    public Mesh(MeshData data) {
+        setData(data);
+    }
+
+    /**
+     * Constructs a mesh from prepared geometry, which may be shared with other meshes.
+     *
+     * @param geometry The geometry of the mesh.
+     */
+    public Mesh(MeshGeometry geometry) {
+        apply(geometry);
     }
 
     /**
@@ -33,123 +124,658 @@ public class Mesh {
      * @param filePath The path to the OBJ file.
      */
     public Mesh(String filePath) {
-        triangles = new ArrayList<>();
         loadFromObjectFile(filePath);
     }
 
     /**
-     * Loads vertices and faces from an OBJ file to construct the mesh.
+     * Constructs an empty mesh that takes over the geometry of a background load whenever {@link #refresh()} is
+     * called. Snapshots are clustered and bounded on the loading thread, so refreshing only swaps references.
+     * If loading fails, the error is printed and the mesh keeps the geometry loaded until then.
+     *
+     * @param handle The handle of the load.
+     */
+    public Mesh(MeshHandle handle) {
+        apply(MeshGeometry.of(new MeshData.Builder().build()));
+        handle.addListener(snapshot -> pending = MeshGeometry.of(snapshot));
+        handle.getFuture().exceptionally(failure -> {
+            failure.printStackTrace();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the indexed geometry of the mesh.
+     *
+     * @return The mesh data.
+     */
+    public MeshData getData() {
+        return data;
+    }
+
+    /**
+     * Returns the triangle clusters of the mesh.
+     *
+     * @return The clusters, or null if the mesh has fewer than {@link MeshClusters#MIN_TRIANGLES} triangles.
+     */
+    public MeshClusters getClusters() {
+        return clusters;
+    }
+
+    /**
+     * Returns the axis-aligned bounding box of the mesh in object space.
+     *
+     * @return The bounding box. It must not be modified.
+     */
+    public BoundingBox getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * Returns the bounding sphere of the mesh in object space.
+     *
+     * @return The bounding sphere. It must not be modified.
+     */
+    public BoundingSphere getBoundingSphere() {
+        return boundingSphere;
+    }
+
+    /**
+     * Returns the number of triangles that survived cluster culling in the last call of project(),
+     * i.e. the triangles that got per-triangle work.
+     *
+     * @return The triangle count.
+     */
+    public int getLastTrianglesProcessed() {
+        return lastTrianglesProcessed;
+    }
+
+    /**
+     * Builds simplified levels of detail of the current geometry. From then on, project() draws the coarsest
+     * level whose error stays within {@link #setLevelOfDetailTolerance(double)} pixels on the screen.
+     * Meshes below twice {@link LevelOfDetail#MIN_TRIANGLES} triangles only keep their original level.
+     *
+     * @return The levels of detail.
+     */
+    public LevelOfDetail generateLevelsOfDetail() {
+        LevelOfDetail levels = LevelOfDetail.build(data);
+        MeshData[] newData = new MeshData[levels.getLevelCount()];
+        MeshClusters[] newClusters = new MeshClusters[newData.length];
+        int maxClusters = 1, maxLeaves = 0;
+        for (int level = 0; level < newData.length; level++) {
+            MeshData levelGeometry = levels.getLevel(level);
+            if (levelGeometry.triangleCount >= MeshClusters.MIN_TRIANGLES) {
+                newClusters[level] = MeshClusters.build(levelGeometry);
+                levelGeometry = newClusters[level].getData();
+                maxClusters = Math.max(maxClusters, newClusters[level].getClusterCount());
+                maxLeaves = Math.max(maxLeaves, newClusters[level].getMaxLeafCount());
+            }
+            newData[level] = levelGeometry;
+        }
+        levelOfDetail = levels;
+        levelData = newData;
+        levelClusters = newClusters;
+        data = newData[0];
+        clusters = newClusters[0];
+        ranges = new int[maxClusters * 2];
+        leaves = new int[maxLeaves];
+        masks = new int[maxLeaves];
+        geometryVersion++;
+        version++;
+        return levels;
+    }
+
+    /**
+     * Returns the levels of detail of the mesh.
+     *
+     * @return The levels, or null if {@link #generateLevelsOfDetail()} was not called.
+     */
+    public LevelOfDetail getLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    /**
+     * Sets the largest error a simplified level may have on the screen.
+     *
+     * @param pixels The tolerance in pixels, 1 by default. 0 always draws the original mesh.
+     */
+    public void setLevelOfDetailTolerance(double pixels) {
+        if (!(pixels >= 0)) {
+            throw new IllegalArgumentException("The tolerance must not be negative: " + pixels);
+        }
+        levelOfDetailTolerance = pixels;
+        version++;
+    }
+
+    /**
+     * Returns the level of detail drawn by the last call of project().
+     *
+     * @return The level, 0 for the original mesh.
+     */
+    public int getLastLevel() {
+        return lastLevel;
+    }
+
+    /**
+     * Sets the floating-point precision the mesh is transformed with. The float copy of the positions is created
+     * on the first float run.
+     *
+     * @param precision The precision.
+     */
+    public void setPrecision(Precision precision) {
+        transformStage.setPrecision(precision);
+        version++;
+    }
+
+    /**
+     * Returns the floating-point precision the mesh is transformed with.
+     *
+     * @return The precision, {@link Precision#DEFAULT} unless changed.
+     */
+    public Precision getPrecision() {
+        return transformStage.getPrecision();
+    }
+
+    /**
+     * Sets how the mesh is lit.
+     *
+     * @param shading The shading.
+     */
+    public void setShading(Shading shading) {
+        this.shading = shading;
+        version++;
+    }
+
+    /**
+     * Returns how the mesh is lit.
+     *
+     * @return The shading, {@link Shading#DEFAULT} unless changed.
+     */
+    public Shading getShading() {
+        return shading;
+    }
+
+    /**
+     * Returns the transform stage of the mesh, e.g. to choose between its scalar and SIMD implementations.
+     *
+     * @return The transform stage.
+     */
+    public TransformStage getTransformStage() {
+        return transformStage;
+    }
+
+    /**
+     * Loads vertices and faces from an OBJ file to construct the mesh. The geometry comes from the
+     * {@link AssetCache#getDefault() default asset cache}, so meshes of the same file share it.
+     * If the file cannot be loaded, the error is printed and the mesh stays empty.
      *
      * @param filePath The path to the OBJ file.
      */
     public void loadFromObjectFile(String filePath) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            List<Vector3D> vertices = new ArrayList<>();
-
-            // Read each line from the file
-            while ((line = br.readLine()) != null) {
-                String[] tokens = line.split("\\s+");
-
-                switch (tokens[0]) {
-                    case "v": // Vertex
-                        // Parse vertex coordinates and add to the list of vertices
-                        double x = Double.parseDouble(tokens[1]);
-                        double y = Double.parseDouble(tokens[2]);
-                        double z = Double.parseDouble(tokens[3]);
-                        vertices.add(new Vector3D(x, y, z));
-                        break;
-
-                    case "f": // Face
-                        // Parse face indices and create a new triangle
-                        int[] indices = new int[3];
-                        for (int i = 0; i < 3; i++) {
-                            indices[i] = Integer.parseInt(tokens[i + 1]) - 1; // Subtract 1 to convert to 0-based indexing
-                        }
-                        triangles.add(new Triangle(vertices.get(indices[0]), vertices.get(indices[1]), vertices.get(indices[2])));
-                        break;
-
-                    default:
-                        break;
-                }
-            }
+        try {
+            apply(AssetCache.getDefault().get(filePath));
         } catch (IOException e) {
             e.printStackTrace();
+            setData(new MeshData.Builder().build());
+        }
+    }
+
+    /**
+     * Takes over geometry that was loaded in the background since the last call. Must be called on the thread
+     * that draws the mesh, before it is culled and projected. Levels of detail of the previous geometry are dropped.
+     *
+     * @return True if the geometry changed.
+     */
+    public boolean refresh() {
+        MeshGeometry geometry = pending;
+        if (geometry == null) {
+            return false;
         }
+        pending = null;
+        apply(geometry);
+        return true;
+    }
+
+    /**
+     * Returns a number that changes whenever the geometry of the mesh is replaced, e.g. by {@link #refresh()},
+     * so users caching anything derived from the geometry or its bounds know when to update it.
+     *
+     * @return The version of the geometry.
+     */
+    public int getGeometryVersion() {
+        return geometryVersion;
+    }
+
+    /**
+     * Returns a number that changes whenever the mesh may be drawn differently: with the geometry, the levels of
+     * detail, the precision or the shading. Renderers compare it to find meshes to redraw.
+     *
+     * @return The version of the mesh.
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
-     * Paints the mesh on the specified Graphics context after transformations.
+     * Replaces the geometry, clustering it if it is large enough, and computes its bounds.
+     * Levels of detail of the previous geometry are dropped.
      *
-     * @param g            The Graphics context to paint on.
+     * @param data The new geometry.
+     */
+    private void setData(MeshData data) {
+        apply(MeshGeometry.of(data));
+    }
+
+    /**
+     * Replaces the geometry at the next call of {@link #refresh()}, e.g. with a file that changed on disk.
+     * May be called from any thread; if it is called again before the refresh, only the latest geometry is used.
+     *
+     * @param geometry The new geometry.
+     */
+    public void replaceGeometry(MeshGeometry geometry) {
+        pending = geometry;
+    }
+
+    /**
+     * Makes prepared geometry the geometry of the mesh.
+     *
+     * @param geometry The prepared geometry.
+     */
+    private void apply(MeshGeometry geometry) {
+        data = geometry.getData();
+        clusters = geometry.getClusters();
+        ranges = new int[clusters != null ? clusters.getClusterCount() * 2 : 2];
+        leaves = new int[clusters != null ? clusters.getMaxLeafCount() : 0];
+        masks = new int[leaves.length];
+        levelOfDetail = null;
+        levelData = new MeshData[]{data};
+        levelClusters = new MeshClusters[]{clusters};
+        boundingBox = geometry.getBoundingBox();
+        boundingSphere = geometry.getBoundingSphere();
+        geometryVersion++;
+        version++;
+    }
+
+    /**
+     * Transforms, culls and projects the mesh and appends its visible triangles to a triangle buffer.
+     * Visibility between triangles is resolved later by the depth buffer, so no sorting is needed.
+     *
+     * @param triangles    The buffer receiving the screen-space triangles.
      * @param worldMatrix  The world transformation matrix.
      * @param camera       The camera position in 3D space.
+     * @param width        The width of the screen in pixels.
+     * @param height       The height of the screen in pixels.
      */
-    public void paint(Graphics g, Matrix worldMatrix, Vector3D camera) {
-        List<Triangle> trianglesToRaster = new ArrayList<>();
-
-        for (Triangle triangle : triangles) {
-
-            Triangle projectedTriangle, transformedTriangle, viewedTriangle;
-
-            // Apply world transformation to the triangle vertices
-            transformedTriangle = new Triangle(
-                    triangle.points[0].multiply(worldMatrix),
-                    triangle.points[1].multiply(worldMatrix),
-                    triangle.points[2].multiply(worldMatrix)
-            );
-
-            Vector3D normal = transformedTriangle.getNormal();
-            normal.normalize();
-            Vector3D cameraRay = transformedTriangle.points[0].subtract(camera);
-
-            // Check if the triangle is facing the camera
-            if (normal.dotProduct(cameraRay) < 0) {
-
-                Matrix projectionMatrix = MathUtils.getProjectionMatrix();
-                // Apply projection transformation to the triangle vertices
-                projectedTriangle = new Triangle(
-                        transformedTriangle.points[0].multiply(projectionMatrix),
-                        transformedTriangle.points[1].multiply(projectionMatrix),
-                        transformedTriangle.points[2].multiply(projectionMatrix)
-                );
-
-                // Apply perspective division to obtain normalized device coordinates (NDC).
-                // This step transforms the projected points from homogeneous coordinates to NDC.
-                Vector3D offsetView = new Vector3D(1, 1, 0);
-                for (int i = 0; i < 3; i++) {
-                    projectedTriangle.points[i] = projectedTriangle.points[i]
-                            .divide(projectedTriangle.points[i].w)
-                            .add(offsetView)
-                            .multiply(new Vector3D(0.5d * EngineFrame.WIDTH, 0.5d * EngineFrame.HEIGHT, 1)
-                    );
+    public void project(TriangleBuffer triangles, Matrix4 worldMatrix, Vector3D camera, int width, int height) {
+        project(triangles, worldMatrix, MathUtils.getProjectionMatrix(), camera, width, height);
+    }
+
+    /**
+     * Transforms, culls and projects the mesh with an explicit projection matrix, independent of any window.
+     * Triangles completely outside of one frustum plane are rejected. Triangles crossing the near plane or the
+     * guard band around the screen are clipped in homogeneous space; all others are passed on unclipped and the
+     * rasterizer's screen bounds take care of the rest.
+     * Before that, the whole mesh and then its clusters are tested against the view frustum and clusters facing
+     * away from the camera are dropped, so only the surviving triangles get per-triangle work.
+     * If levels of detail were generated, the coarsest one that is accurate enough at the mesh's distance is drawn.
+     *
+     * @param triangles        The buffer receiving the screen-space triangles.
+     * @param worldMatrix      The world transformation matrix.
+     * @param projectionMatrix The projection matrix.
+     * @param camera           The camera position in 3D space.
+     * @param width            The width of the screen in pixels.
+     * @param height           The height of the screen in pixels.
+     */
+    public void project(TriangleBuffer triangles, Matrix4 worldMatrix, Matrix4 projectionMatrix, Vector3D camera, int width, int height) {
+        project(triangles, worldMatrix, projectionMatrix, camera, width, height, DEFAULT_COLOR);
+    }
+
+    /**
+     * Transforms, culls and projects the mesh in a specific color, e.g. one instance of many sharing this mesh.
+     *
+     * @param triangles        The buffer receiving the screen-space triangles.
+     * @param worldMatrix      The world transformation matrix.
+     * @param projectionMatrix The projection matrix.
+     * @param camera           The camera position in 3D space.
+     * @param width            The width of the screen in pixels.
+     * @param height           The height of the screen in pixels.
+     * @param color            The color of the lit surface as 0xRRGGBB.
+     */
+    public void project(TriangleBuffer triangles, Matrix4 worldMatrix, Matrix4 projectionMatrix, Vector3D camera,
+                        int width, int height, int color) {
+        project(triangles, worldMatrix, projectionMatrix, camera, width, height, color, Lighting.DEFAULT);
+    }
+
+    /**
+     * Transforms, culls and projects the mesh in a specific color under a specific lighting.
+     *
+     * @param triangles        The buffer receiving the screen-space triangles.
+     * @param worldMatrix      The world transformation matrix.
+     * @param projectionMatrix The projection matrix.
+     * @param camera           The camera position in 3D space.
+     * @param width            The width of the screen in pixels.
+     * @param height           The height of the screen in pixels.
+     * @param color            The color of the lit surface as 0xRRGGBB.
+     * @param lighting         The lights, in world space.
+     */
+    public void project(TriangleBuffer triangles, Matrix4 worldMatrix, Matrix4 projectionMatrix, Vector3D camera,
+                        int width, int height, int color, Lighting lighting) {
+        lastTrianglesProcessed = 0;
+        lastLevel = 0;
+
+        // Reject the whole mesh if its box is outside of the frustum, tested in object space
+        frustum.set(worldMatrix.mulInto(projectionMatrix, clipMatrix));
+        if (boundingBox.isEmpty() || frustum.testBox(boundingBox) == Frustum.OUTSIDE) {
+            return;
+        }
+        if (levelOfDetail != null) {
+            lastLevel = selectLevel(worldMatrix, projectionMatrix, width, height);
+        }
+        MeshData data = levelData[lastLevel];
+        MeshClusters clusters = levelClusters[lastLevel];
+        int rangeCount;
+        if (clusters != null) {
+            boolean cullBackfaces = setObjectCamera(worldMatrix, camera);
+            rangeCount = clusters.cull(frustum, objectCameraX, objectCameraY, objectCameraZ, cullBackfaces, ranges,
+                    leaves, masks, nodeStack, maskStack);
+            if (rangeCount == 0) {
+                return;
+            }
+        } else {
+            ranges[0] = 0;
+            ranges[1] = data.triangleCount;
+            rangeCount = 1;
+        }
+
+        // Transform and project every shared vertex once, then compute face normals and culling flags
+        transformStage.run(data, worldMatrix, projectionMatrix, camera, width, height, ranges, rangeCount);
+        for (int range = 0; range < rangeCount; range++) {
+            lastTrianglesProcessed += ranges[range * 2 + 1] - ranges[range * 2];
+        }
+        eyeX = camera.x;
+        eyeY = camera.y;
+        eyeZ = camera.z;
+        boolean smooth = shading == Shading.SMOOTH && data.hasNormals();
+        if (smooth) {
+            prepareVertexShading(worldMatrix, data.vertexCount);
+        }
+        if (transformStage.getPrecision() == Precision.FLOAT) {
+            emitFloat(triangles, data, rangeCount, width, height, color, lighting, smooth);
+        } else {
+            emitDouble(triangles, data, rangeCount, width, height, color, lighting, smooth);
+        }
+    }
+
+    /**
+     * Appends the visible triangles of the last double run of the transform stage to a triangle buffer.
+     *
+     * @param triangles  The buffer receiving the screen-space triangles.
+     * @param data       The drawn geometry.
+     * @param rangeCount The number of triangle ranges that survived culling.
+     * @param width      The width of the screen in pixels.
+     * @param height     The height of the screen in pixels.
+     * @param color      The color of the lit surface as 0xRRGGBB.
+     * @param lighting   The lights.
+     * @param smooth     True to light the vertices, false to light the faces.
+     */
+    private void emitDouble(TriangleBuffer triangles, MeshData data, int rangeCount, int width, int height, int color,
+                            Lighting lighting, boolean smooth) {
+        int[] cornerA = transformStage.getCornerA();
+        int[] cornerB = transformStage.getCornerB();
+        int[] cornerC = transformStage.getCornerC();
+        double[] worldX = transformStage.getWorldX();
+        double[] worldY = transformStage.getWorldY();
+        double[] worldZ = transformStage.getWorldZ();
+        double[] screenX = transformStage.getScreenX();
+        double[] screenY = transformStage.getScreenY();
+        double[] screenZ = transformStage.getScreenZ();
+        double[] normalX = transformStage.getNormalX();
+        double[] normalY = transformStage.getNormalY();
+        double[] normalZ = transformStage.getNormalZ();
+        boolean[] visible = transformStage.getVisible();
+        double[] clipX = transformStage.getClipX();
+        double[] clipY = transformStage.getClipY();
+        double[] clipZ = transformStage.getClipZ();
+        double[] clipW = transformStage.getClipW();
+        int[] outcodes = transformStage.getOutcodes();
+
+        for (int range = 0; range < rangeCount; range++) {
+            int from = ranges[range * 2], to = ranges[range * 2 + 1];
+            for (int t = from; t < to; t++) {
+                // Only triangles facing the camera are drawn
+                if (visible[t]) {
+                    int a = cornerA[t], b = cornerB[t], c = cornerC[t];
+
+                    // Reject the triangle if all corners are outside of the same frustum plane
+                    int outcodeA = outcodes[a], outcodeB = outcodes[b], outcodeC = outcodes[c];
+                    if ((outcodeA & outcodeB & outcodeC & Clipper.FRUSTUM_MASK) != 0) {
+                        continue;
+                    }
+                    int colorA, colorB, colorC;
+                    if (smooth) {
+                        colorA = shadeVertex(a, data, color, lighting, worldX[a], worldY[a], worldZ[a]);
+                        colorB = shadeVertex(b, data, color, lighting, worldX[b], worldY[b], worldZ[b]);
+                        colorC = shadeVertex(c, data, color, lighting, worldX[c], worldY[c], worldZ[c]);
+                    } else {
+                        // Point lights and highlights see the face at its centroid
+                        colorA = lighting.shade(color, normalX[t], normalY[t], normalZ[t],
+                                (worldX[a] + worldX[b] + worldX[c]) / 3d, (worldY[a] + worldY[b] + worldY[c]) / 3d,
+                                (worldZ[a] + worldZ[b] + worldZ[c]) / 3d, eyeX, eyeY, eyeZ);
+                        colorB = colorA;
+                        colorC = colorA;
+                    }
+
+                    int planes = (outcodeA | outcodeB | outcodeC) & Clipper.CLIP_MASK;
+                    if (planes == 0) {
+                        triangles.add(
+                                screenX[a], screenY[a], screenZ[a],
+                                screenX[b], screenY[b], screenZ[b],
+                                screenX[c], screenY[c], screenZ[c],
+                                colorA, colorB, colorC);
+                    } else {
+                        clipper.clipTriangle(a, b, c, clipX, clipY, clipZ, clipW, planes,
+                                width * 0.5, height * 0.5, colorA, colorB, colorC, triangles);
+                    }
                 }
+            }
+        }
+    }
+
+    /**
+     * Appends the visible triangles of the last float run of the transform stage to a triangle buffer.
+     *
+     * @param triangles  The buffer receiving the screen-space triangles.
+     * @param data       The drawn geometry.
+     * @param rangeCount The number of triangle ranges that survived culling.
+     * @param width      The width of the screen in pixels.
+     * @param height     The height of the screen in pixels.
+     * @param color      The color of the lit surface as 0xRRGGBB.
+     * @param lighting   The lights.
+     * @param smooth     True to light the vertices, false to light the faces.
+     */
+    private void emitFloat(TriangleBuffer triangles, MeshData data, int rangeCount, int width, int height, int color,
+                           Lighting lighting, boolean smooth) {
+        int[] cornerA = transformStage.getCornerA();
+        int[] cornerB = transformStage.getCornerB();
+        int[] cornerC = transformStage.getCornerC();
+        float[] worldX = transformStage.getFloatWorldX();
+        float[] worldY = transformStage.getFloatWorldY();
+        float[] worldZ = transformStage.getFloatWorldZ();
+        float[] screenX = transformStage.getFloatScreenX();
+        float[] screenY = transformStage.getFloatScreenY();
+        float[] screenZ = transformStage.getFloatScreenZ();
+        float[] normalX = transformStage.getFloatNormalX();
+        float[] normalY = transformStage.getFloatNormalY();
+        float[] normalZ = transformStage.getFloatNormalZ();
+        boolean[] visible = transformStage.getVisible();
+        float[] clipX = transformStage.getFloatClipX();
+        float[] clipY = transformStage.getFloatClipY();
+        float[] clipZ = transformStage.getFloatClipZ();
+        float[] clipW = transformStage.getFloatClipW();
+        int[] outcodes = transformStage.getOutcodes();
 
-                // Calculate lighting intensity based on the normal and light direction
-                Vector3D lightDirection = new Vector3D(0, -1, -1);
-                lightDirection.normalize();
-                int green = (int) (255 * (Math.max(0.1, normal.dotProduct(lightDirection))));
-                projectedTriangle.color = new Color(0, green, 0);
+        for (int range = 0; range < rangeCount; range++) {
+            int from = ranges[range * 2], to = ranges[range * 2 + 1];
+            for (int t = from; t < to; t++) {
+                if (visible[t]) {
+                    int a = cornerA[t], b = cornerB[t], c = cornerC[t];
+                    int outcodeA = outcodes[a], outcodeB = outcodes[b], outcodeC = outcodes[c];
+                    if ((outcodeA & outcodeB & outcodeC & Clipper.FRUSTUM_MASK) != 0) {
+                        continue;
+                    }
+                    int colorA, colorB, colorC;
+                    if (smooth) {
+                        colorA = shadeVertex(a, data, color, lighting, worldX[a], worldY[a], worldZ[a]);
+                        colorB = shadeVertex(b, data, color, lighting, worldX[b], worldY[b], worldZ[b]);
+                        colorC = shadeVertex(c, data, color, lighting, worldX[c], worldY[c], worldZ[c]);
+                    } else {
+                        // Point lights and highlights see the face at its centroid
+                        colorA = lighting.shade(color, normalX[t], normalY[t], normalZ[t],
+                                (worldX[a] + worldX[b] + worldX[c]) / 3d, (worldY[a] + worldY[b] + worldY[c]) / 3d,
+                                (worldZ[a] + worldZ[b] + worldZ[c]) / 3d, eyeX, eyeY, eyeZ);
+                        colorB = colorA;
+                        colorC = colorA;
+                    }
 
-                // Add the projected triangle to the list for rasterization
-                trianglesToRaster.add(projectedTriangle);
+                    int planes = (outcodeA | outcodeB | outcodeC) & Clipper.CLIP_MASK;
+                    if (planes == 0) {
+                        triangles.add(
+                                screenX[a], screenY[a], screenZ[a],
+                                screenX[b], screenY[b], screenZ[b],
+                                screenX[c], screenY[c], screenZ[c],
+                                colorA, colorB, colorC);
+                    } else {
+                        clipper.clipTriangle(a, b, c, clipX, clipY, clipZ, clipW, planes,
+                                width * 0.5, height * 0.5, colorA, colorB, colorC, triangles);
+                    }
+                }
             }
         }
+    }
+
+    /**
+     * Prepares lighting the vertices in this call of project(): the vertex colors of earlier calls are invalidated
+     * and the normal matrix is taken from the world matrix.
+     *
+     * @param worldMatrix The world transformation matrix.
+     * @param vertexCount The number of vertices of the drawn geometry.
+     */
+    private void prepareVertexShading(Matrix4 worldMatrix, int vertexCount) {
+        if (vertexStamps.length < vertexCount) {
+            vertexStamps = new int[vertexCount];
+            vertexColors = new int[vertexCount];
+            stamp = 0;
+        }
+        if (++stamp == 0) {
+            // The stamp wrapped around, so old stamps could look current
+            Arrays.fill(vertexStamps, 0);
+            stamp = 1;
+        }
+        double determinant = computeCofactors(worldMatrix);
+        // Normals follow the inverse transpose; the cofactors differ from it by the determinant, whose sign counts
+        normalSign = determinant < 0 ? -1 : 1;
+    }
 
-        // Sort triangles based on their average depth for proper rendering order
-        trianglesToRaster.sort(
-                Comparator.comparingDouble(triangle ->
-                        (triangle.points[0].z + triangle.points[1].z + triangle.points[2].z) / 3d
-                )
-        );
-        Collections.reverse(trianglesToRaster);
+    /**
+     * Returns the lit color of a vertex, computing it on the first request in this call of project().
+     *
+     * @param vertex   The index of the vertex.
+     * @param data     The drawn geometry, with vertex normals.
+     * @param color    The color of the surface as 0xRRGGBB.
+     * @param lighting The lights.
+     * @param worldX   The x-coordinate of the vertex in world space.
+     * @param worldY   The y-coordinate of the vertex in world space.
+     * @param worldZ   The z-coordinate of the vertex in world space.
+     * @return The lit color as 0xRRGGBB.
+     */
+    private int shadeVertex(int vertex, MeshData data, int color, Lighting lighting,
+                            double worldX, double worldY, double worldZ) {
+        if (vertexStamps[vertex] == stamp) {
+            return vertexColors[vertex];
+        }
+        double nx = data.normalX[vertex], ny = data.normalY[vertex], nz = data.normalZ[vertex];
+        double[] c = cofactors;
+        // Row vectors: the world normal is the object normal times the inverse transpose of the linear part
+        double wx = (nx * c[0] + ny * c[3] + nz * c[6]) * normalSign;
+        double wy = (nx * c[1] + ny * c[4] + nz * c[7]) * normalSign;
+        double wz = (nx * c[2] + ny * c[5] + nz * c[8]) * normalSign;
+        double length = Math.sqrt(wx * wx + wy * wy + wz * wz);
+        if (length > 0) {
+            wx /= length;
+            wy /= length;
+            wz /= length;
+        }
+        int shaded = lighting.shade(color, wx, wy, wz, worldX, worldY, worldZ, eyeX, eyeY, eyeZ);
+        vertexStamps[vertex] = stamp;
+        vertexColors[vertex] = shaded;
+        return shaded;
+    }
 
-        // Render each triangle in the sorted order
-        for (Triangle projectedTriangle : trianglesToRaster) {
-            projectedTriangle.paint(g);
+    /**
+     * Selects the level of detail from the screen size of the mesh. The error of a level is scaled by the world
+     * matrix and projected at the nearest depth of the bounding sphere, which bounds its size on the screen.
+     *
+     * @param worldMatrix      The world transformation matrix.
+     * @param projectionMatrix The projection matrix.
+     * @param width            The width of the screen in pixels.
+     * @param height           The height of the screen in pixels.
+     * @return The level to draw.
+     */
+    private int selectLevel(Matrix4 worldMatrix, Matrix4 projectionMatrix, int width, int height) {
+        worldSphere.setTransformed(boundingSphere, worldMatrix);
+        // The projection divides by the depth, so the nearest point of the sphere is magnified the most
+        double depth = worldSphere.centerZ - worldSphere.radius;
+        if (!(depth > 0)) {
+            return 0;
         }
+        double focalPixels = Math.max(Math.abs(projectionMatrix.m00) * width, Math.abs(projectionMatrix.m11) * height) * 0.5;
+        double pixelsPerUnit = Math.sqrt(BoundingSphere.getMaximumScaleSquared(worldMatrix)) * focalPixels / depth;
+        return levelOfDetail.select(pixelsPerUnit, levelOfDetailTolerance);
     }
 
+    /**
+     * Transforms the camera into the object space of the mesh for the cluster backface test.
+     * Facing is preserved by affine transformations that do not mirror, so the test is only enabled for those.
+     *
+     * @param worldMatrix The world transformation matrix.
+     * @param camera      The camera position in world space.
+     * @return True if the world matrix can be inverted and does not mirror the mesh.
+     */
+    private boolean setObjectCamera(Matrix4 worldMatrix, Vector3D camera) {
+        Matrix4 m = worldMatrix;
+        double determinant = computeCofactors(m);
+        if (!(determinant > 1e-12)) {
+            return false;
+        }
+        double[] c = cofactors;
+
+        // Row vectors: camera = object * linear + translation, so object = (camera - translation) * inverse
+        double qx = camera.x - m.m30, qy = camera.y - m.m31, qz = camera.z - m.m32;
+        objectCameraX = (qx * c[0] + qy * c[1] + qz * c[2]) / determinant;
+        objectCameraY = (qx * c[3] + qy * c[4] + qz * c[5]) / determinant;
+        objectCameraZ = (qx * c[6] + qy * c[7] + qz * c[8]) / determinant;
+        return true;
+    }
+
+    /**
+     * Computes the cofactors of the linear part of a world matrix into {@link #cofactors}, row by row.
+     * The inverse of the linear part is their transpose divided by the determinant.
+     *
+     * @param m The world transformation matrix.
+     * @return The determinant of the linear part.
+     */
+    private double computeCofactors(Matrix4 m) {
+        double[] c = cofactors;
+        c[0] = m.m11 * m.m22 - m.m12 * m.m21;
+        c[1] = m.m12 * m.m20 - m.m10 * m.m22;
+        c[2] = m.m10 * m.m21 - m.m11 * m.m20;
+        c[3] = m.m02 * m.m21 - m.m01 * m.m22;
+        c[4] = m.m00 * m.m22 - m.m02 * m.m20;
+        c[5] = m.m01 * m.m20 - m.m00 * m.m21;
+        c[6] = m.m01 * m.m12 - m.m02 * m.m11;
+        c[7] = m.m02 * m.m10 - m.m00 * m.m12;
+        c[8] = m.m00 * m.m11 - m.m01 * m.m10;
+        return m.m00 * c[0] + m.m01 * c[1] + m.m02 * c[2];
+    }
 
     /**
      * Converts the mesh to a string representation.
@@ -158,7 +784,9 @@ public class Mesh {
      */
     public String toString() {
         StringJoiner stringJoiner = new StringJoiner(",\n", "{\n", "\n}");
-        triangles.forEach(triangle -> stringJoiner.add(triangle.toString()));
+        for (int t = 0; t < data.triangleCount; t++) {
+            stringJoiner.add(data.getTriangle(t).toString());
+        }
         return stringJoiner.toString();
     }
 }
@@ -0,0 +1,306 @@
+package geometry;
+
+/**
+ * The MeshClusters class splits the triangles of a large mesh into spatially coherent clusters of at most
+ * {@link #CLUSTER_SIZE} triangles, so whole clusters can be culled before any per-triangle work happens.
+ * <p>
+ * Building reorders the index buffer so every cluster is a consecutive triangle range, in storage of the same
+ * kind; the positions and vertex attributes are shared with the original mesh. Every sub-mesh is clustered on its own and keeps its range. The clusters are
+ * the leaves of a {@link BoundingVolumeHierarchy}, which rejects groups of clusters outside of the view
+ * frustum. Each cluster also stores a cone bounding its face normals: if the camera sees all of them from
+ * behind, the whole cluster is backface-culled.
+ * @author Giorgio
+ */
+public final class MeshClusters {
+    /** The maximum number of triangles per cluster. */
+    public static final int CLUSTER_SIZE = 128;
+
+    /** Meshes with fewer triangles than this are not clustered, the per-cluster tests would not pay off. */
+    public static final int MIN_TRIANGLES = 4 * CLUSTER_SIZE;
+
+    /** Clusters whose normals spread wider than this cosine around their axis are never backface-culled. */
+    private static final double MIN_CONE_COSINE = 0.1;
+
+    private final MeshData data;
+    private final Part[] parts;
+    private final int clusterCount;
+    private final int maxLeafCount;
+
+    /**
+     * Constructs the clusters of reordered geometry.
+     *
+     * @param data  The geometry with the triangles in cluster order.
+     * @param parts The hierarchies of the sub-meshes.
+     */
+    private MeshClusters(MeshData data, Part[] parts) {
+        this.data = data;
+        this.parts = parts;
+        int clusters = 0, maxLeaves = 0;
+        for (Part part : parts) {
+            clusters += part.hierarchy.getLeafCount();
+            maxLeaves = Math.max(maxLeaves, part.hierarchy.getLeafCount());
+        }
+        this.clusterCount = clusters;
+        this.maxLeafCount = maxLeaves;
+    }
+
+    /**
+     * Clusters the triangles of a mesh.
+     *
+     * @param data The geometry.
+     * @return The clusters, holding a copy of the geometry with a reordered index buffer.
+     */
+    public static MeshClusters build(MeshData data) {
+        int[] indices = new int[data.triangleCount * 3];
+        SubMesh[] subMeshes = data.getSubMeshes();
+        Part[] parts = new Part[subMeshes.length];
+
+        // Triangle boxes, reused by all sub-meshes
+        int maxTriangles = 0;
+        for (SubMesh subMesh : subMeshes) {
+            maxTriangles = Math.max(maxTriangles, subMesh.triangleCount());
+        }
+        double[] minX = new double[maxTriangles], minY = new double[maxTriangles], minZ = new double[maxTriangles];
+        double[] maxX = new double[maxTriangles], maxY = new double[maxTriangles], maxZ = new double[maxTriangles];
+
+        for (int s = 0; s < subMeshes.length; s++) {
+            int firstTriangle = subMeshes[s].firstTriangle();
+            int triangles = subMeshes[s].triangleCount();
+            for (int t = 0; t < triangles; t++) {
+                int offset = (firstTriangle + t) * 3;
+                int a = data.getIndex(offset), b = data.getIndex(offset + 1), c = data.getIndex(offset + 2);
+                double ax = data.getX(a), ay = data.getY(a), az = data.getZ(a);
+                double bx = data.getX(b), by = data.getY(b), bz = data.getZ(b);
+                double cx = data.getX(c), cy = data.getY(c), cz = data.getZ(c);
+                minX[t] = Math.min(ax, Math.min(bx, cx));
+                minY[t] = Math.min(ay, Math.min(by, cy));
+                minZ[t] = Math.min(az, Math.min(bz, cz));
+                maxX[t] = Math.max(ax, Math.max(bx, cx));
+                maxY[t] = Math.max(ay, Math.max(by, cy));
+                maxZ[t] = Math.max(az, Math.max(bz, cz));
+            }
+            BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy();
+            hierarchy.build(minX, minY, minZ, maxX, maxY, maxZ, triangles, CLUSTER_SIZE);
+
+            // Copy the triangles in the order of the leaves
+            int[] order = hierarchy.getItems();
+            for (int t = 0; t < triangles; t++) {
+                int from = (firstTriangle + order[t]) * 3, to = (firstTriangle + t) * 3;
+                indices[to] = data.getIndex(from);
+                indices[to + 1] = data.getIndex(from + 1);
+                indices[to + 2] = data.getIndex(from + 2);
+            }
+            parts[s] = new Part(hierarchy, firstTriangle);
+        }
+
+        MeshData clustered = new MeshData(data.getStorage().withIndices(indices, data.triangleCount),
+                data.normalX, data.normalY, data.normalZ, data.textureU, data.textureV, subMeshes);
+        for (Part part : parts) {
+            part.computeCones(clustered);
+        }
+        return new MeshClusters(clustered, parts);
+    }
+
+    /**
+     * Returns the geometry with the triangles in cluster order.
+     *
+     * @return The reordered mesh data.
+     */
+    public MeshData getData() {
+        return data;
+    }
+
+    /**
+     * Returns the number of clusters.
+     *
+     * @return The cluster count.
+     */
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+    /**
+     * Returns the largest number of clusters of one sub-mesh, the size of the leaf arrays given to {@link #cull}.
+     *
+     * @return The maximum leaf count.
+     */
+    public int getMaxLeafCount() {
+        return maxLeafCount;
+    }
+
+    /**
+     * Collects the triangle ranges of all clusters that may be visible. Adjacent visible clusters are merged
+     * into one range, and the ranges are in ascending order. The clusters are only read, and all scratch arrays
+     * are passed in by the caller, so meshes sharing the clusters can cull them on different threads.
+     *
+     * @param frustum       The view frustum in object space.
+     * @param cameraX       The x-coordinate of the camera in object space.
+     * @param cameraY       The y-coordinate of the camera in object space.
+     * @param cameraZ       The z-coordinate of the camera in object space.
+     * @param cullBackfaces True to also drop clusters facing away from the camera.
+     * @param ranges        Receives pairs of first and end triangle; must hold 2 * {@link #getClusterCount()} entries.
+     * @param leaves        Scratch for the visible leaves; must hold {@link #getMaxLeafCount()} entries.
+     * @param masks         Scratch for their plane masks; must hold {@link #getMaxLeafCount()} entries.
+     * @param nodeStack     Scratch for the traversal; must hold {@link BoundingVolumeHierarchy#STACK_SIZE} entries.
+     * @param maskStack     Scratch for the traversal; must hold {@link BoundingVolumeHierarchy#STACK_SIZE} entries.
+     * @return The number of ranges.
+     */
+    public int cull(Frustum frustum, double cameraX, double cameraY, double cameraZ, boolean cullBackfaces, int[] ranges,
+                    int[] leaves, int[] masks, int[] nodeStack, int[] maskStack) {
+        int rangeCount = 0;
+        for (Part part : parts) {
+            BoundingVolumeHierarchy hierarchy = part.hierarchy;
+            int visible = hierarchy.cull(frustum, leaves, masks, nodeStack, maskStack);
+            for (int i = 0; i < visible; i++) {
+                int leaf = leaves[i];
+                if (cullBackfaces && part.isBackFacing(leaf, cameraX, cameraY, cameraZ)) {
+                    continue;
+                }
+                int from = part.firstTriangle + hierarchy.getLeafFirstItem(leaf);
+                int to = from + hierarchy.getLeafItemCount(leaf);
+                if (rangeCount > 0 && ranges[rangeCount * 2 - 1] == from) {
+                    ranges[rangeCount * 2 - 1] = to;
+                } else {
+                    ranges[rangeCount * 2] = from;
+                    ranges[rangeCount * 2 + 1] = to;
+                    rangeCount++;
+                }
+            }
+        }
+        return rangeCount;
+    }
+
+    /**
+     * The Part class holds the cluster hierarchy of one sub-mesh and the normal cones of its clusters.
+     */
+    private static final class Part {
+        private final BoundingVolumeHierarchy hierarchy;
+        private final int firstTriangle;
+
+        // per node, only filled for leaves: normal cone axis, sine of its half angle, and bounding sphere
+        private final double[] axisX, axisY, axisZ, coneSine;
+        private final double[] centerX, centerY, centerZ, radius;
+
+        /**
+         * Constructs a part.
+         *
+         * @param hierarchy     The hierarchy over the triangles of the sub-mesh.
+         * @param firstTriangle The first triangle of the sub-mesh.
+         */
+        private Part(BoundingVolumeHierarchy hierarchy, int firstTriangle) {
+            this.hierarchy = hierarchy;
+            this.firstTriangle = firstTriangle;
+            int nodes = hierarchy.getNodeCount();
+            axisX = new double[nodes];
+            axisY = new double[nodes];
+            axisZ = new double[nodes];
+            coneSine = new double[nodes];
+            centerX = new double[nodes];
+            centerY = new double[nodes];
+            centerZ = new double[nodes];
+            radius = new double[nodes];
+        }
+
+        /**
+         * Computes the normal cone and bounding sphere of every cluster.
+         *
+         * @param data The geometry in cluster order.
+         */
+        private void computeCones(MeshData data) {
+            BoundingBox box = new BoundingBox();
+            for (int node = 0; node < hierarchy.getNodeCount(); node++) {
+                if (!hierarchy.isLeaf(node)) {
+                    continue;
+                }
+                int from = firstTriangle + hierarchy.getLeafFirstItem(node);
+                int to = from + hierarchy.getLeafItemCount(node);
+
+                // The axis is the mean of the unit face normals, oriented like the normals of the transform stage
+                double sumX = 0, sumY = 0, sumZ = 0;
+                for (int t = from; t < to; t++) {
+                    double[] normal = faceNormal(data, t);
+                    if (normal != null) {
+                        sumX += normal[0];
+                        sumY += normal[1];
+                        sumZ += normal[2];
+                    }
+                }
+                double length = Math.sqrt(sumX * sumX + sumY * sumY + sumZ * sumZ);
+                double minCosine = length > 0 ? 1 : -1;
+                if (length > 0) {
+                    sumX /= length;
+                    sumY /= length;
+                    sumZ /= length;
+                    for (int t = from; t < to; t++) {
+                        double[] normal = faceNormal(data, t);
+                        if (normal != null) {
+                            minCosine = Math.min(minCosine, normal[0] * sumX + normal[1] * sumY + normal[2] * sumZ);
+                        }
+                    }
+                }
+                axisX[node] = sumX;
+                axisY[node] = sumY;
+                axisZ[node] = sumZ;
+                // A sine above 1 disables the test for clusters whose normals point in too many directions
+                coneSine[node] = minCosine >= MIN_CONE_COSINE ? Math.sqrt(1 - minCosine * minCosine) : 2;
+
+                hierarchy.getBounds(node, box);
+                double cx = (box.minX + box.maxX) * 0.5, cy = (box.minY + box.maxY) * 0.5, cz = (box.minZ + box.maxZ) * 0.5;
+                double radiusSquared = 0;
+                for (int i = from * 3; i < to * 3; i++) {
+                    int vertex = data.getIndex(i);
+                    double dx = data.getX(vertex) - cx, dy = data.getY(vertex) - cy, dz = data.getZ(vertex) - cz;
+                    radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+                }
+                centerX[node] = cx;
+                centerY[node] = cy;
+                centerZ[node] = cz;
+                radius[node] = Math.sqrt(radiusSquared);
+            }
+        }
+
+        /**
+         * Checks if the camera sees every triangle of a cluster from behind.
+         * A triangle faces away if the vector from the camera to any of its points has a non-negative dot
+         * product with its normal. For all normals within the cone and all points within the sphere this holds if
+         * dot(axis, center - camera) >= sine * |center - camera| + radius * (1 + sine).
+         *
+         * @param leaf    The node index of the cluster.
+         * @param cameraX The x-coordinate of the camera in object space.
+         * @param cameraY The y-coordinate of the camera in object space.
+         * @param cameraZ The z-coordinate of the camera in object space.
+         * @return True if the whole cluster can be culled.
+         */
+        private boolean isBackFacing(int leaf, double cameraX, double cameraY, double cameraZ) {
+            double sine = coneSine[leaf];
+            if (sine > 1) {
+                return false;
+            }
+            double dx = centerX[leaf] - cameraX, dy = centerY[leaf] - cameraY, dz = centerZ[leaf] - cameraZ;
+            double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            return axisX[leaf] * dx + axisY[leaf] * dy + axisZ[leaf] * dz >= sine * distance + radius[leaf] * (1 + sine);
+        }
+
+        /**
+         * Computes the unit normal of a triangle.
+         *
+         * @param data     The geometry.
+         * @param triangle The triangle.
+         * @return The normal as {x, y, z}, or null for a degenerate triangle.
+         */
+        private static double[] faceNormal(MeshData data, int triangle) {
+            int a = data.getIndex(triangle * 3), b = data.getIndex(triangle * 3 + 1), c = data.getIndex(triangle * 3 + 2);
+            double ax = data.getX(a), ay = data.getY(a), az = data.getZ(a);
+            double e1x = data.getX(b) - ax, e1y = data.getY(b) - ay, e1z = data.getZ(b) - az;
+            double e2x = data.getX(c) - ax, e2y = data.getY(c) - ay, e2z = data.getZ(c) - az;
+            double nx = e1y * e2z - e1z * e2y;
+            double ny = e1z * e2x - e1x * e2z;
+            double nz = e1x * e2y - e1y * e2x;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (!(length > 0)) {
+                return null;
+            }
+            return new double[]{nx / length, ny / length, nz / length};
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package geometry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The MeshData class stores the geometry of a mesh in a compact structure-of-arrays layout.
+ * Triangles reference the vertex positions through an index buffer, so a vertex shared by several faces is stored
+ * and transformed only once. Positions and indices are kept by a {@link MeshStorage}: primitive heap arrays for
+ * geometry built from arrays, or direct and memory-mapped buffers for an {@link OffHeapMeshStorage}.
+ * @author Giorgio
+ */
+public class MeshData {
+    /** The positions and the index buffer. */
+    private final MeshStorage storage;
+    /** The number of vertices stored in the coordinate arrays. */
+    public final int vertexCount;
+    /** The number of triangles stored in the index buffer. */
+    public final int triangleCount;
+    /** X-components of the vertex normals, or null if the mesh has no normals. */
+    public final double[] normalX;
+    /** Y-components of the vertex normals, or null if the mesh has no normals. */
+    public final double[] normalY;
+    /** Z-components of the vertex normals, or null if the mesh has no normals. */
+    public final double[] normalZ;
+    /** Horizontal texture coordinates of the vertices, or null if the mesh has no texture coordinates. */
+    public final double[] textureU;
+    /** Vertical texture coordinates of the vertices, or null if the mesh has no texture coordinates. */
+    public final double[] textureV;
+    /** Named triangle ranges, covering the index buffer in order. */
+    private final SubMesh[] subMeshes;
+
+    /**
+     * Constructs mesh data from existing coordinate and index arrays.
+     * The arrays are used as they are and may be longer than the given counts.
+     *
+     * @param x             The x-coordinates of the vertices.
+     * @param y             The y-coordinates of the vertices.
+     * @param z             The z-coordinates of the vertices.
+     * @param vertexCount   The number of valid vertices.
+     * @param indices       The index buffer, three entries per triangle.
+     * @param triangleCount The number of valid triangles.
+     */
+    public MeshData(double[] x, double[] y, double[] z, int vertexCount, int[] indices, int triangleCount) {
+        this(x, y, z, vertexCount, indices, triangleCount, null, null, null, null, null, null);
+    }
+
+    /**
+     * Constructs mesh data with vertex attributes and sub-meshes.
+     * Normals and texture coordinates are indexed like the positions; pass null for missing attributes.
+     *
+     * @param x             The x-coordinates of the vertices.
+     * @param y             The y-coordinates of the vertices.
+     * @param z             The z-coordinates of the vertices.
+     * @param vertexCount   The number of valid vertices.
+     * @param indices       The index buffer, three entries per triangle.
+     * @param triangleCount The number of valid triangles.
+     * @param normalX       The x-components of the vertex normals, or null.
+     * @param normalY       The y-components of the vertex normals, or null.
+     * @param normalZ       The z-components of the vertex normals, or null.
+     * @param textureU      The horizontal texture coordinates, or null.
+     * @param textureV      The vertical texture coordinates, or null.
+     * @param subMeshes     The named triangle ranges, or null for a single range named "default".
+     */
+    public MeshData(double[] x, double[] y, double[] z, int vertexCount, int[] indices, int triangleCount,
+                    double[] normalX, double[] normalY, double[] normalZ,
+                    double[] textureU, double[] textureV, SubMesh[] subMeshes) {
+        this(new HeapMeshStorage(x, y, z, vertexCount, indices, triangleCount),
+                normalX, normalY, normalZ, textureU, textureV, subMeshes);
+    }
+
+    /**
+     * Constructs mesh data without vertex attributes from existing storage, e.g. an {@link OffHeapMeshStorage}.
+     *
+     * @param storage The positions and the index buffer.
+     */
+    public MeshData(MeshStorage storage) {
+        this(storage, null, null, null, null, null, null);
+    }
+
+    /**
+     * Constructs mesh data from existing storage with vertex attributes and sub-meshes.
+     *
+     * @param storage   The positions and the index buffer.
+     * @param normalX   The x-components of the vertex normals, or null.
+     * @param normalY   The y-components of the vertex normals, or null.
+     * @param normalZ   The z-components of the vertex normals, or null.
+     * @param textureU  The horizontal texture coordinates, or null.
+     * @param textureV  The vertical texture coordinates, or null.
+     * @param subMeshes The named triangle ranges, or null for a single range named "default".
+     */
+    public MeshData(MeshStorage storage, double[] normalX, double[] normalY, double[] normalZ,
+                    double[] textureU, double[] textureV, SubMesh[] subMeshes) {
+        int vertexCount = storage.getVertexCount();
+        int triangleCount = storage.getTriangleCount();
+        if ((normalX == null) != (normalY == null) || (normalX == null) != (normalZ == null)
+                || (normalX != null && (normalX.length < vertexCount || normalY.length < vertexCount || normalZ.length < vertexCount))) {
+            throw new IllegalArgumentException("Normals must be given for all three axes and every vertex");
+        }
+        if ((textureU == null) != (textureV == null)
+                || (textureU != null && (textureU.length < vertexCount || textureV.length < vertexCount))) {
+            throw new IllegalArgumentException("Texture coordinates must be given for both axes and every vertex");
+        }
+        this.storage = storage;
+        this.vertexCount = vertexCount;
+        this.triangleCount = triangleCount;
+        this.normalX = normalX;
+        this.normalY = normalY;
+        this.normalZ = normalZ;
+        this.textureU = textureU;
+        this.textureV = textureV;
+        this.subMeshes = subMeshes != null ? subMeshes.clone() : new SubMesh[]{new SubMesh("default", 0, triangleCount)};
+    }
+
+    /**
+     * Returns the storage holding the positions and the index buffer.
+     *
+     * @return The storage.
+     */
+    public MeshStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns the x-coordinate of a vertex.
+     *
+     * @param vertex The index of the vertex.
+     * @return The x-coordinate.
+     */
+    public double getX(int vertex) {
+        return storage.getX(vertex);
+    }
+
+    /**
+     * Returns the y-coordinate of a vertex.
+     *
+     * @param vertex The index of the vertex.
+     * @return The y-coordinate.
+     */
+    public double getY(int vertex) {
+        return storage.getY(vertex);
+    }
+
+    /**
+     * Returns the z-coordinate of a vertex.
+     *
+     * @param vertex The index of the vertex.
+     * @return The z-coordinate.
+     */
+    public double getZ(int vertex) {
+        return storage.getZ(vertex);
+    }
+
+    /**
+     * Returns an entry of the index buffer.
+     *
+     * @param index The position in the index buffer, three entries per triangle.
+     * @return The vertex index.
+     */
+    public int getIndex(int index) {
+        return storage.getIndex(index);
+    }
+
+    /**
+     * Returns the coordinates of all vertices along one axis. Heap storage returns its own array, which must not
+     * be modified; other storage is copied into a new array.
+     *
+     * @param axis The axis, 0, 1 or 2 for x, y or z.
+     * @return The coordinates, indexed by vertex.
+     */
+    public double[] getPositions(int axis) {
+        return storage.getPositions(axis, 0, vertexCount, storage.isOffHeap() ? new double[vertexCount] : null);
+    }
+
+    /**
+     * Copies the index buffer into a new array.
+     *
+     * @return The vertex indices, three entries per triangle.
+     */
+    public int[] copyIndices() {
+        int[] indices = new int[triangleCount * 3];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = storage.getIndex(i);
+        }
+        return indices;
+    }
+
+    /**
+     * Checks if the mesh has vertex normals.
+     *
+     * @return True if the normal arrays are present.
+     */
+    public boolean hasNormals() {
+        return normalX != null;
+    }
+
+    /**
+     * Checks if the mesh has texture coordinates.
+     *
+     * @return True if the texture coordinate arrays are present.
+     */
+    public boolean hasTextureCoordinates() {
+        return textureU != null;
+    }
+
+    /**
+     * Returns the named triangle ranges of the mesh, e.g. the objects and groups of an OBJ file.
+     *
+     * @return A copy of the sub-mesh array.
+     */
+    public SubMesh[] getSubMeshes() {
+        return subMeshes.clone();
+    }
+
+    /**
+     * Estimates the heap memory used by the vertex attributes and, for heap storage, the positions and the index
+     * buffer, including the copies the transform stage reads once they were created.
+     *
+     * @return The size in bytes.
+     */
+    public long getByteSize() {
+        int doublesPerVertex = (normalX != null ? 3 : 0) + (textureU != null ? 2 : 0);
+        long bytes = (long) vertexCount * doublesPerVertex * Double.BYTES;
+        return storage.isOffHeap() ? bytes : bytes + storage.getByteSize();
+    }
+
+    /**
+     * Returns mesh data with vertex normals. Meshes without normals get area-weighted ones: every vertex gets the
+     * sum of the unnormalized normals of the faces around it, whose length is twice the face area, normalized.
+     * Large faces thus count more than the slivers a triangulation leaves next to them.
+     * The positions, indices and other attributes are shared, not copied.
+     *
+     * @return This mesh data if it already has normals, otherwise a copy with computed normals.
+     */
+    public MeshData withVertexNormals() {
+        if (hasNormals()) {
+            return this;
+        }
+        double[] normalX = new double[vertexCount];
+        double[] normalY = new double[vertexCount];
+        double[] normalZ = new double[vertexCount];
+        MeshStorage s = storage;
+        for (int t = 0; t < triangleCount; t++) {
+            int a = s.getIndex(t * 3), b = s.getIndex(t * 3 + 1), c = s.getIndex(t * 3 + 2);
+            double ax = s.getX(a), ay = s.getY(a), az = s.getZ(a);
+            // Same winding as the face normals of the transform stage, so both point the same way
+            double e1x = s.getX(b) - ax, e1y = s.getY(b) - ay, e1z = s.getZ(b) - az;
+            double e2x = s.getX(c) - ax, e2y = s.getY(c) - ay, e2z = s.getZ(c) - az;
+            double nx = e1y * e2z - e1z * e2y;
+            double ny = e1z * e2x - e1x * e2z;
+            double nz = e1x * e2y - e1y * e2x;
+            normalX[a] += nx;
+            normalY[a] += ny;
+            normalZ[a] += nz;
+            normalX[b] += nx;
+            normalY[b] += ny;
+            normalZ[b] += nz;
+            normalX[c] += nx;
+            normalY[c] += ny;
+            normalZ[c] += nz;
+        }
+        for (int i = 0; i < vertexCount; i++) {
+            double length = Math.sqrt(normalX[i] * normalX[i] + normalY[i] * normalY[i] + normalZ[i] * normalZ[i]);
+            // Vertices without faces keep a zero normal
+            if (length > 0) {
+                normalX[i] /= length;
+                normalY[i] /= length;
+                normalZ[i] /= length;
+            }
+        }
+        return new MeshData(storage, normalX, normalY, normalZ, textureU, textureV, subMeshes);
+    }
+
+    /**
+     * Creates mesh data for a single sub-mesh. The positions and attributes are shared, only the index range is
+     * copied.
+     *
+     * @param subMesh One of the sub-meshes of this mesh.
+     * @return The geometry of the sub-mesh.
+     */
+    public MeshData extractSubMesh(SubMesh subMesh) {
+        int from = subMesh.firstTriangle() * 3;
+        int to = from + subMesh.triangleCount() * 3;
+        if (from < 0 || to > triangleCount * 3) {
+            throw new IndexOutOfBoundsException("Sub-mesh " + subMesh.name() + " is outside of the index buffer");
+        }
+        int[] indices = new int[to - from];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = storage.getIndex(from + i);
+        }
+        return new MeshData(storage.withIndices(indices, subMesh.triangleCount()),
+                normalX, normalY, normalZ, textureU, textureV,
+                new SubMesh[]{new SubMesh(subMesh.name(), 0, subMesh.triangleCount())});
+    }
+
+    /**
+     * Builds mesh data from a list of triangles. Vertices with equal coordinates are merged into one entry.
+     *
+     * @param triangles The triangles to convert.
+     * @return The indexed mesh data.
+     */
+    public static MeshData fromTriangles(Triangle... triangles) {
+        Builder builder = new Builder();
+        Map<VertexKey, Integer> vertexIndices = new HashMap<>();
+        for (Triangle triangle : triangles) {
+            int[] corner = new int[3];
+            for (int i = 0; i < 3; i++) {
+                Vector3D point = triangle.points[i];
+                corner[i] = vertexIndices.computeIfAbsent(
+                        new VertexKey(point.x, point.y, point.z),
+                        key -> builder.addVertex(key.x, key.y, key.z)
+                );
+            }
+            builder.addTriangle(corner[0], corner[1], corner[2]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a Triangle object for the triangle with the specified index.
+     * This allocates new vectors and is meant for debugging and interoperability, not for rendering.
+     *
+     * @param triangle The index of the triangle.
+     * @return A new Triangle holding copies of the three vertex positions.
+     */
+    public Triangle getTriangle(int triangle) {
+        int a = getIndex(triangle * 3);
+        int b = getIndex(triangle * 3 + 1);
+        int c = getIndex(triangle * 3 + 2);
+        return new Triangle(getX(a), getY(a), getZ(a), getX(b), getY(b), getZ(b), getX(c), getY(c), getZ(c));
+    }
+
+    /** Coordinate triple used to merge equal vertices. */
+    private record VertexKey(double x, double y, double z) { }
+
+    /**
+     * The Builder class collects vertices and triangles into growable primitive arrays.
+     */
+    public static class Builder {
+        private double[] x = new double[64];
+        private double[] y = new double[64];
+        private double[] z = new double[64];
+        private int[] indices = new int[192];
+        private int vertexCount;
+        private int triangleCount;
+
+        /**
+         * Appends a vertex.
+         *
+         * @param vx The x-coordinate of the vertex.
+         * @param vy The y-coordinate of the vertex.
+         * @param vz The z-coordinate of the vertex.
+         * @return The index of the new vertex.
+         */
+        public int addVertex(double vx, double vy, double vz) {
+            if (vertexCount == x.length) {
+                int capacity = x.length * 2;
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+            }
+            x[vertexCount] = vx;
+            y[vertexCount] = vy;
+            z[vertexCount] = vz;
+            return vertexCount++;
+        }
+
+        /**
+         * Appends a triangle referencing three previously added vertices.
+         *
+         * @param a The index of the first vertex.
+         * @param b The index of the second vertex.
+         * @param c The index of the third vertex.
+         */
+        public void addTriangle(int a, int b, int c) {
+            if (a < 0 || a >= vertexCount || b < 0 || b >= vertexCount || c < 0 || c >= vertexCount) {
+                throw new IndexOutOfBoundsException("Triangle references a vertex that does not exist");
+            }
+            if (triangleCount * 3 == indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            indices[triangleCount * 3] = a;
+            indices[triangleCount * 3 + 1] = b;
+            indices[triangleCount * 3 + 2] = c;
+            triangleCount++;
+        }
+
+        /**
+         * Returns the number of vertices added so far.
+         *
+         * @return The vertex count.
+         */
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
+        /**
+         * Builds the mesh data, trimming the arrays to their used size.
+         *
+         * @return The mesh data.
+         */
+        public MeshData build() {
+            return new MeshData(
+                    Arrays.copyOf(x, vertexCount),
+                    Arrays.copyOf(y, vertexCount),
+                    Arrays.copyOf(z, vertexCount),
+                    vertexCount,
+                    Arrays.copyOf(indices, triangleCount * 3),
+                    triangleCount
+            );
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package geometry;
+
+/**
+ * The MeshGeometry class bundles the geometry of a mesh with everything derived from it that a {@link Mesh}
+ * needs to draw it: the vertex normals, the {@link MeshClusters} of large meshes and the bounds in object space.
+ * It is immutable and prepared once, on any thread, so it can be built in the background and shared by any
+ * number of meshes, e.g. through an asset cache.
+ * @author Giorgio
+ */
+public final class MeshGeometry {
+    private final MeshData data;
+    private final MeshClusters clusters;
+    private final BoundingBox boundingBox;
+    private final BoundingSphere boundingSphere;
+
+    /**
+     * Constructs the bundle.
+     *
+     * @param data           The geometry, in cluster order if clustered.
+     * @param clusters       The clusters, or null.
+     * @param boundingBox    The bounding box of the geometry.
+     * @param boundingSphere The bounding sphere of the geometry.
+     */
+    private MeshGeometry(MeshData data, MeshClusters clusters, BoundingBox boundingBox, BoundingSphere boundingSphere) {
+        this.data = data;
+        this.clusters = clusters;
+        this.boundingBox = boundingBox;
+        this.boundingSphere = boundingSphere;
+    }
+
+    /**
+     * Prepares geometry for drawing: vertex normals are computed if it has none, it is clustered if it has at
+     * least {@link MeshClusters#MIN_TRIANGLES} triangles, and its bounds are computed.
+     * Geometry stored off the heap gets no computed normals, which would put 24 bytes per vertex on the heap,
+     * so it is flat shaded unless it brings its own.
+     *
+     * @param data The geometry.
+     * @return The prepared geometry.
+     */
+    public static MeshGeometry of(MeshData data) {
+        if (!data.getStorage().isOffHeap()) {
+            data = data.withVertexNormals();
+        }
+        MeshClusters clusters = null;
+        if (data.triangleCount >= MeshClusters.MIN_TRIANGLES) {
+            clusters = MeshClusters.build(data);
+            data = clusters.getData();
+        }
+        return new MeshGeometry(data, clusters, BoundingBox.of(data), BoundingSphere.of(data));
+    }
+
+    /**
+     * Returns the geometry, in cluster order if it is clustered.
+     *
+     * @return The mesh data.
+     */
+    public MeshData getData() {
+        return data;
+    }
+
+    /**
+     * Returns the clusters of the geometry.
+     *
+     * @return The clusters, or null if the geometry is too small to be clustered.
+     */
+    public MeshClusters getClusters() {
+        return clusters;
+    }
+
+    /**
+     * Returns the axis-aligned bounding box of the geometry.
+     *
+     * @return The bounding box. It must not be modified.
+     */
+    public BoundingBox getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * Returns the bounding sphere of the geometry.
+     *
+     * @return The bounding sphere. It must not be modified.
+     */
+    public BoundingSphere getBoundingSphere() {
+        return boundingSphere;
+    }
+
+    /**
+     * Estimates the heap memory used by the geometry, including the reordered index buffer and the cluster
+     * hierarchy of clustered geometry.
+     *
+     * @return The size in bytes.
+     */
+    public long getByteSize() {
+        long bytes = data.getByteSize();
+        if (clusters != null) {
+            // The reordered index buffer is counted with the data; the hierarchy needs about one node per leaf
+            bytes += (long) clusters.getClusterCount() * 2 * 64;
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "MeshGeometry[" + data.vertexCount + " vertices, " + data.triangleCount + " triangles, "
+                + (clusters != null ? clusters.getClusterCount() + " clusters" : "unclustered") + "]";
+    }
+}
@@ -0,0 +1,554 @@
+package geometry;
+
+import java.util.Arrays;
+
+/**
+ * The MeshSimplifier class reduces the triangle count of a mesh by collapsing edges in the order of the
+ * quadric error metric (Garland and Heckbert).
+ * <p>
+ * Every vertex accumulates the planes of its triangles as a quadric, whose value at a point is the sum of
+ * squared distances to those planes. Collapsing an edge merges one endpoint into the other, so the error of a
+ * collapse is the merged quadric evaluated at the kept endpoint. Edges are collapsed cheapest first until
+ * the target triangle count is reached. Open boundaries get extra planes perpendicular to their triangles,
+ * which keeps silhouettes and texture seams in place, and collapses that would flip a triangle are skipped.
+ * <p>
+ * Vertices are never moved or created: the result is a new index buffer over the same positions,
+ * referencing a subset of the vertices of the input. This lets simplified levels share one vertex buffer.
+ * @author Giorgio
+ */
+public final class MeshSimplifier {
+    /** Weight of the boundary planes relative to the triangle planes. */
+    private static final double BOUNDARY_WEIGHT = 10;
+
+    /** Collapses are rejected if a triangle normal turns by more than about 80 degrees. */
+    private static final double MIN_NORMAL_COSINE = 0.2;
+
+    private double lastError;
+
+    // working state of the current run
+    private double[] x, y, z;
+    private int[] corners;
+    private boolean[] triangleAlive;
+    private boolean[] vertexRemoved;
+    private int[] versions;
+    private double[] quadrics;
+    private int[][] adjacency;
+    private int[] adjacencySize;
+    private int[] neighborMarks;
+    private int markStamp;
+
+    // collapse candidates in a binary min-heap; stale entries are skipped when popped
+    private double[] candidateCost;
+    private int[] candidateFrom, candidateTo, candidateFromVersion, candidateToVersion;
+    private int candidateCount;
+    private int[] heap;
+    private int heapSize;
+
+    /**
+     * Simplifies a mesh to about a target number of triangles. Triangles keep their relative order and
+     * their sub-mesh; sub-meshes may end up empty.
+     *
+     * @param data            The geometry to simplify.
+     * @param targetTriangles The number of triangles to stop at.
+     * @return Mesh data sharing the positions and attributes of the input, with a new index buffer.
+     */
+    public MeshData simplify(MeshData data, int targetTriangles) {
+        x = data.getPositions(0);
+        y = data.getPositions(1);
+        z = data.getPositions(2);
+        int vertexCount = data.vertexCount;
+        int triangleCount = data.triangleCount;
+        corners = data.copyIndices();
+        triangleAlive = new boolean[triangleCount];
+        Arrays.fill(triangleAlive, true);
+        vertexRemoved = new boolean[vertexCount];
+        versions = new int[vertexCount];
+        neighborMarks = new int[vertexCount];
+        markStamp = 0;
+        candidateCount = 0;
+        heapSize = 0;
+        candidateCost = new double[64];
+        candidateFrom = new int[64];
+        candidateTo = new int[64];
+        candidateFromVersion = new int[64];
+        candidateToVersion = new int[64];
+        heap = new int[64];
+        lastError = 0;
+
+        try {
+            buildAdjacency(vertexCount, triangleCount);
+            buildQuadrics(vertexCount, triangleCount);
+
+            int remaining = triangleCount;
+            while (remaining > targetTriangles && heapSize > 0) {
+                int candidate = popCandidate();
+                int from = candidateFrom[candidate], to = candidateTo[candidate];
+                // Skip candidates whose endpoints changed since they were queued
+                if (vertexRemoved[from] || vertexRemoved[to]
+                        || versions[from] != candidateFromVersion[candidate] || versions[to] != candidateToVersion[candidate]) {
+                    continue;
+                }
+                if (flipsTriangle(from, to)) {
+                    continue;
+                }
+                lastError = Math.max(lastError, candidateCost[candidate]);
+                remaining -= collapse(from, to);
+            }
+            return buildResult(data, remaining);
+        } finally {
+            x = y = z = null;
+            corners = null;
+            triangleAlive = null;
+            vertexRemoved = null;
+            versions = null;
+            quadrics = null;
+            adjacency = null;
+            adjacencySize = null;
+            neighborMarks = null;
+            candidateCost = null;
+            candidateFrom = candidateTo = candidateFromVersion = candidateToVersion = heap = null;
+        }
+    }
+
+    /**
+     * Returns the error of the most expensive collapse of the last run, as a distance in object units.
+     * It is an upper bound for how far the simplified surface deviates from the planes of the input near any vertex.
+     *
+     * @return The error, 0 if nothing was collapsed.
+     */
+    public double getLastError() {
+        return Math.sqrt(lastError);
+    }
+
+    /**
+     * Builds the list of triangles around every vertex.
+     *
+     * @param vertexCount   The number of vertices.
+     * @param triangleCount The number of triangles.
+     */
+    private void buildAdjacency(int vertexCount, int triangleCount) {
+        adjacencySize = new int[vertexCount];
+        for (int i = 0; i < triangleCount * 3; i++) {
+            adjacencySize[corners[i]]++;
+        }
+        adjacency = new int[vertexCount][];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacency[v] = new int[adjacencySize[v]];
+            adjacencySize[v] = 0;
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = corners[t * 3 + k];
+                adjacency[v][adjacencySize[v]++] = t;
+            }
+        }
+    }
+
+    /**
+     * Sums the plane quadrics of all triangles and boundary edges per vertex and queues the first collapse candidates.
+     *
+     * @param vertexCount   The number of vertices.
+     * @param triangleCount The number of triangles.
+     */
+    private void buildQuadrics(int vertexCount, int triangleCount) {
+        quadrics = new double[vertexCount * 10];
+        double[] plane = new double[4];
+        for (int t = 0; t < triangleCount; t++) {
+            if (trianglePlane(corners[t * 3], corners[t * 3 + 1], corners[t * 3 + 2], plane)) {
+                for (int k = 0; k < 3; k++) {
+                    addPlane(corners[t * 3 + k], plane, 1);
+                }
+            }
+        }
+
+        // Every undirected edge once, as a sorted key; edges used by a single triangle are boundaries
+        long[] edges = new long[triangleCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int a = corners[t * 3 + k], b = corners[t * 3 + (k + 1) % 3];
+                edges[t * 3 + k] = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+            }
+        }
+        long[] sorted = edges.clone();
+        Arrays.sort(sorted);
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                long edge = edges[t * 3 + k];
+                int first = Arrays.binarySearch(sorted, edge);
+                while (first > 0 && sorted[first - 1] == edge) {
+                    first--;
+                }
+                boolean boundary = (first + 1 >= sorted.length || sorted[first + 1] != edge);
+                if (boundary) {
+                    int a = corners[t * 3 + k], b = corners[t * 3 + (k + 1) % 3], c = corners[t * 3 + (k + 2) % 3];
+                    if (boundaryPlane(a, b, c, plane)) {
+                        addPlane(a, plane, BOUNDARY_WEIGHT);
+                        addPlane(b, plane, BOUNDARY_WEIGHT);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                int a = (int) (sorted[i] >>> 32), b = (int) sorted[i];
+                if (a != b) {
+                    queueEdge(a, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the unit plane of a triangle.
+     *
+     * @param a     The first vertex.
+     * @param b     The second vertex.
+     * @param c     The third vertex.
+     * @param plane Receives the plane as {nx, ny, nz, d} with nx*x + ny*y + nz*z + d = 0.
+     * @return False if the triangle is degenerate.
+     */
+    private boolean trianglePlane(int a, int b, int c, double[] plane) {
+        double e1x = x[b] - x[a], e1y = y[b] - y[a], e1z = z[b] - z[a];
+        double e2x = x[c] - x[a], e2y = y[c] - y[a], e2z = z[c] - z[a];
+        double nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (!(length > 0)) {
+            return false;
+        }
+        plane[0] = nx / length;
+        plane[1] = ny / length;
+        plane[2] = nz / length;
+        plane[3] = -(plane[0] * x[a] + plane[1] * y[a] + plane[2] * z[a]);
+        return true;
+    }
+
+    /**
+     * Computes the unit plane through a boundary edge, perpendicular to its triangle.
+     *
+     * @param a     The first vertex of the edge.
+     * @param b     The second vertex of the edge.
+     * @param c     The third vertex of the triangle.
+     * @param plane Receives the plane as {nx, ny, nz, d}.
+     * @return False if the edge or the triangle is degenerate.
+     */
+    private boolean boundaryPlane(int a, int b, int c, double[] plane) {
+        if (!trianglePlane(a, b, c, plane)) {
+            return false;
+        }
+        double ex = x[b] - x[a], ey = y[b] - y[a], ez = z[b] - z[a];
+        double nx = ey * plane[2] - ez * plane[1];
+        double ny = ez * plane[0] - ex * plane[2];
+        double nz = ex * plane[1] - ey * plane[0];
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (!(length > 0)) {
+            return false;
+        }
+        plane[0] = nx / length;
+        plane[1] = ny / length;
+        plane[2] = nz / length;
+        plane[3] = -(plane[0] * x[a] + plane[1] * y[a] + plane[2] * z[a]);
+        return true;
+    }
+
+    /**
+     * Adds the quadric of a plane to a vertex. A quadric is stored as the ten distinct entries of the
+     * symmetric matrix p * p^T: aa, ab, ac, ad, bb, bc, bd, cc, cd, dd.
+     *
+     * @param vertex The vertex.
+     * @param plane  The plane {a, b, c, d}.
+     * @param weight The weight of the plane.
+     */
+    private void addPlane(int vertex, double[] plane, double weight) {
+        double a = plane[0], b = plane[1], c = plane[2], d = plane[3];
+        int q = vertex * 10;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    /**
+     * Evaluates the sum of two vertex quadrics at the position of a vertex.
+     *
+     * @param first  The first vertex of the quadric sum.
+     * @param second The second vertex of the quadric sum.
+     * @param at     The vertex whose position is evaluated.
+     * @return The summed squared plane distances.
+     */
+    private double error(int first, int second, int at) {
+        int p = first * 10, q = second * 10;
+        double px = x[at], py = y[at], pz = z[at];
+        double aa = quadrics[p] + quadrics[q], ab = quadrics[p + 1] + quadrics[q + 1];
+        double ac = quadrics[p + 2] + quadrics[q + 2], ad = quadrics[p + 3] + quadrics[q + 3];
+        double bb = quadrics[p + 4] + quadrics[q + 4], bc = quadrics[p + 5] + quadrics[q + 5];
+        double bd = quadrics[p + 6] + quadrics[q + 6], cc = quadrics[p + 7] + quadrics[q + 7];
+        double cd = quadrics[p + 8] + quadrics[q + 8], dd = quadrics[p + 9] + quadrics[q + 9];
+        double value = aa * px * px + 2 * ab * px * py + 2 * ac * px * pz + 2 * ad * px
+                + bb * py * py + 2 * bc * py * pz + 2 * bd * py
+                + cc * pz * pz + 2 * cd * pz + dd;
+        // Rounding can make the error of a perfect collapse slightly negative
+        return Math.max(0, value);
+    }
+
+    /**
+     * Queues the cheaper direction of collapsing an edge.
+     *
+     * @param a The first vertex of the edge.
+     * @param b The second vertex of the edge.
+     */
+    private void queueEdge(int a, int b) {
+        double intoB = error(a, b, b);
+        double intoA = error(a, b, a);
+        if (intoB <= intoA) {
+            pushCandidate(a, b, intoB);
+        } else {
+            pushCandidate(b, a, intoA);
+        }
+    }
+
+    /**
+     * Checks if moving a vertex onto another would turn any of its remaining triangles over.
+     *
+     * @param from The vertex to remove.
+     * @param to   The vertex to keep.
+     * @return True if the collapse must be skipped.
+     */
+    private boolean flipsTriangle(int from, int to) {
+        int[] triangles = adjacency[from];
+        for (int i = 0, size = adjacencySize[from]; i < size; i++) {
+            int t = triangles[i];
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            int a = corners[t * 3], b = corners[t * 3 + 1], c = corners[t * 3 + 2];
+            if (a == to || b == to || c == to) {
+                continue;
+            }
+            double oldX = normalX(a, b, c), oldY = normalY(a, b, c), oldZ = normalZ(a, b, c);
+            if (a == from) {
+                a = to;
+            } else if (b == from) {
+                b = to;
+            } else {
+                c = to;
+            }
+            double newX = normalX(a, b, c), newY = normalY(a, b, c), newZ = normalZ(a, b, c);
+            double dot = oldX * newX + oldY * newY + oldZ * newZ;
+            double lengths = Math.sqrt((oldX * oldX + oldY * oldY + oldZ * oldZ) * (newX * newX + newY * newY + newZ * newZ));
+            if (!(dot > MIN_NORMAL_COSINE * lengths)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the x-component of the unnormalized normal of a triangle.
+     *
+     * @param a The first vertex.
+     * @param b The second vertex.
+     * @param c The third vertex.
+     * @return The x-component.
+     */
+    private double normalX(int a, int b, int c) {
+        return (y[b] - y[a]) * (z[c] - z[a]) - (z[b] - z[a]) * (y[c] - y[a]);
+    }
+
+    /**
+     * Returns the y-component of the unnormalized normal of a triangle.
+     *
+     * @param a The first vertex.
+     * @param b The second vertex.
+     * @param c The third vertex.
+     * @return The y-component.
+     */
+    private double normalY(int a, int b, int c) {
+        return (z[b] - z[a]) * (x[c] - x[a]) - (x[b] - x[a]) * (z[c] - z[a]);
+    }
+
+    /**
+     * Returns the z-component of the unnormalized normal of a triangle.
+     *
+     * @param a The first vertex.
+     * @param b The second vertex.
+     * @param c The third vertex.
+     * @return The z-component.
+     */
+    private double normalZ(int a, int b, int c) {
+        return (x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a]);
+    }
+
+    /**
+     * Merges one vertex into another and queues the changed edges.
+     *
+     * @param from The vertex to remove.
+     * @param to   The vertex to keep.
+     * @return The number of triangles that became degenerate and were removed.
+     */
+    private int collapse(int from, int to) {
+        for (int k = 0; k < 10; k++) {
+            quadrics[to * 10 + k] += quadrics[from * 10 + k];
+        }
+        int removed = 0;
+        int[] triangles = adjacency[from];
+        for (int i = 0, size = adjacencySize[from]; i < size; i++) {
+            int t = triangles[i];
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            int offset = t * 3;
+            if (corners[offset] == to || corners[offset + 1] == to || corners[offset + 2] == to) {
+                triangleAlive[t] = false;
+                removed++;
+            } else {
+                for (int k = 0; k < 3; k++) {
+                    if (corners[offset + k] == from) {
+                        corners[offset + k] = to;
+                    }
+                }
+                appendTriangle(to, t);
+            }
+        }
+        vertexRemoved[from] = true;
+        adjacency[from] = null;
+        adjacencySize[from] = 0;
+        versions[to]++;
+
+        // Drop dead triangles from the kept vertex and requeue its edges with the merged quadric
+        int[] kept = adjacency[to];
+        int size = 0;
+        markStamp++;
+        neighborMarks[to] = markStamp;
+        for (int i = 0; i < adjacencySize[to]; i++) {
+            int t = kept[i];
+            if (!triangleAlive[t]) {
+                continue;
+            }
+            kept[size++] = t;
+            for (int k = 0; k < 3; k++) {
+                int neighbor = corners[t * 3 + k];
+                if (neighborMarks[neighbor] != markStamp) {
+                    neighborMarks[neighbor] = markStamp;
+                    queueEdge(to, neighbor);
+                }
+            }
+        }
+        adjacencySize[to] = size;
+        return removed;
+    }
+
+    /**
+     * Appends a triangle to the adjacency list of a vertex.
+     *
+     * @param vertex   The vertex.
+     * @param triangle The triangle.
+     */
+    private void appendTriangle(int vertex, int triangle) {
+        int size = adjacencySize[vertex];
+        if (size == adjacency[vertex].length) {
+            adjacency[vertex] = Arrays.copyOf(adjacency[vertex], Math.max(8, size * 2));
+        }
+        adjacency[vertex][size] = triangle;
+        adjacencySize[vertex] = size + 1;
+    }
+
+    /**
+     * Adds a collapse candidate to the heap.
+     *
+     * @param from The vertex to remove.
+     * @param to   The vertex to keep.
+     * @param cost The error of the collapse.
+     */
+    private void pushCandidate(int from, int to, double cost) {
+        if (candidateCount == candidateCost.length) {
+            int capacity = candidateCount * 2;
+            candidateCost = Arrays.copyOf(candidateCost, capacity);
+            candidateFrom = Arrays.copyOf(candidateFrom, capacity);
+            candidateTo = Arrays.copyOf(candidateTo, capacity);
+            candidateFromVersion = Arrays.copyOf(candidateFromVersion, capacity);
+            candidateToVersion = Arrays.copyOf(candidateToVersion, capacity);
+        }
+        int candidate = candidateCount++;
+        candidateCost[candidate] = cost;
+        candidateFrom[candidate] = from;
+        candidateTo[candidate] = to;
+        candidateFromVersion[candidate] = versions[from];
+        candidateToVersion[candidate] = versions[to];
+
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        int position = heapSize++;
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (candidateCost[heap[parent]] <= cost) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = candidate;
+    }
+
+    /**
+     * Removes the cheapest candidate from the heap.
+     *
+     * @return The candidate.
+     */
+    private int popCandidate() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        double cost = candidateCost[last];
+        int position = 0;
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && candidateCost[heap[child + 1]] < candidateCost[heap[child]]) {
+                child++;
+            }
+            if (candidateCost[heap[child]] >= cost) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        if (heapSize > 0) {
+            heap[position] = last;
+        }
+        return top;
+    }
+
+    /**
+     * Collects the surviving triangles in their original order and recomputes the sub-mesh ranges.
+     *
+     * @param data      The input geometry.
+     * @param remaining The number of surviving triangles.
+     * @return The simplified geometry.
+     */
+    private MeshData buildResult(MeshData data, int remaining) {
+        int[] indices = new int[remaining * 3];
+        SubMesh[] subMeshes = data.getSubMeshes();
+        SubMesh[] simplified = new SubMesh[subMeshes.length];
+        int triangle = 0;
+        for (int s = 0; s < subMeshes.length; s++) {
+            int first = triangle;
+            for (int t = subMeshes[s].firstTriangle(), end = t + subMeshes[s].triangleCount(); t < end; t++) {
+                if (triangleAlive[t]) {
+                    System.arraycopy(corners, t * 3, indices, triangle * 3, 3);
+                    triangle++;
+                }
+            }
+            simplified[s] = new SubMesh(subMeshes[s].name(), first, triangle - first);
+        }
+        return new MeshData(data.getStorage().withIndices(indices, triangle),
+                data.normalX, data.normalY, data.normalZ, data.textureU, data.textureV, simplified);
+    }
+}
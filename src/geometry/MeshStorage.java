@@ -0,0 +1,121 @@
+package geometry;
+
+/**
+ * The MeshStorage interface holds the vertex positions and the index buffer of a {@link MeshData}, either in heap
+ * arrays or outside of the heap. Geometry code reads single values through the getters; the transform stage reads
+ * ranges through the bulk methods, which return the storage's own arrays where it has them and otherwise copy the
+ * range into arrays of the caller, so both kinds of storage go through the same kernels.
+ * <p>
+ * Storage is immutable and may be read by any number of threads.
+ * @author Giorgio
+ */
+public interface MeshStorage {
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return The vertex count.
+     */
+    int getVertexCount();
+
+    /**
+     * Returns the number of triangles.
+     *
+     * @return The triangle count.
+     */
+    int getTriangleCount();
+
+    /**
+     * Returns the x-coordinate of a vertex.
+     *
+     * @param vertex The index of the vertex.
+     * @return The x-coordinate.
+     */
+    double getX(int vertex);
+
+    /**
+     * Returns the y-coordinate of a vertex.
+     *
+     * @param vertex The index of the vertex.
+     * @return The y-coordinate.
+     */
+    double getY(int vertex);
+
+    /**
+     * Returns the z-coordinate of a vertex.
+     *
+     * @param vertex The index of the vertex.
+     * @return The z-coordinate.
+     */
+    double getZ(int vertex);
+
+    /**
+     * Returns an entry of the index buffer.
+     *
+     * @param index The position in the index buffer, three entries per triangle.
+     * @return The vertex index.
+     */
+    int getIndex(int index);
+
+    /**
+     * Returns the coordinates of one axis for a range of vertices, at their vertex index. Heap storage returns its
+     * own array, which must not be modified, and ignores the destination, which may then be null.
+     *
+     * @param axis        The axis, 0, 1 or 2 for x, y or z.
+     * @param from        The first vertex.
+     * @param to          The vertex after the last one.
+     * @param destination Receives the coordinates if the storage has no array of them.
+     * @return The array holding the coordinates.
+     */
+    double[] getPositions(int axis, int from, int to, double[] destination);
+
+    /**
+     * Float version of {@link #getPositions(int, int, int, double[])}, the input of the {@link Precision#FLOAT}
+     * pipeline. Heap storage creates its float copy of the positions on the first call.
+     *
+     * @param axis        The axis, 0, 1 or 2 for x, y or z.
+     * @param from        The first vertex.
+     * @param to          The vertex after the last one.
+     * @param destination Receives the coordinates if the storage has no array of them.
+     * @return The array holding the coordinates.
+     */
+    float[] getFloatPositions(int axis, int from, int to, float[] destination);
+
+    /**
+     * Returns one corner of a range of triangles, at their triangle index, the layout the transform stage gathers
+     * from. Heap storage returns its own array, split from the index buffer on the first call, and ignores the
+     * destination.
+     *
+     * @param corner      The corner, 0, 1 or 2.
+     * @param from        The first triangle.
+     * @param to          The triangle after the last one.
+     * @param destination Receives the vertex indices if the storage has no array of them.
+     * @return The array holding the vertex indices.
+     */
+    int[] getCorners(int corner, int from, int to, int[] destination);
+
+    /**
+     * Creates storage of the same kind that shares the positions of this one and has a new index buffer, e.g. one
+     * reordered into clusters or simplified.
+     *
+     * @param indices       The index buffer, three entries per triangle. Heap storage keeps the array.
+     * @param triangleCount The number of valid triangles.
+     * @return The new storage.
+     */
+    MeshStorage withIndices(int[] indices, int triangleCount);
+
+    /**
+     * Checks if the geometry lives outside of the heap. The bulk methods of such storage copy into the destination.
+     *
+     * @return True for direct or memory-mapped storage.
+     */
+    boolean isOffHeap();
+
+    /**
+     * Returns the memory used by the positions and the index buffer, on or off the heap as told by
+     * {@link #isOffHeap()}, including copies made on first use.
+     *
+     * @return The size in bytes.
+     */
+    long getByteSize();
+}
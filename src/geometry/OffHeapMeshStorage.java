@@ -0,0 +1,224 @@
+package geometry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * The OffHeapMeshStorage class keeps the geometry of a huge mesh outside of the Java heap, in direct or
+ * memory-mapped {@link ByteBuffer}s, e.g. meshes reconstructed from point clouds with tens of millions of
+ * triangles. Positions are little-endian float runs, one per axis, and the index buffer is stored split into one
+ * int run per triangle corner, so the bulk methods copy a range with one bulk read per run. The garbage collector
+ * only sees a handful of buffer objects, however many triangles the mesh has.
+ * <p>
+ * All buffers are read-only views and are read with absolute access only, so they can be shared between threads.
+ * The memory is released when the buffers become unreachable; mapped files are unmapped at the same time.
+ * @author Giorgio
+ */
+public final class OffHeapMeshStorage implements MeshStorage {
+    private final FloatBuffer x;
+    private final FloatBuffer y;
+    private final FloatBuffer z;
+    private final IntBuffer cornerA;
+    private final IntBuffer cornerB;
+    private final IntBuffer cornerC;
+    private final int vertexCount;
+    private final int triangleCount;
+
+    /**
+     * Constructs off-heap storage from existing buffers, e.g. regions of a mapped file.
+     * The buffers are read from index 0 regardless of their position. Vertex indices are not validated; an index
+     * out of range makes the transform stage throw an {@link IndexOutOfBoundsException}.
+     *
+     * @param x             The x-coordinates of the vertices, {@link Float#BYTES} bytes each.
+     * @param y             The y-coordinates of the vertices.
+     * @param z             The z-coordinates of the vertices.
+     * @param vertexCount   The number of valid vertices.
+     * @param cornerA       The first vertex index of every triangle, {@link Integer#BYTES} bytes each.
+     * @param cornerB       The second vertex index of every triangle.
+     * @param cornerC       The third vertex index of every triangle.
+     * @param triangleCount The number of valid triangles.
+     */
+    public OffHeapMeshStorage(ByteBuffer x, ByteBuffer y, ByteBuffer z, int vertexCount,
+                              ByteBuffer cornerA, ByteBuffer cornerB, ByteBuffer cornerC, int triangleCount) {
+        long positionBytes = (long) vertexCount * Float.BYTES;
+        if (x.capacity() < positionBytes || y.capacity() < positionBytes || z.capacity() < positionBytes) {
+            throw new IllegalArgumentException("Coordinate buffers are shorter than the vertex count");
+        }
+        long cornerBytes = (long) triangleCount * Integer.BYTES;
+        if (cornerA.capacity() < cornerBytes || cornerB.capacity() < cornerBytes || cornerC.capacity() < cornerBytes) {
+            throw new IllegalArgumentException("Corner buffers are shorter than the triangle count");
+        }
+        this.x = view(x).asFloatBuffer();
+        this.y = view(y).asFloatBuffer();
+        this.z = view(z).asFloatBuffer();
+        this.cornerA = view(cornerA).asIntBuffer();
+        this.cornerB = view(cornerB).asIntBuffer();
+        this.cornerC = view(cornerC).asIntBuffer();
+        this.vertexCount = vertexCount;
+        this.triangleCount = triangleCount;
+    }
+
+    /**
+     * Constructs storage sharing the positions of other off-heap storage.
+     *
+     * @param positions     The storage whose positions are shared.
+     * @param cornerA       The first vertex index of every triangle.
+     * @param cornerB       The second vertex index of every triangle.
+     * @param cornerC       The third vertex index of every triangle.
+     * @param triangleCount The number of valid triangles.
+     */
+    private OffHeapMeshStorage(OffHeapMeshStorage positions, IntBuffer cornerA, IntBuffer cornerB, IntBuffer cornerC,
+                               int triangleCount) {
+        this.x = positions.x;
+        this.y = positions.y;
+        this.z = positions.z;
+        this.vertexCount = positions.vertexCount;
+        this.cornerA = cornerA;
+        this.cornerB = cornerB;
+        this.cornerC = cornerC;
+        this.triangleCount = triangleCount;
+    }
+
+    /**
+     * Copies the positions and the index buffer of mesh data into newly allocated direct memory. The positions
+     * are rounded to floats; normals, texture coordinates and sub-meshes are not copied.
+     * Direct memory counts against {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size.
+     *
+     * @param data The geometry to copy.
+     * @return The off-heap copy.
+     */
+    public static OffHeapMeshStorage allocate(MeshData data) {
+        int vertexCount = data.vertexCount, triangleCount = data.triangleCount;
+        ByteBuffer x = allocateRun(vertexCount), y = allocateRun(vertexCount), z = allocateRun(vertexCount);
+        for (int i = 0; i < vertexCount; i++) {
+            x.putFloat(i * Float.BYTES, (float) data.getX(i));
+            y.putFloat(i * Float.BYTES, (float) data.getY(i));
+            z.putFloat(i * Float.BYTES, (float) data.getZ(i));
+        }
+        ByteBuffer cornerA = allocateRun(triangleCount), cornerB = allocateRun(triangleCount), cornerC = allocateRun(triangleCount);
+        for (int t = 0; t < triangleCount; t++) {
+            cornerA.putInt(t * Integer.BYTES, data.getIndex(t * 3));
+            cornerB.putInt(t * Integer.BYTES, data.getIndex(t * 3 + 1));
+            cornerC.putInt(t * Integer.BYTES, data.getIndex(t * 3 + 2));
+        }
+        return new OffHeapMeshStorage(x, y, z, vertexCount, cornerA, cornerB, cornerC, triangleCount);
+    }
+
+    /**
+     * Allocates a little-endian direct buffer for one run of four-byte values.
+     *
+     * @param count The number of values.
+     * @return The buffer.
+     */
+    private static ByteBuffer allocateRun(int count) {
+        return ByteBuffer.allocateDirect(Math.multiplyExact(count, 4)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates the read-only little-endian view of a buffer given by the caller.
+     *
+     * @param buffer The buffer.
+     * @return The view.
+     */
+    private static ByteBuffer view(ByteBuffer buffer) {
+        return buffer.asReadOnlyBuffer().clear().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    @Override
+    public double getX(int vertex) {
+        return x.get(vertex);
+    }
+
+    @Override
+    public double getY(int vertex) {
+        return y.get(vertex);
+    }
+
+    @Override
+    public double getZ(int vertex) {
+        return z.get(vertex);
+    }
+
+    @Override
+    public int getIndex(int index) {
+        return corner(index % 3).get(index / 3);
+    }
+
+    @Override
+    public double[] getPositions(int axis, int from, int to, double[] destination) {
+        FloatBuffer run = axis == 0 ? x : axis == 1 ? y : z;
+        for (int i = from; i < to; i++) {
+            destination[i] = run.get(i);
+        }
+        return destination;
+    }
+
+    @Override
+    public float[] getFloatPositions(int axis, int from, int to, float[] destination) {
+        (axis == 0 ? x : axis == 1 ? y : z).get(from, destination, from, to - from);
+        return destination;
+    }
+
+    @Override
+    public int[] getCorners(int corner, int from, int to, int[] destination) {
+        corner(corner).get(from, destination, from, to - from);
+        return destination;
+    }
+
+    /**
+     * Returns the int run of one triangle corner.
+     *
+     * @param corner The corner, 0, 1 or 2.
+     * @return The run.
+     */
+    private IntBuffer corner(int corner) {
+        return corner == 0 ? cornerA : corner == 1 ? cornerB : cornerC;
+    }
+
+    /**
+     * Creates storage sharing these positions whose index buffer is copied into newly allocated direct memory.
+     *
+     * @param indices       The index buffer, three entries per triangle.
+     * @param triangleCount The number of valid triangles.
+     * @return The new storage.
+     */
+    @Override
+    public MeshStorage withIndices(int[] indices, int triangleCount) {
+        IntBuffer a = allocateRun(triangleCount).asIntBuffer();
+        IntBuffer b = allocateRun(triangleCount).asIntBuffer();
+        IntBuffer c = allocateRun(triangleCount).asIntBuffer();
+        for (int t = 0; t < triangleCount; t++) {
+            a.put(t, indices[t * 3]);
+            b.put(t, indices[t * 3 + 1]);
+            c.put(t, indices[t * 3 + 2]);
+        }
+        return new OffHeapMeshStorage(this, a.asReadOnlyBuffer(), b.asReadOnlyBuffer(), c.asReadOnlyBuffer(), triangleCount);
+    }
+
+    @Override
+    public boolean isOffHeap() {
+        return true;
+    }
+
+    @Override
+    public long getByteSize() {
+        return 3L * vertexCount * Float.BYTES + 3L * triangleCount * Integer.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapMeshStorage[" + vertexCount + " vertices, " + triangleCount + " triangles]";
+    }
+}
@@ -0,0 +1,31 @@
+package geometry;
+
+/**
+ * The Shading enum selects how a {@link Mesh} is lit. Flat shading lights every face once with its face normal;
+ * smooth (Gouraud) shading lights every vertex with its vertex normal, and the rasterizer interpolates the
+ * colors across the face, which hides the facets of curved surfaces.
+ * @author Giorgio
+ */
+public enum Shading {
+    /** One color per face, from the face normal. */
+    FLAT,
+    /** One color per vertex, from the vertex normal, interpolated across the face. */
+    SMOOTH;
+
+    /** The shading new meshes start with, taken from the system property {@code engine.shading}. */
+    public static final Shading DEFAULT = parse(System.getProperty("engine.shading", "smooth"));
+
+    /**
+     * Parses a shading name as used by the {@code engine.shading} system property.
+     *
+     * @param name Either "flat" or "smooth".
+     * @return The shading.
+     */
+    public static Shading parse(String name) {
+        return switch (name.toLowerCase()) {
+            case "flat" -> FLAT;
+            case "smooth", "gouraud" -> SMOOTH;
+            default -> throw new IllegalArgumentException("Unknown shading: " + name);
+        };
+    }
+}
@@ -0,0 +1,308 @@
+package geometry;
+
+/**
+ * The ShadingTables class holds the lookup tables that replace the expensive parts of {@link Lighting#shade}:
+ * <ul>
+ *     <li>the summed intensity of all directional lights for quantized normal directions, so shading reads one
+ *     entry instead of looping over the lights, if there are at least {@link #NORMAL_TABLE_MIN_LIGHTS} of them,</li>
+ *     <li>the Blinn-Phong highlight for quantized squared cosines, which replaces {@code Math.pow} and the square
+ *     root normalizing the half vector,</li>
+ *     <li>and, with gamma correction, a decode table for the 256 channel values and an encode ramp for linear
+ *     intensities, which replace the two {@code Math.pow} calls per channel.</li>
+ * </ul>
+ * Normals are quantized with an octahedral map: the normal is projected onto the octahedron |x| + |y| + |z| = 1,
+ * whose lower half is folded over the upper half, and the resulting square is sampled on a regular grid. That
+ * spends the entries evenly over all directions and needs no square root, so the normal does not even have to be
+ * normalized for this part.
+ * <p>
+ * Point lights depend on the position of the surface and are still evaluated directly. The tables belong to one
+ * immutable lighting and are built once by {@link Lighting#getTables()}; a changed lighting is a new lighting with
+ * new tables.
+ * @author Giorgio
+ */
+public final class ShadingTables {
+    /** Whether {@link Lighting#shade} uses the tables, taken from the system property {@code engine.shadingTables}. */
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("engine.shadingTables", "true"));
+    /**
+     * The number of directional lights from which on their intensities are looked up by the normal. Quantizing the
+     * normal costs about as much as evaluating seven lights, so fewer lights are evaluated directly.
+     */
+    public static final int NORMAL_TABLE_MIN_LIGHTS = 8;
+    /** The number of samples of the octahedral normal map along each axis. */
+    public static final int NORMAL_RESOLUTION = 256;
+    /** The number of steps of the highlight table over the squared cosine from 0 to 1. */
+    public static final int HIGHLIGHT_RESOLUTION = 4096;
+    /** The number of steps of the gamma encode ramp over the linear intensity from 0 to 1. */
+    public static final int RAMP_RESOLUTION = 4096;
+
+    // intensities in the normal table are fixed point with 8 fraction bits, 10 bits per channel
+    private static final double INTENSITY_SCALE = 256;
+    private static final double INTENSITY_UNIT = 1 / INTENSITY_SCALE;
+    private static final int INTENSITY_MAX = 0x3FF;
+
+    private final Lighting lighting;
+    /** The directional intensities per normal direction, packed as red << 20 | green << 10 | blue, or null. */
+    private final int[] diffuse;
+    /** The highlight per squared cosine, or null without highlights. */
+    private final float[] highlights;
+    /** The linear intensity of every channel value, or null without gamma correction. */
+    private final float[] decode;
+    /** The channel value of every linear intensity step, or null without gamma correction. */
+    private final byte[] encode;
+
+    /**
+     * Builds the tables of a lighting.
+     *
+     * @param lighting The lighting.
+     */
+    ShadingTables(Lighting lighting) {
+        this.lighting = lighting;
+        diffuse = lighting.directionX.length >= NORMAL_TABLE_MIN_LIGHTS ? buildDiffuse(lighting) : null;
+
+        if (lighting.getSpecular() > 0) {
+            highlights = new float[HIGHLIGHT_RESOLUTION + 1];
+            // Indexing by the squared cosine saves the square root, so the exponent is halved
+            double exponent = lighting.getShininess() * 0.5;
+            for (int i = 0; i <= HIGHLIGHT_RESOLUTION; i++) {
+                highlights[i] = (float) (lighting.getSpecular() * Math.pow((double) i / HIGHLIGHT_RESOLUTION, exponent));
+            }
+        } else {
+            highlights = null;
+        }
+
+        if (lighting.getGamma() != 1) {
+            decode = new float[256];
+            for (int channel = 0; channel < 256; channel++) {
+                decode[channel] = (float) lighting.decode(channel);
+            }
+            encode = new byte[RAMP_RESOLUTION + 1];
+            for (int i = 0; i <= RAMP_RESOLUTION; i++) {
+                encode[i] = (byte) lighting.encode((double) i / RAMP_RESOLUTION);
+            }
+        } else {
+            decode = null;
+            encode = null;
+        }
+    }
+
+    /**
+     * Samples the summed directional intensity at every vertex of the regular grid over the octahedral normal map,
+     * the first and last samples of each axis lying on the edges of the map at -1 and 1.
+     *
+     * @param lighting The lighting.
+     * @return The packed intensities.
+     */
+    private static int[] buildDiffuse(Lighting lighting) {
+        int[] table = new int[NORMAL_RESOLUTION * NORMAL_RESOLUTION];
+        for (int row = 0; row < NORMAL_RESOLUTION; row++) {
+            for (int column = 0; column < NORMAL_RESOLUTION; column++) {
+                double u = column * 2d / (NORMAL_RESOLUTION - 1) - 1;
+                double v = row * 2d / (NORMAL_RESOLUTION - 1) - 1;
+                double x = u, y = v, z = 1 - Math.abs(u) - Math.abs(v);
+                if (z < 0) {
+                    // Unfold the lower half of the octahedron
+                    x = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+                    y = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+                }
+                double length = Math.sqrt(x * x + y * y + z * z);
+                x /= length;
+                y /= length;
+                z /= length;
+
+                double red = 0, green = 0, blue = 0;
+                for (int i = 0; i < lighting.directionX.length; i++) {
+                    double cosine = x * lighting.directionX[i] + y * lighting.directionY[i] + z * lighting.directionZ[i];
+                    if (cosine > 0) {
+                        red += cosine * lighting.directionalRed[i];
+                        green += cosine * lighting.directionalGreen[i];
+                        blue += cosine * lighting.directionalBlue[i];
+                    }
+                }
+                table[row * NORMAL_RESOLUTION + column] = quantize(red) << 20 | quantize(green) << 10 | quantize(blue);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Converts an intensity to the fixed point format of the normal table.
+     *
+     * @param intensity The intensity.
+     * @return The fixed point intensity, saturated at 10 bits.
+     */
+    private static int quantize(double intensity) {
+        return (int) Math.min(INTENSITY_MAX, intensity * INTENSITY_SCALE + 0.5);
+    }
+
+    /**
+     * Returns the sample of the octahedral normal map nearest to a direction, rounding its map coordinates to the
+     * closest grid vertex.
+     *
+     * @param normalX The x-component of the direction, which does not have to be normalized.
+     * @param normalY The y-component of the direction.
+     * @param normalZ The z-component of the direction.
+     * @return The index into the normal table, or -1 for the zero vector.
+     */
+    static int normalIndex(double normalX, double normalY, double normalZ) {
+        double sum = Math.abs(normalX) + Math.abs(normalY) + Math.abs(normalZ);
+        if (!(sum > 0)) {
+            return -1;
+        }
+        double inverse = 1 / sum;
+        double u = normalX * inverse, v = normalY * inverse;
+        if (normalZ < 0) {
+            double foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            v = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+            u = foldedU;
+        }
+        int column = (int) ((u + 1) * (0.5 * (NORMAL_RESOLUTION - 1)) + 0.5);
+        int row = (int) ((v + 1) * (0.5 * (NORMAL_RESOLUTION - 1)) + 0.5);
+        return row * NORMAL_RESOLUTION + column;
+    }
+
+    /**
+     * Lights a surface point like {@link Lighting#shadeDirect}, with table lookups instead of the power function,
+     * the gamma curve and, with many lights, the loop over the directional lights.
+     *
+     * @param color     The color of the surface as 0xRRGGBB.
+     * @param normalX   The x-component of the normalized surface normal in world space.
+     * @param normalY   The y-component of the normal.
+     * @param normalZ   The z-component of the normal.
+     * @param positionX The x-coordinate of the surface point in world space.
+     * @param positionY The y-coordinate of the surface point.
+     * @param positionZ The z-coordinate of the surface point.
+     * @param eyeX      The x-coordinate of the camera in world space.
+     * @param eyeY      The y-coordinate of the camera.
+     * @param eyeZ      The z-coordinate of the camera.
+     * @return The lit color as 0xRRGGBB.
+     */
+    public int shade(int color, double normalX, double normalY, double normalZ,
+                     double positionX, double positionY, double positionZ, double eyeX, double eyeY, double eyeZ) {
+        Lighting l = lighting;
+        double red = 0, green = 0, blue = 0;
+        if (diffuse != null) {
+            int index = normalIndex(normalX, normalY, normalZ);
+            if (index >= 0) {
+                int packed = diffuse[index];
+                red = (packed >>> 20) * INTENSITY_UNIT;
+                green = ((packed >>> 10) & INTENSITY_MAX) * INTENSITY_UNIT;
+                blue = (packed & INTENSITY_MAX) * INTENSITY_UNIT;
+            }
+        }
+
+        double specularRed = 0, specularGreen = 0, specularBlue = 0;
+        double viewX = 0, viewY = 0, viewZ = 0;
+        if (highlights != null) {
+            viewX = eyeX - positionX;
+            viewY = eyeY - positionY;
+            viewZ = eyeZ - positionZ;
+            double length = Math.sqrt(viewX * viewX + viewY * viewY + viewZ * viewZ);
+            if (length > 0) {
+                viewX /= length;
+                viewY /= length;
+                viewZ /= length;
+            }
+        }
+        if (diffuse == null || highlights != null) {
+            for (int i = 0; i < l.directionX.length; i++) {
+                double cosine = normalX * l.directionX[i] + normalY * l.directionY[i] + normalZ * l.directionZ[i];
+                if (cosine > 0) {
+                    if (diffuse == null) {
+                        red += cosine * l.directionalRed[i];
+                        green += cosine * l.directionalGreen[i];
+                        blue += cosine * l.directionalBlue[i];
+                    }
+                    if (highlights != null) {
+                        double highlight = highlight(normalX, normalY, normalZ,
+                                l.directionX[i] + viewX, l.directionY[i] + viewY, l.directionZ[i] + viewZ);
+                        specularRed += highlight * l.directionalRed[i];
+                        specularGreen += highlight * l.directionalGreen[i];
+                        specularBlue += highlight * l.directionalBlue[i];
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < l.pointX.length; i++) {
+            double dx = l.pointX[i] - positionX, dy = l.pointY[i] - positionY, dz = l.pointZ[i] - positionZ;
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            double distance = Math.sqrt(distanceSquared);
+            double cosine = (normalX * dx + normalY * dy + normalZ * dz) / distance;
+            if (cosine > 0) {
+                double attenuation = 1 / (1 + distanceSquared * l.pointFalloff[i]);
+                double intensity = cosine * attenuation;
+                red += intensity * l.pointRed[i];
+                green += intensity * l.pointGreen[i];
+                blue += intensity * l.pointBlue[i];
+                if (highlights != null) {
+                    double highlight = attenuation * highlight(normalX, normalY, normalZ,
+                            dx / distance + viewX, dy / distance + viewY, dz / distance + viewZ);
+                    specularRed += highlight * l.pointRed[i];
+                    specularGreen += highlight * l.pointGreen[i];
+                    specularBlue += highlight * l.pointBlue[i];
+                }
+            }
+        }
+        double ambient = l.getAmbient();
+        red = Math.max(ambient, red);
+        green = Math.max(ambient, green);
+        blue = Math.max(ambient, blue);
+        if (decode != null) {
+            return (encode(decode[(color >>> 16) & 0xFF] * red + specularRed) << 16)
+                    | (encode(decode[(color >>> 8) & 0xFF] * green + specularGreen) << 8)
+                    | encode(decode[color & 0xFF] * blue + specularBlue);
+        }
+        if (highlights != null) {
+            return Lighting.scale(color, red, green, blue, specularRed, specularGreen, specularBlue);
+        }
+        return Lighting.scale(color, red, green, blue);
+    }
+
+    /**
+     * Looks up the Blinn-Phong highlight of one light by the squared cosine between the normal and the half vector.
+     *
+     * @param normalX The x-component of the normalized surface normal.
+     * @param normalY The y-component of the normal.
+     * @param normalZ The z-component of the normal.
+     * @param halfX   The x-component of the unnormalized half vector.
+     * @param halfY   The y-component of the half vector.
+     * @param halfZ   The z-component of the half vector.
+     * @return The intensity of the highlight, including the specular intensity.
+     */
+    private double highlight(double normalX, double normalY, double normalZ, double halfX, double halfY, double halfZ) {
+        double dot = normalX * halfX + normalY * halfY + normalZ * halfZ;
+        if (!(dot > 0)) {
+            return 0;
+        }
+        double cosineSquared = dot * dot / (halfX * halfX + halfY * halfY + halfZ * halfZ);
+        return highlights[(int) (Math.min(1, cosineSquared) * HIGHLIGHT_RESOLUTION + 0.5)];
+    }
+
+    /**
+     * Gamma encodes a linear intensity with the ramp, saturating at full brightness.
+     *
+     * @param linear The linear intensity.
+     * @return The channel from 0 to 255.
+     */
+    private int encode(double linear) {
+        return encode[(int) (Math.min(1, linear) * RAMP_RESOLUTION + 0.5)] & 0xFF;
+    }
+
+    /**
+     * Returns the memory taken by the tables.
+     *
+     * @return The size of the tables in bytes.
+     */
+    public long getBytes() {
+        long bytes = 0;
+        if (diffuse != null) {
+            bytes += (long) diffuse.length * Integer.BYTES;
+        }
+        if (highlights != null) {
+            bytes += (long) highlights.length * Float.BYTES;
+        }
+        if (decode != null) {
+            bytes += (long) decode.length * Float.BYTES + encode.length;
+        }
+        return bytes;
+    }
+}
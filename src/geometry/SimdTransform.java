@@ -0,0 +1,374 @@
+package geometry;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The SimdTransform class holds the Vector API kernels of the {@link TransformStage}.
+ * It is only loaded when the jdk.incubator.vector module is present, so the rest of the engine keeps
+ * working with the scalar kernels on JVMs started without it.
+ * Remainders that do not fill a whole vector are processed with scalar code. Every kernel exists for doubles
+ * and for floats, which fit twice as many lanes into a vector.
+ * @author Giorgio
+ */
+final class SimdTransform {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /** The number of triangles copied into the scratch array at once. */
+    private static final int BLOCK = 256;
+
+    /** The required size of the scratch arrays passed to the face kernels. */
+    static final int CORNER_SCRATCH_SIZE = 9 * BLOCK;
+
+    private SimdTransform() {
+    }
+
+    /**
+     * Transforms a range of vertices into world space and projects them to the screen.
+     *
+     * @param x          The x-coordinates of the vertices.
+     * @param y          The y-coordinates of the vertices.
+     * @param z          The z-coordinates of the vertices.
+     * @param from       The first vertex.
+     * @param to         The vertex after the last one.
+     * @param w          The world matrix, row-major.
+     * @param p          The projection matrix, row-major.
+     * @param halfWidth  Half the screen width in pixels.
+     * @param halfHeight Half the screen height in pixels.
+     * @param worldX     Receives the world-space x-coordinates.
+     * @param worldY     Receives the world-space y-coordinates.
+     * @param worldZ     Receives the world-space z-coordinates.
+     * @param clipX      Receives the clip-space x-coordinates.
+     * @param clipY      Receives the clip-space y-coordinates.
+     * @param clipZ      Receives the clip-space z-coordinates.
+     * @param clipW      Receives the clip-space w-coordinates.
+     * @param screenX    Receives the screen x-coordinates.
+     * @param screenY    Receives the screen y-coordinates.
+     * @param screenZ    Receives the depth values.
+     */
+    static void transformVertices(double[] x, double[] y, double[] z, int from, int to,
+                                  double[] w, double[] p, double halfWidth, double halfHeight,
+                                  double[] worldX, double[] worldY, double[] worldZ,
+                                  double[] clipX, double[] clipY, double[] clipZ, double[] clipW,
+                                  double[] screenX, double[] screenY, double[] screenZ) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+            DoubleVector vz = DoubleVector.fromArray(SPECIES, z, i);
+
+            DoubleVector wx = vx.mul(w[0]).add(vy.mul(w[4])).add(vz.mul(w[8])).add(w[12]);
+            DoubleVector wy = vx.mul(w[1]).add(vy.mul(w[5])).add(vz.mul(w[9])).add(w[13]);
+            DoubleVector wz = vx.mul(w[2]).add(vy.mul(w[6])).add(vz.mul(w[10])).add(w[14]);
+            wx.intoArray(worldX, i);
+            wy.intoArray(worldY, i);
+            wz.intoArray(worldZ, i);
+
+            DoubleVector px = wx.mul(p[0]).add(wy.mul(p[4])).add(wz.mul(p[8])).add(p[12]);
+            DoubleVector py = wx.mul(p[1]).add(wy.mul(p[5])).add(wz.mul(p[9])).add(p[13]);
+            DoubleVector pz = wx.mul(p[2]).add(wy.mul(p[6])).add(wz.mul(p[10])).add(p[14]);
+            DoubleVector pw = wx.mul(p[3]).add(wy.mul(p[7])).add(wz.mul(p[11])).add(p[15]);
+            px.intoArray(clipX, i);
+            py.intoArray(clipY, i);
+            pz.intoArray(clipZ, i);
+            pw.intoArray(clipW, i);
+
+            px.div(pw).add(1).mul(halfWidth).intoArray(screenX, i);
+            py.div(pw).add(1).mul(halfHeight).intoArray(screenY, i);
+            pz.div(pw).intoArray(screenZ, i);
+        }
+        for (; i < to; i++) {
+            double vx = x[i], vy = y[i], vz = z[i];
+            double wx = vx * w[0] + vy * w[4] + vz * w[8] + w[12];
+            double wy = vx * w[1] + vy * w[5] + vz * w[9] + w[13];
+            double wz = vx * w[2] + vy * w[6] + vz * w[10] + w[14];
+            worldX[i] = wx;
+            worldY[i] = wy;
+            worldZ[i] = wz;
+
+            double px = wx * p[0] + wy * p[4] + wz * p[8] + p[12];
+            double py = wx * p[1] + wy * p[5] + wz * p[9] + p[13];
+            double pz = wx * p[2] + wy * p[6] + wz * p[10] + p[14];
+            double pw = wx * p[3] + wy * p[7] + wz * p[11] + p[15];
+            clipX[i] = px;
+            clipY[i] = py;
+            clipZ[i] = pz;
+            clipW[i] = pw;
+            screenX[i] = (px / pw + 1) * halfWidth;
+            screenY[i] = (py / pw + 1) * halfHeight;
+            screenZ[i] = pz / pw;
+        }
+    }
+
+    /**
+     * Computes normalized face normals and backface culling flags for a range of triangles.
+     * The corner positions are first copied block by block into a contiguous scratch array with scalar
+     * loads and then processed with full-width vectors. Hardware gathers are avoided on purpose: C2 in
+     * JDK 17 miscompiles double gathers with int index maps on AVX-512 and crashes the JVM.
+     *
+     * @param cornerA The first vertex index of every triangle.
+     * @param cornerB The second vertex index of every triangle.
+     * @param cornerC The third vertex index of every triangle.
+     * @param from    The first triangle.
+     * @param to      The triangle after the last one.
+     * @param worldX  The world-space x-coordinates of the vertices.
+     * @param worldY  The world-space y-coordinates of the vertices.
+     * @param worldZ  The world-space z-coordinates of the vertices.
+     * @param cameraX The x-coordinate of the camera.
+     * @param cameraY The y-coordinate of the camera.
+     * @param cameraZ The z-coordinate of the camera.
+     * @param normalX Receives the x-components of the normals.
+     * @param normalY Receives the y-components of the normals.
+     * @param normalZ Receives the z-components of the normals.
+     * @param corners Scratch array of at least {@link #CORNER_SCRATCH_SIZE} elements, owned by the calling thread.
+     * @param visible Receives true for every triangle facing the camera.
+     */
+    static void processFaces(int[] cornerA, int[] cornerB, int[] cornerC, int from, int to,
+                             double[] worldX, double[] worldY, double[] worldZ,
+                             double cameraX, double cameraY, double cameraZ,
+                             double[] normalX, double[] normalY, double[] normalZ,
+                             double[] corners, boolean[] visible) {
+        for (int start = from; start < to; start += BLOCK) {
+            int count = Math.min(BLOCK, to - start);
+
+            // Copy the corner positions of the block into nine contiguous runs
+            for (int j = 0; j < count; j++) {
+                int a = cornerA[start + j], b = cornerB[start + j], c = cornerC[start + j];
+                corners[j] = worldX[a];
+                corners[BLOCK + j] = worldY[a];
+                corners[2 * BLOCK + j] = worldZ[a];
+                corners[3 * BLOCK + j] = worldX[b];
+                corners[4 * BLOCK + j] = worldY[b];
+                corners[5 * BLOCK + j] = worldZ[b];
+                corners[6 * BLOCK + j] = worldX[c];
+                corners[7 * BLOCK + j] = worldY[c];
+                corners[8 * BLOCK + j] = worldZ[c];
+            }
+
+            int j = 0;
+            int upper = SPECIES.loopBound(count);
+            for (; j < upper; j += SPECIES.length()) {
+                DoubleVector ax = DoubleVector.fromArray(SPECIES, corners, j);
+                DoubleVector ay = DoubleVector.fromArray(SPECIES, corners, BLOCK + j);
+                DoubleVector az = DoubleVector.fromArray(SPECIES, corners, 2 * BLOCK + j);
+                DoubleVector e1x = DoubleVector.fromArray(SPECIES, corners, 3 * BLOCK + j).sub(ax);
+                DoubleVector e1y = DoubleVector.fromArray(SPECIES, corners, 4 * BLOCK + j).sub(ay);
+                DoubleVector e1z = DoubleVector.fromArray(SPECIES, corners, 5 * BLOCK + j).sub(az);
+                DoubleVector e2x = DoubleVector.fromArray(SPECIES, corners, 6 * BLOCK + j).sub(ax);
+                DoubleVector e2y = DoubleVector.fromArray(SPECIES, corners, 7 * BLOCK + j).sub(ay);
+                DoubleVector e2z = DoubleVector.fromArray(SPECIES, corners, 8 * BLOCK + j).sub(az);
+
+                DoubleVector nx = e1y.mul(e2z).sub(e1z.mul(e2y));
+                DoubleVector ny = e1z.mul(e2x).sub(e1x.mul(e2z));
+                DoubleVector nz = e1x.mul(e2y).sub(e1y.mul(e2x));
+                DoubleVector length = nx.mul(nx).add(ny.mul(ny)).add(nz.mul(nz)).lanewise(VectorOperators.SQRT);
+                nx = nx.div(length);
+                ny = ny.div(length);
+                nz = nz.div(length);
+                nx.intoArray(normalX, start + j);
+                ny.intoArray(normalY, start + j);
+                nz.intoArray(normalZ, start + j);
+
+                // Masks are boxed when converted to arrays, so the dot products go through the scratch array
+                nx.mul(ax.sub(cameraX))
+                        .add(ny.mul(ay.sub(cameraY)))
+                        .add(nz.mul(az.sub(cameraZ)))
+                        .intoArray(corners, j);
+            }
+            for (int k = 0; k < upper; k++) {
+                visible[start + k] = corners[k] < 0;
+            }
+            for (; j < count; j++) {
+                double ax = corners[j], ay = corners[BLOCK + j], az = corners[2 * BLOCK + j];
+                double e1x = corners[3 * BLOCK + j] - ax, e1y = corners[4 * BLOCK + j] - ay, e1z = corners[5 * BLOCK + j] - az;
+                double e2x = corners[6 * BLOCK + j] - ax, e2y = corners[7 * BLOCK + j] - ay, e2z = corners[8 * BLOCK + j] - az;
+                double nx = e1y * e2z - e1z * e2y;
+                double ny = e1z * e2x - e1x * e2z;
+                double nz = e1x * e2y - e1y * e2x;
+                double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                nx /= length;
+                ny /= length;
+                nz /= length;
+                normalX[start + j] = nx;
+                normalY[start + j] = ny;
+                normalZ[start + j] = nz;
+                visible[start + j] = nx * (ax - cameraX) + ny * (ay - cameraY) + nz * (az - cameraZ) < 0;
+            }
+        }
+    }
+
+    /**
+     * Float version of {@link #transformVertices}.
+     *
+     * @param x          The x-coordinates of the vertices.
+     * @param y          The y-coordinates of the vertices.
+     * @param z          The z-coordinates of the vertices.
+     * @param from       The first vertex.
+     * @param to         The vertex after the last one.
+     * @param w          The world matrix, row-major.
+     * @param p          The projection matrix, row-major.
+     * @param halfWidth  Half the screen width in pixels.
+     * @param halfHeight Half the screen height in pixels.
+     * @param worldX     Receives the world-space x-coordinates.
+     * @param worldY     Receives the world-space y-coordinates.
+     * @param worldZ     Receives the world-space z-coordinates.
+     * @param clipX      Receives the clip-space x-coordinates.
+     * @param clipY      Receives the clip-space y-coordinates.
+     * @param clipZ      Receives the clip-space z-coordinates.
+     * @param clipW      Receives the clip-space w-coordinates.
+     * @param screenX    Receives the screen x-coordinates.
+     * @param screenY    Receives the screen y-coordinates.
+     * @param screenZ    Receives the depth values.
+     */
+    static void transformVerticesFloat(float[] x, float[] y, float[] z, int from, int to,
+                                       float[] w, float[] p, float halfWidth, float halfHeight,
+                                       float[] worldX, float[] worldY, float[] worldZ,
+                                       float[] clipX, float[] clipY, float[] clipZ, float[] clipW,
+                                       float[] screenX, float[] screenY, float[] screenZ) {
+        int i = from;
+        int upper = from + FLOAT_SPECIES.loopBound(to - from);
+        for (; i < upper; i += FLOAT_SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(FLOAT_SPECIES, x, i);
+            FloatVector vy = FloatVector.fromArray(FLOAT_SPECIES, y, i);
+            FloatVector vz = FloatVector.fromArray(FLOAT_SPECIES, z, i);
+
+            FloatVector wx = vx.mul(w[0]).add(vy.mul(w[4])).add(vz.mul(w[8])).add(w[12]);
+            FloatVector wy = vx.mul(w[1]).add(vy.mul(w[5])).add(vz.mul(w[9])).add(w[13]);
+            FloatVector wz = vx.mul(w[2]).add(vy.mul(w[6])).add(vz.mul(w[10])).add(w[14]);
+            wx.intoArray(worldX, i);
+            wy.intoArray(worldY, i);
+            wz.intoArray(worldZ, i);
+
+            FloatVector px = wx.mul(p[0]).add(wy.mul(p[4])).add(wz.mul(p[8])).add(p[12]);
+            FloatVector py = wx.mul(p[1]).add(wy.mul(p[5])).add(wz.mul(p[9])).add(p[13]);
+            FloatVector pz = wx.mul(p[2]).add(wy.mul(p[6])).add(wz.mul(p[10])).add(p[14]);
+            FloatVector pw = wx.mul(p[3]).add(wy.mul(p[7])).add(wz.mul(p[11])).add(p[15]);
+            px.intoArray(clipX, i);
+            py.intoArray(clipY, i);
+            pz.intoArray(clipZ, i);
+            pw.intoArray(clipW, i);
+
+            px.div(pw).add(1).mul(halfWidth).intoArray(screenX, i);
+            py.div(pw).add(1).mul(halfHeight).intoArray(screenY, i);
+            pz.div(pw).intoArray(screenZ, i);
+        }
+        for (; i < to; i++) {
+            float vx = x[i], vy = y[i], vz = z[i];
+            float wx = vx * w[0] + vy * w[4] + vz * w[8] + w[12];
+            float wy = vx * w[1] + vy * w[5] + vz * w[9] + w[13];
+            float wz = vx * w[2] + vy * w[6] + vz * w[10] + w[14];
+            worldX[i] = wx;
+            worldY[i] = wy;
+            worldZ[i] = wz;
+
+            float px = wx * p[0] + wy * p[4] + wz * p[8] + p[12];
+            float py = wx * p[1] + wy * p[5] + wz * p[9] + p[13];
+            float pz = wx * p[2] + wy * p[6] + wz * p[10] + p[14];
+            float pw = wx * p[3] + wy * p[7] + wz * p[11] + p[15];
+            clipX[i] = px;
+            clipY[i] = py;
+            clipZ[i] = pz;
+            clipW[i] = pw;
+            screenX[i] = (px / pw + 1) * halfWidth;
+            screenY[i] = (py / pw + 1) * halfHeight;
+            screenZ[i] = pz / pw;
+        }
+    }
+
+    /**
+     * Float version of {@link #processFaces}.
+     *
+     * @param cornerA The first vertex index of every triangle.
+     * @param cornerB The second vertex index of every triangle.
+     * @param cornerC The third vertex index of every triangle.
+     * @param from    The first triangle.
+     * @param to      The triangle after the last one.
+     * @param worldX  The world-space x-coordinates of the vertices.
+     * @param worldY  The world-space y-coordinates of the vertices.
+     * @param worldZ  The world-space z-coordinates of the vertices.
+     * @param cameraX The x-coordinate of the camera.
+     * @param cameraY The y-coordinate of the camera.
+     * @param cameraZ The z-coordinate of the camera.
+     * @param normalX Receives the x-components of the normals.
+     * @param normalY Receives the y-components of the normals.
+     * @param normalZ Receives the z-components of the normals.
+     * @param corners Scratch array of at least {@link #CORNER_SCRATCH_SIZE} elements, owned by the calling thread.
+     * @param visible Receives true for every triangle facing the camera.
+     */
+    static void processFacesFloat(int[] cornerA, int[] cornerB, int[] cornerC, int from, int to,
+                                  float[] worldX, float[] worldY, float[] worldZ,
+                                  float cameraX, float cameraY, float cameraZ,
+                                  float[] normalX, float[] normalY, float[] normalZ,
+                                  float[] corners, boolean[] visible) {
+        for (int start = from; start < to; start += BLOCK) {
+            int count = Math.min(BLOCK, to - start);
+
+            // Copy the corner positions of the block into nine contiguous runs
+            for (int j = 0; j < count; j++) {
+                int a = cornerA[start + j], b = cornerB[start + j], c = cornerC[start + j];
+                corners[j] = worldX[a];
+                corners[BLOCK + j] = worldY[a];
+                corners[2 * BLOCK + j] = worldZ[a];
+                corners[3 * BLOCK + j] = worldX[b];
+                corners[4 * BLOCK + j] = worldY[b];
+                corners[5 * BLOCK + j] = worldZ[b];
+                corners[6 * BLOCK + j] = worldX[c];
+                corners[7 * BLOCK + j] = worldY[c];
+                corners[8 * BLOCK + j] = worldZ[c];
+            }
+
+            int j = 0;
+            int upper = FLOAT_SPECIES.loopBound(count);
+            for (; j < upper; j += FLOAT_SPECIES.length()) {
+                FloatVector ax = FloatVector.fromArray(FLOAT_SPECIES, corners, j);
+                FloatVector ay = FloatVector.fromArray(FLOAT_SPECIES, corners, BLOCK + j);
+                FloatVector az = FloatVector.fromArray(FLOAT_SPECIES, corners, 2 * BLOCK + j);
+                FloatVector e1x = FloatVector.fromArray(FLOAT_SPECIES, corners, 3 * BLOCK + j).sub(ax);
+                FloatVector e1y = FloatVector.fromArray(FLOAT_SPECIES, corners, 4 * BLOCK + j).sub(ay);
+                FloatVector e1z = FloatVector.fromArray(FLOAT_SPECIES, corners, 5 * BLOCK + j).sub(az);
+                FloatVector e2x = FloatVector.fromArray(FLOAT_SPECIES, corners, 6 * BLOCK + j).sub(ax);
+                FloatVector e2y = FloatVector.fromArray(FLOAT_SPECIES, corners, 7 * BLOCK + j).sub(ay);
+                FloatVector e2z = FloatVector.fromArray(FLOAT_SPECIES, corners, 8 * BLOCK + j).sub(az);
+
+                FloatVector nx = e1y.mul(e2z).sub(e1z.mul(e2y));
+                FloatVector ny = e1z.mul(e2x).sub(e1x.mul(e2z));
+                FloatVector nz = e1x.mul(e2y).sub(e1y.mul(e2x));
+                FloatVector length = nx.mul(nx).add(ny.mul(ny)).add(nz.mul(nz)).lanewise(VectorOperators.SQRT);
+                nx = nx.div(length);
+                ny = ny.div(length);
+                nz = nz.div(length);
+                nx.intoArray(normalX, start + j);
+                ny.intoArray(normalY, start + j);
+                nz.intoArray(normalZ, start + j);
+
+                nx.mul(ax.sub(cameraX))
+                        .add(ny.mul(ay.sub(cameraY)))
+                        .add(nz.mul(az.sub(cameraZ)))
+                        .intoArray(corners, j);
+            }
+            for (int k = 0; k < upper; k++) {
+                visible[start + k] = corners[k] < 0;
+            }
+            for (; j < count; j++) {
+                float ax = corners[j], ay = corners[BLOCK + j], az = corners[2 * BLOCK + j];
+                float e1x = corners[3 * BLOCK + j] - ax, e1y = corners[4 * BLOCK + j] - ay, e1z = corners[5 * BLOCK + j] - az;
+                float e2x = corners[6 * BLOCK + j] - ax, e2y = corners[7 * BLOCK + j] - ay, e2z = corners[8 * BLOCK + j] - az;
+                float nx = e1y * e2z - e1z * e2y;
+                float ny = e1z * e2x - e1x * e2z;
+                float nz = e1x * e2y - e1y * e2x;
+                float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                nx /= length;
+                ny /= length;
+                nz /= length;
+                normalX[start + j] = nx;
+                normalY[start + j] = ny;
+                normalZ[start + j] = nz;
+                visible[start + j] = nx * (ax - cameraX) + ny * (ay - cameraY) + nz * (az - cameraZ) < 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package geometry;
+
+/**
+ * The SubMesh record names a contiguous range of triangles inside a {@link MeshData},
+ * e.g. one object or group of an OBJ file.
+ *
+ * @param name          The name of the object or group.
+ * @param firstTriangle The index of the first triangle of the range.
+ * @param triangleCount The number of triangles in the range.
+ * @author Giorgio
+ */
+public record SubMesh(String name, int firstTriangle, int triangleCount) {
+}
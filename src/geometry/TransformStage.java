@@ -0,0 +1,960 @@
+package geometry;
+
+import render.RootAction;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The TransformStage class transforms a whole {@link MeshData} per frame in two batch passes.
+ * The vertex pass transforms every position into world space and projects it to the screen,
+ * the face pass computes normalized face normals and backface culling flags, optionally only for some
+ * triangle ranges, e.g. the clusters that survived culling.
+ * Both passes run scalar, vectorized through the incubating Vector API, or vectorized and split across
+ * cores, as selected by the {@link Mode}. The results stay in reusable buffers owned by the stage.
+ * <p>
+ * The {@link Precision} selects whether positions, matrices and results are doubles or floats. Float runs read
+ * the float copy of the positions from {@link MeshStorage#getFloatPositions} and write to the float getters;
+ * only the buffers of the active precision are allocated.
+ * <p>
+ * Positions and corners are read through the {@link MeshStorage} of the geometry. Heap storage hands out its
+ * arrays. Off-heap storage copies the positions of each chunk into the world-space arrays, which the vertex pass
+ * then transforms in place, and the corners of each face range into arrays of the stage, so the same kernels run
+ * on both.
+ * @author Giorgio
+ */
+public class TransformStage {
+
+    /**
+     * The available implementations of the stage.
+     */
+    public enum Mode {
+        /** Plain scalar loops on the calling thread. */
+        SCALAR,
+        /** Vector API loops on the calling thread. */
+        SIMD,
+        /** Vector API loops split into chunks on the common ForkJoinPool. */
+        PARALLEL_SIMD
+    }
+
+    /** True if the jdk.incubator.vector module is present, i.e. the JVM was started with --add-modules. */
+    public static final boolean SIMD_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** The mode new stages start with, taken from the system property {@code engine.transform}. */
+    public static final Mode DEFAULT_MODE = parseMode(System.getProperty("engine.transform", "parallel"));
+
+    /** Meshes with fewer vertices than this are never split across cores. */
+    private static final int PARALLEL_THRESHOLD = 16384;
+
+    private Mode mode = DEFAULT_MODE;
+    private Precision precision = Precision.DEFAULT;
+
+    // per-vertex results
+    private double[] worldX = new double[0];
+    private double[] worldY = new double[0];
+    private double[] worldZ = new double[0];
+    private double[] screenX = new double[0];
+    private double[] screenY = new double[0];
+    private double[] screenZ = new double[0];
+    private double[] clipX = new double[0];
+    private double[] clipY = new double[0];
+    private double[] clipZ = new double[0];
+    private double[] clipW = new double[0];
+    private int[] outcodes = new int[0];
+
+    // per-face results
+    private double[] normalX = new double[0];
+    private double[] normalY = new double[0];
+    private double[] normalZ = new double[0];
+    private boolean[] visible = new boolean[0];
+
+    // the same results for float runs
+    private float[] floatWorldX = new float[0];
+    private float[] floatWorldY = new float[0];
+    private float[] floatWorldZ = new float[0];
+    private float[] floatScreenX = new float[0];
+    private float[] floatScreenY = new float[0];
+    private float[] floatScreenZ = new float[0];
+    private float[] floatClipX = new float[0];
+    private float[] floatClipY = new float[0];
+    private float[] floatClipZ = new float[0];
+    private float[] floatClipW = new float[0];
+    private float[] floatNormalX = new float[0];
+    private float[] floatNormalY = new float[0];
+    private float[] floatNormalZ = new float[0];
+
+    // the index buffer of the current run split into one array per triangle corner, for gathering
+    private int[] cornerA;
+    private int[] cornerB;
+    private int[] cornerC;
+
+    // the corners of the face ranges of off-heap geometry, copied per range
+    private int[] copiedCornerA = new int[0];
+    private int[] copiedCornerB = new int[0];
+    private int[] copiedCornerC = new int[0];
+
+    // scratch arrays of the SIMD face kernels when running on the calling thread
+    private final double[] corners = newCornerScratch();
+    private final float[] floatCorners = newFloatCornerScratch();
+
+    // flattened matrices and parameters of the current run, read by the chunk tasks
+    private final double[] world = new double[16];
+    private final double[] projection = new double[16];
+    private final float[] floatWorld = new float[16];
+    private final float[] floatProjection = new float[16];
+    private boolean floatRun;
+    private MeshStorage storage;
+    private int[] ranges;
+    private int rangeCount;
+    private double halfWidth;
+    private double halfHeight;
+    private double cameraX;
+    private double cameraY;
+    private double cameraZ;
+
+    // durations of the passes of the last run
+    private long lastVertexPassNanos;
+    private long lastFacePassNanos;
+
+    // the single range covering all triangles, for runs without culling
+    private final int[] allTriangles = new int[2];
+
+    // preallocated tasks for the parallel mode
+    private final ChunkTask[] chunkTasks;
+    private final PassTask passTask = new PassTask();
+
+    /**
+     * Constructs a transform stage using {@link #DEFAULT_MODE}.
+     */
+    public TransformStage() {
+        int chunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+        chunkTasks = new ChunkTask[chunks];
+        for (int i = 0; i < chunks; i++) {
+            chunkTasks[i] = new ChunkTask();
+        }
+    }
+
+    /**
+     * Parses a mode name as used by the {@code engine.transform} system property.
+     * SIMD modes fall back to {@link Mode#SCALAR} if the Vector API is not available.
+     *
+     * @param name One of "scalar", "simd" or "parallel".
+     * @return The mode.
+     */
+    public static Mode parseMode(String name) {
+        Mode mode = switch (name.toLowerCase()) {
+            case "scalar" -> Mode.SCALAR;
+            case "simd" -> Mode.SIMD;
+            case "parallel", "parallel-simd", "parallel_simd" -> Mode.PARALLEL_SIMD;
+            default -> throw new IllegalArgumentException("Unknown transform mode: " + name);
+        };
+        return SIMD_AVAILABLE ? mode : Mode.SCALAR;
+    }
+
+    /**
+     * Sets the implementation used by the following runs.
+     *
+     * @param mode The mode. SIMD modes fall back to scalar loops if the Vector API is not available.
+     */
+    public void setMode(Mode mode) {
+        this.mode = SIMD_AVAILABLE ? mode : Mode.SCALAR;
+    }
+
+    /**
+     * Returns the implementation used by this stage.
+     *
+     * @return The mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the precision of the following runs. Buffers of the other precision are released.
+     *
+     * @param precision The precision.
+     */
+    public void setPrecision(Precision precision) {
+        if (precision == this.precision) {
+            return;
+        }
+        this.precision = precision;
+        if (precision == Precision.FLOAT) {
+            worldX = worldY = worldZ = screenX = screenY = screenZ = new double[0];
+            clipX = clipY = clipZ = clipW = normalX = normalY = normalZ = new double[0];
+        } else {
+            floatWorldX = floatWorldY = floatWorldZ = floatScreenX = floatScreenY = floatScreenZ = new float[0];
+            floatClipX = floatClipY = floatClipZ = floatClipW = floatNormalX = floatNormalY = floatNormalZ = new float[0];
+        }
+    }
+
+    /**
+     * Returns the precision of this stage.
+     *
+     * @return The precision.
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Runs the vertex and the face pass for a mesh.
+     *
+     * @param data             The geometry to transform.
+     * @param worldMatrix      The world transformation matrix.
+     * @param projectionMatrix The projection matrix.
+     * @param camera           The camera position in world space.
+     * @param width            The width of the screen in pixels.
+     * @param height           The height of the screen in pixels.
+     */
+    public void run(MeshData data, Matrix4 worldMatrix, Matrix4 projectionMatrix, Vector3D camera, int width, int height) {
+        allTriangles[0] = 0;
+        allTriangles[1] = data.triangleCount;
+        run(data, worldMatrix, projectionMatrix, camera, width, height, allTriangles, 1);
+    }
+
+    /**
+     * Runs the vertex pass for all vertices and the face pass for some triangle ranges of a mesh.
+     * The face results of triangles outside of the ranges are left as they were.
+     *
+     * @param data             The geometry to transform.
+     * @param worldMatrix      The world transformation matrix.
+     * @param projectionMatrix The projection matrix.
+     * @param camera           The camera position in world space.
+     * @param width            The width of the screen in pixels.
+     * @param height           The height of the screen in pixels.
+     * @param ranges           Pairs of first and end triangle.
+     * @param rangeCount       The number of pairs.
+     */
+    public void run(MeshData data, Matrix4 worldMatrix, Matrix4 projectionMatrix, Vector3D camera, int width, int height,
+                    int[] ranges, int rangeCount) {
+        floatRun = precision == Precision.FLOAT;
+        ensureCapacity(data);
+        worldMatrix.get(world, 0);
+        projectionMatrix.get(projection, 0);
+        if (floatRun) {
+            for (int i = 0; i < 16; i++) {
+                floatWorld[i] = (float) world[i];
+                floatProjection[i] = (float) projection[i];
+            }
+            // Heap storage creates its float positions here rather than in every chunk of the first parallel run
+            data.getStorage().getFloatPositions(0, 0, 0, floatWorldX);
+        }
+        this.storage = data.getStorage();
+        this.ranges = ranges;
+        this.rangeCount = rangeCount;
+        this.halfWidth = 0.5d * width;
+        this.halfHeight = 0.5d * height;
+        this.cameraX = camera.x;
+        this.cameraY = camera.y;
+        this.cameraZ = camera.z;
+
+        try {
+            long start = System.nanoTime();
+            boolean parallel = mode == Mode.PARALLEL_SIMD && data.vertexCount >= PARALLEL_THRESHOLD;
+            if (parallel) {
+                runParallel(false, data.vertexCount);
+            } else {
+                transformVertices(0, data.vertexCount);
+            }
+            long vertexPassEnd = System.nanoTime();
+            int faceCount = 0;
+            for (int i = 0; i < rangeCount; i++) {
+                faceCount += ranges[i * 2 + 1] - ranges[i * 2];
+            }
+            if (parallel) {
+                runParallel(true, faceCount);
+            } else {
+                processFaceRanges(0, faceCount, corners, floatCorners);
+            }
+            lastVertexPassNanos = vertexPassEnd - start;
+            lastFacePassNanos = System.nanoTime() - vertexPassEnd;
+        } finally {
+            this.storage = null;
+            this.ranges = null;
+        }
+    }
+
+    /**
+     * Returns how long the vertex pass of the last run took.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getLastVertexPassNanos() {
+        return lastVertexPassNanos;
+    }
+
+    /**
+     * Returns how long the face pass of the last run took.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getLastFacePassNanos() {
+        return lastFacePassNanos;
+    }
+
+    /**
+     * Splits one pass into chunks and runs them on the common pool.
+     *
+     * @param faces True for the face pass, false for the vertex pass.
+     * @param count The number of vertices, or of triangles in all ranges.
+     */
+    private void runParallel(boolean faces, int count) {
+        int chunks = chunkTasks.length;
+        for (int i = 0; i < chunks; i++) {
+            ChunkTask task = chunkTasks[i];
+            task.reinitialize();
+            task.faces = faces;
+            task.from = (int) ((long) count * i / chunks);
+            task.to = (int) ((long) count * (i + 1) / chunks);
+        }
+        passTask.invokeFrom(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Transforms a range of vertices with the implementation of the current mode.
+     *
+     * @param from The first vertex.
+     * @param to   The vertex after the last one.
+     */
+    private void transformVertices(int from, int to) {
+        if (floatRun) {
+            transformVerticesFloat(from, to);
+            return;
+        }
+        // Reading and writing the same index is safe, every kernel loads a vertex before it stores its results
+        double[] x = storage.getPositions(0, from, to, worldX);
+        double[] y = storage.getPositions(1, from, to, worldY);
+        double[] z = storage.getPositions(2, from, to, worldZ);
+        if (mode == Mode.SCALAR) {
+            transformVerticesScalar(x, y, z, from, to);
+        } else {
+            SimdTransform.transformVertices(x, y, z, from, to, world, projection, halfWidth, halfHeight,
+                    worldX, worldY, worldZ, clipX, clipY, clipZ, clipW, screenX, screenY, screenZ);
+        }
+        Clipper.computeOutcodes(clipX, clipY, clipZ, clipW, from, to, outcodes);
+    }
+
+    /**
+     * Float version of {@link #transformVertices(int, int)}.
+     *
+     * @param from The first vertex.
+     * @param to   The vertex after the last one.
+     */
+    private void transformVerticesFloat(int from, int to) {
+        float[] x = storage.getFloatPositions(0, from, to, floatWorldX);
+        float[] y = storage.getFloatPositions(1, from, to, floatWorldY);
+        float[] z = storage.getFloatPositions(2, from, to, floatWorldZ);
+        if (mode == Mode.SCALAR) {
+            transformVerticesFloatScalar(x, y, z, from, to);
+        } else {
+            SimdTransform.transformVerticesFloat(x, y, z, from, to,
+                    floatWorld, floatProjection, (float) halfWidth, (float) halfHeight,
+                    floatWorldX, floatWorldY, floatWorldZ, floatClipX, floatClipY, floatClipZ, floatClipW,
+                    floatScreenX, floatScreenY, floatScreenZ);
+        }
+        Clipper.computeOutcodes(floatClipX, floatClipY, floatClipZ, floatClipW, from, to, outcodes);
+    }
+
+    /**
+     * Runs the face pass for a part of the triangle ranges, as if they were concatenated.
+     *
+     * @param from         The first triangle of the concatenated ranges.
+     * @param to           The triangle after the last one.
+     * @param corners      Scratch array for the double SIMD kernel, owned by the calling thread.
+     * @param floatCorners Scratch array for the float SIMD kernel, owned by the calling thread.
+     */
+    private void processFaceRanges(int from, int to, double[] corners, float[] floatCorners) {
+        int offset = 0;
+        for (int i = 0; i < rangeCount && offset < to; i++) {
+            int first = ranges[i * 2], end = ranges[i * 2 + 1];
+            int length = end - first;
+            int start = Math.max(from, offset), stop = Math.min(to, offset + length);
+            if (start < stop) {
+                int faceFrom = first + start - offset, faceTo = first + stop - offset;
+                // Off-heap storage copies the corners of the range, heap storage returns the arrays as they are
+                storage.getCorners(0, faceFrom, faceTo, cornerA);
+                storage.getCorners(1, faceFrom, faceTo, cornerB);
+                storage.getCorners(2, faceFrom, faceTo, cornerC);
+                if (floatRun) {
+                    processFacesFloat(faceFrom, faceTo, floatCorners);
+                } else {
+                    processFaces(faceFrom, faceTo, corners);
+                }
+            }
+            offset += length;
+        }
+    }
+
+    /**
+     * Computes normals and culling flags for a range of faces with the implementation of the current mode.
+     *
+     * @param from    The first triangle.
+     * @param to      The triangle after the last one.
+     * @param corners Scratch array for the SIMD kernel, owned by the calling thread.
+     */
+    private void processFaces(int from, int to, double[] corners) {
+        if (mode == Mode.SCALAR) {
+            processFacesScalar(from, to);
+        } else {
+            SimdTransform.processFaces(cornerA, cornerB, cornerC, from, to, worldX, worldY, worldZ,
+                    cameraX, cameraY, cameraZ, normalX, normalY, normalZ, corners, visible);
+        }
+    }
+
+    /**
+     * Float version of {@link #processFaces(int, int, double[])}.
+     *
+     * @param from    The first triangle.
+     * @param to      The triangle after the last one.
+     * @param corners Scratch array for the SIMD kernel, owned by the calling thread.
+     */
+    private void processFacesFloat(int from, int to, float[] corners) {
+        if (mode == Mode.SCALAR) {
+            processFacesFloatScalar(from, to);
+        } else {
+            SimdTransform.processFacesFloat(cornerA, cornerB, cornerC, from, to, floatWorldX, floatWorldY, floatWorldZ,
+                    (float) cameraX, (float) cameraY, (float) cameraZ, floatNormalX, floatNormalY, floatNormalZ,
+                    corners, visible);
+        }
+    }
+
+    /**
+     * Scalar vertex pass: world transform, projection, perspective division and viewport scaling.
+     * The screen coordinates are only meaningful for vertices in front of the near plane.
+     *
+     * @param x    The x-coordinates of the vertices.
+     * @param y    The y-coordinates of the vertices.
+     * @param z    The z-coordinates of the vertices.
+     * @param from The first vertex.
+     * @param to   The vertex after the last one.
+     */
+    private void transformVerticesScalar(double[] x, double[] y, double[] z, int from, int to) {
+        double[] w = world, p = projection;
+        for (int i = from; i < to; i++) {
+            double vx = x[i], vy = y[i], vz = z[i];
+            double wx = vx * w[0] + vy * w[4] + vz * w[8] + w[12];
+            double wy = vx * w[1] + vy * w[5] + vz * w[9] + w[13];
+            double wz = vx * w[2] + vy * w[6] + vz * w[10] + w[14];
+            worldX[i] = wx;
+            worldY[i] = wy;
+            worldZ[i] = wz;
+
+            double px = wx * p[0] + wy * p[4] + wz * p[8] + p[12];
+            double py = wx * p[1] + wy * p[5] + wz * p[9] + p[13];
+            double pz = wx * p[2] + wy * p[6] + wz * p[10] + p[14];
+            double pw = wx * p[3] + wy * p[7] + wz * p[11] + p[15];
+            clipX[i] = px;
+            clipY[i] = py;
+            clipZ[i] = pz;
+            clipW[i] = pw;
+
+            // Perspective division to normalized device coordinates, then scale into view
+            screenX[i] = (px / pw + 1) * halfWidth;
+            screenY[i] = (py / pw + 1) * halfHeight;
+            screenZ[i] = pz / pw;
+        }
+    }
+
+    /**
+     * Scalar face pass: normalized face normal and backface test against the camera.
+     *
+     * @param from The first triangle.
+     * @param to   The triangle after the last one.
+     */
+    private void processFacesScalar(int from, int to) {
+        for (int t = from; t < to; t++) {
+            int a = cornerA[t], b = cornerB[t], c = cornerC[t];
+            double e1x = worldX[b] - worldX[a], e1y = worldY[b] - worldY[a], e1z = worldZ[b] - worldZ[a];
+            double e2x = worldX[c] - worldX[a], e2y = worldY[c] - worldY[a], e2z = worldZ[c] - worldZ[a];
+            double nx = e1y * e2z - e1z * e2y;
+            double ny = e1z * e2x - e1x * e2z;
+            double nz = e1x * e2y - e1y * e2x;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            normalX[t] = nx;
+            normalY[t] = ny;
+            normalZ[t] = nz;
+
+            // Degenerate faces get a NaN normal and fail the test, like the zero normal before
+            double dot = nx * (worldX[a] - cameraX) + ny * (worldY[a] - cameraY) + nz * (worldZ[a] - cameraZ);
+            visible[t] = dot < 0;
+        }
+    }
+
+    /**
+     * Float version of {@link #transformVerticesScalar(double[], double[], double[], int, int)}.
+     *
+     * @param x    The x-coordinates of the vertices.
+     * @param y    The y-coordinates of the vertices.
+     * @param z    The z-coordinates of the vertices.
+     * @param from The first vertex.
+     * @param to   The vertex after the last one.
+     */
+    private void transformVerticesFloatScalar(float[] x, float[] y, float[] z, int from, int to) {
+        float[] w = floatWorld, p = floatProjection;
+        float halfWidth = (float) this.halfWidth, halfHeight = (float) this.halfHeight;
+        for (int i = from; i < to; i++) {
+            float vx = x[i], vy = y[i], vz = z[i];
+            float wx = vx * w[0] + vy * w[4] + vz * w[8] + w[12];
+            float wy = vx * w[1] + vy * w[5] + vz * w[9] + w[13];
+            float wz = vx * w[2] + vy * w[6] + vz * w[10] + w[14];
+            floatWorldX[i] = wx;
+            floatWorldY[i] = wy;
+            floatWorldZ[i] = wz;
+
+            float px = wx * p[0] + wy * p[4] + wz * p[8] + p[12];
+            float py = wx * p[1] + wy * p[5] + wz * p[9] + p[13];
+            float pz = wx * p[2] + wy * p[6] + wz * p[10] + p[14];
+            float pw = wx * p[3] + wy * p[7] + wz * p[11] + p[15];
+            floatClipX[i] = px;
+            floatClipY[i] = py;
+            floatClipZ[i] = pz;
+            floatClipW[i] = pw;
+            floatScreenX[i] = (px / pw + 1) * halfWidth;
+            floatScreenY[i] = (py / pw + 1) * halfHeight;
+            floatScreenZ[i] = pz / pw;
+        }
+    }
+
+    /**
+     * Float version of {@link #processFacesScalar(int, int)}.
+     *
+     * @param from The first triangle.
+     * @param to   The triangle after the last one.
+     */
+    private void processFacesFloatScalar(int from, int to) {
+        float[] worldX = floatWorldX, worldY = floatWorldY, worldZ = floatWorldZ;
+        float cameraX = (float) this.cameraX, cameraY = (float) this.cameraY, cameraZ = (float) this.cameraZ;
+        for (int t = from; t < to; t++) {
+            int a = cornerA[t], b = cornerB[t], c = cornerC[t];
+            float e1x = worldX[b] - worldX[a], e1y = worldY[b] - worldY[a], e1z = worldZ[b] - worldZ[a];
+            float e2x = worldX[c] - worldX[a], e2y = worldY[c] - worldY[a], e2z = worldZ[c] - worldZ[a];
+            float nx = e1y * e2z - e1z * e2y;
+            float ny = e1z * e2x - e1x * e2z;
+            float nz = e1x * e2y - e1y * e2x;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            floatNormalX[t] = nx;
+            floatNormalY[t] = ny;
+            floatNormalZ[t] = nz;
+            visible[t] = nx * (worldX[a] - cameraX) + ny * (worldY[a] - cameraY) + nz * (worldZ[a] - cameraZ) < 0;
+        }
+    }
+
+    /**
+     * Grows the result buffers if needed and picks up the corner index arrays of the geometry, or the arrays its
+     * corners are copied into if it is stored off the heap.
+     *
+     * @param data The geometry of the next run.
+     */
+    private void ensureCapacity(MeshData data) {
+        int vertexCount = data.vertexCount;
+        int triangleCount = data.triangleCount;
+        if (outcodes.length < vertexCount) {
+            outcodes = new int[vertexCount];
+        }
+        if (visible.length < triangleCount) {
+            visible = new boolean[triangleCount];
+        }
+        if (floatRun) {
+            ensureFloatCapacity(vertexCount, triangleCount);
+        } else if (worldX.length < vertexCount) {
+            worldX = new double[vertexCount];
+            worldY = new double[vertexCount];
+            worldZ = new double[vertexCount];
+            screenX = new double[vertexCount];
+            screenY = new double[vertexCount];
+            screenZ = new double[vertexCount];
+            clipX = new double[vertexCount];
+            clipY = new double[vertexCount];
+            clipZ = new double[vertexCount];
+            clipW = new double[vertexCount];
+        }
+        if (!floatRun && normalX.length < triangleCount) {
+            normalX = new double[triangleCount];
+            normalY = new double[triangleCount];
+            normalZ = new double[triangleCount];
+        }
+        MeshStorage storage = data.getStorage();
+        if (storage.isOffHeap() && copiedCornerA.length < triangleCount) {
+            copiedCornerA = new int[triangleCount];
+            copiedCornerB = new int[triangleCount];
+            copiedCornerC = new int[triangleCount];
+        }
+        // An empty range copies nothing and only returns the array the face pass gathers from
+        cornerA = storage.getCorners(0, 0, 0, copiedCornerA);
+        cornerB = storage.getCorners(1, 0, 0, copiedCornerB);
+        cornerC = storage.getCorners(2, 0, 0, copiedCornerC);
+    }
+
+    /**
+     * Grows the float result buffers if needed.
+     *
+     * @param vertexCount   The number of vertices of the next run.
+     * @param triangleCount The number of triangles of the next run.
+     */
+    private void ensureFloatCapacity(int vertexCount, int triangleCount) {
+        if (floatWorldX.length < vertexCount) {
+            floatWorldX = new float[vertexCount];
+            floatWorldY = new float[vertexCount];
+            floatWorldZ = new float[vertexCount];
+            floatScreenX = new float[vertexCount];
+            floatScreenY = new float[vertexCount];
+            floatScreenZ = new float[vertexCount];
+            floatClipX = new float[vertexCount];
+            floatClipY = new float[vertexCount];
+            floatClipZ = new float[vertexCount];
+            floatClipW = new float[vertexCount];
+        }
+        if (floatNormalX.length < triangleCount) {
+            floatNormalX = new float[triangleCount];
+            floatNormalY = new float[triangleCount];
+            floatNormalZ = new float[triangleCount];
+        }
+    }
+
+    /**
+     * Returns the memory held by the result buffers of this stage, including the corners copied from off-heap
+     * geometry but not the corner index arrays shared with heap geometry.
+     *
+     * @return The size of the buffers in bytes.
+     */
+    public long getBufferBytes() {
+        long doubles = 10L * worldX.length + 3L * normalX.length;
+        long floats = 10L * floatWorldX.length + 3L * floatNormalX.length;
+        long ints = outcodes.length + 3L * copiedCornerA.length;
+        return doubles * Double.BYTES + floats * Float.BYTES + ints * Integer.BYTES + visible.length;
+    }
+
+    /**
+     * Creates a scratch array for the SIMD face kernel, or an empty one if the Vector API is not available.
+     *
+     * @return The scratch array.
+     */
+    private static double[] newCornerScratch() {
+        return new double[SIMD_AVAILABLE ? SimdTransform.CORNER_SCRATCH_SIZE : 0];
+    }
+
+    /**
+     * Creates a scratch array for the float SIMD face kernel, or an empty one if the Vector API is not available.
+     *
+     * @return The scratch array.
+     */
+    private static float[] newFloatCornerScratch() {
+        return new float[SIMD_AVAILABLE ? SimdTransform.CORNER_SCRATCH_SIZE : 0];
+    }
+
+    /**
+     * Returns the world-space x-coordinates of the last run, one per vertex.
+     *
+     * @return The x-coordinates.
+     */
+    public double[] getWorldX() {
+        return worldX;
+    }
+
+    /**
+     * Returns the world-space y-coordinates of the last run, one per vertex.
+     *
+     * @return The y-coordinates.
+     */
+    public double[] getWorldY() {
+        return worldY;
+    }
+
+    /**
+     * Returns the world-space z-coordinates of the last run, one per vertex.
+     *
+     * @return The z-coordinates.
+     */
+    public double[] getWorldZ() {
+        return worldZ;
+    }
+
+    /**
+     * Returns the screen x-coordinates of the last run, one per vertex.
+     *
+     * @return The x-coordinates in pixels.
+     */
+    public double[] getScreenX() {
+        return screenX;
+    }
+
+    /**
+     * Returns the screen y-coordinates of the last run, one per vertex.
+     *
+     * @return The y-coordinates in pixels.
+     */
+    public double[] getScreenY() {
+        return screenY;
+    }
+
+    /**
+     * Returns the normalized depth of the last run, one per vertex.
+     *
+     * @return The depth values.
+     */
+    public double[] getScreenZ() {
+        return screenZ;
+    }
+
+    /**
+     * Returns the homogeneous clip-space x-coordinates of the last run, one per vertex.
+     *
+     * @return The x-coordinates.
+     */
+    public double[] getClipX() {
+        return clipX;
+    }
+
+    /**
+     * Returns the homogeneous clip-space y-coordinates of the last run, one per vertex.
+     *
+     * @return The y-coordinates.
+     */
+    public double[] getClipY() {
+        return clipY;
+    }
+
+    /**
+     * Returns the homogeneous clip-space z-coordinates of the last run, one per vertex.
+     *
+     * @return The z-coordinates.
+     */
+    public double[] getClipZ() {
+        return clipZ;
+    }
+
+    /**
+     * Returns the homogeneous clip-space w-coordinates of the last run, one per vertex.
+     *
+     * @return The w-coordinates.
+     */
+    public double[] getClipW() {
+        return clipW;
+    }
+
+    /**
+     * Returns the {@link Clipper} outcodes of the last run, one per vertex.
+     *
+     * @return The outcodes.
+     */
+    public int[] getOutcodes() {
+        return outcodes;
+    }
+
+    /**
+     * Returns the x-components of the normalized face normals of the last run.
+     *
+     * @return The x-components, one per triangle.
+     */
+    public double[] getNormalX() {
+        return normalX;
+    }
+
+    /**
+     * Returns the y-components of the normalized face normals of the last run.
+     *
+     * @return The y-components, one per triangle.
+     */
+    public double[] getNormalY() {
+        return normalY;
+    }
+
+    /**
+     * Returns the z-components of the normalized face normals of the last run.
+     *
+     * @return The z-components, one per triangle.
+     */
+    public double[] getNormalZ() {
+        return normalZ;
+    }
+
+    /**
+     * Returns the world-space x-coordinates of the last float run, one per vertex.
+     *
+     * @return The x-coordinates.
+     */
+    public float[] getFloatWorldX() {
+        return floatWorldX;
+    }
+
+    /**
+     * Returns the world-space y-coordinates of the last float run, one per vertex.
+     *
+     * @return The y-coordinates.
+     */
+    public float[] getFloatWorldY() {
+        return floatWorldY;
+    }
+
+    /**
+     * Returns the world-space z-coordinates of the last float run, one per vertex.
+     *
+     * @return The z-coordinates.
+     */
+    public float[] getFloatWorldZ() {
+        return floatWorldZ;
+    }
+
+    /**
+     * Returns the screen x-coordinates of the last float run, one per vertex.
+     *
+     * @return The x-coordinates in pixels.
+     */
+    public float[] getFloatScreenX() {
+        return floatScreenX;
+    }
+
+    /**
+     * Returns the screen y-coordinates of the last float run, one per vertex.
+     *
+     * @return The y-coordinates in pixels.
+     */
+    public float[] getFloatScreenY() {
+        return floatScreenY;
+    }
+
+    /**
+     * Returns the normalized depth of the last float run, one per vertex.
+     *
+     * @return The depth values.
+     */
+    public float[] getFloatScreenZ() {
+        return floatScreenZ;
+    }
+
+    /**
+     * Returns the homogeneous clip-space x-coordinates of the last float run, one per vertex.
+     *
+     * @return The x-coordinates.
+     */
+    public float[] getFloatClipX() {
+        return floatClipX;
+    }
+
+    /**
+     * Returns the homogeneous clip-space y-coordinates of the last float run, one per vertex.
+     *
+     * @return The y-coordinates.
+     */
+    public float[] getFloatClipY() {
+        return floatClipY;
+    }
+
+    /**
+     * Returns the homogeneous clip-space z-coordinates of the last float run, one per vertex.
+     *
+     * @return The z-coordinates.
+     */
+    public float[] getFloatClipZ() {
+        return floatClipZ;
+    }
+
+    /**
+     * Returns the homogeneous clip-space w-coordinates of the last float run, one per vertex.
+     *
+     * @return The w-coordinates.
+     */
+    public float[] getFloatClipW() {
+        return floatClipW;
+    }
+
+    /**
+     * Returns the x-components of the normalized face normals of the last float run.
+     *
+     * @return The x-components, one per triangle.
+     */
+    public float[] getFloatNormalX() {
+        return floatNormalX;
+    }
+
+    /**
+     * Returns the y-components of the normalized face normals of the last float run.
+     *
+     * @return The y-components, one per triangle.
+     */
+    public float[] getFloatNormalY() {
+        return floatNormalY;
+    }
+
+    /**
+     * Returns the z-components of the normalized face normals of the last float run.
+     *
+     * @return The z-components, one per triangle.
+     */
+    public float[] getFloatNormalZ() {
+        return floatNormalZ;
+    }
+
+    /**
+     * Returns the first vertex index of every triangle of the last run. For off-heap geometry only the triangles
+     * of the face pass ranges are valid.
+     *
+     * @return The vertex indices, one per triangle.
+     */
+    public int[] getCornerA() {
+        return cornerA;
+    }
+
+    /**
+     * Returns the second vertex index of every triangle of the last run, valid like {@link #getCornerA()}.
+     *
+     * @return The vertex indices, one per triangle.
+     */
+    public int[] getCornerB() {
+        return cornerB;
+    }
+
+    /**
+     * Returns the third vertex index of every triangle of the last run, valid like {@link #getCornerA()}.
+     *
+     * @return The vertex indices, one per triangle.
+     */
+    public int[] getCornerC() {
+        return cornerC;
+    }
+
+    /**
+     * Returns the culling flags of the last run.
+     *
+     * @return True for every triangle that faces the camera.
+     */
+    public boolean[] getVisible() {
+        return visible;
+    }
+
+    /** Root task of a parallel pass, running all chunk tasks. */
+    @SuppressWarnings("serial")
+    private class PassTask extends RootAction {
+        @Override
+        protected void run() {
+            ForkJoinTask.invokeAll(chunkTasks);
+        }
+    }
+
+    /** Task processing one chunk of vertices or faces. */
+    @SuppressWarnings("serial")
+    private class ChunkTask extends RecursiveAction {
+        private final double[] corners = newCornerScratch();
+        private final float[] floatCorners = newFloatCornerScratch();
+        private boolean faces;
+        private int from;
+        private int to;
+
+        @Override
+        protected void compute() {
+            if (faces) {
+                processFaceRanges(from, to, corners, floatCorners);
+            } else {
+                transformVertices(from, to);
+            }
+        }
+    }
+}
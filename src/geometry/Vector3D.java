@@ -146,15 +146,8 @@ public class Vector3D {
      * @param matrix The 4x4 matrix to multiply by.
      * @return The resulting vector after the matrix multiplication.
      */
-    public Vector3D multiply(Matrix matrix) {
-        double[][] m = matrix.matrix;
-        Vector3D outputVector = new Vector3D(
-                x * m[0][0] + y * m[1][0] + z * m[2][0] + w * m[3][0],
-                x * m[0][1] + y * m[1][1] + z * m[2][1] + w * m[3][1],
-                x * m[0][2] + y * m[1][2] + z * m[2][2] + w * m[3][2]
-        );
-        outputVector.w = x * m[0][3] + y * m[1][3] + z * m[2][3] + w * m[3][3];
-        return outputVector;
+    public Vector3D multiply(Matrix4 matrix) {
+        return matrix.transform(this, new Vector3D(0, 0, 0));
     }
 
     /**
@@ -166,4 +159,71 @@ public class Vector3D {
     public Vector3D multiply(Vector3D vector3D) {
         return new Vector3D(x * vector3D.x, y * vector3D.y, z * vector3D.z);
     }
+
+    /**
+     * Sets the coordinates of this vector and resets the homogeneous coordinate to 1.
+     *
+     * @param x The new x-coordinate.
+     * @param y The new y-coordinate.
+     * @param z The new z-coordinate.
+     * @return This vector, for chaining.
+     */
+    public Vector3D set(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = 1;
+        return this;
+    }
+
+    /**
+     * Copies the coordinates of another vector into this vector.
+     *
+     * @param otherVector The vector to copy.
+     * @return This vector, for chaining.
+     */
+    public Vector3D set(Vector3D otherVector) {
+        this.x = otherVector.x;
+        this.y = otherVector.y;
+        this.z = otherVector.z;
+        this.w = otherVector.w;
+        return this;
+    }
+
+    /**
+     * Subtracts another vector from this vector and stores the result in a destination vector.
+     *
+     * @param otherVector The vector to subtract.
+     * @param destination The vector receiving the result. May be this vector.
+     * @return The destination vector.
+     */
+    public Vector3D subtract(Vector3D otherVector, Vector3D destination) {
+        return destination.set(x - otherVector.x, y - otherVector.y, z - otherVector.z);
+    }
+
+    /**
+     * Computes the cross product of this vector and another vector and stores it in a destination vector.
+     *
+     * @param otherVector The vector to compute the cross product with.
+     * @param destination The vector receiving the result. May be one of the operands.
+     * @return The destination vector.
+     */
+    public Vector3D crossProduct(Vector3D otherVector, Vector3D destination) {
+        return destination.set(
+                y * otherVector.z - z * otherVector.y,
+                z * otherVector.x - x * otherVector.z,
+                x * otherVector.y - y * otherVector.x
+        );
+    }
+
+    /**
+     * Multiplies the vector by a 4x4 matrix and stores the result, including w, in a destination vector.
+     *
+     * @param matrix      The 4x4 matrix to multiply by.
+     * @param destination The vector receiving the result. May be this vector.
+     * @return The destination vector.
+     */
+    public Vector3D multiply(Matrix4 matrix, Vector3D destination) {
+        return matrix.transform(this, destination);
+    }
 }
@@ -0,0 +1,188 @@
+package input;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The InputSnapshot class holds the keyboard state of one simulation step: which keys are down and every key
+ * event that arrived since the previous step, in order. It is filled by {@link KeyboardInput#poll(InputSnapshot)}
+ * and owned by the simulation thread, so the state cannot change in the middle of a step, and a key pressed and
+ * released between two steps is still seen as a press.
+ * @author Giorgio
+ */
+public final class InputSnapshot {
+    private final long[] keyState = new long[KeyboardInput.KEY_CODE_COUNT / Long.SIZE];
+    private final int[] keyCodes = new int[KeyboardInput.QUEUE_CAPACITY];
+    private final boolean[] presses = new boolean[KeyboardInput.QUEUE_CAPACITY];
+    private final long[] nanos = new long[KeyboardInput.QUEUE_CAPACITY];
+    private int eventCount;
+    private long tick;
+    private long tickNanos;
+    private long maxLatencyNanos;
+
+    /**
+     * Replaces the events with the ones queued since the last step and applies them to the key state in order.
+     *
+     * @param events    The queue of the keyboard input.
+     * @param tickNanos When the step starts, as a value of System.nanoTime().
+     */
+    void update(KeyEventRing events, long tickNanos) {
+        tick++;
+        this.tickNanos = tickNanos;
+        eventCount = events.drainTo(keyCodes, presses, nanos);
+        maxLatencyNanos = 0;
+        for (int i = 0; i < eventCount; i++) {
+            int keyCode = keyCodes[i];
+            if (presses[i]) {
+                keyState[keyCode >>> 6] |= 1L << keyCode;
+            } else {
+                keyState[keyCode >>> 6] &= ~(1L << keyCode);
+            }
+            maxLatencyNanos = Math.max(maxLatencyNanos, tickNanos - nanos[i]);
+        }
+    }
+
+    /**
+     * Overwrites the key state with the live state, after events were lost.
+     *
+     * @param liveState The key state bitset of the keyboard input.
+     */
+    void resync(AtomicLongArray liveState) {
+        for (int i = 0; i < keyState.length; i++) {
+            keyState[i] = liveState.getAcquire(i);
+        }
+    }
+
+    /**
+     * Checks whether a key is down in this step.
+     *
+     * @param keyCode The key code, e.g. {@link java.awt.event.KeyEvent#VK_SPACE}.
+     * @return True if the key is down, false otherwise or for unknown key codes.
+     */
+    public boolean isKeyDown(int keyCode) {
+        if (keyCode < 0 || keyCode >= KeyboardInput.KEY_CODE_COUNT) {
+            return false;
+        }
+        return (keyState[keyCode >>> 6] & 1L << keyCode) != 0;
+    }
+
+    /**
+     * Returns how often a key went down since the previous step.
+     *
+     * @param keyCode The key code.
+     * @return The number of presses.
+     */
+    public int getPressCount(int keyCode) {
+        int count = 0;
+        for (int i = 0; i < eventCount; i++) {
+            if (presses[i] && keyCodes[i] == keyCode) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether a key went down since the previous step, even if it is already up again.
+     *
+     * @param keyCode The key code.
+     * @return True if the key was pressed.
+     */
+    public boolean wasPressed(int keyCode) {
+        return getPressCount(keyCode) > 0;
+    }
+
+    /**
+     * Checks whether a key went up since the previous step, even if it is already down again.
+     *
+     * @param keyCode The key code.
+     * @return True if the key was released.
+     */
+    public boolean wasReleased(int keyCode) {
+        for (int i = 0; i < eventCount; i++) {
+            if (!presses[i] && keyCodes[i] == keyCode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of key events since the previous step.
+     *
+     * @return The event count.
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the key code of an event.
+     *
+     * @param event The index of the event, from 0 (oldest) to {@link #getEventCount()} - 1.
+     * @return The key code.
+     */
+    public int getEventKeyCode(int event) {
+        checkEvent(event);
+        return keyCodes[event];
+    }
+
+    /**
+     * Checks whether an event is a press or a release.
+     *
+     * @param event The index of the event.
+     * @return True for a press, false for a release.
+     */
+    public boolean isEventPress(int event) {
+        checkEvent(event);
+        return presses[event];
+    }
+
+    /**
+     * Returns when an event happened.
+     *
+     * @param event The index of the event.
+     * @return The value of System.nanoTime() when the event reached the keyboard input.
+     */
+    public long getEventNanos(int event) {
+        checkEvent(event);
+        return nanos[event];
+    }
+
+    /**
+     * Returns the number of this step, counting the polls of this snapshot.
+     *
+     * @return The step number, starting at 1.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns when this step started.
+     *
+     * @return The value of System.nanoTime() at the poll.
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * Returns the longest time an event of this step waited from reaching the keyboard input to being applied.
+     *
+     * @return The latency in nanoseconds, or 0 without events.
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Checks that an event index is valid.
+     *
+     * @param event The index of the event.
+     */
+    private void checkEvent(int event) {
+        if (event < 0 || event >= eventCount) {
+            throw new IndexOutOfBoundsException("Event " + event + " of " + eventCount);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The KeyEventRing class is a bounded, lock-free queue of key events from one producer thread to one consumer
+ * thread. The events are kept in primitive arrays, so neither side allocates or boxes. The producer writes an
+ * event into its slot before it advances the tail with release semantics, and the consumer frees slots by
+ * advancing the head the same way, so each side only ever writes its own index.
+ * <p>
+ * There must be one producing and one consuming thread.
+ * @author Giorgio
+ */
+public final class KeyEventRing {
+    private final int mask;
+    private final int[] keyCodes;
+    private final boolean[] presses;
+    private final long[] nanos;
+    // the next slot to read, written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // the next slot to write, written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Constructs an empty ring.
+     *
+     * @param capacity The maximum number of queued events, a power of two.
+     */
+    public KeyEventRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        keyCodes = new int[capacity];
+        presses = new boolean[capacity];
+        nanos = new long[capacity];
+    }
+
+    /**
+     * Returns the maximum number of queued events.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return keyCodes.length;
+    }
+
+    /**
+     * Queues an event. Called by the producer.
+     *
+     * @param keyCode The key code.
+     * @param pressed True for a press, false for a release.
+     * @param nanos   When the event happened, as a value of System.nanoTime().
+     * @return True if the event was queued, false if the ring is full and the event was dropped.
+     */
+    public boolean offer(int keyCode, boolean pressed, long nanos) {
+        long tail = this.tail.getPlain();
+        if (tail - head.getAcquire() == keyCodes.length) {
+            return false;
+        }
+        int slot = (int) tail & mask;
+        keyCodes[slot] = keyCode;
+        presses[slot] = pressed;
+        this.nanos[slot] = nanos;
+        // Publishes the slot to the consumer
+        this.tail.setRelease(tail + 1);
+        return true;
+    }
+
+    /**
+     * Removes the queued events, oldest first, and copies them into the given arrays. Called by the consumer.
+     *
+     * @param keyCodes Receives the key codes.
+     * @param presses  Receives true for presses and false for releases.
+     * @param nanos    Receives when the events happened.
+     * @return The number of events copied, at most the length of the shortest array.
+     */
+    public int drainTo(int[] keyCodes, boolean[] presses, long[] nanos) {
+        long head = this.head.getPlain();
+        int limit = Math.min(keyCodes.length, Math.min(presses.length, nanos.length));
+        int count = (int) Math.min(this.tail.getAcquire() - head, limit);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (head + i) & mask;
+            keyCodes[i] = this.keyCodes[slot];
+            presses[i] = this.presses[slot];
+            nanos[i] = this.nanos[slot];
+        }
+        // Hands the slots back to the producer
+        this.head.setRelease(head + count);
+        return count;
+    }
+}
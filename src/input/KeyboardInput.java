@@ -2,25 +2,36 @@ package input;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * The KeyboardInput class handles keyboard input by implementing the KeyListener interface.
- * It keeps track of the state of each key, allowing easy retrieval of key press/release events.
+ * <p>
+ * The AWT event dispatch thread records every press and release in a bitset of key states and, with a timestamp,
+ * in a lock-free {@link KeyEventRing}. The simulation thread polls the ring once per step into an
+ * {@link InputSnapshot}, which replays every edge in order, so presses shorter than a step are not lost.
+ * {@link #isKeyPressed(int)} reads the live bitset and may be called from any thread.
  * @author Giorgio
  */
 public class KeyboardInput implements KeyListener {
-    /** Map to store the state of each key (pressed or released). */
-    private final Map<Integer, Boolean> keyStateMap;
+    /** The number of key codes tracked; key codes from 0 to this value - 1 cover every {@code VK_} constant. */
+    public static final int KEY_CODE_COUNT = 0x10000;
+    /** The maximum number of events queued between two polls; more are dropped. */
+    public static final int QUEUE_CAPACITY = 256;
 
-    /**
-     * Constructs a new KeyboardInput instance.
-     * Initializes the key state map.
-     */
-    public KeyboardInput() {
-        keyStateMap = new HashMap<>();
-    }
+    /** The live state of each key, one bit per key code, written by the event dispatch thread only. */
+    private final AtomicLongArray keyState = new AtomicLongArray(KEY_CODE_COUNT / Long.SIZE);
+    /** The events since the last poll. */
+    private final KeyEventRing events = new KeyEventRing(QUEUE_CAPACITY);
+    /** The number of events dropped because the queue was full, written by the event dispatch thread only. */
+    private volatile long droppedEvents;
+    /** The number of dropped events the polling thread has already recovered from. */
+    private long recoveredDrops;
+
+    // latency from an event to the step applying it, written by the polling thread only
+    private volatile long appliedEvents;
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
 
     /**
      * Invoked when a key has been typed.
@@ -35,36 +46,126 @@ public class KeyboardInput implements KeyListener {
 
     /**
      * Invoked when a key has been pressed.
-     * Updates the key state map to indicate that the key is pressed.
+     * Sets the bit of the key and queues the press.
      *
      * @param e The KeyEvent representing the pressed key event.
      */
     @Override
     public void keyPressed(KeyEvent e) {
-        int keyCode = e.getKeyCode();
-        keyStateMap.put(keyCode, true);
-        // You can perform additional actions on key press if needed
+        record(e.getKeyCode(), true);
     }
 
     /**
      * Invoked when a key has been released.
-     * Updates the key state map to indicate that the key is released.
+     * Clears the bit of the key and queues the release.
      *
      * @param e The KeyEvent representing the released key event.
      */
     @Override
     public void keyReleased(KeyEvent e) {
-        int keyCode = e.getKeyCode();
-        keyStateMap.put(keyCode, false);
+        record(e.getKeyCode(), false);
+    }
+
+    /**
+     * Updates the live state of a key and queues the change. Presses of a key that is already down are auto-repeats
+     * and are not queued.
+     *
+     * @param keyCode The key code.
+     * @param pressed True for a press, false for a release.
+     */
+    private void record(int keyCode, boolean pressed) {
+        if (keyCode <= KeyEvent.VK_UNDEFINED || keyCode >= KEY_CODE_COUNT) {
+            return;
+        }
+        int word = keyCode >>> 6;
+        long bit = 1L << keyCode;
+        // Only this thread writes the bitset, so a plain read and a release write suffice
+        long state = keyState.getPlain(word);
+        if (((state & bit) != 0) == pressed) {
+            return;
+        }
+        keyState.setRelease(word, pressed ? state | bit : state & ~bit);
+        if (!events.offer(keyCode, pressed, System.nanoTime())) {
+            droppedEvents = droppedEvents + 1;
+        }
     }
 
     /**
-     * Checks the state of a specific key.
+     * Checks the live state of a specific key. Within a simulation step, prefer the state of the step's
+     * {@link InputSnapshot}, which does not change while the step runs.
      *
      * @param keyCode The key code of the key to check.
      * @return true if the key is currently pressed, false otherwise.
      */
     public boolean isKeyPressed(int keyCode) {
-        return keyStateMap.getOrDefault(keyCode, false);
+        if (keyCode < 0 || keyCode >= KEY_CODE_COUNT) {
+            return false;
+        }
+        return (keyState.getAcquire(keyCode >>> 6) & 1L << keyCode) != 0;
+    }
+
+    /**
+     * Moves the events queued since the last poll into a snapshot and applies them to its key state.
+     * If events were dropped because the queue was full, the snapshot takes the live key state instead, so
+     * no key stays stuck. Must be called by one thread only, usually once per simulation step.
+     *
+     * @param snapshot The snapshot of the polling thread, updated in place.
+     */
+    public void poll(InputSnapshot snapshot) {
+        long tickNanos = System.nanoTime();
+        long dropped = droppedEvents;
+        snapshot.update(events, tickNanos);
+        if (dropped != recoveredDrops) {
+            recoveredDrops = dropped;
+            snapshot.resync(keyState);
+        }
+
+        int count = snapshot.getEventCount();
+        if (count > 0) {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += tickNanos - snapshot.getEventNanos(i);
+            }
+            appliedEvents += count;
+            totalLatencyNanos += total;
+            maxLatencyNanos = Math.max(maxLatencyNanos, snapshot.getMaxLatencyNanos());
+        }
+    }
+
+    /**
+     * Returns the number of events dropped because they were not polled in time.
+     *
+     * @return The dropped event count.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * Returns the number of events applied by {@link #poll(InputSnapshot)}.
+     *
+     * @return The applied event count.
+     */
+    public long getAppliedEvents() {
+        return appliedEvents;
+    }
+
+    /**
+     * Returns the mean time from an event reaching this input to the poll applying it.
+     *
+     * @return The mean latency in nanoseconds, or 0 before the first event.
+     */
+    public double getMeanLatencyNanos() {
+        long applied = appliedEvents;
+        return applied == 0 ? 0 : (double) totalLatencyNanos / applied;
+    }
+
+    /**
+     * Returns the longest time from an event reaching this input to the poll applying it.
+     *
+     * @return The maximum latency in nanoseconds, or 0 before the first event.
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
     }
 }
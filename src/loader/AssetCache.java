@@ -0,0 +1,508 @@
+package loader;
+
+import geometry.Mesh;
+import geometry.MeshGeometry;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The AssetCache class shares the geometry of OBJ files between all meshes using them. Geometry is looked up by
+ * path first and then by a hash of the file content, so the same file under several paths is loaded and stored
+ * once. The cached {@link MeshGeometry} is immutable and already clustered and bounded, so a cache hit costs
+ * no parsing and no copying.
+ * <p>
+ * The cache holds at most a memory budget of geometry strongly, evicting the least recently used files first.
+ * Evicted geometry is kept through soft references until the garbage collector needs the memory, so it is still
+ * found as long as it is in memory anyway, e.g. because a mesh still draws it. Hits, misses and evictions are
+ * counted, and {@link #checkForChanges()} reloads files that changed on disk into the meshes created from them.
+ * <p>
+ * All methods are thread-safe. Concurrent requests for the same content wait for one load.
+ * @author Giorgio
+ */
+public class AssetCache {
+    /** The budget of the default cache, set in MB with {@code -Dengine.assetBudget}, 256 MB by default. */
+    public static final long DEFAULT_BUDGET_BYTES = Long.getLong("engine.assetBudget", 256) << 20;
+
+    private static final AssetCache DEFAULT = new AssetCache(DEFAULT_BUDGET_BYTES);
+
+    private final long budgetBytes;
+    private final ObjLoader objLoader;
+
+    // all state below is guarded by this
+    private final Map<Path, FileState> files = new HashMap<>();
+    private final LinkedHashMap<ContentKey, Entry> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<ContentKey, SoftReference<MeshGeometry>> spilled = new HashMap<>();
+    private final Map<ContentKey, CompletableFuture<MeshGeometry>> loading = new HashMap<>();
+    private final Map<Path, Users> users = new HashMap<>();
+    private long residentBytes;
+    private long hits;
+    private long softHits;
+    private long misses;
+    private long deduplications;
+    private long evictions;
+    private long reloads;
+    private long loadNanos;
+
+    /**
+     * Constructs a cache loading files through an {@link ObjLoader} that also uses the binary cache files.
+     *
+     * @param budgetBytes The memory held strongly at most, in bytes. The most recently used geometry is always
+     *                    kept, even if it alone exceeds the budget.
+     */
+    public AssetCache(long budgetBytes) {
+        this(budgetBytes, new ObjLoader());
+    }
+
+    /**
+     * Constructs a cache.
+     *
+     * @param budgetBytes The memory held strongly at most, in bytes.
+     * @param objLoader   The loader reading the files on a miss.
+     */
+    public AssetCache(long budgetBytes, ObjLoader objLoader) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("The budget must not be negative: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+        this.objLoader = objLoader;
+    }
+
+    /**
+     * Returns the cache shared by all meshes loaded with {@link Mesh#Mesh(String)}.
+     *
+     * @return The default cache.
+     */
+    public static AssetCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the geometry of an OBJ file, loading it if it is not cached.
+     *
+     * @param filePath The path to the OBJ file.
+     * @return The shared geometry. It must not be modified.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public MeshGeometry get(String filePath) throws IOException {
+        Path path = Path.of(filePath).toAbsolutePath().normalize();
+        ContentKey key = contentKeyOf(path);
+        CompletableFuture<MeshGeometry> future;
+        boolean owner = false;
+        synchronized (this) {
+            MeshGeometry geometry = lookup(key);
+            if (geometry != null) {
+                return geometry;
+            }
+            future = loading.get(key);
+            if (future != null) {
+                // Another thread is loading the same content, which counts as a hit for this one
+                hits++;
+            } else {
+                misses++;
+                future = new CompletableFuture<>();
+                loading.put(key, future);
+                owner = true;
+            }
+        }
+        if (owner) {
+            return load(path, key, future);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a mesh drawing the geometry of an OBJ file. Unlike {@link Mesh#Mesh(String)}, the mesh is
+     * remembered, so {@link #checkForChanges()} can give it the new geometry when the file changes.
+     *
+     * @param filePath The path to the OBJ file.
+     * @return The new mesh.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public Mesh getMesh(String filePath) throws IOException {
+        Path path = Path.of(filePath).toAbsolutePath().normalize();
+        MeshGeometry geometry = get(filePath);
+        Mesh mesh = new Mesh(geometry);
+        synchronized (this) {
+            // If the file changed since the other meshes were created, checkForChanges() updates them
+            users.computeIfAbsent(path, p -> new Users(geometry)).meshes.add(new WeakReference<>(mesh));
+        }
+        return mesh;
+    }
+
+    /**
+     * Reloads the files of all meshes created by {@link #getMesh(String)} whose content changed since they were
+     * loaded. The meshes take over the new geometry at their next {@link Mesh#refresh()}; files that were only
+     * touched keep their geometry. A viewer calls this e.g. once a second.
+     *
+     * @return The number of files that were reloaded.
+     */
+    public int checkForChanges() {
+        List<Path> paths;
+        synchronized (this) {
+            paths = new ArrayList<>(users.keySet());
+        }
+        int reloaded = 0;
+        for (Path path : paths) {
+            MeshGeometry geometry;
+            try {
+                geometry = get(path.toString());
+            } catch (IOException e) {
+                // Keep the old geometry, the file may be in the middle of being written
+                System.err.println("Could not reload " + path + ": " + e.getMessage());
+                continue;
+            }
+            synchronized (this) {
+                Users pathUsers = users.get(path);
+                pathUsers.meshes.removeIf(reference -> reference.get() == null);
+                if (pathUsers.meshes.isEmpty()) {
+                    users.remove(path);
+                    continue;
+                }
+                if (pathUsers.geometry == geometry) {
+                    continue;
+                }
+                pathUsers.geometry = geometry;
+                for (WeakReference<Mesh> reference : pathUsers.meshes) {
+                    Mesh mesh = reference.get();
+                    if (mesh != null) {
+                        mesh.replaceGeometry(geometry);
+                    }
+                }
+                reloads++;
+            }
+            reloaded++;
+        }
+        return reloaded;
+    }
+
+    /**
+     * Removes all geometry from the cache. Meshes keep drawing the geometry they have.
+     */
+    public synchronized void clear() {
+        files.clear();
+        resident.clear();
+        spilled.clear();
+        residentBytes = 0;
+    }
+
+    /**
+     * Loads and prepares a file and stores its geometry.
+     *
+     * @param path   The absolute path of the file.
+     * @param key    The content of the file.
+     * @param future The future waiting threads join.
+     * @return The geometry.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    private MeshGeometry load(Path path, ContentKey key, CompletableFuture<MeshGeometry> future) throws IOException {
+        long start = System.nanoTime();
+        try {
+            MeshGeometry geometry = MeshGeometry.of(objLoader.load(path.toString()));
+            synchronized (this) {
+                loadNanos += System.nanoTime() - start;
+                loading.remove(key);
+                insert(key, geometry);
+            }
+            future.complete(geometry);
+            return geometry;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                loading.remove(key);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Identifies the content of a file. Unchanged files are recognized by size and modification time without
+     * reading them; new or changed files are hashed.
+     *
+     * @param path The absolute path of the file.
+     * @return The content key.
+     * @throws IOException If the file cannot be read.
+     */
+    private ContentKey contentKeyOf(Path path) throws IOException {
+        long size = Files.size(path);
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        synchronized (this) {
+            FileState state = files.get(path);
+            if (state != null && state.size() == size && state.modified() == modified) {
+                return state.key();
+            }
+        }
+        // Hashing runs outside of the lock, it reads the whole file
+        ContentKey key = new ContentKey(hash(path), size);
+        synchronized (this) {
+            FileState previous = files.put(path, new FileState(size, modified, key));
+            if (previous == null && (resident.containsKey(key) || spilled.containsKey(key) || loading.containsKey(key))) {
+                deduplications++;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Looks up cached geometry, counting a hit if it is found. Spilled geometry that is still in memory is made
+     * resident again.
+     *
+     * @param key The content key.
+     * @return The geometry, or null if it is not cached.
+     */
+    private MeshGeometry lookup(ContentKey key) {
+        Entry entry = resident.get(key);
+        if (entry != null) {
+            hits++;
+            return entry.geometry();
+        }
+        SoftReference<MeshGeometry> reference = spilled.remove(key);
+        MeshGeometry geometry = reference != null ? reference.get() : null;
+        if (geometry != null) {
+            softHits++;
+            insert(key, geometry);
+        }
+        return geometry;
+    }
+
+    /**
+     * Stores geometry as the most recently used entry and spills the least recently used entries until the
+     * resident geometry fits into the budget again.
+     *
+     * @param key      The content key.
+     * @param geometry The geometry.
+     */
+    private void insert(ContentKey key, MeshGeometry geometry) {
+        long bytes = geometry.getByteSize();
+        Entry previous = resident.put(key, new Entry(geometry, bytes));
+        if (previous != null) {
+            residentBytes -= previous.bytes();
+        }
+        residentBytes += bytes;
+
+        Iterator<Map.Entry<ContentKey, Entry>> eldest = resident.entrySet().iterator();
+        while (residentBytes > budgetBytes && resident.size() > 1) {
+            Map.Entry<ContentKey, Entry> evicted = eldest.next();
+            residentBytes -= evicted.getValue().bytes();
+            spilled.put(evicted.getKey(), new SoftReference<>(evicted.getValue().geometry()));
+            eldest.remove();
+            evictions++;
+        }
+        // Forget spilled geometry the garbage collector already took
+        spilled.values().removeIf(reference -> reference.get() == null);
+    }
+
+    /**
+     * Hashes the content of a file with a 64-bit multiply-xorshift hash over its mapped bytes.
+     *
+     * @param path The file.
+     * @return The hash.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long hash(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Files larger than 2 GB are not supported: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            long hash = 0x9E3779B97F4A7C15L ^ size;
+            int end = (int) size & ~7;
+            int i = 0;
+            for (; i < end; i += 8) {
+                hash = mix(hash ^ buffer.getLong(i));
+            }
+            for (; i < size; i++) {
+                hash = mix(hash ^ buffer.get(i));
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * Scrambles the bits of a hash.
+     *
+     * @param hash The hash.
+     * @return The scrambled hash.
+     */
+    private static long mix(long hash) {
+        hash *= 0xBF58476D1CE4E5B9L;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Returns the number of requests answered from resident geometry or by waiting for another thread's load.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests answered from spilled geometry the garbage collector had not taken yet.
+     *
+     * @return The soft hit count.
+     */
+    public synchronized long getSoftHitCount() {
+        return softHits;
+    }
+
+    /**
+     * Returns the number of requests that had to load a file.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of requests that did not load a file.
+     *
+     * @return The hit rate from 0 to 1, or 0 if there were no requests.
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + softHits + misses;
+        return requests == 0 ? 0 : (double) (hits + softHits) / requests;
+    }
+
+    /**
+     * Returns the number of paths found to have the same content as a path seen before.
+     *
+     * @return The deduplication count.
+     */
+    public synchronized long getDeduplicationCount() {
+        return deduplications;
+    }
+
+    /**
+     * Returns the number of entries spilled to soft references to stay within the budget.
+     *
+     * @return The eviction count.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of files {@link #checkForChanges()} reloaded.
+     *
+     * @return The reload count.
+     */
+    public synchronized long getReloadCount() {
+        return reloads;
+    }
+
+    /**
+     * Returns the total time spent loading and preparing files on misses.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public synchronized long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * Returns the estimated memory of the geometry held strongly.
+     *
+     * @return The size in bytes, at most the budget unless a single entry exceeds it.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Returns the number of distinct contents held strongly.
+     *
+     * @return The entry count.
+     */
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * Returns the memory budget of the cache.
+     *
+     * @return The budget in bytes.
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("AssetCache[%d resident, %.1f of %.1f MB, %d hits, %d soft hits, %d misses, "
+                        + "%d evictions, %d deduplicated, %d reloads]",
+                resident.size(), residentBytes / 1048576.0, budgetBytes / 1048576.0, hits, softHits, misses,
+                evictions, deduplications, reloads);
+    }
+
+    /**
+     * Identifies file content by its hash and size.
+     *
+     * @param hash The 64-bit hash of the content.
+     * @param size The size of the content in bytes.
+     */
+    private record ContentKey(long hash, long size) {
+    }
+
+    /**
+     * Remembers the size and modification time a file had when its content was hashed.
+     *
+     * @param size     The size of the file in bytes.
+     * @param modified The modification time in milliseconds.
+     * @param key      The content key computed at that time.
+     */
+    private record FileState(long size, long modified, ContentKey key) {
+    }
+
+    /**
+     * Holds resident geometry together with the size it was counted with.
+     *
+     * @param geometry The geometry.
+     * @param bytes    The estimated size in bytes.
+     */
+    private record Entry(MeshGeometry geometry, long bytes) {
+    }
+
+    /**
+     * The Users class remembers the meshes created for one path and the geometry they were last given.
+     */
+    private static final class Users {
+        private final List<WeakReference<Mesh>> meshes = new ArrayList<>();
+        private MeshGeometry geometry;
+
+        /**
+         * Constructs the list for meshes drawing a geometry.
+         *
+         * @param geometry The geometry given to the meshes.
+         */
+        Users(MeshGeometry geometry) {
+            this.geometry = geometry;
+        }
+    }
+}
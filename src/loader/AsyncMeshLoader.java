@@ -0,0 +1,89 @@
+package loader;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The AsyncMeshLoader class loads OBJ files on background threads, so the caller, e.g. the engine while it opens
+ * its window, never waits for the disk or the parser. Every load returns a {@link MeshHandle} right away; several
+ * files load in parallel, one per thread of the loader, and large files are additionally parsed in parallel chunks.
+ * <p>
+ * Progressive loads publish the geometry of the parsed beginning of a large file while the rest is still being
+ * parsed, so a {@link geometry.Mesh} created from the handle grows on the screen.
+ * The threads are daemon threads and do not keep the application alive.
+ * @author Giorgio
+ */
+public class AsyncMeshLoader implements AutoCloseable {
+    private static final AtomicInteger LOADER_COUNT = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final ObjLoader objLoader;
+
+    /**
+     * Constructs a loader with one thread per two cores, at least two, using the binary cache.
+     */
+    public AsyncMeshLoader() {
+        this(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), new ObjLoader());
+    }
+
+    /**
+     * Constructs a loader.
+     *
+     * @param threads   The number of files that may load at the same time.
+     * @param objLoader The loader reading the files.
+     */
+    public AsyncMeshLoader(int threads, ObjLoader objLoader) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A loader needs at least one thread: " + threads);
+        }
+        this.objLoader = objLoader;
+        int loader = LOADER_COUNT.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "mesh-loader-" + loader + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts loading an OBJ file progressively.
+     *
+     * @param filePath The path to the OBJ file.
+     * @return The handle of the load.
+     */
+    public MeshHandle load(String filePath) {
+        return load(filePath, true);
+    }
+
+    /**
+     * Starts loading an OBJ file.
+     *
+     * @param filePath    The path to the OBJ file.
+     * @param progressive True to publish snapshots while a large file is parsed, false to only publish the
+     *                    complete geometry, which is a bit faster in total.
+     * @return The handle of the load.
+     * @throws RejectedExecutionException If the loader was closed.
+     */
+    public MeshHandle load(String filePath, boolean progressive) {
+        MeshHandle handle = new MeshHandle(filePath);
+        executor.execute(() -> {
+            try {
+                handle.complete(objLoader.load(filePath, progressive ? handle::publish : null));
+            } catch (Throwable e) {
+                handle.fail(e);
+            }
+        });
+        return handle;
+    }
+
+    /**
+     * Stops the loader. Loads that already started are interrupted where possible; their handles may never complete.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
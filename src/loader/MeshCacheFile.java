@@ -0,0 +1,233 @@
+package loader;
+
+import geometry.MeshData;
+import geometry.SubMesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The MeshCacheFile class reads and writes the binary cache of an OBJ file.
+ * The cache lives next to the OBJ file with the suffix {@value #SUFFIX} and stores the parsed
+ * {@link MeshData} arrays as raw little-endian numbers behind a small header, followed by the sub-mesh table. The header records size and
+ * modification time of the OBJ file, so a cache is ignored as soon as its source changes.
+ * Reading maps the cache file and bulk-copies the arrays without any parsing.
+ * @author Giorgio
+ */
+public class MeshCacheFile {
+    /** The suffix appended to the OBJ file name. */
+    public static final String SUFFIX = ".meshcache";
+
+    private static final int MAGIC = 0x54444D43; // "TDMC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int HAS_NORMALS = 1;
+    private static final int HAS_TEXTURE_COORDINATES = 2;
+
+    /**
+     * Returns the path of the cache file belonging to an OBJ file.
+     *
+     * @param objPath The path of the OBJ file.
+     * @return The path of the cache file.
+     */
+    public static Path cachePathOf(Path objPath) {
+        return objPath.resolveSibling(objPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Reads the cache of an OBJ file.
+     *
+     * @param objPath The path of the OBJ file.
+     * @return The cached geometry, or null if there is no cache or it is outdated or unreadable.
+     */
+    public static MeshData read(Path objPath) {
+        Path cachePath = cachePathOf(objPath);
+        if (!Files.isRegularFile(cachePath)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != Files.size(objPath)
+                    || buffer.getLong() != Files.getLastModifiedTime(objPath).toMillis()) {
+                return null;
+            }
+            int vertexCount = buffer.getInt();
+            int triangleCount = buffer.getInt();
+            int flags = buffer.getInt();
+            int subMeshCount = buffer.getInt();
+            boolean hasNormals = (flags & HAS_NORMALS) != 0;
+            boolean hasTextures = (flags & HAS_TEXTURE_COORDINATES) != 0;
+            int doublesPerVertex = 3 + (hasNormals ? 3 : 0) + (hasTextures ? 2 : 0);
+            long arraysEnd = HEADER_SIZE + vertexCount * (long) doublesPerVertex * Double.BYTES + triangleCount * 12L;
+            if (vertexCount < 0 || triangleCount < 0 || subMeshCount < 0 || size < arraysEnd) {
+                return null;
+            }
+
+            double[] x = new double[vertexCount];
+            double[] y = new double[vertexCount];
+            double[] z = new double[vertexCount];
+            double[] normalX = hasNormals ? new double[vertexCount] : null;
+            double[] normalY = hasNormals ? new double[vertexCount] : null;
+            double[] normalZ = hasNormals ? new double[vertexCount] : null;
+            double[] textureU = hasTextures ? new double[vertexCount] : null;
+            double[] textureV = hasTextures ? new double[vertexCount] : null;
+            int[] indices = new int[triangleCount * 3];
+            DoubleBuffer doubles = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            doubles.get(x).get(y).get(z);
+            if (hasNormals) {
+                doubles.get(normalX).get(normalY).get(normalZ);
+            }
+            if (hasTextures) {
+                doubles.get(textureU).get(textureV);
+            }
+            buffer.position(buffer.position() + vertexCount * doublesPerVertex * Double.BYTES);
+            buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(indices);
+            buffer.position(buffer.position() + indices.length * Integer.BYTES);
+
+            for (int index : indices) {
+                if (index < 0 || index >= vertexCount) {
+                    return null;
+                }
+            }
+
+            SubMesh[] subMeshes = new SubMesh[subMeshCount];
+            for (int i = 0; i < subMeshCount; i++) {
+                if (buffer.remaining() < 12) {
+                    return null;
+                }
+                int firstTriangle = buffer.getInt();
+                int subMeshTriangles = buffer.getInt();
+                int nameLength = buffer.getInt();
+                if (firstTriangle < 0 || subMeshTriangles < 0 || firstTriangle + (long) subMeshTriangles > triangleCount
+                        || nameLength < 0 || nameLength > buffer.remaining()) {
+                    return null;
+                }
+                byte[] name = new byte[nameLength];
+                buffer.get(name);
+                subMeshes[i] = new SubMesh(new String(name, StandardCharsets.UTF_8), firstTriangle, subMeshTriangles);
+            }
+            if (buffer.hasRemaining()) {
+                return null;
+            }
+            return new MeshData(x, y, z, vertexCount, indices, triangleCount,
+                    normalX, normalY, normalZ, textureU, textureV, subMeshes);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache of an OBJ file. The file is written under a temporary name first and then moved into
+     * place, so concurrent readers never see a partial cache.
+     *
+     * @param objPath The path of the OBJ file the geometry was parsed from.
+     * @param data    The parsed geometry.
+     * @throws IOException If the cache cannot be written.
+     */
+    public static void write(Path objPath, MeshData data) throws IOException {
+        Path cachePath = cachePathOf(objPath);
+        Path temporaryPath = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(Files.size(objPath));
+            buffer.putLong(Files.getLastModifiedTime(objPath).toMillis());
+            buffer.putInt(data.vertexCount);
+            buffer.putInt(data.triangleCount);
+            buffer.putInt((data.hasNormals() ? HAS_NORMALS : 0) | (data.hasTextureCoordinates() ? HAS_TEXTURE_COORDINATES : 0));
+            SubMesh[] subMeshes = data.getSubMeshes();
+            buffer.putInt(subMeshes.length);
+
+            writeDoubles(channel, buffer, data.getPositions(0), data.vertexCount);
+            writeDoubles(channel, buffer, data.getPositions(1), data.vertexCount);
+            writeDoubles(channel, buffer, data.getPositions(2), data.vertexCount);
+            if (data.hasNormals()) {
+                writeDoubles(channel, buffer, data.normalX, data.vertexCount);
+                writeDoubles(channel, buffer, data.normalY, data.vertexCount);
+                writeDoubles(channel, buffer, data.normalZ, data.vertexCount);
+            }
+            if (data.hasTextureCoordinates()) {
+                writeDoubles(channel, buffer, data.textureU, data.vertexCount);
+                writeDoubles(channel, buffer, data.textureV, data.vertexCount);
+            }
+            int indexCount = data.triangleCount * 3;
+            for (int i = 0; i < indexCount; i++) {
+                if (buffer.remaining() < Integer.BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putInt(data.getIndex(i));
+            }
+
+            for (SubMesh subMesh : subMeshes) {
+                byte[] name = subMesh.name().getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 12 + name.length) {
+                    flush(channel, buffer);
+                }
+                buffer.putInt(subMesh.firstTriangle());
+                buffer.putInt(subMesh.triangleCount());
+                buffer.putInt(name.length);
+                buffer.put(name);
+            }
+            flush(channel, buffer);
+        }
+
+        try {
+            Files.move(temporaryPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes an array of doubles through the staging buffer.
+     *
+     * @param channel The channel to write to.
+     * @param buffer  The staging buffer.
+     * @param values  The values to write.
+     * @param count   The number of values to write.
+     * @throws IOException If writing fails.
+     */
+    private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < Double.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putDouble(values[i]);
+        }
+    }
+
+    /**
+     * Writes the content of the staging buffer to the channel and empties it.
+     *
+     * @param channel The channel to write to.
+     * @param buffer  The staging buffer.
+     * @throws IOException If writing fails.
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
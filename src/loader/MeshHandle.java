@@ -0,0 +1,153 @@
+package loader;
+
+import geometry.MeshData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The MeshHandle class represents a mesh that is loaded in the background by an {@link AsyncMeshLoader}.
+ * While a large file is parsed the handle holds a snapshot of the geometry loaded so far, which grows until
+ * it is replaced by the complete geometry. Listeners are told about every new snapshot, including the last.
+ * <p>
+ * Snapshots are immutable {@link MeshData} and may be read from any thread.
+ * @author Giorgio
+ */
+public class MeshHandle {
+    private final String filePath;
+    private final CompletableFuture<MeshData> future = new CompletableFuture<>();
+    private final List<Consumer<MeshData>> listeners = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private MeshData snapshot;
+    private int snapshotCount;
+    private volatile long firstSnapshotNanos = -1;
+
+    /**
+     * Constructs the handle of a load that is about to start.
+     *
+     * @param filePath The path to the loaded file.
+     */
+    MeshHandle(String filePath) {
+        this.filePath = filePath;
+    }
+
+    /**
+     * Returns the path to the loaded file.
+     *
+     * @return The path.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Returns the geometry loaded so far.
+     *
+     * @return The latest snapshot, the complete geometry once loading finished, or null if nothing was loaded yet.
+     */
+    public synchronized MeshData getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of snapshots published so far, counting the complete geometry.
+     *
+     * @return The number of snapshots.
+     */
+    public synchronized int getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    /**
+     * Returns how long it took from the start of the load until the first geometry was available.
+     *
+     * @return The duration in nanoseconds, or -1 if nothing was loaded yet.
+     */
+    public long getFirstSnapshotNanos() {
+        return firstSnapshotNanos;
+    }
+
+    /**
+     * Checks if loading finished, successfully or not.
+     *
+     * @return True if the complete geometry is available or loading failed.
+     */
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Returns a future that completes with the complete geometry, or exceptionally if loading failed.
+     * Completing the returned future does not affect the handle.
+     *
+     * @return The future.
+     */
+    public CompletableFuture<MeshData> getFuture() {
+        return future.copy();
+    }
+
+    /**
+     * Waits until loading finished.
+     *
+     * @return The complete geometry.
+     * @throws java.util.concurrent.CompletionException If loading failed.
+     */
+    public MeshData join() {
+        return future.join();
+    }
+
+    /**
+     * Adds a listener that is called with every new snapshot, on the loading threads, one call at a time and in
+     * load order. If there already is a snapshot, the listener is called with it right away.
+     *
+     * @param listener The listener.
+     */
+    public synchronized void addListener(Consumer<MeshData> listener) {
+        listeners.add(listener);
+        if (snapshot != null) {
+            listener.accept(snapshot);
+        }
+    }
+
+    /**
+     * Publishes a snapshot of the geometry loaded so far.
+     *
+     * @param data The geometry.
+     */
+    synchronized void publish(MeshData data) {
+        if (snapshot == null) {
+            firstSnapshotNanos = System.nanoTime() - startNanos;
+        }
+        snapshot = data;
+        snapshotCount++;
+        for (Consumer<MeshData> listener : listeners) {
+            listener.accept(data);
+        }
+    }
+
+    /**
+     * Publishes the complete geometry and completes the future.
+     *
+     * @param data The complete geometry.
+     */
+    void complete(MeshData data) {
+        publish(data);
+        future.complete(data);
+    }
+
+    /**
+     * Completes the future exceptionally. Snapshots published before stay available.
+     *
+     * @param failure The reason loading failed.
+     */
+    void fail(Throwable failure) {
+        future.completeExceptionally(failure);
+    }
+
+    @Override
+    public String toString() {
+        return "MeshHandle[" + filePath + ", " + (isDone() ? "done" : "loading") + "]";
+    }
+}
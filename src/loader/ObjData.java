@@ -0,0 +1,87 @@
+package loader;
+
+import java.util.Arrays;
+
+/**
+ * The ObjData class holds the raw content of an OBJ file as parsed by the {@link ObjParser}s, before faces are
+ * triangulated and attribute index triples are merged into vertices.
+ * Every chunk writes into its own range of the shared arrays, so no array is ever resized or synchronized.
+ * @author Giorgio
+ */
+class ObjData {
+    /** Position coordinates, one entry per "v" line. */
+    final double[] x, y, z;
+    /** Texture coordinates, one entry per "vt" line. */
+    final double[] textureU, textureV;
+    /** Normal components, one entry per "vn" line. */
+    final double[] normalX, normalY, normalZ;
+    /** The number of corners of every face. */
+    final int[] faceSizes;
+    /** The 0-based position index of every face corner. */
+    final int[] cornerPositions;
+    /** The 0-based texture coordinate index of every face corner, -1 if the corner has none, or null if the file has no "vt" lines. */
+    final int[] cornerTextures;
+    /** The 0-based normal index of every face corner, -1 if the corner has none, or null if the file has no "vn" lines. */
+    final int[] cornerNormals;
+    /** The names of the "o" and "g" statements in file order. */
+    final String[] groupNames;
+    /** The index of the first face following each "o" or "g" statement. */
+    final int[] groupFaces;
+
+    /**
+     * Allocates the arrays for the given totals.
+     *
+     * @param positionCount The number of "v" lines.
+     * @param textureCount  The number of "vt" lines.
+     * @param normalCount   The number of "vn" lines.
+     * @param faceCount     The number of "f" lines.
+     * @param cornerCount   The total number of face corners.
+     * @param groupCount    The number of "o" and "g" lines.
+     */
+    ObjData(int positionCount, int textureCount, int normalCount, int faceCount, int cornerCount, int groupCount) {
+        x = new double[positionCount];
+        y = new double[positionCount];
+        z = new double[positionCount];
+        textureU = new double[textureCount];
+        textureV = new double[textureCount];
+        normalX = new double[normalCount];
+        normalY = new double[normalCount];
+        normalZ = new double[normalCount];
+        faceSizes = new int[faceCount];
+        cornerPositions = new int[cornerCount];
+        // Most files only have positions, so the attribute index arrays are only allocated when needed
+        cornerTextures = textureCount > 0 ? new int[cornerCount] : null;
+        cornerNormals = normalCount > 0 ? new int[cornerCount] : null;
+        groupNames = new String[groupCount];
+        groupFaces = new int[groupCount];
+    }
+
+    /**
+     * Copies the first elements of parsed data, e.g. the part of a file whose chunks are parsed already.
+     * Attribute index arrays stay null where the source has none, so missing attributes stay missing.
+     *
+     * @param source        The data to copy from.
+     * @param positionCount The number of "v" lines to copy.
+     * @param textureCount  The number of "vt" lines to copy.
+     * @param normalCount   The number of "vn" lines to copy.
+     * @param faceCount     The number of "f" lines to copy.
+     * @param cornerCount   The number of face corners to copy.
+     * @param groupCount    The number of "o" and "g" lines to copy.
+     */
+    ObjData(ObjData source, int positionCount, int textureCount, int normalCount, int faceCount, int cornerCount, int groupCount) {
+        x = Arrays.copyOf(source.x, positionCount);
+        y = Arrays.copyOf(source.y, positionCount);
+        z = Arrays.copyOf(source.z, positionCount);
+        textureU = Arrays.copyOf(source.textureU, textureCount);
+        textureV = Arrays.copyOf(source.textureV, textureCount);
+        normalX = Arrays.copyOf(source.normalX, normalCount);
+        normalY = Arrays.copyOf(source.normalY, normalCount);
+        normalZ = Arrays.copyOf(source.normalZ, normalCount);
+        faceSizes = Arrays.copyOf(source.faceSizes, faceCount);
+        cornerPositions = Arrays.copyOf(source.cornerPositions, cornerCount);
+        cornerTextures = source.cornerTextures != null ? Arrays.copyOf(source.cornerTextures, cornerCount) : null;
+        cornerNormals = source.cornerNormals != null ? Arrays.copyOf(source.cornerNormals, cornerCount) : null;
+        groupNames = Arrays.copyOf(source.groupNames, groupCount);
+        groupFaces = Arrays.copyOf(source.groupFaces, groupCount);
+    }
+}
@@ -0,0 +1,536 @@
+package loader;
+
+import geometry.MeshData;
+import geometry.SubMesh;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The ObjLoader class reads Wavefront OBJ files into {@link MeshData}.
+ * The file is memory-mapped and numbers are parsed straight from the mapped bytes, so no line or token
+ * Strings are created. Large files are split into chunks at line boundaries that are counted and parsed
+ * in parallel. Faces may have any number of corners and reference texture coordinates and normals with
+ * absolute or relative indices; they are triangulated, equal index triples are merged into one vertex, and
+ * "o" and "g" statements become {@link SubMesh}es. After a successful parse a binary {@link MeshCacheFile} is written next to the OBJ file,
+ * which later loads of the unchanged file read instead.
+ * <p>
+ * Loads may be progressive: while the chunks of a large file are parsed, snapshots of the geometry parsed so far
+ * are handed to a consumer, so a model can be shown before the whole file is read.
+ * @author Giorgio
+ */
+public class ObjLoader {
+    /** Files are only split into chunks of at least this many bytes. */
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    /** Progressive loads publish a snapshot about every this fraction of the file. */
+    private static final int SNAPSHOT_COUNT = 8;
+
+    private final boolean parallel;
+    private final boolean useCache;
+    private final LoadListener listener;
+
+    /**
+     * The LoadListener interface is told about every finished load, e.g. to log how long it took.
+     */
+    @FunctionalInterface
+    public interface LoadListener {
+        /**
+         * Called after a file was loaded, on the thread that loaded it.
+         *
+         * @param filePath  The path of the loaded file.
+         * @param data      The loaded geometry.
+         * @param fromCache True if the geometry was read from the binary cache, false if the file was parsed.
+         * @param nanos     How long loading took, in nanoseconds.
+         */
+        void loaded(String filePath, MeshData data, boolean fromCache, long nanos);
+    }
+
+    /**
+     * Constructs a loader that parses in parallel and uses the binary cache.
+     */
+    public ObjLoader() {
+        this(true, true);
+    }
+
+    /**
+     * Constructs a loader.
+     *
+     * @param parallel True to parse large files in parallel chunks.
+     * @param useCache True to read and write the binary cache file next to the OBJ file.
+     */
+    public ObjLoader(boolean parallel, boolean useCache) {
+        this(parallel, useCache, null);
+    }
+
+    /**
+     * Constructs a loader that reports every load.
+     *
+     * @param parallel True to parse large files in parallel chunks.
+     * @param useCache True to read and write the binary cache file next to the OBJ file.
+     * @param listener Told about every finished load, or null.
+     */
+    public ObjLoader(boolean parallel, boolean useCache, LoadListener listener) {
+        this.parallel = parallel;
+        this.useCache = useCache;
+        this.listener = listener;
+    }
+
+    /**
+     * Loads an OBJ file, from its binary cache if there is an up-to-date one.
+     *
+     * @param filePath The path to the OBJ file.
+     * @return The geometry of the file.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public MeshData load(String filePath) throws IOException {
+        return load(filePath, null);
+    }
+
+    /**
+     * Loads an OBJ file progressively. While a large file is parsed, snapshots of the geometry of the parsed
+     * beginning of the file are passed to a consumer, in file order and each larger than the one before.
+     * Files read from the cache or parsed in one chunk produce no snapshots, only the returned geometry.
+     *
+     * @param filePath  The path to the OBJ file.
+     * @param snapshots The consumer of the partial geometry, called on parser threads, or null.
+     * @return The geometry of the whole file.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public MeshData load(String filePath, Consumer<MeshData> snapshots) throws IOException {
+        Path path = Path.of(filePath);
+        long start = System.nanoTime();
+
+        if (useCache) {
+            MeshData cached = MeshCacheFile.read(path);
+            if (cached != null) {
+                report(filePath, cached, true, start);
+                return cached;
+            }
+        }
+
+        MeshData data = parse(path, snapshots);
+        report(filePath, data, false, start);
+
+        if (useCache) {
+            try {
+                MeshCacheFile.write(path, data);
+            } catch (IOException e) {
+                // The cache is only an optimization, the mesh itself was loaded fine
+                System.err.println("Could not write mesh cache for " + filePath + ": " + e.getMessage());
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Parses an OBJ file without looking at the cache.
+     *
+     * @param path The path to the OBJ file.
+     * @return The geometry of the file.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public MeshData parse(Path path) throws IOException {
+        return parse(path, null);
+    }
+
+    /**
+     * Parses an OBJ file without looking at the cache, optionally passing snapshots of the parsed beginning of
+     * the file to a consumer. Snapshots are only taken when the beginning forms a valid file on its own, so
+     * files whose faces reference vertices defined later produce fewer or none.
+     *
+     * @param path      The path to the OBJ file.
+     * @param snapshots The consumer of the partial geometry, called on parser threads, or null.
+     * @return The geometry of the file.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public MeshData parse(Path path, Consumer<MeshData> snapshots) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("OBJ files larger than 2 GB are not supported: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int[] bounds = splitIntoChunks(buffer, (int) size, snapshots != null);
+            int chunks = bounds.length - 1;
+
+            // First pass: count the statements of every chunk
+            ObjParser[] counters = new ObjParser[chunks];
+            forEachChunk(chunks, chunk -> {
+                ObjParser parser = new ObjParser(buffer, bounds[chunk], bounds[chunk + 1]);
+                parser.count();
+                counters[chunk] = parser;
+            });
+
+            // Prefix sums give every chunk its range in the shared output arrays
+            int[][] offsets = new int[6][chunks + 1];
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                ObjParser counted = counters[chunk];
+                offsets[0][chunk + 1] = offsets[0][chunk] + counted.positionCount;
+                offsets[1][chunk + 1] = offsets[1][chunk] + counted.textureCount;
+                offsets[2][chunk + 1] = offsets[2][chunk] + counted.normalCount;
+                offsets[3][chunk + 1] = offsets[3][chunk] + counted.faceCount;
+                offsets[4][chunk + 1] = offsets[4][chunk] + counted.cornerCount;
+                offsets[5][chunk + 1] = offsets[5][chunk] + counted.groupCount;
+            }
+            ObjData obj = new ObjData(offsets[0][chunks], offsets[1][chunks], offsets[2][chunks],
+                    offsets[3][chunks], offsets[4][chunks], offsets[5][chunks]);
+
+            // Second pass: parse every chunk into its own range
+            IOException[] failure = new IOException[1];
+            SnapshotPublisher publisher = snapshots != null && chunks > 1
+                    ? new SnapshotPublisher(obj, offsets, bounds, path, snapshots) : null;
+            IntConsumer parseChunk = chunk -> {
+                ObjParser parser = new ObjParser(buffer, bounds[chunk], bounds[chunk + 1]);
+                try {
+                    parser.parse(obj, offsets[0][chunk], offsets[1][chunk], offsets[2][chunk],
+                            offsets[3][chunk], offsets[4][chunk], offsets[5][chunk]);
+                } catch (IOException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    return;
+                }
+                if (publisher != null) {
+                    publisher.chunkParsed(chunk);
+                }
+            };
+            if (publisher != null) {
+                forEachChunkInOrder(chunks, parseChunk);
+            } else {
+                forEachChunk(chunks, parseChunk);
+            }
+            if (failure[0] != null) {
+                throw new IOException("Malformed OBJ file " + path + ": " + failure[0].getMessage(), failure[0]);
+            }
+
+            validate(obj, path);
+            return assemble(obj);
+        }
+    }
+
+    /**
+     * Checks that every face has at least three corners and only references existing elements.
+     *
+     * @param obj  The parsed file.
+     * @param path The path of the file, for error messages.
+     * @throws IOException If a face is invalid.
+     */
+    private static void validate(ObjData obj, Path path) throws IOException {
+        for (int face = 0; face < obj.faceSizes.length; face++) {
+            if (obj.faceSizes[face] < 3) {
+                throw new IOException("Face " + (face + 1) + " has fewer than 3 corners in " + path);
+            }
+        }
+        checkRange(obj.cornerPositions, obj.x.length, "vertex", path);
+        checkRange(obj.cornerTextures, obj.textureU.length, "texture coordinate", path);
+        checkRange(obj.cornerNormals, obj.normalX.length, "normal", path);
+    }
+
+    /**
+     * Checks that every index of an index array is below a limit. Entries of -1 mark a missing attribute.
+     *
+     * @param indices The indices to check, or null if there are none.
+     * @param count   The number of elements the indices refer to.
+     * @param kind    The name of the element kind, for error messages.
+     * @param path    The path of the file, for error messages.
+     * @throws IOException If an index is out of range.
+     */
+    private static void checkRange(int[] indices, int count, String kind, Path path) throws IOException {
+        if (indices == null) {
+            return;
+        }
+        for (int index : indices) {
+            if (index < -1 || index >= count) {
+                throw new IOException("Face references " + kind + " " + (index + 1) + " of " + count + " in " + path);
+            }
+        }
+    }
+
+    /**
+     * Turns the parsed file into mesh data: faces are triangulated, every distinct combination of position,
+     * texture coordinate and normal becomes one vertex, and the objects and groups become sub-meshes.
+     *
+     * @param obj The parsed and validated file.
+     * @return The geometry of the file.
+     */
+    private static MeshData assemble(ObjData obj) {
+        int faceCount = obj.faceSizes.length;
+        int cornerCount = obj.cornerPositions.length;
+        int triangleCount = cornerCount - 2 * faceCount;
+        boolean hasTextures = references(obj.cornerTextures);
+        boolean hasNormals = references(obj.cornerNormals);
+
+        // Every corner becomes a vertex index: the position itself, or the merged vertex of its index triple
+        int[] cornerVertices;
+        int vertexCount;
+        double[] x = obj.x, y = obj.y, z = obj.z;
+        double[] normalX = null, normalY = null, normalZ = null, textureU = null, textureV = null;
+        if (!hasTextures && !hasNormals) {
+            cornerVertices = obj.cornerPositions;
+            vertexCount = obj.x.length;
+        } else {
+            cornerVertices = new int[cornerCount];
+            VertexTable table = new VertexTable(cornerCount);
+            for (int corner = 0; corner < cornerCount; corner++) {
+                cornerVertices[corner] = table.add(obj.cornerPositions[corner],
+                        hasTextures ? obj.cornerTextures[corner] : -1, hasNormals ? obj.cornerNormals[corner] : -1);
+            }
+            vertexCount = table.size;
+            x = new double[vertexCount];
+            y = new double[vertexCount];
+            z = new double[vertexCount];
+            if (hasNormals) {
+                normalX = new double[vertexCount];
+                normalY = new double[vertexCount];
+                normalZ = new double[vertexCount];
+            }
+            if (hasTextures) {
+                textureU = new double[vertexCount];
+                textureV = new double[vertexCount];
+            }
+            for (int vertex = 0; vertex < vertexCount; vertex++) {
+                int position = table.positions[vertex];
+                x[vertex] = obj.x[position];
+                y[vertex] = obj.y[position];
+                z[vertex] = obj.z[position];
+                int normal = table.normals[vertex];
+                if (hasNormals && normal >= 0) {
+                    normalX[vertex] = obj.normalX[normal];
+                    normalY[vertex] = obj.normalY[normal];
+                    normalZ[vertex] = obj.normalZ[normal];
+                }
+                int texture = table.textures[vertex];
+                if (hasTextures && texture >= 0) {
+                    textureU[vertex] = obj.textureU[texture];
+                    textureV[vertex] = obj.textureV[texture];
+                }
+            }
+        }
+
+        // Triangulate; for pure triangle meshes the corner list already is the index buffer
+        int[] indices;
+        int[] firstTriangles = new int[faceCount + 1];
+        if (triangleCount == faceCount) {
+            indices = cornerVertices;
+            for (int face = 0; face <= faceCount; face++) {
+                firstTriangles[face] = face;
+            }
+        } else {
+            indices = new int[triangleCount * 3];
+            int[] triangles = new int[0];
+            PolygonTriangulator triangulator = new PolygonTriangulator();
+            int corner = 0;
+            int index = 0;
+            for (int face = 0; face < faceCount; face++) {
+                int size = obj.faceSizes[face];
+                if (triangles.length < (size - 2) * 3) {
+                    triangles = new int[(size - 2) * 3];
+                }
+                triangulator.triangulate(obj.x, obj.y, obj.z, obj.cornerPositions, corner, size, triangles, 0);
+                for (int i = 0; i < (size - 2) * 3; i++) {
+                    indices[index++] = cornerVertices[corner + triangles[i]];
+                }
+                firstTriangles[face + 1] = firstTriangles[face] + size - 2;
+                corner += size;
+            }
+        }
+
+        return new MeshData(x, y, z, vertexCount, indices, triangleCount,
+                normalX, normalY, normalZ, textureU, textureV, subMeshes(obj, firstTriangles));
+    }
+
+    /**
+     * Converts the "o" and "g" statements into sub-meshes. Faces before the first statement form a group
+     * named "default" and groups without faces are dropped.
+     *
+     * @param obj            The parsed file.
+     * @param firstTriangles The index of the first triangle of every face, followed by the triangle count.
+     * @return The sub-meshes, or null if the file has no groups.
+     */
+    private static SubMesh[] subMeshes(ObjData obj, int[] firstTriangles) {
+        int groupCount = obj.groupNames.length;
+        if (groupCount == 0) {
+            return null;
+        }
+        List<SubMesh> subMeshes = new ArrayList<>();
+        int faceCount = obj.faceSizes.length;
+        for (int group = -1; group < groupCount; group++) {
+            int firstFace = group < 0 ? 0 : obj.groupFaces[group];
+            int endFace = group + 1 < groupCount ? obj.groupFaces[group + 1] : faceCount;
+            if (endFace > firstFace) {
+                String name = group < 0 ? "default" : obj.groupNames[group];
+                int firstTriangle = firstTriangles[firstFace];
+                subMeshes.add(new SubMesh(name, firstTriangle, firstTriangles[endFace] - firstTriangle));
+            }
+        }
+        return subMeshes.toArray(new SubMesh[0]);
+    }
+
+    /**
+     * Checks if any corner has an attribute index.
+     *
+     * @param indices The attribute indices of the corners, -1 where missing, or null.
+     * @return True if at least one index is set.
+     */
+    private static boolean references(int[] indices) {
+        if (indices == null) {
+            return false;
+        }
+        for (int index : indices) {
+            if (index >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the file into chunks that start at the beginning of a line.
+     * Progressive loads get at least one chunk per snapshot, even when parsing sequentially.
+     *
+     * @param buffer      The mapped file.
+     * @param size        The size of the file.
+     * @param progressive True if snapshots are taken while parsing.
+     * @return The chunk boundaries, starting with 0 and ending with the file size.
+     */
+    private int[] splitIntoChunks(MappedByteBuffer buffer, int size, boolean progressive) {
+        int chunks = parallel ? Math.min(size / MIN_CHUNK_SIZE, Runtime.getRuntime().availableProcessors() * 4) : 1;
+        if (progressive) {
+            chunks = Math.max(chunks, Math.min(size / MIN_CHUNK_SIZE, SNAPSHOT_COUNT));
+        }
+        chunks = Math.max(1, chunks);
+        int[] bounds = new int[chunks + 1];
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            int position = Math.max(bounds[chunk - 1], (int) ((long) size * chunk / chunks));
+            while (position < size && buffer.get(position - 1) != '\n') {
+                position++;
+            }
+            bounds[chunk] = position;
+        }
+        bounds[chunks] = size;
+        return bounds;
+    }
+
+    /**
+     * Runs an action for every chunk, in parallel if enabled.
+     *
+     * @param chunks The number of chunks.
+     * @param action The action receiving the chunk index.
+     */
+    private void forEachChunk(int chunks, IntConsumer action) {
+        IntStream range = IntStream.range(0, chunks);
+        (parallel && chunks > 1 ? range.parallel() : range).forEach(action);
+    }
+
+    /**
+     * Runs an action for every chunk, in parallel if enabled, handing the chunks out in file order.
+     * Unlike a parallel stream, which splits the range in halves, the parsed beginning of the file then grows
+     * steadily, which is what progressive loads publish.
+     *
+     * @param chunks The number of chunks.
+     * @param action The action receiving the chunk index.
+     */
+    private void forEachChunkInOrder(int chunks, IntConsumer action) {
+        AtomicInteger next = new AtomicInteger();
+        int workers = parallel ? Math.min(chunks, Runtime.getRuntime().availableProcessors()) : 1;
+        IntStream range = IntStream.range(0, workers);
+        (workers > 1 ? range.parallel() : range).forEach(worker -> {
+            for (int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement()) {
+                action.accept(chunk);
+            }
+        });
+    }
+
+    /**
+     * Tells the listener, if there is one, how long loading a mesh took.
+     *
+     * @param filePath  The path of the loaded file.
+     * @param data      The loaded geometry.
+     * @param fromCache True if the geometry was read from the binary cache.
+     * @param start     The value of System.nanoTime() when loading started.
+     */
+    private void report(String filePath, MeshData data, boolean fromCache, long start) {
+        if (listener != null) {
+            listener.loaded(filePath, data, fromCache, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The SnapshotPublisher class tracks which chunks of a progressive load are parsed and publishes the
+     * geometry of the parsed beginning of the file whenever it grew by about 1/{@value #SNAPSHOT_COUNT} of the file.
+     * The parse of the whole file is returned by {@link #parse(Path, Consumer)} itself, not published.
+     */
+    private static final class SnapshotPublisher {
+        private final ObjData obj;
+        private final int[][] offsets;
+        private final int[] bounds;
+        private final Path path;
+        private final Consumer<MeshData> consumer;
+        private final boolean[] parsed;
+        private final int step;
+        private int parsedPrefix;
+        private int nextSnapshot;
+        private int publishedFaces;
+
+        /**
+         * Constructs a publisher for one parse.
+         *
+         * @param obj      The shared output arrays of the parse.
+         * @param offsets  The first element of every chunk in the output arrays, per element kind.
+         * @param bounds   The chunk boundaries in the file.
+         * @param path     The path of the file, for error messages.
+         * @param consumer The consumer of the snapshots.
+         */
+        SnapshotPublisher(ObjData obj, int[][] offsets, int[] bounds, Path path, Consumer<MeshData> consumer) {
+            this.obj = obj;
+            this.offsets = offsets;
+            this.bounds = bounds;
+            this.path = path;
+            this.consumer = consumer;
+            parsed = new boolean[bounds.length - 1];
+            step = Math.max(1, bounds[bounds.length - 1] / SNAPSHOT_COUNT);
+            nextSnapshot = step;
+        }
+
+        /**
+         * Records a parsed chunk and publishes a snapshot if the parsed beginning grew enough.
+         * Runs under the publisher's lock, which also makes the output of the finished chunks visible.
+         *
+         * @param chunk The index of the chunk.
+         */
+        synchronized void chunkParsed(int chunk) {
+            parsed[chunk] = true;
+            int before = parsedPrefix;
+            while (parsedPrefix < parsed.length && parsed[parsedPrefix]) {
+                parsedPrefix++;
+            }
+            int end = parsedPrefix;
+            // Files often list all vertices first; a beginning without new faces would show nothing new
+            if (end == before || end == parsed.length || bounds[end] < nextSnapshot || offsets[3][end] == publishedFaces) {
+                return;
+            }
+            nextSnapshot = bounds[end] + step;
+
+            ObjData partial = new ObjData(obj, offsets[0][end], offsets[1][end], offsets[2][end],
+                    offsets[3][end], offsets[4][end], offsets[5][end]);
+            try {
+                validate(partial, path);
+            } catch (IOException e) {
+                // A face references an element defined further on, wait for a longer beginning
+                return;
+            }
+            publishedFaces = offsets[3][end];
+            consumer.accept(assemble(partial));
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ObjParser class parses one chunk of a mapped OBJ file into an {@link ObjData}.
+ * It reads bytes through absolute gets only, so several parsers can share one buffer across threads.
+ * @author Giorgio
+ */
+class ObjParser {
+    /** Exact powers of ten that can be represented as doubles. */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ByteBuffer buffer;
+    private final int end;
+    private int position;
+
+    /** The number of "v" lines found by {@link #count()}. */
+    int positionCount;
+    /** The number of "vt" lines found by {@link #count()}. */
+    int textureCount;
+    /** The number of "vn" lines found by {@link #count()}. */
+    int normalCount;
+    /** The number of "f" lines found by {@link #count()}. */
+    int faceCount;
+    /** The number of face corners found by {@link #count()}. */
+    int cornerCount;
+    /** The number of "o" and "g" lines found by {@link #count()}. */
+    int groupCount;
+
+    /**
+     * Constructs a parser for a range of the buffer. The range must start at the beginning of a line.
+     *
+     * @param buffer The mapped file.
+     * @param start  The first byte of the chunk.
+     * @param end    The byte after the chunk.
+     */
+    ObjParser(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * Counts the statements and face corners of the chunk.
+     */
+    void count() {
+        while (position < end) {
+            skipBlanks();
+            switch (keyword()) {
+                case 'v' -> positionCount++;
+                case 't' -> textureCount++;
+                case 'n' -> normalCount++;
+                case 'o', 'g' -> groupCount++;
+                case 'f' -> {
+                    faceCount++;
+                    skipBlanks();
+                    while (position < end && !isLineEnd(buffer.get(position))) {
+                        cornerCount++;
+                        while (position < end && !isBlank(buffer.get(position)) && !isLineEnd(buffer.get(position))) {
+                            position++;
+                        }
+                        skipBlanks();
+                    }
+                }
+                default -> { }
+            }
+            nextLine();
+        }
+    }
+
+    /**
+     * Parses the chunk into its ranges of the shared arrays. The offsets are the number of elements of each kind
+     * in all previous chunks, which also makes relative (negative) indices resolvable without looking back.
+     * Indices are converted from 1-based to 0-based but not range-checked against the whole file.
+     *
+     * @param data           Receives the parsed content.
+     * @param positionOffset The index of the first position of this chunk.
+     * @param textureOffset  The index of the first texture coordinate of this chunk.
+     * @param normalOffset   The index of the first normal of this chunk.
+     * @param faceOffset     The index of the first face of this chunk.
+     * @param cornerOffset   The index of the first face corner of this chunk.
+     * @param groupOffset    The index of the first group of this chunk.
+     * @throws IOException If a line is malformed.
+     */
+    void parse(ObjData data, int positionOffset, int textureOffset, int normalOffset,
+               int faceOffset, int cornerOffset, int groupOffset) throws IOException {
+        int positions = positionOffset;
+        int textures = textureOffset;
+        int normals = normalOffset;
+        int face = faceOffset;
+        int corner = cornerOffset;
+        int group = groupOffset;
+        while (position < end) {
+            skipBlanks();
+            switch (keyword()) {
+                case 'v' -> {
+                    data.x[positions] = parseDouble();
+                    data.y[positions] = parseDouble();
+                    data.z[positions] = parseDouble();
+                    positions++;
+                }
+                case 't' -> {
+                    data.textureU[textures] = parseDouble();
+                    // The second component is optional, 1D texture coordinates leave it at 0
+                    skipBlanks();
+                    if (position < end && !isLineEnd(buffer.get(position))) {
+                        data.textureV[textures] = parseDouble();
+                    }
+                    textures++;
+                }
+                case 'n' -> {
+                    data.normalX[normals] = parseDouble();
+                    data.normalY[normals] = parseDouble();
+                    data.normalZ[normals] = parseDouble();
+                    normals++;
+                }
+                case 'o', 'g' -> {
+                    data.groupNames[group] = readName();
+                    data.groupFaces[group] = face;
+                    group++;
+                }
+                case 'f' -> {
+                    int first = corner;
+                    skipBlanks();
+                    while (position < end && !isLineEnd(buffer.get(position))) {
+                        // Corners are "v", "v/vt", "v//vn" or "v/vt/vn"
+                        data.cornerPositions[corner] = resolve(parseInt(), positions);
+                        if (data.cornerTextures != null) {
+                            data.cornerTextures[corner] = -1;
+                        }
+                        if (data.cornerNormals != null) {
+                            data.cornerNormals[corner] = -1;
+                        }
+                        if (position < end && buffer.get(position) == '/') {
+                            position++;
+                            if (position < end && buffer.get(position) != '/') {
+                                int texture = resolve(parseInt(), textures);
+                                if (data.cornerTextures == null) {
+                                    throw new IOException("Face references a texture coordinate, but there are none");
+                                }
+                                data.cornerTextures[corner] = texture;
+                            }
+                            if (position < end && buffer.get(position) == '/') {
+                                position++;
+                                int normal = resolve(parseInt(), normals);
+                                if (data.cornerNormals == null) {
+                                    throw new IOException("Face references a normal, but there are none");
+                                }
+                                data.cornerNormals[corner] = normal;
+                            }
+                        }
+                        corner++;
+                        skipBlanks();
+                    }
+                    data.faceSizes[face++] = corner - first;
+                }
+                default -> { }
+            }
+            nextLine();
+        }
+    }
+
+    /**
+     * Converts a 1-based or relative OBJ index to a 0-based index.
+     *
+     * @param index   The index as written in the file.
+     * @param defined The number of elements of this kind defined before the current line.
+     * @return The 0-based index.
+     * @throws IOException If the index is 0 or points before the first element.
+     */
+    private int resolve(int index, int defined) throws IOException {
+        if (index > 0) {
+            return index - 1;
+        }
+        // Negative indices count back from the last element defined so far, -1 being the latest
+        int resolved = defined + index;
+        if (index == 0 || resolved < 0) {
+            throw new IOException("Invalid index " + index + " at byte " + position);
+        }
+        return resolved;
+    }
+
+    /**
+     * Reads the rest of the line as the name of an object or group.
+     *
+     * @return The name without surrounding blanks, or "default" if it is empty.
+     */
+    private String readName() {
+        skipBlanks();
+        int start = position;
+        int stop = start;
+        while (position < end && !isLineEnd(buffer.get(position))) {
+            if (!isBlank(buffer.get(position))) {
+                stop = position + 1;
+            }
+            position++;
+        }
+        if (stop == start) {
+            return "default";
+        }
+        byte[] name = new byte[stop - start];
+        buffer.get(start, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the keyword at the current position and moves past it.
+     * Recognized are "v", "vt", "vn", "f", "o" and "g"; everything else, like comments and materials, is skipped.
+     *
+     * @return 'v', 't' (for "vt"), 'n' (for "vn"), 'f', 'o' or 'g', or 0 for an unknown keyword.
+     */
+    private int keyword() {
+        if (position >= end) {
+            return 0;
+        }
+        byte first = buffer.get(position);
+        byte second = position + 1 < end ? buffer.get(position + 1) : (byte) '\n';
+        if (first == 'v' && (second == 't' || second == 'n')
+                && (position + 2 >= end || isBlank(buffer.get(position + 2)))) {
+            position += 2;
+            return second;
+        }
+        if ((first == 'v' || first == 'f' || first == 'o' || first == 'g') && (isBlank(second) || second == '\n')) {
+            position++;
+            return first;
+        }
+        return 0;
+    }
+
+    /**
+     * Parses a decimal floating point number like "-1.25e-3" after optional blanks.
+     * Up to 18 significant digits are used; the result may differ from Double.parseDouble in the last bit
+     * for very large or very small exponents.
+     *
+     * @return The parsed number.
+     * @throws IOException If there is no number at the current position.
+     */
+    double parseDouble() throws IOException {
+        skipBlanks();
+        boolean negative = false;
+        if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean anyDigit = false;
+        byte c;
+        while (position < end && (c = buffer.get(position)) >= '0' && c <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+            }
+            anyDigit = true;
+            position++;
+        }
+        if (position < end && buffer.get(position) == '.') {
+            position++;
+            while (position < end && (c = buffer.get(position)) >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                }
+                anyDigit = true;
+                position++;
+            }
+        }
+        if (!anyDigit) {
+            throw new IOException("Expected a number at byte " + position);
+        }
+        if (position < end && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                negativeExponent = buffer.get(position) == '-';
+                position++;
+            }
+            int value = 0;
+            while (position < end && (c = buffer.get(position)) >= '0' && c <= '9') {
+                value = Math.min(value * 10 + (c - '0'), 10000);
+                position++;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        double result;
+        if (mantissa == 0) {
+            result = 0;
+        } else if (exponent >= 0 && exponent <= 22 && mantissa < (1L << 53)) {
+            result = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && exponent >= -22 && mantissa < (1L << 53)) {
+            // Both operands are exact, so the division is correctly rounded
+            result = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            result = mantissa * Math.pow(10, exponent);
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a decimal integer after optional blanks.
+     *
+     * @return The parsed number.
+     * @throws IOException If there is no number at the current position.
+     */
+    int parseInt() throws IOException {
+        skipBlanks();
+        boolean negative = false;
+        if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+        int start = position;
+        long value = 0;
+        byte c;
+        while (position < end && (c = buffer.get(position)) >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Integer out of range at byte " + start);
+            }
+            position++;
+        }
+        if (position == start) {
+            throw new IOException("Expected an integer at byte " + position);
+        }
+        return negative ? (int) -value : (int) value;
+    }
+
+    /**
+     * Checks if a byte ends the statement of a line.
+     *
+     * @param c The byte to check.
+     * @return True for line feeds and the start of a comment.
+     */
+    private static boolean isLineEnd(byte c) {
+        return c == '\n' || c == '#';
+    }
+
+    /**
+     * Moves past spaces, tabs and carriage returns.
+     */
+    private void skipBlanks() {
+        while (position < end && isBlank(buffer.get(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * Moves to the first byte of the next line.
+     */
+    private void nextLine() {
+        while (position < end && buffer.get(position) != '\n') {
+            position++;
+        }
+        position++;
+    }
+
+    /**
+     * Checks if a byte separates tokens within a line.
+     *
+     * @param c The byte to check.
+     * @return True for spaces, tabs and carriage returns.
+     */
+    private static boolean isBlank(byte c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+}
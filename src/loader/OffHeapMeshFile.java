@@ -0,0 +1,205 @@
+package loader;
+
+import geometry.MeshData;
+import geometry.OffHeapMeshStorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The OffHeapMeshFile class reads and writes binary mesh files that are mapped into memory as an
+ * {@link OffHeapMeshStorage} without copying anything to the heap. After a small header the file holds the float runs of the x-, y- and
+ * z-coordinates and the int runs of the three triangle corners, little-endian and each starting on a
+ * {@value #ALIGNMENT}-byte boundary. The operating system pages the geometry in on first use and may drop it
+ * again under memory pressure, so a model may even exceed the physical memory.
+ * <p>
+ * Usage: {@code java -cp out loader.OffHeapMeshFile model.obj model.tdmesh} converts an OBJ file.
+ * @author Giorgio
+ */
+public class OffHeapMeshFile {
+    /** The suffix of mesh files. */
+    public static final String SUFFIX = ".tdmesh";
+
+    private static final int MAGIC = 0x48444D54; // "TMDH"
+    private static final int VERSION = 1;
+    private static final int ALIGNMENT = 64;
+    private static final int HEADER_SIZE = ALIGNMENT;
+
+    /**
+     * Converts an OBJ file into a mesh file.
+     *
+     * @param args The OBJ file and the mesh file to write.
+     * @throws IOException If the OBJ file cannot be read or the mesh file cannot be written.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: loader.OffHeapMeshFile <model.obj> <model" + SUFFIX + ">");
+            System.exit(1);
+        }
+        MeshData data = new ObjLoader(true, false, (filePath, loaded, fromCache, nanos) ->
+                System.out.printf("Loaded %s (%d vertices, %d triangles) in %.1f ms%n",
+                        filePath, loaded.vertexCount, loaded.triangleCount, nanos / 1e6)).load(args[0]);
+        write(Path.of(args[1]), data);
+        System.out.println("Wrote " + data.vertexCount + " vertices and " + data.triangleCount + " triangles to " + args[1]);
+    }
+
+    /**
+     * Maps a mesh file into memory.
+     *
+     * @param path The mesh file.
+     * @return The geometry, stored in the mapped file.
+     * @throws IOException If the file cannot be read or is not a valid mesh file.
+     */
+    public static MeshData map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a mesh file: " + path);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // read until the header is complete
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a mesh file of version " + VERSION + ": " + path);
+            }
+            int vertexCount = header.getInt();
+            int triangleCount = header.getInt();
+            if (vertexCount < 0 || triangleCount < 0 || size < fileSize(vertexCount, triangleCount)) {
+                throw new IOException("Truncated mesh file: " + path);
+            }
+
+            // Each run is mapped on its own, so no single mapping exceeds the 2 GB limit of a buffer
+            long positionRun = align((long) vertexCount * Float.BYTES);
+            long cornerRun = align((long) triangleCount * Integer.BYTES);
+            long offset = HEADER_SIZE;
+            MappedByteBuffer x = map(channel, offset, vertexCount);
+            MappedByteBuffer y = map(channel, offset += positionRun, vertexCount);
+            MappedByteBuffer z = map(channel, offset += positionRun, vertexCount);
+            MappedByteBuffer cornerA = map(channel, offset += positionRun, triangleCount);
+            MappedByteBuffer cornerB = map(channel, offset += cornerRun, triangleCount);
+            MappedByteBuffer cornerC = map(channel, offset + cornerRun, triangleCount);
+            return new MeshData(new OffHeapMeshStorage(x, y, z, vertexCount, cornerA, cornerB, cornerC, triangleCount));
+        }
+    }
+
+    /**
+     * Maps one run of four-byte values read-only.
+     *
+     * @param channel The channel of the file.
+     * @param offset  The offset of the run in the file.
+     * @param count   The number of values.
+     * @return The mapped run.
+     * @throws IOException If mapping fails.
+     */
+    private static MappedByteBuffer map(FileChannel channel, long offset, int count) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) count * 4);
+    }
+
+    /**
+     * Writes geometry as a mesh file, rounding the positions to floats. The file is written under a temporary
+     * name first and then moved into place, so concurrent readers never map a partial file.
+     *
+     * @param path The mesh file to write.
+     * @param data The geometry.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path path, MeshData data) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        int vertexCount = data.vertexCount, triangleCount = data.triangleCount;
+
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(vertexCount);
+            buffer.putInt(triangleCount);
+            pad(buffer);
+
+            for (int axis = 0; axis < 3; axis++) {
+                double[] positions = data.getPositions(axis);
+                for (int i = 0; i < vertexCount; i++) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putFloat((float) positions[i]);
+                }
+                pad(buffer);
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                for (int t = 0; t < triangleCount; t++) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putInt(data.getIndex(t * 3 + corner));
+                }
+                pad(buffer);
+            }
+            flush(channel, buffer);
+        }
+
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the size of a mesh file.
+     *
+     * @param vertexCount   The number of vertices.
+     * @param triangleCount The number of triangles.
+     * @return The size in bytes, including the padding of the last run.
+     */
+    private static long fileSize(int vertexCount, int triangleCount) {
+        return HEADER_SIZE + 3 * align((long) vertexCount * Float.BYTES) + 3 * align((long) triangleCount * Integer.BYTES);
+    }
+
+    /**
+     * Rounds a size up to the alignment of the runs.
+     *
+     * @param size The size in bytes.
+     * @return The aligned size.
+     */
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Pads the written data with zeros up to the next run boundary. The staging buffer size is a multiple of the
+     * alignment, so its position is congruent to the file position.
+     *
+     * @param buffer The staging buffer.
+     */
+    private static void pad(ByteBuffer buffer) {
+        while (buffer.position() % ALIGNMENT != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * Writes the content of the staging buffer to the channel and empties it.
+     *
+     * @param channel The channel to write to.
+     * @param buffer  The staging buffer.
+     * @throws IOException If writing fails.
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
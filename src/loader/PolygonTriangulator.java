@@ -0,0 +1,146 @@
+package loader;
+
+import java.util.Arrays;
+
+/**
+ * The PolygonTriangulator class splits planar polygons with any number of corners into triangles.
+ * Polygons are projected onto the coordinate plane their normal is most aligned with and triangulated by
+ * ear clipping, which also handles concave faces. If no ear can be found, e.g. for degenerate or
+ * self-intersecting polygons, the remaining corners are triangulated as a fan.
+ * The scratch arrays are reused, so an instance must not be shared between threads.
+ * @author Giorgio
+ */
+class PolygonTriangulator {
+    private double[] projectedX = new double[16];
+    private double[] projectedY = new double[16];
+    private int[] remaining = new int[16];
+
+    /**
+     * Triangulates a polygon. The triangles keep the winding order of the polygon.
+     *
+     * @param x         The x-coordinates of all positions.
+     * @param y         The y-coordinates of all positions.
+     * @param z         The z-coordinates of all positions.
+     * @param corners   The position index of every corner of the polygon, in order.
+     * @param first     The index of the first corner in the corners array.
+     * @param size      The number of corners, at least 3.
+     * @param triangles Receives size - 2 triangles as corner numbers relative to first, three entries each.
+     * @param offset    The index of the first entry to write in the triangles array.
+     */
+    void triangulate(double[] x, double[] y, double[] z, int[] corners, int first, int size, int[] triangles, int offset) {
+        if (size == 3) {
+            triangles[offset] = 0;
+            triangles[offset + 1] = 1;
+            triangles[offset + 2] = 2;
+            return;
+        }
+        if (remaining.length < size) {
+            projectedX = Arrays.copyOf(projectedX, size * 2);
+            projectedY = Arrays.copyOf(projectedY, size * 2);
+            remaining = Arrays.copyOf(remaining, size * 2);
+        }
+
+        // Newell's method gives a robust normal even for concave polygons
+        double normalX = 0, normalY = 0, normalZ = 0;
+        for (int i = 0; i < size; i++) {
+            int current = corners[first + i];
+            int next = corners[first + (i + 1) % size];
+            normalX += (y[current] - y[next]) * (z[current] + z[next]);
+            normalY += (z[current] - z[next]) * (x[current] + x[next]);
+            normalZ += (x[current] - x[next]) * (y[current] + y[next]);
+        }
+        double absX = Math.abs(normalX), absY = Math.abs(normalY), absZ = Math.abs(normalZ);
+        for (int i = 0; i < size; i++) {
+            int corner = corners[first + i];
+            // Drop the dominant axis and keep the projection counter-clockwise
+            if (absX >= absY && absX >= absZ) {
+                projectedX[i] = y[corner];
+                projectedY[i] = normalX > 0 ? z[corner] : -z[corner];
+            } else if (absY >= absZ) {
+                projectedX[i] = z[corner];
+                projectedY[i] = normalY > 0 ? x[corner] : -x[corner];
+            } else {
+                projectedX[i] = x[corner];
+                projectedY[i] = normalZ > 0 ? y[corner] : -y[corner];
+            }
+            remaining[i] = i;
+        }
+
+        int count = size;
+        int current = 0;
+        int failures = 0;
+        while (count > 3) {
+            int previous = (current + count - 1) % count;
+            int next = (current + 1) % count;
+            if (isEar(previous, current, next, count)) {
+                offset = emit(triangles, offset, remaining[previous], remaining[current], remaining[next]);
+                System.arraycopy(remaining, current + 1, remaining, current, count - current - 1);
+                count--;
+                current = current % count;
+                failures = 0;
+            } else if (++failures > count) {
+                // No ear left, the polygon is degenerate: fan the rest
+                for (int i = 1; i < count - 1; i++) {
+                    offset = emit(triangles, offset, remaining[0], remaining[i], remaining[i + 1]);
+                }
+                return;
+            } else {
+                current = next;
+            }
+        }
+        emit(triangles, offset, remaining[0], remaining[1], remaining[2]);
+    }
+
+    /**
+     * Checks if the corner between two neighbours is convex and no other remaining corner lies inside its triangle.
+     *
+     * @param previous The position of the previous corner in the remaining list.
+     * @param current  The position of the tested corner in the remaining list.
+     * @param next     The position of the next corner in the remaining list.
+     * @param count    The number of remaining corners.
+     * @return True if the triangle can be clipped off.
+     */
+    private boolean isEar(int previous, int current, int next, int count) {
+        int a = remaining[previous], b = remaining[current], c = remaining[next];
+        if (cross(a, b, c) <= 0) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int p = remaining[i];
+            if (p != a && p != b && p != c && cross(a, b, p) >= 0 && cross(b, c, p) >= 0 && cross(c, a, p) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the z-component of the cross product of the projected edges a->b and a->c.
+     *
+     * @param a The first corner.
+     * @param b The second corner.
+     * @param c The third corner.
+     * @return A positive value if the corners turn counter-clockwise.
+     */
+    private double cross(int a, int b, int c) {
+        return (projectedX[b] - projectedX[a]) * (projectedY[c] - projectedY[a])
+                - (projectedY[b] - projectedY[a]) * (projectedX[c] - projectedX[a]);
+    }
+
+    /**
+     * Writes one triangle.
+     *
+     * @param triangles The output array.
+     * @param offset    The index of the first entry to write.
+     * @param a         The first corner.
+     * @param b         The second corner.
+     * @param c         The third corner.
+     * @return The index after the written entries.
+     */
+    private static int emit(int[] triangles, int offset, int a, int b, int c) {
+        triangles[offset] = a;
+        triangles[offset + 1] = b;
+        triangles[offset + 2] = c;
+        return offset + 3;
+    }
+}
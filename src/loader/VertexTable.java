@@ -0,0 +1,65 @@
+package loader;
+
+import java.util.Arrays;
+
+/**
+ * The VertexTable class merges equal (position, texture coordinate, normal) index triples of OBJ face corners
+ * into vertices. It is an open-addressing hash table over primitive arrays, so it does not box any index.
+ * @author Giorgio
+ */
+class VertexTable {
+    /** The position index of every vertex. */
+    int[] positions;
+    /** The texture coordinate index of every vertex, -1 if none. */
+    int[] textures;
+    /** The normal index of every vertex, -1 if none. */
+    int[] normals;
+    /** The number of distinct vertices. */
+    int size;
+
+    private final int[] slots;
+    private final int mask;
+
+    /**
+     * Constructs a table for up to the given number of vertices.
+     *
+     * @param capacity The maximum number of distinct vertices, e.g. the number of face corners.
+     */
+    VertexTable(int capacity) {
+        positions = new int[capacity];
+        textures = new int[capacity];
+        normals = new int[capacity];
+        // Keep the load factor at or below one half
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;
+        slots = new int[tableSize];
+        Arrays.fill(slots, -1);
+        mask = tableSize - 1;
+    }
+
+    /**
+     * Returns the vertex of an index triple, adding it if it is new.
+     *
+     * @param position The position index.
+     * @param texture  The texture coordinate index, or -1.
+     * @param normal   The normal index, or -1.
+     * @return The index of the vertex.
+     */
+    int add(int position, int texture, int normal) {
+        int hash = position * 0x9E3779B1 + texture * 0x85EBCA77 + normal * 0xC2B2AE3D;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            int vertex = slots[slot];
+            if (vertex < 0) {
+                positions[size] = position;
+                textures[size] = texture;
+                normals[size] = normal;
+                slots[slot] = size;
+                return size++;
+            }
+            if (positions[vertex] == position && textures[vertex] == texture && normals[vertex] == normal) {
+                return vertex;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+}
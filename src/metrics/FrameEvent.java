@@ -0,0 +1,49 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The FrameEvent class is a Java Flight Recorder event carrying the metrics of one frame.
+ * It is only committed while a recording with the event enabled is running.
+ * @author Giorgio
+ */
+@Name("engine.Frame")
+@Label("Frame")
+@Category({"ThreeD Graphics Engine"})
+@Description("Stage timings and triangle counts of one rendered frame")
+@StackTrace(false)
+class FrameEvent extends Event {
+    @Label("Update") @Timespan(Timespan.NANOSECONDS)
+    long update;
+    @Label("Transform") @Timespan(Timespan.NANOSECONDS)
+    long transform;
+    @Label("Cull") @Timespan(Timespan.NANOSECONDS)
+    long cull;
+    @Label("Bin") @Timespan(Timespan.NANOSECONDS)
+    long bin;
+    @Label("Raster") @Timespan(Timespan.NANOSECONDS)
+    long raster;
+    @Label("Present") @Timespan(Timespan.NANOSECONDS)
+    long present;
+    @Label("Frame Time") @Timespan(Timespan.NANOSECONDS)
+    long frame;
+    @Label("Latency") @Timespan(Timespan.NANOSECONDS)
+    long latency;
+    @Label("Triangles Submitted")
+    long trianglesSubmitted;
+    @Label("Triangles Culled")
+    long trianglesCulled;
+    @Label("Triangles Drawn")
+    long trianglesDrawn;
+    @Label("Tiles Drawn")
+    long tilesDrawn;
+    @Label("Allocated") @DataAmount
+    long allocated;
+}
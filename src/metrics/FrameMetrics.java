@@ -0,0 +1,128 @@
+package metrics;
+
+import jdk.jfr.EventType;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * The FrameMetrics class records stage timings, triangle counts and allocations per frame.
+ * <p>
+ * The render thread adds the values of the current frame with {@link #add(Metric, long)} and closes the
+ * frame with {@link #endFrame()}, which appends every value to the lock-free ring of its metric and commits
+ * a {@link FrameEvent} for Java Flight Recorder. Recording does not lock, and it only allocates the event while a
+ * flight recording enables it. Other threads, like the JMX server or the overlay, read percentile statistics over
+ * the last {@link #CAPACITY} frames.
+ * @author Giorgio
+ */
+public class FrameMetrics implements FrameMetricsMXBean {
+    /** The number of frames kept per metric, about 17 seconds at 60 frames per second. */
+    public static final int CAPACITY = 1024;
+
+    /** The type of the frame event, to check whether a recording wants it before creating one. */
+    private static final EventType FRAME_EVENT_TYPE = EventType.getEventType(FrameEvent.class);
+
+    private final MetricRing[] rings = new MetricRing[Metric.ALL.length];
+    private final long[] current = new long[Metric.ALL.length];
+    private volatile long frameCount;
+
+    /**
+     * Constructs empty metrics.
+     */
+    public FrameMetrics() {
+        for (int i = 0; i < rings.length; i++) {
+            rings[i] = new MetricRing(CAPACITY);
+        }
+    }
+
+    /**
+     * Adds a value to a metric of the current frame. Values of the same metric are summed, e.g. for
+     * several simulation steps in one frame. Must only be called by the render thread.
+     *
+     * @param metric The metric.
+     * @param value  The value, in nanoseconds for durations.
+     */
+    public void add(Metric metric, long value) {
+        current[metric.ordinal()] += value;
+    }
+
+    /**
+     * Closes the current frame: its values are published to the readers and to Java Flight Recorder.
+     * Must only be called by the render thread.
+     */
+    public void endFrame() {
+        long[] current = this.current;
+        for (int i = 0; i < current.length; i++) {
+            rings[i].add(current[i]);
+        }
+
+        if (FRAME_EVENT_TYPE.isEnabled()) {
+            FrameEvent event = new FrameEvent();
+            event.update = current[Metric.UPDATE.ordinal()];
+            event.transform = current[Metric.TRANSFORM.ordinal()];
+            event.cull = current[Metric.CULL.ordinal()];
+            event.bin = current[Metric.BIN.ordinal()];
+            event.raster = current[Metric.RASTER.ordinal()];
+            event.present = current[Metric.PRESENT.ordinal()];
+            event.frame = current[Metric.FRAME.ordinal()];
+            event.latency = current[Metric.LATENCY.ordinal()];
+            event.trianglesSubmitted = current[Metric.TRIANGLES_SUBMITTED.ordinal()];
+            event.trianglesCulled = current[Metric.TRIANGLES_CULLED.ordinal()];
+            event.trianglesDrawn = current[Metric.TRIANGLES_DRAWN.ordinal()];
+            event.tilesDrawn = current[Metric.TILES_DRAWN.ordinal()];
+            event.allocated = current[Metric.ALLOCATED_BYTES.ordinal()];
+            event.commit();
+        }
+
+        Arrays.fill(current, 0);
+        frameCount++;
+    }
+
+    /**
+     * Computes the statistics of one metric over the recent frames. Safe to call from any thread.
+     *
+     * @param metric The metric.
+     * @return The statistics.
+     */
+    public MetricStatistics getStatistics(Metric metric) {
+        long[] values = new long[CAPACITY];
+        int count = rings[metric.ordinal()].snapshot(values);
+        return MetricStatistics.of(metric, values, count);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @param name The object name, e.g. "engine:type=FrameMetrics".
+     * @throws JMException If the name is invalid or already registered.
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+    }
+
+    @Override
+    public MetricStatistics[] getMetrics() {
+        MetricStatistics[] statistics = new MetricStatistics[Metric.ALL.length];
+        for (Metric metric : Metric.ALL) {
+            statistics[metric.ordinal()] = getStatistics(metric);
+        }
+        return statistics;
+    }
+
+    @Override
+    public String getSummary() {
+        StringJoiner joiner = new StringJoiner("\n");
+        for (MetricStatistics statistics : getMetrics()) {
+            joiner.add(statistics.toString());
+        }
+        return joiner.toString();
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount;
+    }
+}
@@ -0,0 +1,30 @@
+package metrics;
+
+/**
+ * The FrameMetricsMXBean interface exposes the {@link FrameMetrics} of the engine through JMX,
+ * e.g. in JConsole or Java Mission Control.
+ * @author Giorgio
+ */
+public interface FrameMetricsMXBean {
+
+    /**
+     * Returns the statistics of all metrics over the recent frames.
+     *
+     * @return One entry per metric.
+     */
+    MetricStatistics[] getMetrics();
+
+    /**
+     * Returns the statistics of all metrics as text, one metric per line.
+     *
+     * @return The summary.
+     */
+    String getSummary();
+
+    /**
+     * Returns the number of frames recorded since the start.
+     *
+     * @return The frame count.
+     */
+    long getFrameCount();
+}
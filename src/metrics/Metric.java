@@ -0,0 +1,81 @@
+package metrics;
+
+/**
+ * The Metric enum lists the values {@link FrameMetrics} records once per frame.
+ * @author Giorgio
+ */
+public enum Metric {
+    /** Time spent in simulation steps. */
+    UPDATE("update", Unit.NANOSECONDS),
+    /** Time of the vertex pass: world transform and projection. */
+    TRANSFORM("transform", Unit.NANOSECONDS),
+    /** Time of the face pass and of collecting the visible triangles: normals, backface culling and lighting. */
+    CULL("cull", Unit.NANOSECONDS),
+    /** Time of sorting the triangles into screen tiles. */
+    BIN("bin", Unit.NANOSECONDS),
+    /** Time of clearing and rasterizing the tiles. */
+    RASTER("raster", Unit.NANOSECONDS),
+    /** Time of showing the finished frame on the screen. */
+    PRESENT("present", Unit.NANOSECONDS),
+    /** Time from the end of the previous frame to the end of this one. */
+    FRAME("frame", Unit.NANOSECONDS),
+    /** Time from publishing the simulation state of the frame to showing it on the screen. */
+    LATENCY("latency", Unit.NANOSECONDS),
+    /** Triangles handed to the pipeline. */
+    TRIANGLES_SUBMITTED("submitted", Unit.COUNT),
+    /** Triangles discarded by backface culling. */
+    TRIANGLES_CULLED("culled", Unit.COUNT),
+    /** Triangles passed on to the rasterizer. */
+    TRIANGLES_DRAWN("drawn", Unit.COUNT),
+    /** Screen tiles cleared and rasterized; only the changed ones are redrawn, none if nothing changed. */
+    TILES_DRAWN("tiles", Unit.COUNT),
+    /** Heap bytes allocated by the render and present threads while projecting and rasterizing the frame. */
+    ALLOCATED_BYTES("allocated", Unit.BYTES);
+
+    /**
+     * The Unit enum lists the units of the metrics.
+     */
+    public enum Unit {
+        /** A duration in nanoseconds. */
+        NANOSECONDS,
+        /** A number of items. */
+        COUNT,
+        /** An amount of memory in bytes. */
+        BYTES
+    }
+
+    /** All metrics in declaration order, shared to avoid copying {@link #values()}. */
+    static final Metric[] ALL = values();
+
+    private final String label;
+    private final Unit unit;
+
+    /**
+     * Constructs a metric.
+     *
+     * @param label The short name shown in the overlay and the MBean.
+     * @param unit  The unit of the recorded values.
+     */
+    Metric(String label, Unit unit) {
+        this.label = label;
+        this.unit = unit;
+    }
+
+    /**
+     * Returns the short name of the metric.
+     *
+     * @return The label.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the unit of the recorded values.
+     *
+     * @return The unit.
+     */
+    public Unit getUnit() {
+        return unit;
+    }
+}
@@ -0,0 +1,68 @@
+package metrics;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * The MetricRing class keeps the most recent values of one metric in a fixed ring buffer.
+ * It is lock-free for one writer and any number of readers: the writer stores the value and then publishes
+ * it by a volatile write of the sequence number, and readers copy the ring and discard any entry the writer
+ * may have overwritten during the copy.
+ * @author Giorgio
+ */
+class MetricRing {
+    private final long[] values;
+    private final int mask;
+    /** The number of values written so far; only the writer thread increments it. */
+    private volatile long written;
+
+    /**
+     * Constructs a ring.
+     *
+     * @param capacity The number of values kept, a power of two.
+     */
+    MetricRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+        }
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Appends a value, overwriting the oldest one if the ring is full. Must only be called by the writer thread.
+     *
+     * @param value The value.
+     */
+    void add(long value) {
+        long sequence = written;
+        values[(int) sequence & mask] = value;
+        written = sequence + 1;
+    }
+
+    /**
+     * Copies the most recent values, oldest first.
+     *
+     * @param destination Receives the values; must be at least as long as the capacity.
+     * @return The number of values copied.
+     */
+    int snapshot(long[] destination) {
+        long end = written;
+        long start = Math.max(0, end - values.length);
+        for (long sequence = start; sequence < end; sequence++) {
+            destination[(int) (sequence - start)] = values[(int) sequence & mask];
+        }
+        // Keep the loads of the copy before the second read of the sequence number
+        VarHandle.acquireFence();
+        // Entries the writer reused while we copied are no longer valid, drop them from the front. The writer stores
+        // a value before it publishes it, so the slot of the next sequence number may already be overwritten too.
+        long overwritten = Math.max(0, written + 1 - values.length - start);
+        int count = (int) (end - start);
+        if (overwritten >= count) {
+            return 0;
+        }
+        if (overwritten > 0) {
+            System.arraycopy(destination, (int) overwritten, destination, 0, count - (int) overwritten);
+        }
+        return count - (int) overwritten;
+    }
+}
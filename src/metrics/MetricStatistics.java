@@ -0,0 +1,158 @@
+package metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The MetricStatistics class summarizes the recent values of one metric as percentiles.
+ * Durations are given in milliseconds, counts and bytes as they are. Instances are immutable and map to
+ * composite data in the {@link FrameMetricsMXBean}.
+ * @author Giorgio
+ */
+public class MetricStatistics {
+    private final String name;
+    private final String unit;
+    private final int samples;
+    private final double mean;
+    private final double p50;
+    private final double p99;
+    private final double max;
+
+    /**
+     * Constructs statistics.
+     *
+     * @param name    The name of the metric.
+     * @param unit    The unit of the values: "ms", "count" or "bytes".
+     * @param samples The number of values summarized.
+     * @param mean    The mean value.
+     * @param p50     The median.
+     * @param p99     The 99th percentile.
+     * @param max     The largest value.
+     */
+    @ConstructorProperties({"name", "unit", "samples", "mean", "p50", "p99", "max"})
+    public MetricStatistics(String name, String unit, int samples, double mean, double p50, double p99, double max) {
+        this.name = name;
+        this.unit = unit;
+        this.samples = samples;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    /**
+     * Computes statistics from recorded values.
+     *
+     * @param metric The metric the values belong to.
+     * @param values The values; the first count entries are sorted in place.
+     * @param count  The number of values.
+     * @return The statistics.
+     */
+    static MetricStatistics of(Metric metric, long[] values, int count) {
+        double scale = metric.getUnit() == Metric.Unit.NANOSECONDS ? 1e-6 : 1;
+        String unit = switch (metric.getUnit()) {
+            case NANOSECONDS -> "ms";
+            case COUNT -> "count";
+            case BYTES -> "bytes";
+        };
+        if (count == 0) {
+            return new MetricStatistics(metric.getLabel(), unit, 0, 0, 0, 0, 0);
+        }
+        Arrays.sort(values, 0, count);
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += values[i];
+        }
+        return new MetricStatistics(metric.getLabel(), unit, count, sum / count * scale,
+                percentile(values, count, 0.50) * scale, percentile(values, count, 0.99) * scale,
+                values[count - 1] * scale);
+    }
+
+    /**
+     * Returns a percentile of sorted values by the nearest-rank method.
+     *
+     * @param sorted   The sorted values.
+     * @param count    The number of values.
+     * @param fraction The percentile as a fraction, e.g. 0.99.
+     * @return The value at the percentile.
+     */
+    private static long percentile(long[] sorted, int count, double fraction) {
+        int rank = (int) Math.ceil(fraction * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    /**
+     * Returns the name of the metric.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the unit of the values.
+     *
+     * @return "ms", "count" or "bytes".
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Returns the number of values summarized.
+     *
+     * @return The sample count.
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns the mean value.
+     *
+     * @return The mean.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the median.
+     *
+     * @return The 50th percentile.
+     */
+    public double getP50() {
+        return p50;
+    }
+
+    /**
+     * Returns the 99th percentile.
+     *
+     * @return The 99th percentile.
+     */
+    public double getP99() {
+        return p99;
+    }
+
+    /**
+     * Returns the largest value.
+     *
+     * @return The maximum.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Formats the statistics in one line.
+     *
+     * @return A line like "raster  p50 1.20  p99 2.31  max 4.02 ms".
+     */
+    @Override
+    public String toString() {
+        String format = unit.equals("ms") ? "%-9s p50 %7.2f  p99 %7.2f  max %7.2f %s" : "%-9s p50 %7.0f  p99 %7.0f  max %7.0f %s";
+        return String.format(Locale.ROOT, format, name, p50, p99, max, unit);
+    }
+}
@@ -0,0 +1,55 @@
+package metrics;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+
+/**
+ * The MetricsOverlay class draws the {@link FrameMetrics} statistics on top of the rendered frame.
+ * The text is recomputed twice per second, so the overlay is readable and costs almost nothing per frame.
+ * @author Giorgio
+ */
+public class MetricsOverlay {
+    private static final long REFRESH_NANOS = 500_000_000L;
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+
+    private final FrameMetrics metrics;
+    private String[] lines = new String[0];
+    private long lastRefresh;
+
+    /**
+     * Constructs an overlay.
+     *
+     * @param metrics The metrics to show.
+     */
+    public MetricsOverlay(FrameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Draws the overlay in the top left corner.
+     *
+     * @param graphics The graphics to draw with.
+     */
+    public void draw(Graphics graphics) {
+        long now = System.nanoTime();
+        if (lines.length == 0 || now - lastRefresh >= REFRESH_NANOS) {
+            MetricStatistics[] statistics = metrics.getMetrics();
+            lines = new String[statistics.length];
+            for (int i = 0; i < statistics.length; i++) {
+                lines[i] = statistics[i].toString();
+            }
+            lastRefresh = now;
+        }
+
+        graphics.setFont(FONT);
+        int lineHeight = graphics.getFontMetrics().getHeight();
+        graphics.setColor(BACKGROUND);
+        graphics.fillRect(4, 4, 380, lines.length * lineHeight + 8);
+        graphics.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            graphics.drawString(lines[i], 10, 8 + (i + 1) * lineHeight - 3);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package render;
+
+/**
+ * The DirtyRegion class collects the screen rectangles that changed since a frame buffer was drawn last, so
+ * {@link TileRenderer} only clears and rasterizes the tiles touching them and keeps the other pixels.
+ * <p>
+ * The region holds up to {@value #MAX_RECTANGLES} rectangles. Beyond that, a new rectangle is merged with the
+ * one it enlarges least, so the region may grow, but never misses a changed pixel. A full region covers the whole
+ * screen, e.g. after the camera moved.
+ * @author Giorgio
+ */
+public final class DirtyRegion {
+    /** The maximum number of separate rectangles. */
+    public static final int MAX_RECTANGLES = 16;
+
+    private final int[] minX = new int[MAX_RECTANGLES];
+    private final int[] minY = new int[MAX_RECTANGLES];
+    private final int[] maxX = new int[MAX_RECTANGLES];
+    private final int[] maxY = new int[MAX_RECTANGLES];
+    private int count;
+    private boolean full;
+
+    /**
+     * Removes all rectangles.
+     */
+    public void clear() {
+        count = 0;
+        full = false;
+    }
+
+    /**
+     * Marks the whole screen as changed.
+     */
+    public void addAll() {
+        full = true;
+        count = 0;
+    }
+
+    /**
+     * Adds the rectangle of screen bounds.
+     *
+     * @param bounds The bounds; empty bounds add nothing.
+     */
+    public void add(ScreenBounds bounds) {
+        if (!bounds.isEmpty()) {
+            add(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+        }
+    }
+
+    /**
+     * Adds all rectangles of another region.
+     *
+     * @param region The other region.
+     */
+    public void add(DirtyRegion region) {
+        if (region.full) {
+            addAll();
+            return;
+        }
+        for (int i = 0; i < region.count; i++) {
+            add(region.minX[i], region.minY[i], region.maxX[i], region.maxY[i]);
+        }
+    }
+
+    /**
+     * Adds a rectangle.
+     *
+     * @param left   The smallest x-coordinate, inclusive.
+     * @param top    The smallest y-coordinate, inclusive.
+     * @param right  The largest x-coordinate, exclusive.
+     * @param bottom The largest y-coordinate, exclusive.
+     */
+    public void add(int left, int top, int right, int bottom) {
+        if (full || left >= right || top >= bottom) {
+            return;
+        }
+        // Find a rectangle to merge with: one containing the new one, or else the one growing the least
+        int best = -1;
+        long bestGrowth = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            long area = area(minX[i], minY[i], maxX[i], maxY[i]);
+            long merged = area(Math.min(left, minX[i]), Math.min(top, minY[i]),
+                    Math.max(right, maxX[i]), Math.max(bottom, maxY[i]));
+            long growth = merged - area - area(left, top, right, bottom);
+            if (merged == area) {
+                return;
+            }
+            if (growth < bestGrowth) {
+                bestGrowth = growth;
+                best = i;
+            }
+        }
+        // Merging overlapping rectangles costs nothing; otherwise a free slot is preferred
+        if (best < 0 || (bestGrowth > 0 && count < MAX_RECTANGLES)) {
+            minX[count] = left;
+            minY[count] = top;
+            maxX[count] = right;
+            maxY[count] = bottom;
+            count++;
+            return;
+        }
+        minX[best] = Math.min(left, minX[best]);
+        minY[best] = Math.min(top, minY[best]);
+        maxX[best] = Math.max(right, maxX[best]);
+        maxY[best] = Math.max(bottom, maxY[best]);
+    }
+
+    /**
+     * Checks if a rectangle touches the region.
+     *
+     * @param left   The smallest x-coordinate, inclusive.
+     * @param top    The smallest y-coordinate, inclusive.
+     * @param right  The largest x-coordinate, exclusive.
+     * @param bottom The largest y-coordinate, exclusive.
+     * @return True if the rectangle overlaps the region.
+     */
+    public boolean intersects(int left, int top, int right, int bottom) {
+        if (full) {
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            if (left < maxX[i] && minX[i] < right && top < maxY[i] && minY[i] < bottom) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if nothing changed.
+     *
+     * @return True if the region is empty.
+     */
+    public boolean isEmpty() {
+        return !full && count == 0;
+    }
+
+    /**
+     * Checks if the whole screen changed.
+     *
+     * @return True if the region covers the whole screen.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Returns the number of rectangles.
+     *
+     * @return The rectangle count, 0 for an empty or full region.
+     */
+    public int getRectangleCount() {
+        return count;
+    }
+
+    /**
+     * Computes the area of a rectangle.
+     *
+     * @param left   The smallest x-coordinate.
+     * @param top    The smallest y-coordinate.
+     * @param right  The largest x-coordinate, exclusive.
+     * @param bottom The largest y-coordinate, exclusive.
+     * @return The area in pixels.
+     */
+    private static long area(int left, int top, int right, int bottom) {
+        return (long) (right - left) * (bottom - top);
+    }
+
+    /**
+     * Describes the region.
+     *
+     * @return "full", "empty" or the number of rectangles.
+     */
+    @Override
+    public String toString() {
+        return full ? "DirtyRegion[full]" : "DirtyRegion[" + count + " rectangles]";
+    }
+}
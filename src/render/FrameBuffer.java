@@ -0,0 +1,96 @@
+package render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * The FrameBuffer class holds the color and depth buffers the software rasterizer draws into.
+ * The color buffer is the backing array of a TYPE_INT_RGB BufferedImage, so a finished frame can be
+ * blitted to the screen without any conversion.
+ * @author Giorgio
+ */
+public class FrameBuffer {
+    /** The width of the buffer in pixels. */
+    private final int width;
+    /** The height of the buffer in pixels. */
+    private final int height;
+    /** The image sharing its pixel array with the color buffer. */
+    private final BufferedImage image;
+    /** Packed RGB color per pixel, row by row. */
+    private final int[] pixels;
+    /** Depth per pixel, smaller values are closer to the camera. */
+    private final float[] depth;
+
+    /**
+     * Constructs a frame buffer with the specified size.
+     *
+     * @param width  The width in pixels.
+     * @param height The height in pixels.
+     */
+    public FrameBuffer(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("A frame buffer must be at least one pixel wide and high");
+        }
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.depth = new float[width * height];
+    }
+
+    /**
+     * Fills the color buffer with a color and resets the depth buffer to infinitely far away.
+     *
+     * @param color The packed RGB clear color.
+     */
+    public void clear(int color) {
+        Arrays.fill(pixels, color);
+        Arrays.fill(depth, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the width of the buffer.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the buffer.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the image backed by the color buffer.
+     *
+     * @return The image.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the color buffer. Pixel (x, y) is stored at index {@code y * width + x}.
+     *
+     * @return The packed RGB pixels.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns the depth buffer, laid out like the color buffer.
+     *
+     * @return The depth values.
+     */
+    public float[] getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,289 @@
+package render;
+
+/**
+ * The Rasterizer class fills screen-space triangles into a {@link FrameBuffer} with a depth test.
+ * It walks the bounding box of each triangle with incrementally stepped edge functions and samples at
+ * pixel centers. The top-left fill rule makes sure pixels on edges shared by two triangles are drawn once.
+ * Triangles with a color per vertex are Gouraud-shaded: the channels are interpolated like the depth.
+ * @author Giorgio
+ */
+public class Rasterizer {
+
+    /**
+     * Fills a triangle into the frame buffer. Pixels are only written if they are closer than the value
+     * already stored in the depth buffer. The winding order of the vertices does not matter.
+     *
+     * @param frameBuffer The frame buffer to draw into.
+     * @param x0          The screen x-coordinate of the first vertex.
+     * @param y0          The screen y-coordinate of the first vertex.
+     * @param z0          The depth of the first vertex.
+     * @param x1          The screen x-coordinate of the second vertex.
+     * @param y1          The screen y-coordinate of the second vertex.
+     * @param z1          The depth of the second vertex.
+     * @param x2          The screen x-coordinate of the third vertex.
+     * @param y2          The screen y-coordinate of the third vertex.
+     * @param z2          The depth of the third vertex.
+     * @param color       The packed RGB color of the triangle.
+     */
+    public static void fillTriangle(FrameBuffer frameBuffer,
+                                    double x0, double y0, double z0,
+                                    double x1, double y1, double z1,
+                                    double x2, double y2, double z2,
+                                    int color) {
+        fillTriangle(frameBuffer, x0, y0, z0, x1, y1, z1, x2, y2, z2, color,
+                0, 0, frameBuffer.getWidth(), frameBuffer.getHeight());
+    }
+
+    /**
+     * Fills the part of a triangle that lies inside a clip rectangle into the frame buffer.
+     * This is used by the {@link TileRenderer} to restrict each worker to its own tile.
+     *
+     * @param frameBuffer The frame buffer to draw into.
+     * @param x0          The screen x-coordinate of the first vertex.
+     * @param y0          The screen y-coordinate of the first vertex.
+     * @param z0          The depth of the first vertex.
+     * @param x1          The screen x-coordinate of the second vertex.
+     * @param y1          The screen y-coordinate of the second vertex.
+     * @param z1          The depth of the second vertex.
+     * @param x2          The screen x-coordinate of the third vertex.
+     * @param y2          The screen y-coordinate of the third vertex.
+     * @param z2          The depth of the third vertex.
+     * @param color       The packed RGB color of the triangle.
+     * @param clipMinX    The first pixel column of the clip rectangle.
+     * @param clipMinY    The first pixel row of the clip rectangle.
+     * @param clipMaxX    The pixel column after the clip rectangle.
+     * @param clipMaxY    The pixel row after the clip rectangle.
+     */
+    public static void fillTriangle(FrameBuffer frameBuffer,
+                                    double x0, double y0, double z0,
+                                    double x1, double y1, double z1,
+                                    double x2, double y2, double z2,
+                                    int color,
+                                    int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        double area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (area == 0 || Double.isNaN(area)) {
+            return;
+        }
+        if (area < 0) {
+            // Swap the second and third vertex so the edge functions are positive inside
+            double tx = x1, ty = y1, tz = z1;
+            x1 = x2;
+            y1 = y2;
+            z1 = z2;
+            x2 = tx;
+            y2 = ty;
+            z2 = tz;
+            area = -area;
+        }
+
+        int width = frameBuffer.getWidth();
+
+        // Bounding box of the triangle, clamped to the clip rectangle
+        int minX = Math.max(clipMinX, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(clipMaxX - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(clipMinY, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(clipMaxY - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge function steps: w0 belongs to edge v1->v2, w1 to v2->v0 and w2 to v0->v1
+        double w0StepX = -(y2 - y1), w0StepY = x2 - x1;
+        double w1StepX = -(y0 - y2), w1StepY = x0 - x2;
+        double w2StepX = -(y1 - y0), w2StepY = x1 - x0;
+
+        // Top-left rule: pixels exactly on an edge only belong to the triangle for top and left edges
+        boolean topLeft0 = isTopLeft(x1, y1, x2, y2);
+        boolean topLeft1 = isTopLeft(x2, y2, x0, y0);
+        boolean topLeft2 = isTopLeft(x0, y0, x1, y1);
+
+        // Depth is interpolated linearly in screen space
+        double inverseArea = 1d / area;
+        double zStepX = (w0StepX * z0 + w1StepX * z1 + w2StepX * z2) * inverseArea;
+        double zStepY = (w0StepY * z0 + w1StepY * z1 + w2StepY * z2) * inverseArea;
+
+        double px = minX + 0.5d, py = minY + 0.5d;
+        double w0Row = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+        double w1Row = (x0 - x2) * (py - y2) - (y0 - y2) * (px - x2);
+        double w2Row = (x1 - x0) * (py - y0) - (y1 - y0) * (px - x0);
+        double zRow = (w0Row * z0 + w1Row * z1 + w2Row * z2) * inverseArea;
+
+        int[] pixels = frameBuffer.getPixels();
+        float[] depth = frameBuffer.getDepth();
+
+        for (int y = minY; y <= maxY; y++) {
+            double w0 = w0Row, w1 = w1Row, w2 = w2Row, z = zRow;
+            int index = y * width + minX;
+            for (int x = minX; x <= maxX; x++, index++) {
+                if ((w0 > 0 || (w0 == 0 && topLeft0))
+                        && (w1 > 0 || (w1 == 0 && topLeft1))
+                        && (w2 > 0 || (w2 == 0 && topLeft2))
+                        && z < depth[index]) {
+                    depth[index] = (float) z;
+                    pixels[index] = color;
+                }
+                w0 += w0StepX;
+                w1 += w1StepX;
+                w2 += w2StepX;
+                z += zStepX;
+            }
+            w0Row += w0StepY;
+            w1Row += w1StepY;
+            w2Row += w2StepY;
+            zRow += zStepY;
+        }
+    }
+
+    /**
+     * Fills the part of a triangle with a color per vertex that lies inside a clip rectangle into the frame buffer.
+     * The colors are interpolated linearly in screen space. Triangles with three equal colors take the cheaper
+     * path of {@link #fillTriangle(FrameBuffer, double, double, double, double, double, double, double, double,
+     * double, int, int, int, int, int)}.
+     *
+     * @param frameBuffer The frame buffer to draw into.
+     * @param x0          The screen x-coordinate of the first vertex.
+     * @param y0          The screen y-coordinate of the first vertex.
+     * @param z0          The depth of the first vertex.
+     * @param x1          The screen x-coordinate of the second vertex.
+     * @param y1          The screen y-coordinate of the second vertex.
+     * @param z1          The depth of the second vertex.
+     * @param x2          The screen x-coordinate of the third vertex.
+     * @param y2          The screen y-coordinate of the third vertex.
+     * @param z2          The depth of the third vertex.
+     * @param color0      The packed RGB color of the first vertex.
+     * @param color1      The packed RGB color of the second vertex.
+     * @param color2      The packed RGB color of the third vertex.
+     * @param clipMinX    The first pixel column of the clip rectangle.
+     * @param clipMinY    The first pixel row of the clip rectangle.
+     * @param clipMaxX    The pixel column after the clip rectangle.
+     * @param clipMaxY    The pixel row after the clip rectangle.
+     */
+    public static void fillTriangle(FrameBuffer frameBuffer,
+                                    double x0, double y0, double z0,
+                                    double x1, double y1, double z1,
+                                    double x2, double y2, double z2,
+                                    int color0, int color1, int color2,
+                                    int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        if (color0 == color1 && color1 == color2) {
+            fillTriangle(frameBuffer, x0, y0, z0, x1, y1, z1, x2, y2, z2, color0,
+                    clipMinX, clipMinY, clipMaxX, clipMaxY);
+            return;
+        }
+        double area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (area == 0 || Double.isNaN(area)) {
+            return;
+        }
+        if (area < 0) {
+            // Swap the second and third vertex so the edge functions are positive inside
+            double tx = x1, ty = y1, tz = z1;
+            int tc = color1;
+            x1 = x2;
+            y1 = y2;
+            z1 = z2;
+            color1 = color2;
+            x2 = tx;
+            y2 = ty;
+            z2 = tz;
+            color2 = tc;
+            area = -area;
+        }
+
+        int width = frameBuffer.getWidth();
+
+        // Bounding box of the triangle, clamped to the clip rectangle
+        int minX = Math.max(clipMinX, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(clipMaxX - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(clipMinY, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(clipMaxY - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        double w0StepX = -(y2 - y1), w0StepY = x2 - x1;
+        double w1StepX = -(y0 - y2), w1StepY = x0 - x2;
+        double w2StepX = -(y1 - y0), w2StepY = x1 - x0;
+        boolean topLeft0 = isTopLeft(x1, y1, x2, y2);
+        boolean topLeft1 = isTopLeft(x2, y2, x0, y0);
+        boolean topLeft2 = isTopLeft(x0, y0, x1, y1);
+
+        double inverseArea = 1d / area;
+        double zStepX = (w0StepX * z0 + w1StepX * z1 + w2StepX * z2) * inverseArea;
+        double zStepY = (w0StepY * z0 + w1StepY * z1 + w2StepY * z2) * inverseArea;
+
+        // The channels are interpolated like the depth, with half a unit added so truncation rounds
+        double r0 = (color0 >>> 16) & 0xFF, r1 = (color1 >>> 16) & 0xFF, r2 = (color2 >>> 16) & 0xFF;
+        double g0 = (color0 >>> 8) & 0xFF, g1 = (color1 >>> 8) & 0xFF, g2 = (color2 >>> 8) & 0xFF;
+        double b0 = color0 & 0xFF, b1 = color1 & 0xFF, b2 = color2 & 0xFF;
+        double rStepX = (w0StepX * r0 + w1StepX * r1 + w2StepX * r2) * inverseArea;
+        double rStepY = (w0StepY * r0 + w1StepY * r1 + w2StepY * r2) * inverseArea;
+        double gStepX = (w0StepX * g0 + w1StepX * g1 + w2StepX * g2) * inverseArea;
+        double gStepY = (w0StepY * g0 + w1StepY * g1 + w2StepY * g2) * inverseArea;
+        double bStepX = (w0StepX * b0 + w1StepX * b1 + w2StepX * b2) * inverseArea;
+        double bStepY = (w0StepY * b0 + w1StepY * b1 + w2StepY * b2) * inverseArea;
+
+        double px = minX + 0.5d, py = minY + 0.5d;
+        double w0Row = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+        double w1Row = (x0 - x2) * (py - y2) - (y0 - y2) * (px - x2);
+        double w2Row = (x1 - x0) * (py - y0) - (y1 - y0) * (px - x0);
+        double zRow = (w0Row * z0 + w1Row * z1 + w2Row * z2) * inverseArea;
+        double rRow = (w0Row * r0 + w1Row * r1 + w2Row * r2) * inverseArea + 0.5;
+        double gRow = (w0Row * g0 + w1Row * g1 + w2Row * g2) * inverseArea + 0.5;
+        double bRow = (w0Row * b0 + w1Row * b1 + w2Row * b2) * inverseArea + 0.5;
+
+        int[] pixels = frameBuffer.getPixels();
+        float[] depth = frameBuffer.getDepth();
+
+        for (int y = minY; y <= maxY; y++) {
+            double w0 = w0Row, w1 = w1Row, w2 = w2Row, z = zRow, r = rRow, g = gRow, b = bRow;
+            int index = y * width + minX;
+            for (int x = minX; x <= maxX; x++, index++) {
+                if ((w0 > 0 || (w0 == 0 && topLeft0))
+                        && (w1 > 0 || (w1 == 0 && topLeft1))
+                        && (w2 > 0 || (w2 == 0 && topLeft2))
+                        && z < depth[index]) {
+                    depth[index] = (float) z;
+                    // Inside the triangle the channels stay between the vertex colors, up to rounding
+                    pixels[index] = (clampChannel(r) << 16) | (clampChannel(g) << 8) | clampChannel(b);
+                }
+                w0 += w0StepX;
+                w1 += w1StepX;
+                w2 += w2StepX;
+                z += zStepX;
+                r += rStepX;
+                g += gStepX;
+                b += bStepX;
+            }
+            w0Row += w0StepY;
+            w1Row += w1StepY;
+            w2Row += w2StepY;
+            zRow += zStepY;
+            rRow += rStepY;
+            gRow += gStepY;
+            bRow += bStepY;
+        }
+    }
+
+    /**
+     * Truncates an interpolated channel value to the range of a color channel.
+     *
+     * @param value The channel value, rounded by adding one half beforehand.
+     * @return The channel, from 0 to 255.
+     */
+    private static int clampChannel(double value) {
+        return Math.max(0, Math.min(255, (int) value));
+    }
+
+    /**
+     * Checks if the edge from a to b is a top or a left edge of a triangle with positive area.
+     *
+     * @param ax The x-coordinate of the edge start.
+     * @param ay The y-coordinate of the edge start.
+     * @param bx The x-coordinate of the edge end.
+     * @param by The y-coordinate of the edge end.
+     * @return True if the edge is a top or a left edge.
+     */
+    private static boolean isTopLeft(double ax, double ay, double bx, double by) {
+        double dy = by - ay;
+        return dy < 0 || (dy == 0 && bx - ax > 0);
+    }
+}
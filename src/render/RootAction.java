@@ -0,0 +1,78 @@
+package render;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The RootAction class is the root task of a parallel pass that a thread outside the pool waits for.
+ * {@link ForkJoinPool#invoke} makes such a thread block on a wait node it allocates for every call, which is a
+ * steady allocation for a pass that runs every frame. {@link #invokeFrom(ForkJoinPool)} parks the calling thread
+ * instead until the task wakes it, so running a preallocated root task does not allocate.
+ * <p>
+ * A root task is run by one calling thread at a time.
+ * @author Giorgio
+ */
+@SuppressWarnings("serial")
+public abstract class RootAction extends RecursiveAction {
+    /** The thread waiting for the task, null once the task is done. */
+    private transient volatile Thread waiter;
+    /** The exception the task failed with, published by the write of {@link #waiter}. */
+    private transient Throwable failure;
+
+    /**
+     * Runs the pass, forking its subtasks as needed. Called on a worker thread of the pool.
+     */
+    protected abstract void run();
+
+    /**
+     * Runs the task in a pool and waits for it to complete. An interrupt does not end the wait; the interrupt
+     * status is set again afterwards.
+     *
+     * @param pool The pool to run the task in.
+     * @throws RuntimeException If the task failed with it.
+     * @throws Error            If the task failed with it.
+     */
+    public final void invokeFrom(ForkJoinPool pool) {
+        reinitialize();
+        failure = null;
+        waiter = Thread.currentThread();
+        pool.execute(this);
+        boolean interrupted = false;
+        while (waiter != null) {
+            LockSupport.park(this);
+            // Clear the interrupt, otherwise park() would return at once until the task is done
+            interrupted |= Thread.interrupted();
+        }
+        // The pool marks the task done just after compute() returned; reinitializing it before would be undone
+        while (!isDone()) {
+            Thread.yield();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable thrown = failure;
+        if (thrown instanceof RuntimeException e) {
+            throw e;
+        }
+        if (thrown instanceof Error e) {
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the pass and wakes the waiting thread, also if the pass failed.
+     */
+    @Override
+    protected final void compute() {
+        try {
+            run();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        } finally {
+            Thread thread = waiter;
+            waiter = null;
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package render;
+
+/**
+ * The ScreenBounds class is a mutable pixel rectangle covering everything an object drew into a frame. The
+ * minimum is inclusive and the maximum exclusive; an empty rectangle covers nothing. Renderers keep the bounds of
+ * the last frame so a moved object can redraw only where it was and where it is now.
+ * @author Giorgio
+ */
+public final class ScreenBounds {
+    /** Coordinates are clamped to this magnitude, far outside any screen, so the edges cannot overflow. */
+    private static final float LIMIT = 1 << 24;
+
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    /**
+     * Constructs empty bounds.
+     */
+    public ScreenBounds() {
+        setEmpty();
+    }
+
+    /**
+     * Makes the bounds cover nothing.
+     */
+    public void setEmpty() {
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Sets the bounds to the pixels covered by a range of triangles, with a margin of one pixel against rounding.
+     *
+     * @param triangles The triangle buffer.
+     * @param from      The index of the first triangle, inclusive.
+     * @param to        The index of the last triangle, exclusive.
+     */
+    public void setToTriangles(TriangleBuffer triangles, int from, int to) {
+        float[] v = triangles.getVertices();
+        float left = Float.POSITIVE_INFINITY, top = Float.POSITIVE_INFINITY;
+        float right = Float.NEGATIVE_INFINITY, bottom = Float.NEGATIVE_INFINITY;
+        for (int offset = from * TriangleBuffer.STRIDE, end = to * TriangleBuffer.STRIDE; offset < end;
+             offset += TriangleBuffer.STRIDE) {
+            float triangleLeft = Math.min(v[offset], Math.min(v[offset + 3], v[offset + 6]));
+            float triangleRight = Math.max(v[offset], Math.max(v[offset + 3], v[offset + 6]));
+            float triangleTop = Math.min(v[offset + 1], Math.min(v[offset + 4], v[offset + 7]));
+            float triangleBottom = Math.max(v[offset + 1], Math.max(v[offset + 4], v[offset + 7]));
+            // Triangles with NaN coordinates are skipped, as by the tile renderer
+            if (triangleLeft <= triangleRight && triangleTop <= triangleBottom) {
+                left = Math.min(left, triangleLeft);
+                right = Math.max(right, triangleRight);
+                top = Math.min(top, triangleTop);
+                bottom = Math.max(bottom, triangleBottom);
+            }
+        }
+        if (!(left <= right && top <= bottom)) {
+            setEmpty();
+            return;
+        }
+        minX = (int) Math.floor(Math.max(-LIMIT, left)) - 1;
+        minY = (int) Math.floor(Math.max(-LIMIT, top)) - 1;
+        maxX = (int) Math.floor(Math.min(LIMIT, right)) + 2;
+        maxY = (int) Math.floor(Math.min(LIMIT, bottom)) + 2;
+    }
+
+    /**
+     * Checks if the bounds cover nothing.
+     *
+     * @return True if the rectangle is empty.
+     */
+    public boolean isEmpty() {
+        return minX >= maxX || minY >= maxY;
+    }
+
+    /**
+     * Returns the left edge.
+     *
+     * @return The smallest covered x-coordinate.
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Returns the top edge.
+     *
+     * @return The smallest covered y-coordinate.
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Returns the right edge.
+     *
+     * @return The x-coordinate right of the covered pixels.
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Returns the bottom edge.
+     *
+     * @return The y-coordinate below the covered pixels.
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Describes the bounds.
+     *
+     * @return The rectangle as [minX, minY - maxX, maxY], or "empty".
+     */
+    @Override
+    public String toString() {
+        return isEmpty() ? "ScreenBounds[empty]" : "ScreenBounds[" + minX + ", " + minY + " - " + maxX + ", " + maxY + "]";
+    }
+}
@@ -0,0 +1,314 @@
+package render;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The TileRenderer class rasterizes a {@link TriangleBuffer} into a {@link FrameBuffer} on all cores.
+ * The screen is split into square tiles and every triangle is binned into the tiles its bounding box
+ * touches. Tiles are then cleared and rasterized in parallel on a ForkJoinPool. Every tile only writes
+ * the pixels inside its own rectangle of the color and depth buffers, so no locking is needed.
+ * <p>
+ * Given a {@link DirtyRegion}, only the tiles touching it are cleared and rasterized, and the frame buffer keeps
+ * the pixels of all other tiles from the frame drawn into it before.
+ * @author Giorgio
+ */
+public class TileRenderer {
+    /** The default edge length of a tile in pixels. */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private final int tileSize;
+    private final ForkJoinPool pool;
+
+    // tile grid of the current frame buffer size
+    private int width = -1;
+    private int height = -1;
+    private int tilesX;
+    private int tilesY;
+
+    // triangle indices binned per tile, reused across frames
+    private int[][] tileTriangles = new int[0][];
+    private int[] tileCounts = new int[0];
+
+    // preallocated tasks so a frame does not allocate any task objects
+    private TileTask[] tileTasks = new TileTask[0];
+    private final FrameTask frameTask = new FrameTask();
+
+    // tiles drawn in the current frame: a flag per tile and their tasks
+    private boolean[] tileDirty = new boolean[0];
+    private TileTask[] dirtyTasks = new TileTask[0];
+    private int dirtyTaskCount;
+
+    // state of the frame being rendered, read by the tile tasks
+    private TriangleBuffer triangles;
+    private FrameBuffer frameBuffer;
+    private int clearColor;
+
+    // durations of the stages of the last frame
+    private long lastBinNanos;
+    private long lastRasterNanos;
+    private int lastTilesRendered;
+
+    /**
+     * Constructs a tile renderer with the default tile size that uses all available processors.
+     */
+    public TileRenderer() {
+        this(DEFAULT_TILE_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a tile renderer.
+     *
+     * @param tileSize    The edge length of a tile in pixels.
+     * @param parallelism The number of worker threads.
+     */
+    public TileRenderer(int tileSize, int parallelism) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("The tile size must be positive");
+        }
+        this.tileSize = tileSize;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setDaemon(true);
+            thread.setName("tile-renderer-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Clears the frame buffer and rasterizes all triangles of the buffer into it.
+     *
+     * @param triangles   The projected triangles of the frame.
+     * @param frameBuffer The frame buffer to render into.
+     * @param clearColor  The packed RGB background color.
+     */
+    public void render(TriangleBuffer triangles, FrameBuffer frameBuffer, int clearColor) {
+        render(triangles, frameBuffer, clearColor, null);
+    }
+
+    /**
+     * Clears and rasterizes the tiles touching a region of the frame buffer; all other pixels stay as they are.
+     *
+     * @param triangles   The projected triangles of the frame, which must include every triangle inside the region.
+     * @param frameBuffer The frame buffer to render into.
+     * @param clearColor  The packed RGB background color.
+     * @param region      The part of the frame that changed, or null to render the whole frame.
+     */
+    public void render(TriangleBuffer triangles, FrameBuffer frameBuffer, int clearColor, DirtyRegion region) {
+        long start = System.nanoTime();
+        resize(frameBuffer.getWidth(), frameBuffer.getHeight());
+        selectTiles(region);
+        lastTilesRendered = dirtyTaskCount;
+        if (dirtyTaskCount == 0) {
+            lastBinNanos = 0;
+            lastRasterNanos = 0;
+            return;
+        }
+        bin(triangles);
+        long binEnd = System.nanoTime();
+        lastBinNanos = binEnd - start;
+
+        this.triangles = triangles;
+        this.frameBuffer = frameBuffer;
+        this.clearColor = clearColor;
+        try {
+            frameTask.invokeFrom(pool);
+        } finally {
+            this.triangles = null;
+            this.frameBuffer = null;
+        }
+        lastRasterNanos = System.nanoTime() - binEnd;
+    }
+
+    /**
+     * Returns how long binning the triangles into tiles took in the last frame.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getLastBinNanos() {
+        return lastBinNanos;
+    }
+
+    /**
+     * Returns how long clearing and rasterizing the tiles took in the last frame.
+     *
+     * @return The duration in nanoseconds.
+     */
+    public long getLastRasterNanos() {
+        return lastRasterNanos;
+    }
+
+    /**
+     * Returns how many tiles the last frame cleared and rasterized.
+     *
+     * @return The number of tiles, all of them unless a region was given.
+     */
+    public int getLastTilesRendered() {
+        return lastTilesRendered;
+    }
+
+    /**
+     * Stops the worker threads of the renderer.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Rebuilds the tile grid if the frame buffer size changed.
+     *
+     * @param width  The width of the frame buffer.
+     * @param height The height of the frame buffer.
+     */
+    private void resize(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        tilesX = (width + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+
+        int tileCount = tilesX * tilesY;
+        tileTriangles = new int[tileCount][64];
+        tileCounts = new int[tileCount];
+        tileTasks = new TileTask[tileCount];
+        for (int tile = 0; tile < tileCount; tile++) {
+            tileTasks[tile] = new TileTask(tile);
+        }
+        tileDirty = new boolean[tileCount];
+        dirtyTasks = new TileTask[tileCount];
+    }
+
+    /**
+     * Flags the tiles touching a region and collects their tasks.
+     *
+     * @param region The changed part of the frame, or null for all tiles.
+     */
+    private void selectTiles(DirtyRegion region) {
+        dirtyTaskCount = 0;
+        for (int tile = 0; tile < tileTasks.length; tile++) {
+            int minX = (tile % tilesX) * tileSize;
+            int minY = (tile / tilesX) * tileSize;
+            boolean dirty = region == null || region.intersects(minX, minY, minX + tileSize, minY + tileSize);
+            tileDirty[tile] = dirty;
+            if (dirty) {
+                dirtyTasks[dirtyTaskCount++] = tileTasks[tile];
+            }
+        }
+    }
+
+    /**
+     * Sorts every triangle into the drawn tiles overlapped by its screen-space bounding box.
+     * Triangles keep their submission order inside each tile.
+     *
+     * @param triangles The triangles to bin.
+     */
+    private void bin(TriangleBuffer triangles) {
+        Arrays.fill(tileCounts, 0);
+        float[] v = triangles.getVertices();
+        int maxTileX = tilesX - 1, maxTileY = tilesY - 1;
+        for (int t = 0, offset = 0; t < triangles.size(); t++, offset += TriangleBuffer.STRIDE) {
+            float minX = Math.min(v[offset], Math.min(v[offset + 3], v[offset + 6]));
+            float maxX = Math.max(v[offset], Math.max(v[offset + 3], v[offset + 6]));
+            float minY = Math.min(v[offset + 1], Math.min(v[offset + 4], v[offset + 7]));
+            float maxY = Math.max(v[offset + 1], Math.max(v[offset + 4], v[offset + 7]));
+            // Skip triangles that are completely off-screen (or have NaN coordinates)
+            if (!(maxX >= 0 && maxY >= 0 && minX < width && minY < height)) {
+                continue;
+            }
+            int firstTileX = Math.max(0, (int) minX / tileSize);
+            int lastTileX = Math.min(maxTileX, (int) maxX / tileSize);
+            int firstTileY = Math.max(0, (int) minY / tileSize);
+            int lastTileY = Math.min(maxTileY, (int) maxY / tileSize);
+            for (int tileY = firstTileY; tileY <= lastTileY; tileY++) {
+                for (int tileX = firstTileX; tileX <= lastTileX; tileX++) {
+                    int tile = tileY * tilesX + tileX;
+                    if (!tileDirty[tile]) {
+                        continue;
+                    }
+                    int count = tileCounts[tile];
+                    if (count == tileTriangles[tile].length) {
+                        tileTriangles[tile] = Arrays.copyOf(tileTriangles[tile], count * 2);
+                    }
+                    tileTriangles[tile][count] = t;
+                    tileCounts[tile] = count + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears one tile and rasterizes the triangles binned into it.
+     *
+     * @param tile The index of the tile.
+     */
+    private void renderTile(int tile) {
+        int minX = (tile % tilesX) * tileSize;
+        int minY = (tile / tilesX) * tileSize;
+        int maxX = Math.min(width, minX + tileSize);
+        int maxY = Math.min(height, minY + tileSize);
+
+        // Clear the tile's part of the color and depth buffers
+        int[] pixels = frameBuffer.getPixels();
+        float[] depth = frameBuffer.getDepth();
+        for (int y = minY; y < maxY; y++) {
+            int row = y * width;
+            Arrays.fill(pixels, row + minX, row + maxX, clearColor);
+            Arrays.fill(depth, row + minX, row + maxX, Float.POSITIVE_INFINITY);
+        }
+
+        float[] v = triangles.getVertices();
+        int[] colors = triangles.getColors();
+        int[] binned = tileTriangles[tile];
+        for (int i = 0, count = tileCounts[tile]; i < count; i++) {
+            int t = binned[i];
+            int offset = t * TriangleBuffer.STRIDE;
+            Rasterizer.fillTriangle(frameBuffer,
+                    v[offset], v[offset + 1], v[offset + 2],
+                    v[offset + 3], v[offset + 4], v[offset + 5],
+                    v[offset + 6], v[offset + 7], v[offset + 8],
+                    colors[t * 3], colors[t * 3 + 1], colors[t * 3 + 2], minX, minY, maxX, maxY);
+        }
+    }
+
+    /** Root task of a frame, forking one task per drawn tile. */
+    @SuppressWarnings("serial")
+    private class FrameTask extends RootAction {
+        @Override
+        protected void run() {
+            for (int i = 0; i < dirtyTaskCount; i++) {
+                dirtyTasks[i].reinitialize();
+            }
+            if (dirtyTaskCount == tileTasks.length) {
+                ForkJoinTask.invokeAll(tileTasks);
+                return;
+            }
+            // invokeAll() needs an array of exactly the tasks to run, so a part of the tiles is forked by hand
+            for (int i = 1; i < dirtyTaskCount; i++) {
+                dirtyTasks[i].fork();
+            }
+            dirtyTasks[0].invoke();
+            for (int i = 1; i < dirtyTaskCount; i++) {
+                dirtyTasks[i].join();
+            }
+        }
+    }
+
+    /** Task rendering a single tile. */
+    @SuppressWarnings("serial")
+    private class TileTask extends RecursiveAction {
+        private final int tile;
+
+        TileTask(int tile) {
+            this.tile = tile;
+        }
+
+        @Override
+        protected void compute() {
+            renderTile(tile);
+        }
+    }
+}
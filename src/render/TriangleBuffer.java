@@ -0,0 +1,115 @@
+package render;
+
+import java.util.Arrays;
+
+/**
+ * The TriangleBuffer class collects projected screen-space triangles for one frame.
+ * Each triangle takes nine floats (x, y and depth per vertex) and three packed RGB colors, one per vertex;
+ * flat-shaded triangles store the same color three times.
+ * The arrays only grow, so a buffer that is cleared and refilled every frame stops allocating
+ * once it has reached the size of the largest frame.
+ * @author Giorgio
+ */
+public class TriangleBuffer {
+    /** The number of floats stored per triangle. */
+    public static final int STRIDE = 9;
+
+    private float[] vertices = new float[STRIDE * 1024];
+    private int[] colors = new int[3 * 1024];
+    private int size;
+
+    /**
+     * Removes all triangles from the buffer without releasing its memory.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends a screen-space triangle.
+     *
+     * @param x0    The screen x-coordinate of the first vertex.
+     * @param y0    The screen y-coordinate of the first vertex.
+     * @param z0    The depth of the first vertex.
+     * @param x1    The screen x-coordinate of the second vertex.
+     * @param y1    The screen y-coordinate of the second vertex.
+     * @param z1    The depth of the second vertex.
+     * @param x2    The screen x-coordinate of the third vertex.
+     * @param y2    The screen y-coordinate of the third vertex.
+     * @param z2    The depth of the third vertex.
+     * @param color The packed RGB color of the triangle.
+     */
+    public void add(double x0, double y0, double z0,
+                    double x1, double y1, double z1,
+                    double x2, double y2, double z2,
+                    int color) {
+        add(x0, y0, z0, x1, y1, z1, x2, y2, z2, color, color, color);
+    }
+
+    /**
+     * Appends a screen-space triangle with a color per vertex, which the rasterizer interpolates.
+     *
+     * @param x0     The screen x-coordinate of the first vertex.
+     * @param y0     The screen y-coordinate of the first vertex.
+     * @param z0     The depth of the first vertex.
+     * @param x1     The screen x-coordinate of the second vertex.
+     * @param y1     The screen y-coordinate of the second vertex.
+     * @param z1     The depth of the second vertex.
+     * @param x2     The screen x-coordinate of the third vertex.
+     * @param y2     The screen y-coordinate of the third vertex.
+     * @param z2     The depth of the third vertex.
+     * @param color0 The packed RGB color of the first vertex.
+     * @param color1 The packed RGB color of the second vertex.
+     * @param color2 The packed RGB color of the third vertex.
+     */
+    public void add(double x0, double y0, double z0,
+                    double x1, double y1, double z1,
+                    double x2, double y2, double z2,
+                    int color0, int color1, int color2) {
+        if (size * 3 == colors.length) {
+            colors = Arrays.copyOf(colors, size * 2 * 3);
+            vertices = Arrays.copyOf(vertices, size * 2 * STRIDE);
+        }
+        int offset = size * STRIDE;
+        vertices[offset] = (float) x0;
+        vertices[offset + 1] = (float) y0;
+        vertices[offset + 2] = (float) z0;
+        vertices[offset + 3] = (float) x1;
+        vertices[offset + 4] = (float) y1;
+        vertices[offset + 5] = (float) z1;
+        vertices[offset + 6] = (float) x2;
+        vertices[offset + 7] = (float) y2;
+        vertices[offset + 8] = (float) z2;
+        colors[size * 3] = color0;
+        colors[size * 3 + 1] = color1;
+        colors[size * 3 + 2] = color2;
+        size++;
+    }
+
+    /**
+     * Returns the number of triangles in the buffer.
+     *
+     * @return The triangle count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the vertex data, {@link #STRIDE} floats per triangle in the order x0, y0, z0, x1, ... z2.
+     *
+     * @return The vertex data.
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * Returns the packed RGB colors, three per triangle in vertex order.
+     *
+     * @return The colors.
+     */
+    public int[] getColors() {
+        return colors;
+    }
+}
@@ -0,0 +1,300 @@
+package scene;
+
+import geometry.BoundingSphere;
+import geometry.Frustum;
+import geometry.Matrix4;
+import geometry.Mesh;
+import render.ScreenBounds;
+
+import java.util.Arrays;
+
+/**
+ * The InstanceBatch class draws one mesh many times, each instance with its own world matrix and color.
+ * Unlike {@link SceneObject}s, instances are not objects: their matrices, colors and bounding spheres live in
+ * primitive arrays, so a batch costs about 170 bytes per instance and the geometry is stored once.
+ * <p>
+ * Culling tests the bounding sphere of every instance against the view frustum in one pass over the arrays.
+ * The visible instances are then projected one after another through the shared mesh.
+ * <p>
+ * For incremental rendering, a batch is tracked as a whole: any change to its instances redraws the screen
+ * rectangle of all of them, see {@link #commitChanges()}.
+ * @author Giorgio
+ */
+public class InstanceBatch {
+    /** The number of matrix elements stored per instance, row by row. */
+    public static final int MATRIX_SIZE = Matrix4.SIZE;
+
+    private final Mesh mesh;
+    private int count;
+
+    // the geometry version of the mesh the bounding spheres were computed for
+    private int geometryVersion;
+
+    // per instance: the world matrix, the color and the bounding sphere in world space
+    private double[] matrices;
+    private int[] colors;
+    private double[] centerX;
+    private double[] centerY;
+    private double[] centerZ;
+    private double[] radius;
+
+    // culling results, reused every frame
+    private int[] visibleInstances;
+    private int visibleCount;
+
+    // counts the changes to the instances; the state last committed by the renderer and where it drew the batch
+    private int version;
+    private final ScreenBounds screenBounds = new ScreenBounds();
+    private int committedVersion;
+    private int committedMeshVersion;
+    private boolean committed;
+
+    /**
+     * Constructs an empty batch.
+     *
+     * @param mesh The mesh shared by all instances.
+     */
+    InstanceBatch(Mesh mesh) {
+        this.mesh = mesh;
+        geometryVersion = mesh.getGeometryVersion();
+        matrices = new double[16 * MATRIX_SIZE];
+        colors = new int[16];
+        centerX = new double[16];
+        centerY = new double[16];
+        centerZ = new double[16];
+        radius = new double[16];
+        visibleInstances = new int[16];
+    }
+
+    /**
+     * Returns the mesh shared by all instances.
+     *
+     * @return The mesh.
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Returns the number of instances.
+     *
+     * @return The instance count.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Adds an instance.
+     *
+     * @param worldMatrix The world matrix; it is copied.
+     * @param color       The color as 0xRRGGBB.
+     * @return The index of the new instance.
+     */
+    public int add(Matrix4 worldMatrix, int color) {
+        if (count == colors.length) {
+            int capacity = count * 2;
+            matrices = Arrays.copyOf(matrices, capacity * MATRIX_SIZE);
+            colors = Arrays.copyOf(colors, capacity);
+            centerX = Arrays.copyOf(centerX, capacity);
+            centerY = Arrays.copyOf(centerY, capacity);
+            centerZ = Arrays.copyOf(centerZ, capacity);
+            radius = Arrays.copyOf(radius, capacity);
+            visibleInstances = new int[capacity];
+        }
+        int instance = count++;
+        colors[instance] = color;
+        setMatrix(instance, worldMatrix);
+        return instance;
+    }
+
+    /**
+     * Removes an instance. The last instance takes its index.
+     *
+     * @param instance The index of the instance to remove.
+     */
+    public void remove(int instance) {
+        checkIndex(instance);
+        int last = --count;
+        if (instance != last) {
+            System.arraycopy(matrices, last * MATRIX_SIZE, matrices, instance * MATRIX_SIZE, MATRIX_SIZE);
+            colors[instance] = colors[last];
+            centerX[instance] = centerX[last];
+            centerY[instance] = centerY[last];
+            centerZ[instance] = centerZ[last];
+            radius[instance] = radius[last];
+        }
+        version++;
+    }
+
+    /**
+     * Removes all instances.
+     */
+    public void clear() {
+        count = 0;
+        visibleCount = 0;
+        version++;
+    }
+
+    /**
+     * Replaces the world matrix of an instance.
+     *
+     * @param instance    The index of the instance.
+     * @param worldMatrix The new world matrix; it is copied.
+     */
+    public void setMatrix(int instance, Matrix4 worldMatrix) {
+        checkIndex(instance);
+        worldMatrix.get(matrices, instance * MATRIX_SIZE);
+        updateSphere(instance);
+        version++;
+    }
+
+    /**
+     * Moves an instance without changing its rotation and scale.
+     *
+     * @param instance The index of the instance.
+     * @param x        The new x-translation.
+     * @param y        The new y-translation.
+     * @param z        The new z-translation.
+     */
+    public void setTranslation(int instance, double x, double y, double z) {
+        checkIndex(instance);
+        int offset = instance * MATRIX_SIZE;
+        double dx = x - matrices[offset + 12], dy = y - matrices[offset + 13], dz = z - matrices[offset + 14];
+        matrices[offset + 12] = x;
+        matrices[offset + 13] = y;
+        matrices[offset + 14] = z;
+        // The sphere moves along, its radius only depends on the linear part
+        centerX[instance] += dx;
+        centerY[instance] += dy;
+        centerZ[instance] += dz;
+        version++;
+    }
+
+    /**
+     * Copies the world matrix of an instance.
+     *
+     * @param instance    The index of the instance.
+     * @param destination The matrix receiving the world matrix.
+     * @return The destination matrix.
+     */
+    public Matrix4 getMatrix(int instance, Matrix4 destination) {
+        checkIndex(instance);
+        return destination.set(matrices, instance * MATRIX_SIZE);
+    }
+
+    /**
+     * Sets the color of an instance.
+     *
+     * @param instance The index of the instance.
+     * @param color    The color as 0xRRGGBB.
+     */
+    public void setColor(int instance, int color) {
+        checkIndex(instance);
+        colors[instance] = color;
+        version++;
+    }
+
+    /**
+     * Returns the color of an instance.
+     *
+     * @param instance The index of the instance.
+     * @return The color as 0xRRGGBB.
+     */
+    public int getColor(int instance) {
+        checkIndex(instance);
+        return colors[instance];
+    }
+
+    /**
+     * Returns the screen rectangle all instances were drawn into by the last frame that committed the changes.
+     *
+     * @return The bounds, set by the renderer; empty if no instance was drawn.
+     */
+    public ScreenBounds getScreenBounds() {
+        return screenBounds;
+    }
+
+    /**
+     * Checks whether any instance may look different than when this was called last: instances were added,
+     * removed, moved or recolored, or the mesh changed. Must only be called by the one renderer tracking the
+     * changes, once per frame.
+     *
+     * @return True if the batch changed, or on the first call.
+     */
+    public boolean commitChanges() {
+        boolean changed = !committed || committedVersion != version || committedMeshVersion != mesh.getVersion();
+        committedVersion = version;
+        committedMeshVersion = mesh.getVersion();
+        committed = true;
+        return changed;
+    }
+
+    /**
+     * Collects the instances whose bounding sphere intersects the view frustum.
+     * If the geometry of the mesh changed, e.g. while it is loaded in the background, the spheres are updated first.
+     *
+     * @param frustum The view frustum in world space.
+     * @return The number of visible instances, see {@link #getVisibleInstance(int)}.
+     */
+    public int cull(Frustum frustum) {
+        visibleCount = 0;
+        if (geometryVersion != mesh.getGeometryVersion()) {
+            geometryVersion = mesh.getGeometryVersion();
+            for (int instance = 0; instance < count; instance++) {
+                updateSphere(instance);
+            }
+        }
+        if (mesh.getBoundingSphere().isEmpty()) {
+            return 0;
+        }
+        for (int instance = 0; instance < count; instance++) {
+            if (frustum.testSphere(centerX[instance], centerY[instance], centerZ[instance], radius[instance],
+                    Frustum.ALL_PLANES) != Frustum.OUTSIDE) {
+                visibleInstances[visibleCount++] = instance;
+            }
+        }
+        return visibleCount;
+    }
+
+    /**
+     * Returns an instance found visible by the last call of {@link #cull(Frustum)}.
+     *
+     * @param index The index, less than the returned count.
+     * @return The index of the instance.
+     */
+    public int getVisibleInstance(int index) {
+        if (index >= visibleCount) {
+            throw new IndexOutOfBoundsException("Only " + visibleCount + " instances are visible: " + index);
+        }
+        return visibleInstances[index];
+    }
+
+    /**
+     * Transforms the bounding sphere of the mesh with the world matrix of an instance.
+     *
+     * @param instance The index of the instance.
+     */
+    private void updateSphere(int instance) {
+        BoundingSphere sphere = mesh.getBoundingSphere();
+        double[] m = matrices;
+        int o = instance * MATRIX_SIZE;
+        double x = sphere.centerX, y = sphere.centerY, z = sphere.centerZ;
+        centerX[instance] = x * m[o] + y * m[o + 4] + z * m[o + 8] + m[o + 12];
+        centerY[instance] = x * m[o + 1] + y * m[o + 5] + z * m[o + 9] + m[o + 13];
+        centerZ[instance] = x * m[o + 2] + y * m[o + 6] + z * m[o + 10] + m[o + 14];
+        radius[instance] = sphere.radius * Math.sqrt(BoundingSphere.getMaximumScaleSquared(
+                m[o], m[o + 1], m[o + 2], m[o + 4], m[o + 5], m[o + 6], m[o + 8], m[o + 9], m[o + 10]));
+    }
+
+    /**
+     * Checks that an instance exists.
+     *
+     * @param instance The index of the instance.
+     */
+    private void checkIndex(int instance) {
+        if (instance < 0 || instance >= count) {
+            throw new IndexOutOfBoundsException("Instance " + instance + " of " + count);
+        }
+    }
+}
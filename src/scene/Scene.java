@@ -0,0 +1,277 @@
+package scene;
+
+import geometry.BoundingBox;
+import geometry.BoundingSphere;
+import geometry.BoundingVolumeHierarchy;
+import geometry.Frustum;
+import geometry.Matrix4;
+import geometry.Mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Scene class holds any number of {@link SceneObject}s, each a mesh with its own world matrix.
+ * A {@link BoundingVolumeHierarchy} over the world-space boxes of the objects lets {@link #cull(Frustum)} skip
+ * whole groups of objects outside of the view frustum, so culling costs grow with the visible part of the
+ * scene. The hierarchy is rebuilt after objects were added or removed and refitted when they only moved; if
+ * refitting has made it much looser than a fresh build, it is rebuilt as well.
+ * <p>
+ * Many copies of one mesh are better added as an {@link InstanceBatch}, which stores its instances in
+ * primitive arrays and culls them on its own.
+ * @author Giorgio
+ */
+public class Scene {
+    /** The maximum number of objects per leaf of the hierarchy. */
+    private static final int LEAF_SIZE = 4;
+
+    /** A refitted hierarchy is rebuilt once its boxes have grown by this factor in total surface area. */
+    private static final double REBUILD_FACTOR = 2;
+
+    private final List<SceneObject> objects = new ArrayList<>();
+    private final List<SceneObject> objectsView = Collections.unmodifiableList(objects);
+    private final List<InstanceBatch> batches = new ArrayList<>();
+    private final List<InstanceBatch> batchesView = Collections.unmodifiableList(batches);
+    private final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy();
+    private boolean structureChanged = true;
+    /** Counts additions and removals of objects and batches. */
+    private int structureVersion;
+    private double builtSurfaceArea;
+
+    // world-space boxes of the objects, in the layout the hierarchy is built from
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] minZ = new double[0];
+    private double[] maxX = new double[0];
+    private double[] maxY = new double[0];
+    private double[] maxZ = new double[0];
+
+    // culling results, reused every frame
+    private int[] leaves = new int[0];
+    private int[] masks = new int[0];
+    private final int[] nodeStack = new int[BoundingVolumeHierarchy.STACK_SIZE];
+    private final int[] maskStack = new int[BoundingVolumeHierarchy.STACK_SIZE];
+    private SceneObject[] visibleObjects = new SceneObject[0];
+    private int visibleCount;
+
+    /**
+     * Adds an object to the scene.
+     *
+     * @param mesh        The mesh to draw. It may be shared with other objects.
+     * @param worldMatrix The initial world matrix; it is copied.
+     * @return The new object.
+     */
+    public SceneObject add(Mesh mesh, Matrix4 worldMatrix) {
+        SceneObject object = new SceneObject(mesh, worldMatrix);
+        objects.add(object);
+        structureChanged = true;
+        structureVersion++;
+        return object;
+    }
+
+    /**
+     * Removes an object from the scene.
+     *
+     * @param object The object to remove.
+     * @return True if the object was part of the scene.
+     */
+    public boolean remove(SceneObject object) {
+        boolean removed = objects.remove(object);
+        structureChanged |= removed;
+        if (removed) {
+            structureVersion++;
+        }
+        return removed;
+    }
+
+    /**
+     * Adds an empty batch of instances of a mesh.
+     *
+     * @param mesh The mesh shared by all instances of the batch.
+     * @return The new batch.
+     */
+    public InstanceBatch addBatch(Mesh mesh) {
+        InstanceBatch batch = new InstanceBatch(mesh);
+        batches.add(batch);
+        structureVersion++;
+        return batch;
+    }
+
+    /**
+     * Removes a batch of instances.
+     *
+     * @param batch The batch to remove.
+     * @return True if the batch was part of the scene.
+     */
+    public boolean removeBatch(InstanceBatch batch) {
+        boolean removed = batches.remove(batch);
+        if (removed) {
+            structureVersion++;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the batches of instances of the scene.
+     *
+     * @return An unmodifiable view of the batches.
+     */
+    public List<InstanceBatch> getBatches() {
+        return batchesView;
+    }
+
+    /**
+     * Removes all objects and batches.
+     */
+    public void clear() {
+        objects.clear();
+        batches.clear();
+        structureChanged = true;
+        structureVersion++;
+    }
+
+    /**
+     * Returns a number that changes whenever objects or batches are added or removed, so a renderer drawing only
+     * the changed parts of a frame knows when it has to redraw everything.
+     *
+     * @return The version of the structure.
+     */
+    public int getStructureVersion() {
+        return structureVersion;
+    }
+
+    /**
+     * Returns the objects of the scene.
+     *
+     * @return An unmodifiable view of the objects.
+     */
+    public List<SceneObject> getObjects() {
+        return objectsView;
+    }
+
+    /**
+     * Returns the total number of triangles of all objects and instances, visible or not.
+     *
+     * @return The triangle count.
+     */
+    public int getTriangleCount() {
+        int triangles = 0;
+        for (int i = 0; i < objects.size(); i++) {
+            triangles += objects.get(i).getMesh().getData().triangleCount;
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            InstanceBatch batch = batches.get(i);
+            triangles += batch.getCount() * batch.getMesh().getData().triangleCount;
+        }
+        return triangles;
+    }
+
+    /**
+     * Takes over geometry the meshes loaded in the background, recomputes the world-space bounds of all objects
+     * from their current world matrices and brings the hierarchy up to date.
+     * Must be called after objects moved and before {@link #cull(Frustum)}.
+     */
+    public void update() {
+        int count = objects.size();
+        for (int i = 0; i < count; i++) {
+            objects.get(i).getMesh().refresh();
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            batches.get(i).getMesh().refresh();
+        }
+        if (minX.length < count) {
+            int capacity = Math.max(16, count * 2);
+            minX = Arrays.copyOf(minX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            minZ = Arrays.copyOf(minZ, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            maxZ = Arrays.copyOf(maxZ, capacity);
+            visibleObjects = new SceneObject[capacity];
+        }
+        for (int i = 0; i < count; i++) {
+            SceneObject object = objects.get(i);
+            object.updateBounds();
+            BoundingBox box = object.getWorldBox();
+            if (box.isEmpty()) {
+                // An empty mesh gets a degenerate box at the origin; culling skips it anyway
+                minX[i] = minY[i] = minZ[i] = maxX[i] = maxY[i] = maxZ[i] = 0;
+            } else {
+                minX[i] = box.minX;
+                minY[i] = box.minY;
+                minZ[i] = box.minZ;
+                maxX[i] = box.maxX;
+                maxY[i] = box.maxY;
+                maxZ[i] = box.maxZ;
+            }
+        }
+
+        if (!structureChanged && hierarchy.refit(minX, minY, minZ, maxX, maxY, maxZ) <= builtSurfaceArea * REBUILD_FACTOR) {
+            return;
+        }
+        hierarchy.build(minX, minY, minZ, maxX, maxY, maxZ, count, LEAF_SIZE);
+        builtSurfaceArea = hierarchy.getSurfaceAreaSum();
+        structureChanged = false;
+        if (leaves.length < hierarchy.getLeafCount()) {
+            leaves = new int[hierarchy.getLeafCount()];
+            masks = new int[hierarchy.getLeafCount()];
+        }
+    }
+
+    /**
+     * Collects the objects that may be visible. Groups of objects are rejected through the hierarchy,
+     * the objects of the remaining leaves by their bounding sphere and then their box.
+     *
+     * @param frustum The view frustum in world space.
+     * @return The number of visible objects, see {@link #getVisibleObject(int)}.
+     */
+    public int cull(Frustum frustum) {
+        if (structureChanged) {
+            throw new IllegalStateException("Objects were added or removed, call update() first");
+        }
+        int[] items = hierarchy.getItems();
+        int leafCount = hierarchy.cull(frustum, leaves, masks, nodeStack, maskStack);
+        visibleCount = 0;
+        for (int i = 0; i < leafCount; i++) {
+            int leaf = leaves[i];
+            int mask = masks[i];
+            for (int position = hierarchy.getLeafFirstItem(leaf), end = position + hierarchy.getLeafItemCount(leaf);
+                 position < end; position++) {
+                SceneObject object = objects.get(items[position]);
+                if (!object.isVisible() || object.getWorldBox().isEmpty()) {
+                    continue;
+                }
+                // A leaf completely inside the frustum needs no further tests for its objects
+                if (mask != 0) {
+                    BoundingSphere sphere = object.getWorldSphere();
+                    int sphereMask = frustum.testSphere(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, mask);
+                    if (sphereMask == Frustum.OUTSIDE) {
+                        continue;
+                    }
+                    BoundingBox box = object.getWorldBox();
+                    if (sphereMask != 0 && frustum.testBox(box.minX, box.minY, box.minZ,
+                            box.maxX, box.maxY, box.maxZ, sphereMask) == Frustum.OUTSIDE) {
+                        continue;
+                    }
+                }
+                visibleObjects[visibleCount++] = object;
+            }
+        }
+        return visibleCount;
+    }
+
+    /**
+     * Returns an object found visible by the last call of {@link #cull(Frustum)}.
+     *
+     * @param index The index, less than the returned count.
+     * @return The object.
+     */
+    public SceneObject getVisibleObject(int index) {
+        if (index >= visibleCount) {
+            throw new IndexOutOfBoundsException("Only " + visibleCount + " objects are visible: " + index);
+        }
+        return visibleObjects[index];
+    }
+}
@@ -0,0 +1,137 @@
+package scene;
+
+import geometry.BoundingBox;
+import geometry.BoundingSphere;
+import geometry.Matrix4;
+import geometry.Mesh;
+import render.ScreenBounds;
+
+import java.util.Arrays;
+
+/**
+ * The SceneObject class places a mesh in a {@link Scene} with its own world matrix.
+ * Several objects may share one mesh. The world matrix may be changed at any time; the world-space bounds
+ * are recomputed by {@link Scene#update()}.
+ * <p>
+ * For incremental rendering, the object also remembers the screen rectangle it was drawn into, and
+ * {@link #commitChanges()} tells whether it moved, changed its mesh or was shown or hidden since it was drawn.
+ * @author Giorgio
+ */
+public class SceneObject {
+    private final Mesh mesh;
+    private final Matrix4 worldMatrix = new Matrix4();
+    private final BoundingBox worldBox = new BoundingBox();
+    private final BoundingSphere worldSphere = new BoundingSphere();
+    private boolean visible = true;
+
+    // the state last committed by the renderer, and where the object was drawn with it
+    private final ScreenBounds screenBounds = new ScreenBounds();
+    private final double[] matrixValues = new double[Matrix4.SIZE];
+    private final double[] committedMatrix = new double[Matrix4.SIZE];
+    private int committedMeshVersion;
+    private boolean committedVisible;
+    private boolean committed;
+
+    /**
+     * Constructs an object.
+     *
+     * @param mesh        The mesh to draw.
+     * @param worldMatrix The initial world matrix; it is copied.
+     */
+    SceneObject(Mesh mesh, Matrix4 worldMatrix) {
+        this.mesh = mesh;
+        this.worldMatrix.set(worldMatrix);
+        updateBounds();
+    }
+
+    /**
+     * Returns the mesh of the object.
+     *
+     * @return The mesh.
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Returns the world matrix of the object. It is modified in place to move the object.
+     *
+     * @return The world matrix.
+     */
+    public Matrix4 getWorldMatrix() {
+        return worldMatrix;
+    }
+
+    /**
+     * Shows or hides the object. Hidden objects are skipped by culling.
+     *
+     * @param visible False to hide the object.
+     */
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    /**
+     * Checks if the object is shown.
+     *
+     * @return True unless the object was hidden.
+     */
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * Returns the world-space bounding box as of the last {@link Scene#update()}.
+     *
+     * @return The bounding box. It must not be modified.
+     */
+    public BoundingBox getWorldBox() {
+        return worldBox;
+    }
+
+    /**
+     * Returns the world-space bounding sphere as of the last {@link Scene#update()}.
+     *
+     * @return The bounding sphere. It must not be modified.
+     */
+    public BoundingSphere getWorldSphere() {
+        return worldSphere;
+    }
+
+    /**
+     * Returns the screen rectangle the object was drawn into by the last frame that committed its changes.
+     *
+     * @return The bounds, set by the renderer; empty if the object was not drawn.
+     */
+    public ScreenBounds getScreenBounds() {
+        return screenBounds;
+    }
+
+    /**
+     * Checks whether the object may look different than when this was called last: it moved, its mesh changed or
+     * it was shown or hidden. The current state becomes the state compared against next time. Must only be called
+     * by the one renderer tracking the changes, once per frame.
+     *
+     * @return True if the object changed, or on the first call.
+     */
+    public boolean commitChanges() {
+        worldMatrix.get(matrixValues, 0);
+        boolean changed = !committed || committedVisible != visible || committedMeshVersion != mesh.getVersion()
+                || !Arrays.equals(matrixValues, committedMatrix);
+        if (changed) {
+            System.arraycopy(matrixValues, 0, committedMatrix, 0, Matrix4.SIZE);
+            committedMeshVersion = mesh.getVersion();
+            committedVisible = visible;
+            committed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Transforms the object-space bounds of the mesh with the world matrix.
+     */
+    void updateBounds() {
+        worldBox.setTransformed(mesh.getBoundingBox(), worldMatrix);
+        worldSphere.setTransformed(mesh.getBoundingSphere(), worldMatrix);
+    }
+}